@@ -0,0 +1,121 @@
+package com.liling.Agent.utils;
+
+import com.liling.Agent.config.AgentProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 表达式求值：重写前按运算符拆分的解析、每次重新编译、命中编译缓存、复用编译结果，
+ * 以及对 rows 行变量取值逐行求值与按列批量求值的对比
+ * <p>
+ * 单次求值的几个基准用旧解析也能处理的 "12.5 + 7.25"；批量求值用多变量、带函数的表达式，
+ * 结果以每次调用（rows 行）计。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpressionBenchmark {
+
+    private static final String SIMPLE = "12.5 + 7.25";
+    private static final String FORMULA = "price * quantity * (1 - discount) + sqrt(price) ^ 2 / 4";
+
+    private ExpressionEngine engine;
+    private CompiledExpression simple;
+
+    @Setup
+    public void setUp() {
+        engine = new ExpressionEngine(new AgentProperties());
+        simple = engine.compile(SIMPLE);
+    }
+
+    @Benchmark
+    public double legacyParse() {
+        return LegacyCalculatorParser.evaluate(SIMPLE);
+    }
+
+    @Benchmark
+    public double compileEachTime() {
+        return ExpressionCompiler.compile(SIMPLE).evaluate(null);
+    }
+
+    @Benchmark
+    public double engineCached() {
+        return engine.evaluate(SIMPLE, Map.of());
+    }
+
+    @Benchmark
+    public double compiledReused() {
+        return simple.evaluate(null);
+    }
+
+    @Benchmark
+    public double[] rowByRow(Batch batch) {
+        double[][] columns = batch.columns;
+        double[] row = batch.row;
+        double[] out = batch.out;
+        for (int i = 0; i < batch.rows; i++) {
+            for (int v = 0; v < columns.length; v++) {
+                row[v] = columns[v][i];
+            }
+            out[i] = batch.formula.evaluate(row);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public double[] columnar(Batch batch) {
+        batch.formula.evaluateColumns(batch.columns, batch.out, 0, batch.rows);
+        return batch.out;
+    }
+
+    /**
+     * 批量求值的输入，只有这两个基准按行数参数化
+     */
+    @State(Scope.Benchmark)
+    public static class Batch {
+
+        @Param({"1024", "65536"})
+        public int rows;
+
+        private CompiledExpression formula;
+        private double[][] columns;
+        private double[] row;
+        private double[] out;
+
+        @Setup
+        public void setUp() {
+            formula = ExpressionCompiler.compile(FORMULA);
+
+            Random random = new Random(42);
+            columns = new double[formula.getVariables().size()][rows];
+            for (double[] column : columns) {
+                for (int i = 0; i < rows; i++) {
+                    column[i] = 1 + random.nextDouble() * 100;
+                }
+            }
+            // discount 取 0 到 0.5
+            double[] discount = columns[formula.variableIndex("discount")];
+            for (int i = 0; i < rows; i++) {
+                discount[i] = discount[i] / 200;
+            }
+            row = new double[columns.length];
+            out = new double[rows];
+        }
+    }
+}
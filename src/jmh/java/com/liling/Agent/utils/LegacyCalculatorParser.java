@@ -0,0 +1,36 @@
+package com.liling.Agent.utils;
+
+/**
+ * 重写前 CalculatorTool.evaluateExpression 的按第一个运算符拆分的解析，只作基准对照
+ * <p>
+ * 只支持两个操作数的一次运算，不处理优先级、括号和负数
+ */
+final class LegacyCalculatorParser {
+
+    private LegacyCalculatorParser() {
+    }
+
+    static double evaluate(String expression) {
+        // 移除空格
+        expression = expression.replaceAll("\\s+", "");
+
+        // 简单的四则运算解析
+        if (expression.contains("+")) {
+            String[] parts = expression.split("\\+");
+            return Double.parseDouble(parts[0]) + Double.parseDouble(parts[1]);
+        } else if (expression.contains("-")) {
+            String[] parts = expression.split("-");
+            return Double.parseDouble(parts[0]) - Double.parseDouble(parts[1]);
+        } else if (expression.contains("*")) {
+            String[] parts = expression.split("\\*");
+            return Double.parseDouble(parts[0]) * Double.parseDouble(parts[1]);
+        } else if (expression.contains("/")) {
+            String[] parts = expression.split("/");
+            double divisor = Double.parseDouble(parts[1]);
+            if (divisor == 0) throw new ArithmeticException("除数不能为零");
+            return Double.parseDouble(parts[0]) / divisor;
+        } else {
+            return Double.parseDouble(expression);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.liling.Agent.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分类响应清洗：重写前逐步 replaceAll 的实现与单遍扫描的 ResponseValidator 对比
+ * <p>
+ * clean 是只有 JSON 的响应；prose_1k / prose_4k 是 JSON 后面跟着解释文字和代码示例的响应，
+ * 模型没有按要求只输出 JSON 时常见；nested 的 parameters 是嵌套对象，旧实现提取失败会走修复流程
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseValidatorBenchmark {
+
+    private static final String DECISION =
+            "{\"needs_tool\": true, \"tool_name\": \"weather\", \"parameters\": {\"city\": \"上海\"}, \"reasoning\": \"询问天气\"}";
+    private static final String NESTED_DECISION =
+            "{\"needs_tool\": true, \"tool_name\": \"calculator\", \"parameters\": {\"expression\": \"x*2\", "
+                    + "\"variables\": {\"x\": 3}}, \"reasoning\": \"计算\"}";
+    private static final String PROSE = """
+            以下是判断结果：这个问题需要查询天气。我们可以这样实现：
+            ```python
+            def get_weather(city):
+                print(city)
+                return requests.get(url).json()
+            ```
+            Here is an example in Java:
+            public class Weather { String city; }
+            """;
+
+    @Param({"clean", "prose_1k", "prose_4k", "nested_4k"})
+    public String input;
+
+    private String response;
+
+    private final ResponseValidator current = new ResponseValidator();
+    private final LegacyResponseValidator legacy = new LegacyResponseValidator();
+
+    @Setup
+    public void setUp() {
+        switch (input) {
+            case "clean" -> response = DECISION;
+            case "prose_1k" -> response = withProse(DECISION, 1024);
+            case "prose_4k" -> response = withProse(DECISION, 4096);
+            case "nested_4k" -> response = withProse(NESTED_DECISION, 4096);
+            default -> throw new IllegalArgumentException(input);
+        }
+    }
+
+    private static String withProse(String decision, int length) {
+        StringBuilder text = new StringBuilder(decision).append("\n\n");
+        while (text.length() < length) {
+            text.append(PROSE);
+        }
+        return text.toString();
+    }
+
+    @Benchmark
+    public String current() {
+        return current.cleanLLMResponse(response);
+    }
+
+    @Benchmark
+    public String legacy() {
+        return legacy.cleanLLMResponse(response);
+    }
+}
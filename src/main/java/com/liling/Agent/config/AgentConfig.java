@@ -0,0 +1,71 @@
+package com.liling.Agent.config;
+
+import com.liling.Agent.utils.MdcExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agent 流程相关的基础配置
+ * <p>
+ * 线程池都用 MdcExecutorService 包装，任务中的日志带着提交请求的请求 ID，LLM 调用计入该请求的用量
+ */
+@Configuration
+@EnableConfigurationProperties(AgentProperties.class)
+public class AgentConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(AgentConfig.class);
+
+    /**
+     * hedged / parallel 分类时并发发起 LLM 请求的线程池
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService classificationExecutor(AgentProperties properties) {
+        return new MdcExecutorService(Executors.newFixedThreadPool(properties.getClassification().getPoolSize(),
+                new CustomizableThreadFactory("classify-")));
+    }
+
+    /**
+     * 并发执行调用计划中相互独立的工具调用
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService toolExecutor(AgentProperties properties) {
+        return new MdcExecutorService(Executors.newFixedThreadPool(properties.getTools().getPoolSize(),
+                new CustomizableThreadFactory("tool-")));
+    }
+
+    /**
+     * 对话请求的执行器：分类、工具调用、最终回复都是阻塞的 LLM 调用，放到这里执行，
+     * 不占用 Tomcat 请求线程。JDK 支持时每个请求一个虚拟线程，否则退回有界的平台线程池
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService agentExecutor(AgentProperties properties) {
+        AgentProperties.Async async = properties.getAsync();
+        if (async.isVirtualThreads()) {
+            try {
+                // 项目按 Java 17 编译，通过反射调用 JDK 21 的 API
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                log.info("对话请求使用虚拟线程执行");
+                return new MdcExecutorService((ExecutorService) factory.invoke(null));
+            } catch (ReflectiveOperationException e) {
+                log.info("当前 JDK 不支持虚拟线程，对话请求使用平台线程池: {}", async.getPoolSize());
+            }
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(async.getPoolSize(), async.getPoolSize(),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(async.getQueueCapacity()),
+                new CustomizableThreadFactory("agent-"));
+        executor.allowCoreThreadTimeOut(true);
+        return new MdcExecutorService(executor);
+    }
+}
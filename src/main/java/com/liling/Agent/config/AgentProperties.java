@@ -0,0 +1,319 @@
+package com.liling.Agent.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Agent 流程配置，对应 application.properties 中的 agent.* 配置项
+ */
+@ConfigurationProperties(prefix = "agent")
+public class AgentProperties {
+
+    private final DecisionCache decisionCache = new DecisionCache();
+
+    private final FastPath fastPath = new FastPath();
+
+    private final Classification classification = new Classification();
+
+    private final Async async = new Async();
+
+    private final SemanticCache semanticCache = new SemanticCache();
+
+    private final Tools tools = new Tools();
+
+    private final ToolRetrieval toolRetrieval = new ToolRetrieval();
+
+    private final Logging logging = new Logging();
+
+    private final Usage usage = new Usage();
+
+    public DecisionCache getDecisionCache() { return decisionCache; }
+
+    public FastPath getFastPath() { return fastPath; }
+
+    public Classification getClassification() { return classification; }
+
+    public Async getAsync() { return async; }
+
+    public SemanticCache getSemanticCache() { return semanticCache; }
+
+    public Tools getTools() { return tools; }
+
+    public ToolRetrieval getToolRetrieval() { return toolRetrieval; }
+
+    public Logging getLogging() { return logging; }
+
+    public Usage getUsage() { return usage; }
+
+    /**
+     * 工具决策缓存配置
+     */
+    public static class DecisionCache {
+        private boolean enabled = true;
+
+        // 最多缓存的决策条数
+        private int maxSize = 1000;
+
+        // 决策缓存的有效期
+        private Duration ttl = Duration.ofMinutes(10);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getMaxSize() { return maxSize; }
+        public void setMaxSize(int maxSize) { this.maxSize = maxSize; }
+
+        public Duration getTtl() { return ttl; }
+        public void setTtl(Duration ttl) { this.ttl = ttl; }
+    }
+
+    /**
+     * 规则快速分类配置
+     */
+    public static class FastPath {
+        private boolean enabled = true;
+
+        // 规则置信度达到该值时跳过 LLM 分类
+        private double confidenceThreshold = 0.9;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public double getConfidenceThreshold() { return confidenceThreshold; }
+        public void setConfidenceThreshold(double confidenceThreshold) { this.confidenceThreshold = confidenceThreshold; }
+    }
+
+    /**
+     * LLM 分类调用配置
+     */
+    public static class Classification {
+        // sequential: 逐个尝试提示词；hedged: 前一次超过 hedgeDelay 未返回就并发发起下一次；parallel: 同时发起全部
+        private Strategy strategy = Strategy.HEDGED;
+
+        // hedged 模式下发起下一个提示词变体前的等待时间
+        private Duration hedgeDelay = Duration.ofSeconds(2);
+
+        // sequential 模式下两次尝试之间的等待时间
+        private Duration retryBackoff = Duration.ofMillis(500);
+
+        // hedged / parallel 模式下整个分类的最长等待时间，超时后走规则降级
+        private Duration timeout = Duration.ofSeconds(60);
+
+        // 并发分类请求使用的线程数
+        private int poolSize = 16;
+
+        public Strategy getStrategy() { return strategy; }
+        public void setStrategy(Strategy strategy) { this.strategy = strategy; }
+
+        public Duration getHedgeDelay() { return hedgeDelay; }
+        public void setHedgeDelay(Duration hedgeDelay) { this.hedgeDelay = hedgeDelay; }
+
+        public Duration getRetryBackoff() { return retryBackoff; }
+        public void setRetryBackoff(Duration retryBackoff) { this.retryBackoff = retryBackoff; }
+
+        public Duration getTimeout() { return timeout; }
+        public void setTimeout(Duration timeout) { this.timeout = timeout; }
+
+        public int getPoolSize() { return poolSize; }
+        public void setPoolSize(int poolSize) { this.poolSize = poolSize; }
+
+        public enum Strategy {
+            SEQUENTIAL, HEDGED, PARALLEL
+        }
+    }
+
+    /**
+     * 异步处理对话请求的执行器配置
+     */
+    public static class Async {
+        // 运行在支持虚拟线程的 JDK（21+）上时，每个请求一个虚拟线程，不再受线程池大小限制
+        private boolean virtualThreads = true;
+
+        // 不支持虚拟线程时使用的平台线程数，决定同时阻塞等待模型的请求数
+        private int poolSize = 200;
+
+        // 不支持虚拟线程时，线程全忙后最多排队的请求数，超出后直接拒绝
+        private int queueCapacity = 2000;
+
+        public boolean isVirtualThreads() { return virtualThreads; }
+        public void setVirtualThreads(boolean virtualThreads) { this.virtualThreads = virtualThreads; }
+
+        public int getPoolSize() { return poolSize; }
+        public void setPoolSize(int poolSize) { this.poolSize = poolSize; }
+
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+    }
+
+    /**
+     * 语义缓存配置：按向量相似度命中意思相同、说法不同的问题
+     */
+    public static class SemanticCache {
+        private boolean enabled = false;
+
+        // 向量化实现：ollama（调用 embedding 模型）/ stub（字符 n-gram 哈希，仅用于测试）
+        private String provider = "ollama";
+
+        private String embeddingModel = "nomic-embed-text";
+
+        // 余弦相似度达到该值才视为同一个问题
+        private double similarityThreshold = 0.92;
+
+        // 工具决策、直接回答各自最多缓存的条数，决定索引预分配的内存
+        private int maxSize = 5000;
+
+        private Duration ttl = Duration.ofMinutes(30);
+
+        // 直接回答的有效期，一般比工具决策短
+        private Duration answerTtl = Duration.ofMinutes(10);
+
+        // IVF 索引的簇数和查询时扫描的簇数
+        private int lists = 32;
+        private int probes = 4;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public String getProvider() { return provider; }
+        public void setProvider(String provider) { this.provider = provider; }
+
+        public String getEmbeddingModel() { return embeddingModel; }
+        public void setEmbeddingModel(String embeddingModel) { this.embeddingModel = embeddingModel; }
+
+        public double getSimilarityThreshold() { return similarityThreshold; }
+        public void setSimilarityThreshold(double similarityThreshold) { this.similarityThreshold = similarityThreshold; }
+
+        public int getMaxSize() { return maxSize; }
+        public void setMaxSize(int maxSize) { this.maxSize = maxSize; }
+
+        public Duration getTtl() { return ttl; }
+        public void setTtl(Duration ttl) { this.ttl = ttl; }
+
+        public Duration getAnswerTtl() { return answerTtl; }
+        public void setAnswerTtl(Duration answerTtl) { this.answerTtl = answerTtl; }
+
+        public int getLists() { return lists; }
+        public void setLists(int lists) { this.lists = lists; }
+
+        public int getProbes() { return probes; }
+        public void setProbes(int probes) { this.probes = probes; }
+    }
+
+    /**
+     * 工具执行配置
+     */
+    public static class Tools {
+        // 并发执行工具调用的线程数
+        private int poolSize = 16;
+
+        // 单次工具调用的默认超时，工具没有在元数据里声明超时时使用
+        private Duration timeout = Duration.ofSeconds(10);
+
+        // 按工具名覆盖超时，优先于工具声明，例如 agent.tools.timeouts.weather=5s
+        private Map<String, Duration> timeouts = new HashMap<>();
+
+        // 按工具名覆盖最大并发数，优先于工具声明，例如 agent.tools.max-concurrency.weather=4
+        private Map<String, Integer> maxConcurrency = new HashMap<>();
+
+        // 一次调用计划最多包含的调用数，超出部分忽略
+        private int maxCallsPerPlan = 8;
+
+        // 按工具声明的有效期缓存工具结果
+        private boolean cacheEnabled = true;
+
+        // 计算器编译后表达式的缓存容量
+        private int expressionCacheSize = 1024;
+
+        // 批量计算接口一次最多计算的行数
+        private int batchMaxRows = 1_000_000;
+
+        public int getPoolSize() { return poolSize; }
+        public void setPoolSize(int poolSize) { this.poolSize = poolSize; }
+
+        public Duration getTimeout() { return timeout; }
+        public void setTimeout(Duration timeout) { this.timeout = timeout; }
+
+        public Map<String, Duration> getTimeouts() { return timeouts; }
+        public void setTimeouts(Map<String, Duration> timeouts) { this.timeouts = timeouts; }
+
+        public Map<String, Integer> getMaxConcurrency() { return maxConcurrency; }
+        public void setMaxConcurrency(Map<String, Integer> maxConcurrency) { this.maxConcurrency = maxConcurrency; }
+
+        public int getMaxCallsPerPlan() { return maxCallsPerPlan; }
+        public void setMaxCallsPerPlan(int maxCallsPerPlan) { this.maxCallsPerPlan = maxCallsPerPlan; }
+
+        public boolean isCacheEnabled() { return cacheEnabled; }
+        public void setCacheEnabled(boolean cacheEnabled) { this.cacheEnabled = cacheEnabled; }
+
+        public int getExpressionCacheSize() { return expressionCacheSize; }
+        public void setExpressionCacheSize(int expressionCacheSize) { this.expressionCacheSize = expressionCacheSize; }
+
+        public int getBatchMaxRows() { return batchMaxRows; }
+        public void setBatchMaxRows(int batchMaxRows) { this.batchMaxRows = batchMaxRows; }
+    }
+
+    /**
+     * 工具检索配置：工具很多时，分类提示词只列出与消息最相关的 topK 个工具
+     */
+    public static class ToolRetrieval {
+        private boolean enabled = true;
+
+        // 每条消息放进提示词的工具数
+        private int topK = 5;
+
+        // 工具数达到该值才启用检索，工具较少时完整列表放在可复用的前缀里更划算
+        private int minCatalogSize = 16;
+
+        // 工具向量计算失败后，隔多久再重试建立索引
+        private Duration retryInterval = Duration.ofMinutes(1);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getTopK() { return topK; }
+        public void setTopK(int topK) { this.topK = topK; }
+
+        public int getMinCatalogSize() { return minCatalogSize; }
+        public void setMinCatalogSize(int minCatalogSize) { this.minCatalogSize = minCatalogSize; }
+
+        public Duration getRetryInterval() { return retryInterval; }
+        public void setRetryInterval(Duration retryInterval) { this.retryInterval = retryInterval; }
+    }
+
+    /**
+     * 日志配置：提示词、模型原始响应等大段内容只在 DEBUG 级别、按请求抽样记录
+     */
+    public static class Logging {
+        // 记录大段内容的请求比例，0 表示不记录，1 表示全部记录
+        private double payloadSampleRate = 0.05;
+
+        // 每段内容最多记录的字符数，超出部分截断
+        private int payloadMaxChars = 500;
+
+        public double getPayloadSampleRate() { return payloadSampleRate; }
+        public void setPayloadSampleRate(double payloadSampleRate) { this.payloadSampleRate = payloadSampleRate; }
+
+        public int getPayloadMaxChars() { return payloadMaxChars; }
+        public void setPayloadMaxChars(int payloadMaxChars) { this.payloadMaxChars = payloadMaxChars; }
+    }
+
+    /**
+     * token 用量和吞吐统计配置
+     */
+    public static class Usage {
+        // 按模型和节点统计 tokens/s 的滚动窗口
+        private Duration window = Duration.ofSeconds(60);
+
+        // Ollama 报告的模型加载耗时超过该值时视为冷加载（模型被卸载后重新载入显存）
+        private Duration coldLoadThreshold = Duration.ofSeconds(1);
+
+        public Duration getWindow() { return window; }
+        public void setWindow(Duration window) { this.window = window; }
+
+        public Duration getColdLoadThreshold() { return coldLoadThreshold; }
+        public void setColdLoadThreshold(Duration coldLoadThreshold) { this.coldLoadThreshold = coldLoadThreshold; }
+    }
+}
@@ -0,0 +1,74 @@
+package com.liling.Agent.config;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+/**
+ * Ollama HTTP 客户端配置：带连接池、Keep-Alive 和超时的 RestTemplate
+ * <p>
+ * HttpClient 5 的 responseTimeout 就是读取响应时的 socket 超时，会覆盖连接上设置的 socketTimeout，
+ * 所以两种请求各用一个：非流式请求生成完才有数据，按 response-timeout 等待；
+ * 流式请求逐块返回，按 read-timeout 判断生成是否卡住（见 {@link #streamingRequestConfig}）。
+ */
+@Configuration
+@EnableConfigurationProperties(OllamaProperties.class)
+public class OllamaClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient ollamaHttpClient(OllamaProperties properties) {
+        OllamaProperties.Http http = properties.getHttp();
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(http.getMaxConnectionsTotal())
+                .setMaxConnPerRoute(http.getMaxConnectionsPerRoute())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(toTimeout(http.getConnectTimeout()))
+                        .build())
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig(http).build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(http.getIdleEvictionInterval()))
+                .build();
+    }
+
+    @Bean
+    public RestTemplate ollamaRestTemplate(CloseableHttpClient ollamaHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(ollamaHttpClient));
+    }
+
+    /**
+     * 流式请求的配置：请求级配置会整体替换客户端默认配置，所以从同一份设置复制后只改读取超时
+     */
+    public static RequestConfig streamingRequestConfig(OllamaProperties.Http http) {
+        return requestConfig(http)
+                .setResponseTimeout(toTimeout(http.getReadTimeout()))
+                .build();
+    }
+
+    private static RequestConfig.Builder requestConfig(OllamaProperties.Http http) {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(toTimeout(http.getConnectionRequestTimeout()))
+                .setResponseTimeout(toTimeout(http.getResponseTimeout()))
+                .setConnectionKeepAlive(TimeValue.of(http.getKeepAlive()));
+    }
+
+    private static Timeout toTimeout(Duration duration) {
+        return Timeout.of(duration);
+    }
+}
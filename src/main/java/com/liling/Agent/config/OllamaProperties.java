@@ -0,0 +1,302 @@
+package com.liling.Agent.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ollama 连接配置，对应 application.properties 中的 ollama.* 配置项
+ */
+@ConfigurationProperties(prefix = "ollama")
+public class OllamaProperties {
+
+    // Ollama 默认运行在 11434 端口
+    private String baseUrl = "http://localhost:11434";
+
+    private String model = "deepseek-coder:6.7b";
+
+    // 请求结束后模型保持加载的时间，避免冷启动和前缀缓存失效
+    private String keepAlive = "30m";
+
+    // 分类提示词静态前缀的复用方式：system / context / none
+    private PrefixReuse prefixReuse = PrefixReuse.SYSTEM;
+
+    // 相同请求并发时合并为一次调用的范围：none / classification / deterministic / all
+    private CoalesceScope coalesce = CoalesceScope.CLASSIFICATION;
+
+    // 面向用户的对话 / 最终回复生成参数，model 为空时使用 ollama.model
+    private final GenerationProfile chat = new GenerationProfile(null, 0.7, 1000, null);
+
+    // 工具路由分类调用：确定性输出、JSON 模式、只需要很少的 token
+    private final GenerationProfile classification = new GenerationProfile(null, 0.0, 320, "json");
+
+    private final Http http = new Http();
+
+    // 多个 Ollama 实例；为空时只使用 baseUrl 一个节点
+    private List<Backend> backends = new ArrayList<>();
+
+    private final Balancing balancing = new Balancing();
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    public String getBaseUrl() { return baseUrl; }
+    public void setBaseUrl(String baseUrl) { this.baseUrl = baseUrl; }
+
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
+
+    public Http getHttp() { return http; }
+
+    public String getKeepAlive() { return keepAlive; }
+    public void setKeepAlive(String keepAlive) { this.keepAlive = keepAlive; }
+
+    public PrefixReuse getPrefixReuse() { return prefixReuse; }
+    public void setPrefixReuse(PrefixReuse prefixReuse) { this.prefixReuse = prefixReuse; }
+
+    /**
+     * system: 静态前缀作为 system 提示词发送，每次内容相同，由 Ollama 复用 KV 缓存；
+     * context: 启动后先把前缀编码一次，之后发送返回的 context token 加上每次变化的部分；
+     * none: 每次发送完整提示词
+     */
+    public enum PrefixReuse {
+        SYSTEM, CONTEXT, NONE
+    }
+
+    public CoalesceScope getCoalesce() { return coalesce; }
+    public void setCoalesce(CoalesceScope coalesce) { this.coalesce = coalesce; }
+
+    /**
+     * none: 不合并；classification: 只合并工具路由分类调用；
+     * deterministic: 合并分类调用和所有 temperature 为 0 的调用；all: 合并所有完全相同的请求
+     */
+    public enum CoalesceScope {
+        NONE, CLASSIFICATION, DETERMINISTIC, ALL
+    }
+
+    public GenerationProfile getChat() { return chat; }
+
+    public GenerationProfile getClassification() { return classification; }
+
+    /**
+     * 一类调用使用的模型和生成参数
+     */
+    public static class GenerationProfile {
+        private String model;
+
+        private double temperature;
+
+        // 最多生成的 token 数
+        private int numPredict;
+
+        // 输出格式，"json" 启用 Ollama 的 JSON 模式，为空表示自由文本
+        private String format;
+
+        // 停止序列
+        private List<String> stop = new ArrayList<>();
+
+        public GenerationProfile(String model, double temperature, int numPredict, String format) {
+            this.model = model;
+            this.temperature = temperature;
+            this.numPredict = numPredict;
+            this.format = format;
+        }
+
+        public String getModel() { return model; }
+        public void setModel(String model) { this.model = model; }
+
+        public double getTemperature() { return temperature; }
+        public void setTemperature(double temperature) { this.temperature = temperature; }
+
+        public int getNumPredict() { return numPredict; }
+        public void setNumPredict(int numPredict) { this.numPredict = numPredict; }
+
+        public String getFormat() { return format; }
+        public void setFormat(String format) { this.format = format; }
+
+        public List<String> getStop() { return stop; }
+        public void setStop(List<String> stop) { this.stop = stop; }
+    }
+
+    public List<Backend> getBackends() { return backends; }
+    public void setBackends(List<Backend> backends) { this.backends = backends; }
+
+    public Balancing getBalancing() { return balancing; }
+
+    public CircuitBreaker getCircuitBreaker() { return circuitBreaker; }
+
+    /**
+     * 单个 Ollama 节点
+     */
+    public static class Backend {
+        private String name;
+
+        private String baseUrl;
+
+        // 该节点部署的模型，为空表示所有模型都路由到这里
+        private List<String> models = new ArrayList<>();
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+
+        public String getBaseUrl() { return baseUrl; }
+        public void setBaseUrl(String baseUrl) { this.baseUrl = baseUrl; }
+
+        public List<String> getModels() { return models; }
+        public void setModels(List<String> models) { this.models = models; }
+    }
+
+    /**
+     * 负载均衡与被动健康检查配置
+     */
+    public static class Balancing {
+        // least-outstanding: 选在途请求最少的节点；ewma: 选 EWMA 延迟 × (在途请求 + 1) 最小的节点
+        private Policy policy = Policy.LEAST_OUTSTANDING;
+
+        // EWMA 平滑系数，越大越偏向最近的样本
+        private double ewmaAlpha = 0.3;
+
+        // 连续失败多少次后剔除节点
+        private int failureThreshold = 3;
+
+        // 节点 EWMA 延迟超过其他节点中位数的多少倍时视为慢节点剔除
+        private double slowCallFactor = 3.0;
+
+        // 节点至少累积多少个成功样本后才参与慢节点判断
+        private int minSamples = 20;
+
+        // 剔除时长，到期后用 /api/version 探测通过才恢复
+        private Duration ejectionDuration = Duration.ofSeconds(30);
+
+        // 探测被剔除节点的间隔
+        private Duration healthCheckInterval = Duration.ofSeconds(10);
+
+        public Policy getPolicy() { return policy; }
+        public void setPolicy(Policy policy) { this.policy = policy; }
+
+        public double getEwmaAlpha() { return ewmaAlpha; }
+        public void setEwmaAlpha(double ewmaAlpha) { this.ewmaAlpha = ewmaAlpha; }
+
+        public int getFailureThreshold() { return failureThreshold; }
+        public void setFailureThreshold(int failureThreshold) { this.failureThreshold = failureThreshold; }
+
+        public double getSlowCallFactor() { return slowCallFactor; }
+        public void setSlowCallFactor(double slowCallFactor) { this.slowCallFactor = slowCallFactor; }
+
+        public int getMinSamples() { return minSamples; }
+        public void setMinSamples(int minSamples) { this.minSamples = minSamples; }
+
+        public Duration getEjectionDuration() { return ejectionDuration; }
+        public void setEjectionDuration(Duration ejectionDuration) { this.ejectionDuration = ejectionDuration; }
+
+        public Duration getHealthCheckInterval() { return healthCheckInterval; }
+        public void setHealthCheckInterval(Duration healthCheckInterval) { this.healthCheckInterval = healthCheckInterval; }
+
+        public enum Policy {
+            LEAST_OUTSTANDING, EWMA
+        }
+    }
+
+    /**
+     * 连接池与超时配置
+     */
+    public static class Http {
+        // 连接池总连接数
+        private int maxConnectionsTotal = 50;
+
+        // 单个 Ollama 地址的最大连接数
+        private int maxConnectionsPerRoute = 20;
+
+        // 建立 TCP 连接的超时
+        private Duration connectTimeout = Duration.ofSeconds(2);
+
+        // 从连接池获取连接的超时，池耗尽时快速失败而不是无限排队
+        private Duration connectionRequestTimeout = Duration.ofSeconds(5);
+
+        // 非流式请求两次读到数据之间的最大间隔；Ollama 生成完才返回，所以相当于整个生成的超时，要留足时间
+        private Duration responseTimeout = Duration.ofSeconds(120);
+
+        // 流式请求两次读到数据之间的最大间隔，生成卡住时据此断开
+        private Duration readTimeout = Duration.ofSeconds(60);
+
+        // 服务端未声明 Keep-Alive 时，空闲连接保留多久
+        private Duration keepAlive = Duration.ofSeconds(60);
+
+        // 后台清理空闲连接的间隔
+        private Duration idleEvictionInterval = Duration.ofSeconds(30);
+
+        public int getMaxConnectionsTotal() { return maxConnectionsTotal; }
+        public void setMaxConnectionsTotal(int maxConnectionsTotal) { this.maxConnectionsTotal = maxConnectionsTotal; }
+
+        public int getMaxConnectionsPerRoute() { return maxConnectionsPerRoute; }
+        public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) { this.maxConnectionsPerRoute = maxConnectionsPerRoute; }
+
+        public Duration getConnectTimeout() { return connectTimeout; }
+        public void setConnectTimeout(Duration connectTimeout) { this.connectTimeout = connectTimeout; }
+
+        public Duration getConnectionRequestTimeout() { return connectionRequestTimeout; }
+        public void setConnectionRequestTimeout(Duration connectionRequestTimeout) { this.connectionRequestTimeout = connectionRequestTimeout; }
+
+        public Duration getResponseTimeout() { return responseTimeout; }
+        public void setResponseTimeout(Duration responseTimeout) { this.responseTimeout = responseTimeout; }
+
+        public Duration getReadTimeout() { return readTimeout; }
+        public void setReadTimeout(Duration readTimeout) { this.readTimeout = readTimeout; }
+
+        public Duration getKeepAlive() { return keepAlive; }
+        public void setKeepAlive(Duration keepAlive) { this.keepAlive = keepAlive; }
+
+        public Duration getIdleEvictionInterval() { return idleEvictionInterval; }
+        public void setIdleEvictionInterval(Duration idleEvictionInterval) { this.idleEvictionInterval = idleEvictionInterval; }
+    }
+
+    /**
+     * 整个 LLM 客户端的熔断配置：Ollama 不可用或持续很慢时直接走降级，不再逐个请求等超时
+     */
+    public static class CircuitBreaker {
+        private boolean enabled = true;
+
+        // 统计最近多少次调用
+        private int windowSize = 20;
+
+        // 窗口内至少有这么多次调用才计算失败率
+        private int minimumCalls = 5;
+
+        private double failureRateThreshold = 0.5;
+
+        // 非流式调用按总耗时、流式调用按首个 token 的耗时判断慢调用
+        private Duration slowCallDuration = Duration.ofSeconds(20);
+
+        private double slowCallRateThreshold = 0.8;
+
+        // 打开后多久进入半开状态放行探测请求
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        private int halfOpenProbes = 2;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getWindowSize() { return windowSize; }
+        public void setWindowSize(int windowSize) { this.windowSize = windowSize; }
+
+        public int getMinimumCalls() { return minimumCalls; }
+        public void setMinimumCalls(int minimumCalls) { this.minimumCalls = minimumCalls; }
+
+        public double getFailureRateThreshold() { return failureRateThreshold; }
+        public void setFailureRateThreshold(double failureRateThreshold) { this.failureRateThreshold = failureRateThreshold; }
+
+        public Duration getSlowCallDuration() { return slowCallDuration; }
+        public void setSlowCallDuration(Duration slowCallDuration) { this.slowCallDuration = slowCallDuration; }
+
+        public double getSlowCallRateThreshold() { return slowCallRateThreshold; }
+        public void setSlowCallRateThreshold(double slowCallRateThreshold) { this.slowCallRateThreshold = slowCallRateThreshold; }
+
+        public Duration getOpenDuration() { return openDuration; }
+        public void setOpenDuration(Duration openDuration) { this.openDuration = openDuration; }
+
+        public int getHalfOpenProbes() { return halfOpenProbes; }
+        public void setHalfOpenProbes(int halfOpenProbes) { this.halfOpenProbes = halfOpenProbes; }
+    }
+}
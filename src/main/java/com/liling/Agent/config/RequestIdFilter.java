@@ -0,0 +1,58 @@
+package com.liling.Agent.config;
+
+import com.liling.Agent.utils.PayloadLogger;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * 为每个请求分配请求 ID 放进 MDC，日志的每一行都带上它；请求头带了 X-Request-Id 时沿用调用方的 ID，
+ * 响应头返回同一个 ID。同时决定这个请求是否记录提示词等大段内容
+ * <p>
+ * 线程池中执行的任务经 MdcExecutorService 继承提交线程的 MDC
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestIdFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "X-Request-Id";
+    public static final String MDC_KEY = "requestId";
+
+    // 调用方传入的 ID 只接受这些字符，避免把任意内容写进日志
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    private final PayloadLogger payloadLogger;
+
+    public RequestIdFilter(PayloadLogger payloadLogger) {
+        this.payloadLogger = payloadLogger;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String requestId = request.getHeader(HEADER);
+        if (requestId == null || !VALID_ID.matcher(requestId).matches()) {
+            requestId = UUID.randomUUID().toString().replace("-", "").substring(0, 16);
+        }
+
+        MDC.put(MDC_KEY, requestId);
+        MDC.put(PayloadLogger.SAMPLED_KEY, Boolean.toString(payloadLogger.sample()));
+        response.setHeader(HEADER, requestId);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            MDC.remove(MDC_KEY);
+            MDC.remove(PayloadLogger.SAMPLED_KEY);
+        }
+    }
+}
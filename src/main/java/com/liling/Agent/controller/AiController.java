@@ -1,13 +1,35 @@
 package com.liling.Agent.controller;
 
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.exception.EmbeddingUnavailableException;
+import com.liling.Agent.exception.ExpressionException;
 import com.liling.Agent.service.DeepSeekAgentService;
+import com.liling.Agent.service.FastPathClassifier;
 import com.liling.Agent.service.IntelligentToolService;
+import com.liling.Agent.service.LlmBackendPool;
 import com.liling.Agent.service.OllamaService;
+import com.liling.Agent.service.SemanticCache;
 import com.liling.Agent.service.SmartAgentService;
+import com.liling.Agent.service.ThroughputTracker;
+import com.liling.Agent.service.ToolDecisionCache;
+import com.liling.Agent.service.ToolRetriever;
+import com.liling.Agent.service.impl.CalculatorTool;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/ai")
@@ -19,12 +41,76 @@ public class AiController {
     @Autowired
     private IntelligentToolService toolService;
 
+    @Autowired
+    private ToolDecisionCache decisionCache;
+
+    @Autowired
+    private FastPathClassifier fastPathClassifier;
+
+    @Autowired
+    private LlmBackendPool backendPool;
+
+    @Autowired
+    private OllamaService ollamaService;
+
+    @Autowired
+    private SemanticCache semanticCache;
+
+    @Autowired
+    private CalculatorTool calculatorTool;
+
+    @Autowired
+    private ToolRetriever toolRetriever;
+
+    @Autowired
+    private ThroughputTracker throughputTracker;
+
+    @Autowired
+    private AgentProperties agentProperties;
+
+    @Autowired
+    @Qualifier("agentExecutor")
+    private ExecutorService agentExecutor;
+
+    // SSE 连接最长保持时间，覆盖分类 + 工具 + 完整生成的耗时
+    private static final long STREAM_TIMEOUT_MS = 5 * 60 * 1000L;
+
     /**
-     * 智能对话接口
+     * 智能对话接口：异步返回，等待模型期间不占用请求线程
      */
     @PostMapping("/chat")
-    public SmartAgentService.AgentResponse chat(@RequestBody ChatRequest request) {
-        return smartAgentService.processMessage(request.getMessage());
+    public CompletableFuture<SmartAgentService.AgentResponse> chat(@RequestBody ChatRequest request) {
+        return smartAgentService.processMessageAsync(request.getMessage());
+    }
+
+    /**
+     * 流式智能对话接口（SSE）：最终回复以 token 事件逐段推送，结束时发送 done 事件携带完整结果
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@RequestBody ChatRequest request) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+
+        agentExecutor.execute(() -> {
+            try {
+                SmartAgentService.AgentResponse response = smartAgentService.processMessageStreaming(
+                        request.getMessage(), token -> sendEvent(emitter, "token", token));
+                sendEvent(emitter, "done", response);
+                emitter.complete();
+            } catch (Exception e) {
+                emitter.completeWithError(e);
+            }
+        });
+
+        return emitter;
+    }
+
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException e) {
+            // 客户端已断开，抛出以终止上游生成
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
@@ -43,6 +129,111 @@ public class AiController {
         return toolService.executeTool(request.getToolName(), request.getParameters());
     }
 
+    /**
+     * 批量计算：同一个表达式对多组变量取值求值，例如
+     * {"expression": "x*2+y", "variables": {"x": [1, 2, 3], "y": [4, 5, 6]}}
+     * 除数为零等无效行的结果为 null
+     */
+    @PostMapping("/calculator/batch")
+    public Map<String, Object> calculateBatch(@RequestBody CalculatorBatchRequest request) {
+        int maxRows = agentProperties.getTools().getBatchMaxRows();
+        if (request.getVariables() != null) {
+            for (double[] column : request.getVariables().values()) {
+                if (column != null && column.length > maxRows) {
+                    throw new IllegalArgumentException("一次最多计算 " + maxRows + " 行");
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        double[] values = calculatorTool.evaluateBatch(request.getExpression(), request.getVariables());
+        long elapsedMicros = (System.nanoTime() - start) / 1000;
+
+        List<Double> results = new ArrayList<>(values.length);
+        int invalidRows = 0;
+        for (double value : values) {
+            if (Double.isNaN(value)) {
+                results.add(null);
+                invalidRows++;
+            } else {
+                results.add(value);
+            }
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("expression", request.getExpression());
+        response.put("rows", values.length);
+        response.put("invalidRows", invalidRows);
+        response.put("evaluationMicros", elapsedMicros);
+        response.put("results", results);
+        return response;
+    }
+
+    /**
+     * 用标注数据评估按消息检索工具的效果，返回 recall@1..k
+     */
+    @GetMapping("/tool-retrieval/eval")
+    public Map<String, Object> evaluateToolRetrieval(@RequestParam(defaultValue = "5") int k) throws IOException {
+        return toolRetriever.evaluate(k);
+    }
+
+    /**
+     * 运行统计：各级缓存的命中情况等
+     */
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("fastPath", fastPathClassifier.getStats());
+        stats.put("decisionCache", decisionCache.getStats());
+        stats.put("semanticCache", semanticCache.getStats());
+        stats.put("classification", toolService.getClassificationStats());
+        stats.put("tools", toolService.getToolStats());
+        stats.put("toolCache", toolService.getToolCacheStats());
+        stats.put("toolNames", toolService.getToolNameStats());
+        stats.put("toolRetrieval", toolRetriever.getStats());
+        stats.put("llmBackends", backendPool.getStats());
+        stats.put("circuitBreaker", ollamaService.getCircuitBreakerStats());
+        stats.put("promptPrefix", ollamaService.getPromptPrefixStats());
+        stats.put("coalescing", ollamaService.getCoalescingStats());
+        stats.put("throughput", throughputTracker.getStats());
+        return stats;
+    }
+
+    /**
+     * 各模型、LLM 节点在滚动窗口内的 token 吞吐和冷加载次数
+     */
+    @GetMapping("/throughput")
+    public Map<String, Object> getThroughput() {
+        return throughputTracker.getStats();
+    }
+
+    /**
+     * 表达式或参数有误时返回 400
+     */
+    @ExceptionHandler({ExpressionException.class, IllegalArgumentException.class})
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, String> handleBadRequest(RuntimeException e) {
+        return Map.of("error", e.getMessage());
+    }
+
+    /**
+     * 工具检索需要的向量化服务不可用时返回 503
+     */
+    @ExceptionHandler(EmbeddingUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Map<String, String> handleUnavailable(EmbeddingUnavailableException e) {
+        return Map.of("error", e.getMessage());
+    }
+
+    /**
+     * 执行器排队已满时返回 503，让客户端稍后重试
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Map<String, String> handleRejected(RejectedExecutionException e) {
+        return Map.of("error", "服务繁忙，请稍后重试");
+    }
+
     // 请求类
     public static class ChatRequest {
         private String message;
@@ -60,4 +251,15 @@ public class AiController {
         public Map<String, String> getParameters() { return parameters; }
         public void setParameters(Map<String, String> parameters) { this.parameters = parameters; }
     }
+
+    public static class CalculatorBatchRequest {
+        private String expression;
+        private Map<String, double[]> variables;
+
+        public String getExpression() { return expression; }
+        public void setExpression(String expression) { this.expression = expression; }
+
+        public Map<String, double[]> getVariables() { return variables; }
+        public void setVariables(Map<String, double[]> variables) { this.variables = variables; }
+    }
 }
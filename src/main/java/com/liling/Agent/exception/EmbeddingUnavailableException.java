@@ -0,0 +1,15 @@
+package com.liling.Agent.exception;
+
+/**
+ * 向量化服务不可用：没有可用的向量化实现、向量服务调用失败，或工具向量索引尚未建立
+ */
+public class EmbeddingUnavailableException extends RuntimeException {
+
+    public EmbeddingUnavailableException(String message) {
+        super(message);
+    }
+
+    public EmbeddingUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
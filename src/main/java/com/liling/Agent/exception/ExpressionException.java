@@ -0,0 +1,11 @@
+package com.liling.Agent.exception;
+
+/**
+ * 数学表达式无法解析或无法求值：语法错误、未知函数、缺少变量、除数为零等
+ */
+public class ExpressionException extends RuntimeException {
+
+    public ExpressionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.liling.Agent.exception;
+
+/**
+ * 调用 LLM 失败：连接失败、超时、返回错误或无法解析的响应
+ */
+public class LlmException extends RuntimeException {
+
+    public LlmException(String message) {
+        super(message);
+    }
+
+    public LlmException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
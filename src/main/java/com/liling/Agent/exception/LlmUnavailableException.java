@@ -0,0 +1,11 @@
+package com.liling.Agent.exception;
+
+/**
+ * LLM 服务暂不可用：熔断器打开，请求没有发出
+ */
+public class LlmUnavailableException extends LlmException {
+
+    public LlmUnavailableException(String message) {
+        super(message);
+    }
+}
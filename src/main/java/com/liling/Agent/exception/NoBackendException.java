@@ -0,0 +1,11 @@
+package com.liling.Agent.exception;
+
+/**
+ * 没有任何节点部署请求的模型：配置问题，请求没有发出，不能说明节点是否健康
+ */
+public class NoBackendException extends IllegalStateException {
+
+    public NoBackendException(String message) {
+        super(message);
+    }
+}
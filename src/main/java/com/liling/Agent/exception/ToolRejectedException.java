@@ -0,0 +1,11 @@
+package com.liling.Agent.exception;
+
+/**
+ * 工具并发已满，调用被隔离舱拒绝
+ */
+public class ToolRejectedException extends RuntimeException {
+
+    public ToolRejectedException(String message) {
+        super(message);
+    }
+}
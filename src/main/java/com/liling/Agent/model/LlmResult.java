@@ -0,0 +1,76 @@
+package com.liling.Agent.model;
+
+/**
+ * 一次 LLM 调用的结果：生成的文本，以及 Ollama 在最后一个响应块里返回的 token 数和服务端耗时
+ * <p>
+ * 提前断开的流式调用收不到最后一块，reported 为 false：completionTokens 是收到的文本块数（Ollama 每块一个 token），
+ * promptTokens 和各项服务端耗时为 0。流式生成中途失败、只返回了已生成部分时 complete 为 false。
+ */
+public class LlmResult {
+    private final String text;
+    private final String model;
+    private final boolean reported;
+    private final int promptTokens;
+    private final int completionTokens;
+    private final long totalDurationNanos;
+    private final long loadDurationNanos;
+    private final long promptEvalNanos;
+    private final long evalNanos;
+    private final long elapsedNanos;
+    private final boolean complete;
+
+    private LlmResult(String text, String model, boolean reported, int promptTokens, int completionTokens,
+                      long totalDurationNanos, long loadDurationNanos, long promptEvalNanos, long evalNanos,
+                      long elapsedNanos, boolean complete) {
+        this.text = text;
+        this.model = model;
+        this.reported = reported;
+        this.promptTokens = promptTokens;
+        this.completionTokens = completionTokens;
+        this.totalDurationNanos = totalDurationNanos;
+        this.loadDurationNanos = loadDurationNanos;
+        this.promptEvalNanos = promptEvalNanos;
+        this.evalNanos = evalNanos;
+        this.elapsedNanos = elapsedNanos;
+        this.complete = complete;
+    }
+
+    /**
+     * 由 Ollama 的完整响应（非流式响应或流式的最后一块）构建；last 为 null 时只有文本和收到的块数
+     */
+    public static LlmResult of(String text, String model, OllamaGenerateResponse last, int streamedChunks,
+                               long elapsedNanos) {
+        if (last == null) {
+            return new LlmResult(text, model, false, 0, streamedChunks, 0, 0, 0, 0, elapsedNanos, true);
+        }
+        return new LlmResult(text, model, true, last.getPromptEvalCount(), last.getEvalCount(),
+                last.getTotalDuration(), last.getLoadDuration(), last.getPromptEvalDuration(), last.getEvalDuration(),
+                elapsedNanos, true);
+    }
+
+    /**
+     * 同样的结果，标记为生成不完整
+     */
+    public LlmResult asIncomplete() {
+        return new LlmResult(text, model, reported, promptTokens, completionTokens, totalDurationNanos,
+                loadDurationNanos, promptEvalNanos, evalNanos, elapsedNanos, false);
+    }
+
+    public String getText() { return text; }
+    public String getModel() { return model; }
+    public boolean isReported() { return reported; }
+    public int getPromptTokens() { return promptTokens; }
+    public int getCompletionTokens() { return completionTokens; }
+    public long getTotalDurationNanos() { return totalDurationNanos; }
+    public long getLoadDurationNanos() { return loadDurationNanos; }
+    public long getPromptEvalNanos() { return promptEvalNanos; }
+    public long getEvalNanos() { return evalNanos; }
+    public long getElapsedNanos() { return elapsedNanos; }
+    public boolean isComplete() { return complete; }
+
+    @Override
+    public String toString() {
+        return String.format("LlmResult{model='%s', reported=%s, complete=%s, promptTokens=%d, completionTokens=%d, elapsedMs=%d}",
+                model, reported, complete, promptTokens, completionTokens, elapsedNanos / 1_000_000);
+    }
+}
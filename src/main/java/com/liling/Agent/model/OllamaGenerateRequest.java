@@ -0,0 +1,81 @@
+package com.liling.Agent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Ollama /api/generate 请求体
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OllamaGenerateRequest {
+    @JsonProperty("model")
+    private String model;
+
+    @JsonProperty("prompt")
+    private String prompt;
+
+    // 覆盖模型默认的系统提示词；内容不变时 Ollama 可以复用这段前缀的 KV 缓存
+    @JsonProperty("system")
+    private String system;
+
+    // 上一次生成返回的 context token，作为本次提示词的前缀，不再重新编码
+    @JsonProperty("context")
+    private int[] context;
+
+    // 请求结束后模型保持加载的时间，例如 "30m"
+    @JsonProperty("keep_alive")
+    private String keepAlive;
+
+    @JsonProperty("stream")
+    private boolean stream;
+
+    // "json" 时 Ollama 约束模型只输出合法 JSON
+    @JsonProperty("format")
+    private String format;
+
+    @JsonProperty("options")
+    private OllamaOptions options;
+
+    public OllamaGenerateRequest() {}
+
+    public OllamaGenerateRequest(String model, String prompt, boolean stream,
+                                 String format, OllamaOptions options) {
+        this.model = model;
+        this.prompt = prompt;
+        this.stream = stream;
+        this.format = format;
+        this.options = options;
+    }
+
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
+
+    public String getPrompt() { return prompt; }
+    public void setPrompt(String prompt) { this.prompt = prompt; }
+
+    public boolean isStream() { return stream; }
+    public void setStream(boolean stream) { this.stream = stream; }
+
+    public String getSystem() { return system; }
+    public void setSystem(String system) { this.system = system; }
+
+    public int[] getContext() { return context; }
+    public void setContext(int[] context) { this.context = context; }
+
+    public String getKeepAlive() { return keepAlive; }
+    public void setKeepAlive(String keepAlive) { this.keepAlive = keepAlive; }
+
+    public String getFormat() { return format; }
+    public void setFormat(String format) { this.format = format; }
+
+    public OllamaOptions getOptions() { return options; }
+    public void setOptions(OllamaOptions options) { this.options = options; }
+
+    @Override
+    public String toString() {
+        return String.format("OllamaGenerateRequest{model='%s', stream=%s, format=%s, options=%s, " +
+                        "system=%d chars, context=%d tokens, prompt=%d chars}",
+                model, stream, format, options, system == null ? 0 : system.length(),
+                context == null ? 0 : context.length, prompt == null ? 0 : prompt.length());
+    }
+}
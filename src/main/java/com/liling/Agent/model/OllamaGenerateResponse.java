@@ -0,0 +1,78 @@
+package com.liling.Agent.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Ollama /api/generate 响应（非流式响应，或流式响应中的一个块）
+ * <p>
+ * 时长字段单位均为纳秒，只有 done 为 true 的块才带统计信息。
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class OllamaGenerateResponse {
+    @JsonProperty("model")
+    private String model;
+
+    @JsonProperty("response")
+    private String response;
+
+    @JsonProperty("done")
+    private boolean done;
+
+    @JsonProperty("error")
+    private String error;
+
+    @JsonProperty("context")
+    private int[] context;
+
+    @JsonProperty("total_duration")
+    private long totalDuration;
+
+    @JsonProperty("load_duration")
+    private long loadDuration;
+
+    @JsonProperty("prompt_eval_count")
+    private int promptEvalCount;
+
+    @JsonProperty("prompt_eval_duration")
+    private long promptEvalDuration;
+
+    @JsonProperty("eval_count")
+    private int evalCount;
+
+    @JsonProperty("eval_duration")
+    private long evalDuration;
+
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
+
+    public String getResponse() { return response; }
+    public void setResponse(String response) { this.response = response; }
+
+    public boolean isDone() { return done; }
+    public void setDone(boolean done) { this.done = done; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public int[] getContext() { return context; }
+    public void setContext(int[] context) { this.context = context; }
+
+    public long getTotalDuration() { return totalDuration; }
+    public void setTotalDuration(long totalDuration) { this.totalDuration = totalDuration; }
+
+    public long getLoadDuration() { return loadDuration; }
+    public void setLoadDuration(long loadDuration) { this.loadDuration = loadDuration; }
+
+    public int getPromptEvalCount() { return promptEvalCount; }
+    public void setPromptEvalCount(int promptEvalCount) { this.promptEvalCount = promptEvalCount; }
+
+    public long getPromptEvalDuration() { return promptEvalDuration; }
+    public void setPromptEvalDuration(long promptEvalDuration) { this.promptEvalDuration = promptEvalDuration; }
+
+    public int getEvalCount() { return evalCount; }
+    public void setEvalCount(int evalCount) { this.evalCount = evalCount; }
+
+    public long getEvalDuration() { return evalDuration; }
+    public void setEvalDuration(long evalDuration) { this.evalDuration = evalDuration; }
+}
@@ -0,0 +1,56 @@
+package com.liling.Agent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Ollama 生成参数（对应请求体里的 options），未设置的字段不会发送，沿用模型默认值
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OllamaOptions {
+    @JsonProperty("temperature")
+    private Double temperature;
+
+    @JsonProperty("num_predict")
+    private Integer numPredict;
+
+    @JsonProperty("top_p")
+    private Double topP;
+
+    @JsonProperty("num_ctx")
+    private Integer numCtx;
+
+    @JsonProperty("stop")
+    private List<String> stop;
+
+    public OllamaOptions() {}
+
+    public OllamaOptions(Double temperature, Integer numPredict, List<String> stop) {
+        this.temperature = temperature;
+        this.numPredict = numPredict;
+        this.stop = stop == null || stop.isEmpty() ? null : List.copyOf(stop);
+    }
+
+    public Double getTemperature() { return temperature; }
+    public void setTemperature(Double temperature) { this.temperature = temperature; }
+
+    public Integer getNumPredict() { return numPredict; }
+    public void setNumPredict(Integer numPredict) { this.numPredict = numPredict; }
+
+    public Double getTopP() { return topP; }
+    public void setTopP(Double topP) { this.topP = topP; }
+
+    public Integer getNumCtx() { return numCtx; }
+    public void setNumCtx(Integer numCtx) { this.numCtx = numCtx; }
+
+    public List<String> getStop() { return stop; }
+    public void setStop(List<String> stop) { this.stop = stop; }
+
+    @Override
+    public String toString() {
+        return String.format("OllamaOptions{temperature=%s, numPredict=%s, topP=%s, numCtx=%s, stop=%s}",
+                temperature, numPredict, topP, numCtx, stop);
+    }
+}
@@ -0,0 +1,120 @@
+package com.liling.Agent.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一次对话请求的资源用量：各阶段（classification / tools / answer）的耗时、LLM 调用次数和 token 数
+ * <p>
+ * 对冲分类时多个线程会同时记录，方法都加锁。被取消的对冲尝试只要已经收到内容也计入，它们同样消耗了模型算力。
+ */
+public class RequestUsage {
+
+    private final Map<String, StageUsage> stages = new LinkedHashMap<>();
+
+    /**
+     * 记录一个阶段的总耗时
+     */
+    public synchronized void recordElapsed(String stage, long elapsedNanos) {
+        stage(stage).elapsedNanos += elapsedNanos;
+    }
+
+    /**
+     * 记录阶段内的一次 LLM 调用
+     */
+    public synchronized void recordLlmCall(String stage, LlmResult result) {
+        StageUsage usage = stage(stage);
+        usage.llmCalls++;
+        usage.promptTokens += result.getPromptTokens();
+        usage.completionTokens += result.getCompletionTokens();
+        usage.llmNanos += result.getElapsedNanos();
+        usage.loadNanos += result.getLoadDurationNanos();
+        usage.promptEvalNanos += result.getPromptEvalNanos();
+        usage.evalNanos += result.getEvalNanos();
+    }
+
+    private StageUsage stage(String name) {
+        return stages.computeIfAbsent(name, n -> new StageUsage());
+    }
+
+    @JsonProperty("prompt_tokens")
+    public synchronized long getPromptTokens() {
+        return stages.values().stream().mapToLong(s -> s.promptTokens).sum();
+    }
+
+    @JsonProperty("completion_tokens")
+    public synchronized long getCompletionTokens() {
+        return stages.values().stream().mapToLong(s -> s.completionTokens).sum();
+    }
+
+    @JsonProperty("llm_calls")
+    public synchronized int getLlmCalls() {
+        return stages.values().stream().mapToInt(s -> s.llmCalls).sum();
+    }
+
+    @JsonProperty("stages")
+    public synchronized Map<String, StageUsage> getStages() {
+        Map<String, StageUsage> copy = new LinkedHashMap<>();
+        stages.forEach((name, usage) -> copy.put(name, usage.copy()));
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RequestUsage{llmCalls=%d, promptTokens=%d, completionTokens=%d, stages=%s}",
+                getLlmCalls(), getPromptTokens(), getCompletionTokens(), getStages().keySet());
+    }
+
+    /**
+     * 单个阶段的用量；llm_ms 是客户端看到的 LLM 调用耗时之和，load / prompt_eval / eval 是 Ollama 报告的服务端耗时
+     */
+    public static class StageUsage {
+        private long elapsedNanos;
+        private int llmCalls;
+        private long promptTokens;
+        private long completionTokens;
+        private long llmNanos;
+        private long loadNanos;
+        private long promptEvalNanos;
+        private long evalNanos;
+
+        private StageUsage copy() {
+            StageUsage copy = new StageUsage();
+            copy.elapsedNanos = elapsedNanos;
+            copy.llmCalls = llmCalls;
+            copy.promptTokens = promptTokens;
+            copy.completionTokens = completionTokens;
+            copy.llmNanos = llmNanos;
+            copy.loadNanos = loadNanos;
+            copy.promptEvalNanos = promptEvalNanos;
+            copy.evalNanos = evalNanos;
+            return copy;
+        }
+
+        @JsonProperty("elapsed_ms")
+        public long getElapsedMs() { return elapsedNanos / 1_000_000; }
+
+        @JsonProperty("llm_calls")
+        public int getLlmCalls() { return llmCalls; }
+
+        @JsonProperty("prompt_tokens")
+        public long getPromptTokens() { return promptTokens; }
+
+        @JsonProperty("completion_tokens")
+        public long getCompletionTokens() { return completionTokens; }
+
+        @JsonProperty("llm_ms")
+        public long getLlmMs() { return llmNanos / 1_000_000; }
+
+        @JsonProperty("load_ms")
+        public long getLoadMs() { return loadNanos / 1_000_000; }
+
+        @JsonProperty("prompt_eval_ms")
+        public long getPromptEvalMs() { return promptEvalNanos / 1_000_000; }
+
+        @JsonProperty("eval_ms")
+        public long getEvalMs() { return evalNanos / 1_000_000; }
+    }
+}
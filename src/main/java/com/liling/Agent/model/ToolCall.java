@@ -0,0 +1,64 @@
+package com.liling.Agent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 工具调用计划中的一次调用。depends_on 列出必须先完成的调用 id，
+ * 参数值里的 {{id}} 会在执行前替换成对应调用的结果
+ */
+public class ToolCall {
+    @JsonProperty("id")
+    private String id;
+
+    @JsonProperty("tool_name")
+    private String toolName;
+
+    @JsonProperty("parameters")
+    private Map<String, String> parameters;
+
+    @JsonProperty("depends_on")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<String> dependsOn;
+
+    public ToolCall() {}
+
+    public ToolCall(String id, String toolName, Map<String, String> parameters, List<String> dependsOn) {
+        this.id = id;
+        this.toolName = toolName;
+        this.parameters = parameters;
+        this.dependsOn = dependsOn;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getToolName() { return toolName; }
+    public void setToolName(String toolName) { this.toolName = toolName; }
+
+    public Map<String, String> getParameters() { return parameters; }
+    public void setParameters(Map<String, String> parameters) { this.parameters = parameters; }
+
+    public List<String> getDependsOn() { return dependsOn; }
+    public void setDependsOn(List<String> dependsOn) { this.dependsOn = dependsOn; }
+
+    /**
+     * 深拷贝，缓存返回的调用计划互不影响
+     */
+    public ToolCall copy() {
+        return new ToolCall(id, toolName,
+                parameters == null ? new HashMap<>() : new HashMap<>(parameters),
+                dependsOn == null ? new ArrayList<>() : new ArrayList<>(dependsOn));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ToolCall{id='%s', toolName='%s', parameters=%s, dependsOn=%s}",
+                id, toolName, parameters, dependsOn);
+    }
+}
@@ -0,0 +1,43 @@
+package com.liling.Agent.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 调用计划中一次工具调用的执行结果
+ */
+public class ToolCallResult {
+    @JsonProperty("id")
+    private final String id;
+
+    @JsonProperty("tool_name")
+    private final String toolName;
+
+    @JsonProperty("result")
+    private final String result;
+
+    @JsonProperty("success")
+    private final boolean success;
+
+    @JsonProperty("duration_ms")
+    private final long durationMs;
+
+    public ToolCallResult(String id, String toolName, String result, boolean success, long durationMs) {
+        this.id = id;
+        this.toolName = toolName;
+        this.result = result;
+        this.success = success;
+        this.durationMs = durationMs;
+    }
+
+    public String getId() { return id; }
+    public String getToolName() { return toolName; }
+    public String getResult() { return result; }
+    public boolean isSuccess() { return success; }
+    public long getDurationMs() { return durationMs; }
+
+    @Override
+    public String toString() {
+        return String.format("ToolCallResult{id='%s', toolName='%s', success=%s, durationMs=%d, result='%s'}",
+                id, toolName, success, durationMs, result);
+    }
+}
@@ -1,11 +1,15 @@
 package com.liling.Agent.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.List;
 import java.util.Map;
 
 /**
- * LLM 返回的工具调用决策
+ * LLM 返回的工具调用决策。单个工具用 tool_name + parameters；
+ * 需要多个工具时用 tool_calls 列出调用计划，此时 tool_name 为第一个调用的工具
  */
 public class ToolDecision {
     @JsonProperty("needs_tool")
@@ -20,6 +24,10 @@ public class ToolDecision {
     @JsonProperty("reasoning")
     private String reasoning;
 
+    @JsonProperty("tool_calls")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<ToolCall> toolCalls;
+
     // 构造函数
     public ToolDecision() {}
 
@@ -44,8 +52,37 @@ public class ToolDecision {
     public String getReasoning() { return reasoning; }
     public void setReasoning(String reasoning) { this.reasoning = reasoning; }
 
+    public List<ToolCall> getToolCalls() { return toolCalls; }
+    public void setToolCalls(List<ToolCall> toolCalls) { this.toolCalls = toolCalls; }
+
+    /**
+     * 统一的调用计划：有 tool_calls 时返回它，否则把 tool_name + parameters 当作唯一的一次调用
+     */
+    @JsonIgnore
+    public List<ToolCall> getCalls() {
+        if (toolCalls != null && !toolCalls.isEmpty()) {
+            return toolCalls;
+        }
+        if (!needsTool || toolName == null) {
+            return List.of();
+        }
+        return List.of(new ToolCall("1", toolName, parameters, List.of()));
+    }
+
+    /**
+     * 是否是多个工具的调用计划
+     */
+    @JsonIgnore
+    public boolean isMultiCall() {
+        return toolCalls != null && toolCalls.size() > 1;
+    }
+
     @Override
     public String toString() {
+        if (toolCalls != null && !toolCalls.isEmpty()) {
+            return String.format("ToolDecision{needsTool=%s, toolCalls=%s, reasoning='%s'}",
+                    needsTool, toolCalls, reasoning);
+        }
         return String.format("ToolDecision{needsTool=%s, toolName='%s', parameters=%s, reasoning='%s'}",
                 needsTool, toolName, parameters, reasoning);
     }
@@ -0,0 +1,177 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.utils.TtlLruCache;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
+
+/**
+ * 工具结果缓存装饰器，按工具名 + 规范化后的参数缓存结果，有效期和容量取自工具元数据
+ * <p>
+ * 参数按名称排序，值做全角转半角、去首尾空白、合并连续空白，
+ * 因此 {"city": " 上海 "} 和 {"city": "上海"} 命中同一条缓存。只缓存正常返回的结果，抛出异常的调用不缓存。
+ * Tool 的默认方法都要转发给被装饰工具，否则拿到装饰器的调用方会看到默认值而不是工具的声明。
+ */
+public class CachingTool implements Tool {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Tool delegate;
+    private final TtlLruCache<String, String> cache;
+
+    public CachingTool(Tool delegate) {
+        this.delegate = delegate;
+        ToolMetadata metadata = delegate.getMetadata();
+        this.cache = new TtlLruCache<>(metadata.getCacheMaxSize(), metadata.getCacheTtl());
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public String getDescription() {
+        return delegate.getDescription();
+    }
+
+    @Override
+    public List<String> getAliases() {
+        return delegate.getAliases();
+    }
+
+    @Override
+    public String getUsageHint() {
+        return delegate.getUsageHint();
+    }
+
+    @Override
+    public ToolMetadata getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    @Override
+    public ToolResponseMode getResponseMode() {
+        return delegate.getResponseMode();
+    }
+
+    @Override
+    public String formatResponse(Map<String, String> parameters, String rawResult, String language) {
+        return delegate.formatResponse(parameters, rawResult, language);
+    }
+
+    @Override
+    public String resultValue(String rawResult) {
+        return delegate.resultValue(rawResult);
+    }
+
+    @Override
+    public String execute(Map<String, String> parameters) {
+        String key = cacheKey(parameters);
+        String cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        String result = delegate.execute(parameters);
+        if (result != null) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<String> executeAsync(Map<String, String> parameters, Executor executor) {
+        String key = cacheKey(parameters);
+        String cached = cache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        // 返回被装饰工具自己的 future，调用方取消时仍能中断实际执行
+        CompletableFuture<String> future = delegate.executeAsync(parameters, executor);
+        future.thenAccept(result -> {
+            if (result != null) {
+                cache.put(key, result);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public boolean supportsBatch() {
+        return delegate.supportsBatch();
+    }
+
+    /**
+     * 命中缓存的调用直接取结果，只把未命中的部分交给被装饰工具批量执行
+     */
+    @Override
+    public List<String> executeBatch(List<Map<String, String>> parameterList) {
+        List<String> keys = new ArrayList<>(parameterList.size());
+        List<String> results = new ArrayList<>(parameterList.size());
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < parameterList.size(); i++) {
+            String key = cacheKey(parameterList.get(i));
+            String cached = cache.get(key);
+            keys.add(key);
+            results.add(cached);
+            if (cached == null) {
+                missing.add(i);
+            }
+        }
+        if (missing.isEmpty()) {
+            return results;
+        }
+
+        List<Map<String, String>> missingParameters = new ArrayList<>(missing.size());
+        for (int index : missing) {
+            missingParameters.add(parameterList.get(index));
+        }
+        List<String> computed = delegate.executeBatch(missingParameters);
+        for (int i = 0; i < missing.size(); i++) {
+            int index = missing.get(i);
+            String result = computed.get(i);
+            results.set(index, result);
+            if (result != null) {
+                cache.put(keys.get(index), result);
+            }
+        }
+        return results;
+    }
+
+    public Tool getDelegate() {
+        return delegate;
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public Map<String, Object> getStats() {
+        return cache.getStats();
+    }
+
+    private String cacheKey(Map<String, String> parameters) {
+        if (parameters == null) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(parameters).entrySet()) {
+            key.append(entry.getKey()).append('=');
+            if (entry.getValue() != null) {
+                String value = Normalizer.normalize(entry.getValue(), Normalizer.Form.NFKC).trim();
+                key.append(WHITESPACE.matcher(value).replaceAll(" "));
+            }
+            // 参数值不会包含控制字符，用作分隔符避免 a=1,b=2 与 a=1&b=2 之类的拼接冲突
+            key.append('\u0001');
+        }
+        return key.toString();
+    }
+}
@@ -1,5 +1,6 @@
 package com.liling.Agent.service;
 
+import com.liling.Agent.exception.LlmException;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -37,7 +38,11 @@ public class DeepSeekAgentService {
         }
 
         // 如果不是工具调用，直接与 AI 对话
-        return ollamaService.chatWithDeepSeek(userMessage);
+        try {
+            return ollamaService.chatWithDeepSeek(userMessage).getText();
+        } catch (LlmException e) {
+            return "请求失败，请确保 Ollama 服务正在运行。错误信息: " + e.getMessage();
+        }
     }
 
     /**
@@ -0,0 +1,14 @@
+package com.liling.Agent.service;
+
+/**
+ * 文本向量化接口，供语义缓存等按相似度检索的功能使用
+ */
+public interface EmbeddingProvider {
+
+    String getName();
+
+    /**
+     * 计算文本的向量，失败时抛出异常；向量服务本身不可用时为 EmbeddingUnavailableException
+     */
+    float[] embed(String text) throws Exception;
+}
@@ -0,0 +1,249 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.model.ToolDecision;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 规则快速分类器：在调用 LLM 之前按关键词和表达式规则给出带置信度的决策
+ * <p>
+ * 置信度达到阈值的明显请求（纯算式、"现在几点"、"北京天气" 等）直接走工具，
+ * 其余请求交给 LLM 判断；LLM 全部失败时也用这里的规则兜底。
+ */
+@Component
+public class FastPathClassifier {
+
+    private static final Pattern ARITHMETIC = Pattern.compile("\\d+(?:\\.\\d+)?\\s*[+\\-*/×÷]\\s*\\(?\\s*\\d+(?:\\.\\d+)?");
+    private static final Pattern BARE_EXPRESSION = Pattern.compile("[\\d.\\s+\\-*/×÷()]+");
+    // 用 - 连成三段以上的数字，如 2024-10-18、138-1234-5678，是日期或电话号码而不是减法
+    private static final Pattern DATE_OR_PHONE = Pattern.compile("(?<![\\d.])\\d+(?:-\\d+){2,}(?![\\d.])");
+    // 只有一个减号的两个数，如 10-3，也可能是 2024-10 这样的年月或区号，需要 LLM 确认
+    private static final Pattern MINUS_ONLY = Pattern.compile("\\d+(?:\\.\\d+)?-\\d+(?:\\.\\d+)?");
+    private static final Pattern MATH_WRAPPER = Pattern.compile(
+            "请|帮我|帮忙|计算一下|计算|算一下|算算|等于多少|等于几|是多少|结果是|=|\\?|？|。|!|！");
+    private static final Pattern MATH_KEYWORDS = Pattern.compile(".*(计算|算一下|等于多少|加减|乘除).*");
+    private static final Pattern TIME_STRONG = Pattern.compile(
+            ".*(现在几点|几点了|当前时间|现在时间|现在是什么时间|今天几号|今天日期|今天是几号|今天星期几|今天周几|what time is it|current time).*");
+    private static final Pattern TIME_WEAK = Pattern.compile(".*(什么时间|日期|时间|几号|星期几).*");
+    private static final Pattern DATE_HINT = Pattern.compile(".*(几号|日期|星期|周几|date).*");
+    private static final Pattern CLOCK_HINT = Pattern.compile(".*(几点|时间|time).*");
+    private static final Pattern WEATHER_KEYWORDS = Pattern.compile(".*(天气|气温|天气预报|下雨|温度|气候|weather).*");
+    // 并列多个地点时一次 weather 调用只能查其中一个，需要 LLM 生成多工具计划
+    private static final Pattern CONJUNCTION = Pattern.compile("和|与|跟|、|\\band\\b");
+    // 出现这些词时更可能是编程/解释类请求，不应被关键词直接路由到工具
+    private static final Pattern CHAT_CUES = Pattern.compile(
+            ".*(代码|程序|函数|写一|写个|实现|解释|为什么|原理|python|java|code|function|explain).*");
+
+    private static final String[] CITIES = {"北京", "上海", "广州", "深圳", "杭州", "成都"};
+
+    private static final double AMBIGUOUS_CAP = 0.6;
+    private static final double CHAT_CUE_CAP = 0.4;
+    private static final double MINUS_ONLY_CAP = 0.6;
+    private static final double MULTI_CITY_CAP = 0.5;
+    private static final int SHORT_MESSAGE_LENGTH = 15;
+
+    private final boolean enabled;
+    private final double threshold;
+
+    private final AtomicLong evaluated = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+    private final Map<String, LongAdder> shortCircuitsByTool = new ConcurrentHashMap<>();
+    // 置信度分布，按 0.1 分桶，用于调整阈值
+    private final AtomicLongArray confidenceHistogram = new AtomicLongArray(10);
+
+    public FastPathClassifier(AgentProperties properties) {
+        this.enabled = properties.getFastPath().isEnabled();
+        this.threshold = properties.getFastPath().getConfidenceThreshold();
+    }
+
+    /**
+     * 分类结果：决策 + 置信度 + 命中的规则
+     */
+    public static class Classification {
+        private final ToolDecision decision;
+        private final double confidence;
+        private final String rule;
+
+        public Classification(ToolDecision decision, double confidence, String rule) {
+            this.decision = decision;
+            this.confidence = confidence;
+            this.rule = rule;
+        }
+
+        public ToolDecision getDecision() { return decision; }
+        public double getConfidence() { return confidence; }
+        public String getRule() { return rule; }
+    }
+
+    /**
+     * 置信度达到阈值时返回决策，否则返回 null 交给 LLM
+     */
+    public ToolDecision tryShortCircuit(String userMessage) {
+        if (!enabled || userMessage == null) return null;
+
+        Classification classification = classify(userMessage);
+        evaluated.incrementAndGet();
+        int bucket = (int) Math.min(9, Math.floor(classification.getConfidence() * 10));
+        confidenceHistogram.incrementAndGet(bucket);
+
+        if (!classification.getDecision().isNeedsTool() || classification.getConfidence() < threshold) {
+            return null;
+        }
+
+        shortCircuited.incrementAndGet();
+        shortCircuitsByTool.computeIfAbsent(classification.getDecision().getToolName(), k -> new LongAdder())
+                .increment();
+        return classification.getDecision();
+    }
+
+    /**
+     * 纯规则判断，不考虑阈值，用于 LLM 失败后的降级
+     */
+    public ToolDecision ruleBased(String userMessage) {
+        return classify(userMessage).getDecision();
+    }
+
+    /**
+     * 对消息打分，返回置信度最高的候选
+     */
+    public Classification classify(String userMessage) {
+        String message = Normalizer.normalize(userMessage, Normalizer.Form.NFKC).trim().toLowerCase(Locale.ROOT);
+
+        Classification math = scoreMath(userMessage, message);
+        Classification time = scoreTime(message);
+        Classification weather = scoreWeather(userMessage, message);
+
+        Classification best = null;
+        int matched = 0;
+        for (Classification candidate : new Classification[]{math, time, weather}) {
+            if (candidate == null) continue;
+            matched++;
+            if (best == null || candidate.getConfidence() > best.getConfidence()) {
+                best = candidate;
+            }
+        }
+
+        if (best == null) {
+            return new Classification(new ToolDecision(false, null, Map.of(), "规则匹配：不需要工具"), 0.0, "none");
+        }
+
+        double confidence = best.getConfidence();
+        // 同时命中多个意图时说明消息有歧义
+        if (matched > 1) {
+            confidence = Math.min(confidence, AMBIGUOUS_CAP);
+        }
+        if (CHAT_CUES.matcher(message).matches()) {
+            confidence = Math.min(confidence, CHAT_CUE_CAP);
+        }
+        return new Classification(best.getDecision(), confidence, best.getRule());
+    }
+
+    private Classification scoreMath(String original, String message) {
+        String stripped = MATH_WRAPPER.matcher(message).replaceAll("").trim();
+        if (!stripped.isEmpty() && BARE_EXPRESSION.matcher(stripped).matches() && ARITHMETIC.matcher(stripped).find()) {
+            String expression = stripped.replace('×', '*').replace('÷', '/').replaceAll("\\s+", "");
+            if (DATE_OR_PHONE.matcher(expression).matches()) return null;
+
+            double confidence = MINUS_ONLY.matcher(expression).matches() ? MINUS_ONLY_CAP : 0.98;
+            return new Classification(new ToolDecision(true, "calculator",
+                    Map.of("expression", expression), "规则匹配：纯算式"), confidence, "bare-expression");
+        }
+
+        boolean hasExpression = ARITHMETIC.matcher(DATE_OR_PHONE.matcher(message).replaceAll(" ")).find();
+        boolean hasKeyword = MATH_KEYWORDS.matcher(message).matches();
+        if (!hasExpression && !hasKeyword) return null;
+
+        double confidence = hasExpression && hasKeyword ? 0.9 : hasExpression ? 0.75 : 0.5;
+        return new Classification(new ToolDecision(true, "calculator",
+                Map.of("expression", extractMathExpression(original)), "规则匹配：数学计算"), confidence, "math-keyword");
+    }
+
+    private Classification scoreTime(String message) {
+        boolean strong = TIME_STRONG.matcher(message).matches();
+        if (!strong && !TIME_WEAK.matcher(message).matches()) return null;
+
+        String type = DATE_HINT.matcher(message).matches()
+                ? (CLOCK_HINT.matcher(message).matches() ? "full" : "date")
+                : "time";
+
+        double confidence;
+        if (strong) {
+            confidence = message.length() <= SHORT_MESSAGE_LENGTH ? 0.95 : 0.75;
+        } else {
+            confidence = 0.5;
+        }
+        return new Classification(new ToolDecision(true, "time", Map.of("type", type), "规则匹配：时间查询"),
+                confidence, strong ? "time-phrase" : "time-keyword");
+    }
+
+    private Classification scoreWeather(String original, String message) {
+        if (!WEATHER_KEYWORDS.matcher(message).matches()) return null;
+
+        String city = findCity(original);
+        double confidence;
+        if (countCities(original) > 1 || CONJUNCTION.matcher(message).find()) {
+            confidence = MULTI_CITY_CAP;
+        } else if (city != null) {
+            confidence = message.length() <= SHORT_MESSAGE_LENGTH + 5 ? 0.92 : 0.8;
+        } else {
+            // 没有识别出城市时默认城市只是猜测，交给 LLM
+            confidence = 0.7;
+        }
+        return new Classification(new ToolDecision(true, "weather",
+                Map.of("city", city != null ? city : "北京"), "规则匹配：天气查询"), confidence, "weather-keyword");
+    }
+
+    String extractMathExpression(String message) {
+        // 简单的数学表达式提取
+        Matcher matcher = ARITHMETIC.matcher(message);
+        return matcher.find() ? matcher.group().replaceAll("\\s+", "") : "0+0"; // 默认值
+    }
+
+    private String findCity(String message) {
+        for (String city : CITIES) {
+            if (message.contains(city)) return city;
+        }
+        return null;
+    }
+
+    private int countCities(String message) {
+        int count = 0;
+        for (String city : CITIES) {
+            if (message.contains(city)) count++;
+        }
+        return count;
+    }
+
+    public Map<String, Object> getStats() {
+        long total = evaluated.get();
+
+        Map<String, Long> byTool = new LinkedHashMap<>();
+        shortCircuitsByTool.forEach((tool, count) -> byTool.put(tool, count.sum()));
+
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < confidenceHistogram.length(); i++) {
+            histogram.put(String.format(Locale.ROOT, "%.1f-%.1f", i / 10.0, (i + 1) / 10.0), confidenceHistogram.get(i));
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("threshold", threshold);
+        stats.put("evaluated", total);
+        stats.put("shortCircuited", shortCircuited.get());
+        stats.put("shortCircuitRate", total == 0 ? 0.0 : (double) shortCircuited.get() / total);
+        stats.put("byTool", byTool);
+        stats.put("confidenceHistogram", histogram);
+        return stats;
+    }
+}
@@ -1,21 +1,50 @@
 package com.liling.Agent.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.exception.LlmException;
+import com.liling.Agent.exception.LlmUnavailableException;
+import com.liling.Agent.model.ToolCall;
+import com.liling.Agent.model.ToolCallResult;
 import com.liling.Agent.model.ToolDecision;
+import com.liling.Agent.utils.AgentMetrics;
+import com.liling.Agent.utils.LatencyRecorder;
+import com.liling.Agent.utils.PayloadLogger;
 import com.liling.Agent.utils.ResponseValidator;
+import com.liling.Agent.utils.StreamingJsonExtractor;
 import com.liling.Agent.utils.ToolNameNormalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Service
 public class IntelligentToolService {
 
+    private static final Logger log = LoggerFactory.getLogger(IntelligentToolService.class);
+
     @Autowired
     private OllamaService ollamaService;
 
@@ -25,106 +54,356 @@ public class IntelligentToolService {
     @Autowired
     private ResponseValidator responseValidator;
 
+    @Autowired
+    private ToolDecisionCache decisionCache;
+
+    @Autowired
+    private FastPathClassifier fastPathClassifier;
+
+    @Autowired
+    private SemanticCache semanticCache;
+
+    @Autowired
+    private AgentProperties agentProperties;
+
+    @Autowired
+    @Qualifier("classificationExecutor")
+    private ExecutorService classificationExecutor;
+
+    @Autowired
+    private ToolInvoker toolInvoker;
+
+    @Autowired
+    private ToolRetriever toolRetriever;
+
+    @Autowired
+    private PayloadLogger payloadLogger;
+
+    @Autowired
+    private AgentMetrics metrics;
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final String ULTRA_STRICT_PREFIX = "{\"needs_tool\": ";
+    private static final Pattern RESULT_REFERENCE = Pattern.compile("\\{\\{([^{}]+)}}");
+
     private final Map<String, Tool> availableTools = new HashMap<>();
+    private final Map<String, CachingTool> cachingTools = new TreeMap<>();
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    // 各分类策略的端到端延迟（不含缓存和规则快速分类命中）
+    private final Map<AgentProperties.Classification.Strategy, LatencyRecorder> strategyLatency =
+            new EnumMap<>(AgentProperties.Classification.Strategy.class);
+
+    // 决策 JSON 完整后提前断开生成的次数
+    private final AtomicLong earlyStoppedStreams = new AtomicLong();
+
+    // 标准、严格提示词中不随用户输入变化的前缀，注册工具后生成一次，供模型端复用前缀编码结果
+    private final String standardPrefix;
+    private final String strictPrefix;
+    // 按消息检索工具时使用的前缀：只有输出格式和通用规则，工具列表放在后面随消息变化的部分
+    private final String standardRulesPrefix;
+    private final String strictRulesPrefix;
+
     @Autowired
-    public IntelligentToolService(List<Tool> tools) {
-        // 自动注册所有 Tool 接口的实现
+    public IntelligentToolService(List<Tool> tools, AgentProperties properties) {
+        // 自动注册所有 Tool 接口的实现，声明了结果可缓存的工具套上缓存
+        boolean cacheEnabled = properties.getTools().isCacheEnabled();
         for (Tool tool : tools) {
+            if (cacheEnabled && tool.getMetadata().isCacheable()) {
+                CachingTool cachingTool = new CachingTool(tool);
+                cachingTools.put(tool.getName(), cachingTool);
+                tool = cachingTool;
+            }
             availableTools.put(tool.getName(), tool);
         }
-        System.out.println("已注册工具: " + availableTools.keySet());
+        log.info("已注册工具: {}，结果缓存: {}", availableTools.keySet(), cachingTools.keySet());
+
+        standardPrefix = buildStandardPrefix(true);
+        strictPrefix = buildStrictPrefix(true);
+        standardRulesPrefix = buildStandardPrefix(false);
+        strictRulesPrefix = buildStrictPrefix(false);
+
+        for (AgentProperties.Classification.Strategy strategy : AgentProperties.Classification.Strategy.values()) {
+            strategyLatency.put(strategy, new LatencyRecorder());
+        }
     }
-    /**
-     * 使用 LLM 智能判断是否需要工具调用
-     */
-//    public ToolDecision analyzeWithLLM(String userMessage) {
-//        try {
-//            String analysisPrompt = buildAnalysisPrompt(userMessage);
-//            System.out.println("发送给 LLM 的分析提示: " + analysisPrompt);
-//
-//            String llmResponse = ollamaService.chatWithDeepSeek(analysisPrompt);
-//            System.out.println("LLM 原始响应: " + llmResponse);
-//
-//            ToolDecision decision = parseToolDecision(llmResponse);
-//            System.out.println("解析后的决策: " + decision);
-//
-//            return decision;
-//
-//        } catch (Exception e) {
-//            System.err.println("LLM 分析失败: " + e.getMessage());
-//            return fallbackAnalysis(userMessage);
-//        }
-//    }
 
     /**
      * 增强的 LLM 分析 - 包含自动清洗和重试
      */
     public ToolDecision analyzeWithLLM(String userMessage) {
-        int maxAttempts = 3;
+        long begin = System.nanoTime();
+        ToolDecision fastDecision = fastPathClassifier.tryShortCircuit(userMessage);
+        if (fastDecision != null) {
+            log.debug("规则快速分类命中: {}", fastDecision);
+            return decided("fast_path", begin, fastDecision);
+        }
 
-        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-            try {
-                System.out.println("=== 第 " + attempt + " 次分析尝试 ===");
+        ToolDecision cached = decisionCache.get(userMessage);
+        if (cached != null) {
+            log.debug("命中决策缓存: {}", cached);
+            return decided("decision_cache", begin, cached);
+        }
 
-                String prompt = buildPromptForAttempt(userMessage, attempt);
-                String rawResponse = ollamaService.chatWithDeepSeek(prompt);
+        if (!ollamaService.isAvailable()) {
+            log.debug("LLM 熔断中，直接使用规则路由");
+            return decided("rule_fallback", begin, fallbackToRuleBased(userMessage));
+        }
 
-                System.out.println("原始 LLM 响应: " + rawResponse);
+        ToolDecision similar = semanticCache.getDecision(userMessage);
+        if (similar != null) {
+            log.debug("命中语义缓存: {}", similar);
+            decisionCache.put(userMessage, similar);
+            return decided("semantic_cache", begin, similar);
+        }
 
-                // 检查是否需要清洗
-                if (responseValidator.containsCodeExample(rawResponse)) {
-                    System.out.println("检测到代码示例，启动清洗流程...");
-                    rawResponse = responseValidator.cleanLLMResponse(rawResponse);
-                    System.out.println("清洗后响应: " + rawResponse);
-                }
+        AgentProperties.Classification config = agentProperties.getClassification();
+        long start = System.nanoTime();
+
+        // 工具较多时只把与消息最相关的几个放进提示词，null 表示使用完整工具列表
+        List<Tool> candidates = toolRetriever.select(userMessage);
+
+        ToolDecision decision;
+        switch (config.getStrategy()) {
+            case PARALLEL:
+                decision = classifyConcurrently(userMessage, candidates, false, config);
+                break;
+            case HEDGED:
+                decision = classifyConcurrently(userMessage, candidates, true, config);
+                break;
+            case SEQUENTIAL:
+            default:
+                decision = classifySequentially(userMessage, candidates, config);
+                break;
+        }
 
-                ToolDecision decision = parseToolDecision(rawResponse);
+        strategyLatency.get(config.getStrategy()).record(System.nanoTime() - start, decision != null);
 
-                if (decision != null && isValidDecision(decision)) {
-                    System.out.println("成功获得有效决策: " + decision);
-                    return decision;
-                }
+        if (decision != null) {
+            decisionCache.put(userMessage, decision);
+            semanticCache.putDecision(userMessage, decision);
+            return decided("llm", begin, decision);
+        }
+
+        // 所有尝试都失败，使用规则降级
+        log.warn("所有 LLM 尝试失败，使用规则降级");
+        return decided("rule_fallback", begin, fallbackToRuleBased(userMessage));
+    }
 
-                System.out.println("第 " + attempt + " 次尝试结果无效");
+    private ToolDecision decided(String source, long begin, ToolDecision decision) {
+        metrics.recordDecision(source, System.nanoTime() - begin);
+        return decision;
+    }
 
-            } catch (Exception e) {
-                System.err.println("第 " + attempt + " 次尝试异常: " + e.getMessage());
+    /**
+     * 顺序尝试：标准 -> 严格 -> 极简提示词，两次尝试之间按 retryBackoff 等待
+     */
+    private ToolDecision classifySequentially(String userMessage, List<Tool> candidates,
+                                              AgentProperties.Classification config) {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            ToolDecision decision;
+            try {
+                decision = attemptClassification(userMessage, candidates, attempt);
+            } catch (LlmUnavailableException e) {
+                log.debug("LLM 熔断中，停止重试");
+                return null;
+            } catch (LlmException e) {
+                // 调用失败不是输出格式问题，直接换下一次尝试（可能落到其他节点），不必等待
+                log.warn("第 {} 次尝试调用失败: {}", attempt, e.getMessage());
+                continue;
+            }
+            if (decision != null) {
+                return decision;
             }
 
             // 如果不是最后一次尝试，等待一下再重试
-            if (attempt < maxAttempts) {
+            long backoff = config.getRetryBackoff().toMillis();
+            if (attempt < MAX_ATTEMPTS && backoff > 0) {
                 try {
-                    Thread.sleep(500);
+                    Thread.sleep(backoff);
                 } catch (InterruptedException ie) {
                     Thread.currentThread().interrupt();
+                    return null;
                 }
             }
         }
+        return null;
+    }
 
-        // 所有尝试都失败，使用规则降级
-        System.out.println("所有 LLM 尝试失败，使用规则降级");
-        return fallbackToRuleBased(userMessage);
+    /**
+     * 并发尝试：hedged 模式下上一次尝试超过 hedgeDelay 仍未返回、或返回了无效结果时立即发起下一个提示词变体；
+     * parallel 模式下同时发起全部变体。取第一个通过校验的结果，其余请求取消
+     */
+    private ToolDecision classifyConcurrently(String userMessage, List<Tool> candidates, boolean hedged,
+                                              AgentProperties.Classification config) {
+        CompletionService<ToolDecision> completionService = new ExecutorCompletionService<>(classificationExecutor);
+        List<Future<ToolDecision>> futures = new ArrayList<>();
+        long hedgeDelayNanos = config.getHedgeDelay().toNanos();
+        long deadline = System.nanoTime() + config.getTimeout().toNanos();
+
+        try {
+            int launched = hedged ? 1 : MAX_ATTEMPTS;
+            for (int attempt = 1; attempt <= launched; attempt++) {
+                futures.add(submitAttempt(completionService, userMessage, candidates, attempt));
+            }
+
+            int finished = 0;
+            while (finished < futures.size()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    log.warn("LLM 分类超时");
+                    return null;
+                }
+
+                boolean canHedge = hedged && futures.size() < MAX_ATTEMPTS && ollamaService.isAvailable();
+                long wait = canHedge ? Math.min(hedgeDelayNanos, remaining) : remaining;
+                Future<ToolDecision> done = completionService.poll(wait, TimeUnit.NANOSECONDS);
+
+                if (done == null) {
+                    if (canHedge) {
+                        log.debug("第 {} 次尝试超过对冲延迟，发起下一次尝试", futures.size());
+                        futures.add(submitAttempt(completionService, userMessage, candidates, futures.size() + 1));
+                    }
+                    continue;
+                }
+
+                finished++;
+                ToolDecision decision = resultOf(done);
+                if (decision != null) {
+                    return decision;
+                }
+
+                // 当前尝试无效，不必等对冲延迟，直接发起下一个变体
+                if (hedged && futures.size() < MAX_ATTEMPTS && ollamaService.isAvailable()) {
+                    futures.add(submitAttempt(completionService, userMessage, candidates, futures.size() + 1));
+                }
+            }
+            return null;
+
+        } catch (LlmUnavailableException e) {
+            log.debug("LLM 熔断中，停止等待其余尝试");
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            for (Future<ToolDecision> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Future<ToolDecision> submitAttempt(CompletionService<ToolDecision> completionService,
+                                               String userMessage, List<Tool> candidates, int attempt) {
+        return completionService.submit(() -> attemptClassification(userMessage, candidates, attempt));
+    }
+
+    private ToolDecision resultOf(Future<ToolDecision> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof LlmUnavailableException) {
+                throw (LlmUnavailableException) e.getCause();
+            }
+            return null;
+        }
     }
 
     /**
-     * 根据尝试次数构建不同严格度的提示词
+     * 单次分类尝试，返回通过校验的决策，输出无效时返回 null，调用 LLM 失败时抛出 LlmException
      */
-    private String buildPromptForAttempt(String userMessage, int attempt) {
-        switch (attempt) {
-            case 1:
-                return buildStandardPrompt(userMessage);
-            case 2:
-                return buildStrictPrompt(userMessage);
-            case 3:
-                return buildUltraStrictPrompt(userMessage);
-            default:
-                return buildStandardPrompt(userMessage);
+    private ToolDecision attemptClassification(String userMessage, List<Tool> candidates, int attempt) {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            ToolDecision decision = classifyOnce(userMessage, candidates, attempt);
+            outcome = decision != null ? "valid" : "invalid";
+            return decision;
+        } finally {
+            // 对冲或超时取消的尝试单独统计，不算作模型输出无效
+            if (Thread.currentThread().isInterrupted()) {
+                outcome = "cancelled";
+            }
+            metrics.recordClassificationAttempt(attempt, outcome, System.nanoTime() - start);
         }
     }
 
-    private String buildStandardPrompt(String userMessage) {
+    private ToolDecision classifyOnce(String userMessage, List<Tool> candidates, int attempt) {
+        try {
+            log.debug("第 {} 次分析尝试", attempt);
+
+            String[] prompt = buildPromptForAttempt(userMessage, candidates, attempt);
+
+            // 流式读取，决策对象一完整就断开，不再等模型写完后面的解释和代码示例
+            StreamingJsonExtractor extractor = new StreamingJsonExtractor("needs_tool");
+            // 极简提示词让模型续写 JSON，把提示里的开头补回去；JSON 模式下模型会输出完整对象，不需要补
+            String seed = attempt == MAX_ATTEMPTS && !ollamaService.isClassificationJsonMode() ? ULTRA_STRICT_PREFIX : "";
+            extractor.feed(seed);
+            String rawResponse = seed + ollamaService.streamClassification(prompt[0], prompt[1], token -> extractor.feed(token) == null);
+
+            if (extractor.isComplete()) {
+                earlyStoppedStreams.incrementAndGet();
+                ToolDecision decision = parseToolDecision(extractor.getResult());
+                if (decision != null && isValidDecision(decision)) {
+                    log.debug("成功获得有效决策: {}", decision);
+                    return decision;
+                }
+            }
+
+            payloadLogger.debug(log, "原始 LLM 响应", rawResponse);
+
+            // 检查是否需要清洗
+            if (responseValidator.containsCodeExample(rawResponse)) {
+                log.debug("检测到代码示例，启动清洗流程");
+                long cleanStart = System.nanoTime();
+                rawResponse = responseValidator.cleanLLMResponse(rawResponse);
+                metrics.recordCleaning(System.nanoTime() - cleanStart);
+                payloadLogger.debug(log, "清洗后响应", rawResponse);
+            }
+
+            ToolDecision decision = parseToolDecision(rawResponse);
+
+            if (decision != null && isValidDecision(decision)) {
+                log.debug("成功获得有效决策: {}", decision);
+                return decision;
+            }
+
+            log.debug("第 {} 次尝试结果无效", attempt);
+
+        } catch (LlmException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("第 {} 次尝试异常: {}", attempt, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 根据尝试次数构建不同严格度的提示词，返回 {静态前缀, 随用户输入变化的部分}
+     * <p>
+     * candidates 为 null 时工具列表在前缀里；否则前缀只含通用规则，检索到的工具列在用户输入之前，
+     * 前缀仍然对所有消息相同，模型端的前缀复用不受影响
+     */
+    private String[] buildPromptForAttempt(String userMessage, List<Tool> candidates, int attempt) {
+        if (attempt == 3) {
+            return new String[]{"", buildUltraStrictPrompt(userMessage)};
+        }
+
+        boolean strict = attempt == 2;
+        String suffix = strict ? buildStrictSuffix(userMessage) : buildStandardSuffix(userMessage);
+        if (candidates == null) {
+            return new String[]{strict ? strictPrefix : standardPrefix, suffix};
+        }
+
+        StringBuilder toolSection = new StringBuilder();
+        appendToolList(toolSection, candidates);
+        return new String[]{strict ? strictRulesPrefix : standardRulesPrefix, toolSection + suffix};
+    }
+
+    private String buildStandardPrefix(boolean includeTools) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("请严格按照以下 JSON 格式回复，返回结果严格区分大小写，不要添加任何其他内容：\n" +
                 "            {\n" +
@@ -132,38 +411,30 @@ public class IntelligentToolService {
                 "                \"tool_name\": \"工具名称\",\n" +
                 "                \"parameters\": {\"参数键\": \"参数值\"},\n" +
                 "                \"reasoning\": \"判断理由\"\n" +
-                "            }");
-
-        prompt.append("可用工具列表：\n");
-        for (Tool tool : availableTools.values()) {
-            prompt.append(String.format("- %s: %s\n", tool.getName(), tool.getDescription()));
+                "            }\n");
+        if (includeTools) {
+            appendToolList(prompt, availableTools.values());
         }
-
-        prompt.append("\n工具调用规则：\n");
-        prompt.append("- calculator: 当用户提到数字、计算、算术、数学问题时使用\n");
-        prompt.append("- time: 当用户询问时间、日期、现在几点时使用\n");
-        prompt.append("- weather: 当用户询问天气、气温、天气预报时使用\n");
-        prompt.append("- 如果不需要工具，needs_tool 设为 false\n\n");
-
-        prompt.append("用户输入: \"").append(userMessage).append("\"\n\n");
+        appendGeneralRules(prompt);
         return prompt.toString();
     }
 
-    private String buildStrictPrompt(String userMessage) {
+    private String buildStandardSuffix(String userMessage) {
+        return "用户输入: \"" + userMessage + "\"\n\n";
+    }
+
+    private String buildStrictPrefix(boolean includeTools) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("请仔细分析用户的输入，判断是否需要调用工具，以及调用哪个工具。返回结果严格区分大小写\n\n");
-
-        prompt.append("可用工具列表：\n");
-        for (Tool tool : availableTools.values()) {
-            prompt.append(String.format("- %s: %s\n", tool.getName(), tool.getDescription()));
+        if (includeTools) {
+            appendToolList(prompt, availableTools.values());
         }
+        appendGeneralRules(prompt);
+        return prompt.toString();
+    }
 
-        prompt.append("\n工具调用规则：\n");
-        prompt.append("- calculator: 当用户提到数字、计算、算术、数学问题时使用\n");
-        prompt.append("- time: 当用户询问时间、日期、现在几点时使用\n");
-        prompt.append("- weather: 当用户询问天气、气温、天气预报时使用\n");
-        prompt.append("- 如果不需要工具，needs_tool 设为 false\n\n");
-
+    private String buildStrictSuffix(String userMessage) {
+        StringBuilder prompt = new StringBuilder();
         prompt.append("用户输入: \"").append(userMessage).append("\"\n\n");
         prompt.append( """
             [指令] 你是一个 JSON 输出机器，只输出 JSON，不输出任何其他内容。
@@ -183,83 +454,39 @@ public class IntelligentToolService {
         return prompt.toString();
     }
 
-    private String buildUltraStrictPrompt(String userMessage) {
-        return """
-            {"needs_tool": 
-            """.trim(); // 极简提示，让模型直接续写 JSON
-    }
     /**
-     * 构建分析提示词
+     * 工具列表和各工具的调用规则，规则取自 getUsageHint()
      */
-    private String buildAnalysisPrompt(String userMessage) {
-        StringBuilder prompt = new StringBuilder();
-        prompt.append("请仔细分析用户的输入，判断是否需要调用工具，以及调用哪个工具。返回结果严格区分大小写\n\n");
-
+    private void appendToolList(StringBuilder prompt, Collection<Tool> tools) {
         prompt.append("可用工具列表：\n");
-        for (Tool tool : availableTools.values()) {
+        for (Tool tool : tools) {
             prompt.append(String.format("- %s: %s\n", tool.getName(), tool.getDescription()));
         }
 
         prompt.append("\n工具调用规则：\n");
-        prompt.append("- calculator: 当用户提到数字、计算、算术、数学问题时使用\n");
-        prompt.append("- time: 当用户询问时间、日期、现在几点时使用\n");
-        prompt.append("- weather: 当用户询问天气、气温、天气预报时使用\n");
-        prompt.append("- 如果不需要工具，needs_tool 设为 false\n\n");
-
-        prompt.append("用户输入: \"").append(userMessage).append("\"\n\n");
-
-        prompt.append("""
-            请严格按照以下 JSON 格式回复，不要添加任何其他内容：
-            {
-                "needs_tool": true/false,
-                "tool_name": "工具名称",
-                "parameters": {"参数键": "参数值"},
-                "reasoning": "判断理由"
+        for (Tool tool : tools) {
+            if (tool.getUsageHint() != null) {
+                prompt.append(String.format("- %s: %s\n", tool.getName(), tool.getUsageHint()));
             }
-            
-            参数说明：
-            - calculator: 需要 "expression" 参数，值为数学表达式
-            - weather: 需要 "city" 参数，值为城市名称
-            - time: 可选 "type" 参数，值为 "date"/"time"/"full"
-            """);
-
-        return prompt.toString();
+        }
+        prompt.append("\n");
     }
 
     /**
-     * 解析 LLM 的 JSON 响应（增强版）
+     * 与具体工具无关的规则
      */
-//    private ToolDecision parseToolDecision(String llmResponse) {
-//        try {
-//            String jsonContent = extractJson(llmResponse);
-//            System.out.println("提取的 JSON: " + jsonContent);
-//
-//            ToolDecision decision = objectMapper.readValue(jsonContent, ToolDecision.class);
-//
-//            // 新增：规范化工具名称
-//            if (decision.isNeedsTool() && decision.getToolName() != null) {
-//                String normalizedToolName = toolNameNormalizer.normalize(decision.getToolName());
-//
-//                if (normalizedToolName != null) {
-//                    decision.setToolName(normalizedToolName); // 更新为标准名称
-//                    System.out.println("工具名称规范化: " + decision.getToolName() + " -> " + normalizedToolName);
-//                }
-//            }
-//
-//            // 验证工具是否存在
-//            if (decision.isNeedsTool() && !availableTools.containsKey(decision.getToolName())) {
-//                System.out.println("工具不存在: " + decision.getToolName());
-//                decision.setNeedsTool(false);
-//                decision.setReasoning("请求的工具 '" + decision.getToolName() + "' 不存在，降级为直接对话");
-//            }
-//
-//            return decision;
-//
-//        } catch (Exception e) {
-//            System.err.println("JSON 解析失败: " + e.getMessage());
-//            return fallbackAnalysis(llmResponse);
-//        }
-//    }
+    private void appendGeneralRules(StringBuilder prompt) {
+        prompt.append("通用规则：\n");
+        prompt.append("- 如果不需要工具，needs_tool 设为 false\n");
+        prompt.append("- 如果需要调用多个工具（例如同时问几个城市的天气，或还要计算），增加 \"tool_calls\": " +
+                "[{\"id\": \"1\", \"tool_name\": \"工具名称\", \"parameters\": {\"参数键\": \"参数值\"}, " +
+                "\"depends_on\": []}, ...]，每个调用一项；依赖前面调用结果的在 depends_on 里写上它的 id，" +
+                "参数中用 {{id}} 引用它的结果\n\n");
+    }
+
+    private String buildUltraStrictPrompt(String userMessage) {
+        return ULTRA_STRICT_PREFIX.trim(); // 极简提示，让模型直接续写 JSON
+    }
 
     /**
      * 解析工具决策
@@ -268,6 +495,12 @@ public class IntelligentToolService {
         try {
             ToolDecision decision = objectMapper.readValue(response, ToolDecision.class);
 
+            if (decision.getToolCalls() != null && !decision.getToolCalls().isEmpty()) {
+                normalizePlan(decision);
+                metrics.recordParse(true);
+                return decision;
+            }
+
             // 规范化工具名称
             if (decision.isNeedsTool() && decision.getToolName() != null) {
                 String normalized = toolNameNormalizer.normalize(decision.getToolName());
@@ -276,20 +509,100 @@ public class IntelligentToolService {
                 }
             }
 
+            metrics.recordParse(true);
             return decision;
 
         } catch (Exception e) {
-            System.err.println("解析 ToolDecision 失败: " + e.getMessage());
+            log.debug("解析 ToolDecision 失败: {}", e.getMessage());
+            metrics.recordParse(false);
             return null;
         }
     }
 
+    /**
+     * 规范化调用计划：截断到上限、补齐 id、规范化工具名称；只有一个无依赖的调用时退化成单工具决策
+     */
+    private void normalizePlan(ToolDecision decision) {
+        List<ToolCall> calls = new ArrayList<>(decision.getToolCalls());
+        int maxCalls = agentProperties.getTools().getMaxCallsPerPlan();
+        if (calls.size() > maxCalls) {
+            log.warn("调用计划超过 {} 个调用，忽略多出的部分", maxCalls);
+            calls = new ArrayList<>(calls.subList(0, maxCalls));
+        }
+
+        for (int i = 0; i < calls.size(); i++) {
+            ToolCall call = calls.get(i);
+            if (call.getId() == null || call.getId().isBlank()) {
+                call.setId(String.valueOf(i + 1));
+            }
+            if (call.getToolName() != null) {
+                String normalized = toolNameNormalizer.normalize(call.getToolName());
+                if (normalized != null) {
+                    call.setToolName(normalized);
+                }
+            }
+            if (call.getParameters() == null) {
+                call.setParameters(new HashMap<>());
+            }
+            if (call.getDependsOn() == null) {
+                call.setDependsOn(new ArrayList<>());
+            }
+        }
+
+        ToolCall first = calls.get(0);
+        decision.setNeedsTool(true);
+        decision.setToolName(first.getToolName());
+        decision.setParameters(first.getParameters());
+        decision.setToolCalls(calls.size() == 1 && first.getDependsOn().isEmpty() ? null : calls);
+    }
+
+    /**
+     * 验证调用计划：工具都存在、id 不重复、依赖都指向计划中的其他调用且没有循环
+     */
+    private boolean isValidPlan(List<ToolCall> calls) {
+        Set<String> ids = new HashSet<>();
+        for (ToolCall call : calls) {
+            if (call.getToolName() == null || !availableTools.containsKey(call.getToolName())) {
+                return false;
+            }
+            if (!ids.add(call.getId())) {
+                return false;
+            }
+        }
+
+        Set<String> done = new HashSet<>();
+        List<ToolCall> pending = new ArrayList<>(calls);
+        while (!pending.isEmpty()) {
+            List<ToolCall> ready = new ArrayList<>();
+            for (ToolCall call : pending) {
+                for (String dependency : call.getDependsOn()) {
+                    if (!ids.contains(dependency) || dependency.equals(call.getId())) {
+                        return false;
+                    }
+                }
+                if (done.containsAll(call.getDependsOn())) {
+                    ready.add(call);
+                }
+            }
+            if (ready.isEmpty()) {
+                return false; // 循环依赖
+            }
+            pending.removeAll(ready);
+            ready.forEach(call -> done.add(call.getId()));
+        }
+        return true;
+    }
+
     /**
      * 验证决策是否有效
      */
     private boolean isValidDecision(ToolDecision decision) {
         if (decision == null) return false;
 
+        if (decision.getToolCalls() != null && !decision.getToolCalls().isEmpty()) {
+            return isValidPlan(decision.getToolCalls());
+        }
+
         if (decision.isNeedsTool()) {
             return decision.getToolName() != null &&
                     !decision.getToolName().trim().isEmpty() &&
@@ -303,133 +616,223 @@ public class IntelligentToolService {
      * 规则降级处理
      */
     private ToolDecision fallbackToRuleBased(String userMessage) {
-        // 这里可以调用你之前实现的规则引擎
-        System.out.println("使用规则降级处理: " + userMessage);
-
-        // 简化的规则匹配
-        String lowerMessage = userMessage.toLowerCase();
-
-        if (lowerMessage.matches(".*(计算|算一下|等于多少|\\d+[+\\-*/]\\d+).*")) {
-            return new ToolDecision(true, "calculator",
-                    Map.of("expression", extractMathExpression(userMessage)),
-                    "规则匹配：数学计算");
-        }
-
-        if (lowerMessage.matches(".*(现在几点|当前时间|今天几号|什么时间).*")) {
-            return new ToolDecision(true, "time", Map.of(), "规则匹配：时间查询");
-        }
-
-        if (lowerMessage.matches(".*(天气|气温|天气预报).*")) {
-            return new ToolDecision(true, "weather",
-                    Map.of("city", extractCity(userMessage)), "规则匹配：天气查询");
-        }
-
-        return new ToolDecision(false, null, Map.of(), "规则匹配：不需要工具");
+        payloadLogger.debug(log, "使用规则降级处理", userMessage);
+        return fastPathClassifier.ruleBased(userMessage);
     }
 
-    private String extractJson(String text) {
-        // 从 LLM 响应中提取 JSON 部分
-        Pattern pattern = Pattern.compile("\\{.*\\}", Pattern.DOTALL);
-        Matcher matcher = pattern.matcher(text);
-        if (matcher.find()) {
-            return matcher.group();
+    /**
+     * 获取可用工具列表
+     */
+    public Map<String, String> getAvailableTools() {
+        Map<String, String> tools = new HashMap<>();
+        for (Tool tool : availableTools.values()) {
+            tools.put(tool.getName(), tool.getDescription());
         }
-        return text;
+        return tools;
     }
 
     /**
-     * 尝试修复常见的 JSON 格式问题
+     * 分类统计：当前策略和各策略的延迟
      */
-    private String attemptJsonRepair(String text) {
-        // 移除可能的前缀和后缀
-        String cleaned = text.trim();
-
-        // 找到第一个 { 和最后一个 }
-        int start = cleaned.indexOf('{');
-        int end = cleaned.lastIndexOf('}');
+    public Map<String, Object> getClassificationStats() {
+        Map<String, Object> latency = new LinkedHashMap<>();
+        strategyLatency.forEach((strategy, recorder) -> {
+            if (recorder.getCount() > 0) {
+                latency.put(strategy.name().toLowerCase(), recorder.getStats());
+            }
+        });
 
-        if (start >= 0 && end > start) {
-            return cleaned.substring(start, end + 1);
-        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("strategy", agentProperties.getClassification().getStrategy().name().toLowerCase());
+        stats.put("latency", latency);
+        stats.put("earlyStoppedStreams", earlyStoppedStreams.get());
+        return stats;
+    }
 
-        throw new RuntimeException("无法从响应中提取有效的 JSON: " + text);
+    /**
+     * 按名称查找已注册的工具，找不到时返回 null
+     */
+    public Tool getTool(String toolName) {
+        return toolName == null ? null : availableTools.get(toolName);
     }
 
     /**
-     * 降级分析：当 LLM 分析失败时使用规则匹配
+     * 执行决策中的调用计划：依赖都已完成的调用作为一批，通过 ToolInvoker 并发执行，
+     * 每个调用受工具的超时和并发上限约束；依赖失败的调用直接跳过。结果按计划中的顺序返回
      */
-    private ToolDecision fallbackAnalysis(String userMessage) {
-        String lowerMessage = userMessage.toLowerCase();
+    public List<ToolCallResult> executePlan(ToolDecision decision) {
+        List<ToolCall> calls = decision.getCalls();
+        Map<String, ToolCallResult> results = new HashMap<>();
+        List<ToolCall> pending = new ArrayList<>(calls);
+
+        while (!pending.isEmpty()) {
+            List<ToolCall> wave = new ArrayList<>();
+            for (ToolCall call : pending) {
+                if (call.getDependsOn() == null || results.keySet().containsAll(call.getDependsOn())) {
+                    wave.add(call);
+                }
+            }
+            if (wave.isEmpty()) {
+                for (ToolCall call : pending) {
+                    results.put(call.getId(), failed(call, "错误：调用依赖无法满足", 0));
+                }
+                break;
+            }
+            pending.removeAll(wave);
+            runWave(wave, results);
+        }
 
-        // 规则匹配
-        if (containsMathKeywords(lowerMessage)) {
-            return new ToolDecision(true, "calculator",
-                    Map.of("expression", extractMathExpression(userMessage)),
-                    "规则匹配：包含数学关键词");
+        List<ToolCallResult> ordered = new ArrayList<>();
+        for (ToolCall call : calls) {
+            ordered.add(results.get(call.getId()));
         }
+        return ordered;
+    }
 
-        if (containsTimeKeywords(lowerMessage)) {
-            return new ToolDecision(true, "time", Map.of(), "规则匹配：询问时间");
+    private void runWave(List<ToolCall> wave, Map<String, ToolCallResult> results) {
+        long start = System.nanoTime();
+
+        // 依赖都成功的调用按工具分组，同一工具支持批量执行时一组只调用一次 executeBatch
+        Map<String, List<ToolCall>> groups = new LinkedHashMap<>();
+        Map<ToolCall, Map<String, String>> parameters = new HashMap<>();
+        for (ToolCall call : wave) {
+            String failedDependency = failedDependency(call, results);
+            if (failedDependency != null) {
+                results.put(call.getId(), failed(call, "错误：依赖的调用 " + failedDependency + " 失败，已跳过", 0));
+                continue;
+            }
+            parameters.put(call, resolveReferences(call.getParameters(), results));
+            groups.computeIfAbsent(call.getToolName(), name -> new ArrayList<>()).add(call);
         }
 
-        if (containsWeatherKeywords(lowerMessage)) {
-            String city = extractCity(userMessage);
-            return new ToolDecision(true, "weather",
-                    Map.of("city", city), "规则匹配：询问天气");
+        Map<ToolCall, CompletableFuture<String>> futures = new LinkedHashMap<>();
+        List<CompletableFuture<?>> submitted = new ArrayList<>();
+        for (Map.Entry<String, List<ToolCall>> group : groups.entrySet()) {
+            Tool tool = availableTools.get(group.getKey());
+            List<ToolCall> calls = group.getValue();
+            if (tool == null) {
+                calls.forEach(call -> results.put(call.getId(), failed(call, "错误：工具未找到 - " + group.getKey(), 0)));
+                continue;
+            }
+
+            if (tool.supportsBatch() && calls.size() > 1) {
+                List<Map<String, String>> parameterList = new ArrayList<>();
+                calls.forEach(call -> parameterList.add(parameters.get(call)));
+                CompletableFuture<List<String>> batch = toolInvoker.invokeBatch(tool, parameterList);
+                submitted.add(batch);
+                for (int i = 0; i < calls.size(); i++) {
+                    int index = i;
+                    futures.put(calls.get(i), batch.thenApply(batchResults -> batchResults.get(index)));
+                }
+            } else {
+                for (ToolCall call : calls) {
+                    CompletableFuture<String> future = toolInvoker.invoke(tool, parameters.get(call));
+                    submitted.add(future);
+                    futures.put(call, future);
+                }
+            }
         }
 
-        return new ToolDecision(false, null, Map.of(), "规则匹配：不需要工具");
+        // 超时由 ToolInvoker 按工具元数据控制，这里只等待结果
+        for (Map.Entry<ToolCall, CompletableFuture<String>> entry : futures.entrySet()) {
+            ToolCall call = entry.getKey();
+            try {
+                String result = entry.getValue().get();
+                results.put(call.getId(), new ToolCallResult(call.getId(), call.getToolName(), result, true,
+                        elapsedMillis(start)));
+            } catch (ExecutionException e) {
+                results.put(call.getId(), failed(call, toolInvoker.describeFailure(call.getToolName(), e.getCause()),
+                        elapsedMillis(start)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                submitted.forEach(future -> future.cancel(true));
+                results.put(call.getId(), failed(call, "错误：工具执行被中断", elapsedMillis(start)));
+            }
+        }
     }
 
-    // 关键词匹配方法
-    private boolean containsMathKeywords(String message) {
-        return message.matches(".*(计算|算一下|等于多少|加减|乘除|\\d+[+\\-*/]\\d+).*");
+    private String failedDependency(ToolCall call, Map<String, ToolCallResult> results) {
+        if (call.getDependsOn() == null) return null;
+        for (String dependency : call.getDependsOn()) {
+            ToolCallResult result = results.get(dependency);
+            if (result == null || !result.isSuccess()) {
+                return dependency;
+            }
+        }
+        return null;
     }
 
-    private boolean containsTimeKeywords(String message) {
-        return message.matches(".*(现在几点|当前时间|今天几号|什么时间|日期).*");
+    /**
+     * 把参数中的 {{id}} 替换成对应调用的结果值
+     */
+    private Map<String, String> resolveReferences(Map<String, String> parameters, Map<String, ToolCallResult> results) {
+        Map<String, String> resolved = new HashMap<>();
+        if (parameters == null) return resolved;
+
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
+            String value = entry.getValue();
+            if (value == null || !value.contains("{{")) {
+                resolved.put(entry.getKey(), value);
+                continue;
+            }
+
+            Matcher matcher = RESULT_REFERENCE.matcher(value);
+            StringBuilder result = new StringBuilder();
+            while (matcher.find()) {
+                ToolCallResult referenced = results.get(matcher.group(1).trim());
+                String replacement = matcher.group();
+                if (referenced != null) {
+                    Tool tool = availableTools.get(referenced.getToolName());
+                    replacement = tool == null ? referenced.getResult() : tool.resultValue(referenced.getResult());
+                }
+                matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+            }
+            matcher.appendTail(result);
+            resolved.put(entry.getKey(), result.toString());
+        }
+        return resolved;
     }
 
-    private boolean containsWeatherKeywords(String message) {
-        return message.matches(".*(天气|气温|天气预报|下雨|温度|气候).*");
+    private ToolCallResult failed(ToolCall call, String message, long durationMs) {
+        return new ToolCallResult(call.getId(), call.getToolName(), message, false, durationMs);
     }
 
-    private String extractMathExpression(String message) {
-        // 简单的数学表达式提取
-        Pattern pattern = Pattern.compile("(\\d+[+\\-*/]\\d+)");
-        Matcher matcher = pattern.matcher(message);
-        return matcher.find() ? matcher.group(1) : "0+0"; // 默认值
+    private long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
     }
 
-    private String extractCity(String message) {
-        // 简单的城市名称提取
-        String[] cities = {"北京", "上海", "广州", "深圳", "杭州", "成都"};
-        for (String city : cities) {
-            if (message.contains(city)) return city;
+    /**
+     * 同步执行单个工具调用，同样受工具的超时和并发限制约束
+     */
+    public String executeTool(String toolName, Map<String, String> parameters) {
+        Tool tool = availableTools.get(toolName);
+        if (tool != null) {
+            return toolInvoker.invokeAndWait(tool, parameters == null ? Map.of() : parameters);
         }
-        return "北京"; // 默认城市
+        return "错误：工具未找到 - " + toolName;
     }
 
     /**
-     * 获取可用工具列表
+     * 各工具的并发、超时和重试统计
      */
-    public Map<String, String> getAvailableTools() {
-        Map<String, String> tools = new HashMap<>();
-        for (Tool tool : availableTools.values()) {
-            tools.put(tool.getName(), tool.getDescription());
-        }
-        return tools;
+    public Map<String, Object> getToolStats() {
+        return toolInvoker.getStats();
     }
 
     /**
-     * 执行工具调用
+     * 工具名规范化各个匹配步骤的命中情况
      */
-    public String executeTool(String toolName, Map<String, String> parameters) {
-        Tool tool = availableTools.get(toolName);
-        if (tool != null) {
-            return tool.execute(parameters);
-        }
-        return "错误：工具未找到 - " + toolName;
+    public Map<String, Object> getToolNameStats() {
+        return toolNameNormalizer.getStats();
+    }
+
+    /**
+     * 各工具结果缓存的命中率
+     */
+    public Map<String, Object> getToolCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        cachingTools.forEach((name, tool) -> stats.put(name, tool.getStats()));
+        return stats;
     }
 
     private String escapeJson(String text) {
@@ -0,0 +1,66 @@
+package com.liling.Agent.service;
+
+import java.util.Map;
+
+/**
+ * LLM 后端节点接口：一个可以处理生成请求的模型服务地址
+ */
+public interface LlmBackend {
+
+    String getName();
+
+    String getBaseUrl();
+
+    /**
+     * 是否部署了该模型
+     */
+    boolean supportsModel(String model);
+
+    /**
+     * 当前是否可以接收请求（未被剔除）
+     */
+    boolean isAvailable();
+
+    /**
+     * 正在处理中的请求数
+     */
+    int getOutstandingRequests();
+
+    /**
+     * 该模型请求的指数加权移动平均延迟（毫秒），流式请求按首个 token 的耗时计
+     */
+    double getLatencyEwmaMillis(String model);
+
+    /**
+     * 该模型参与 EWMA 计算的成功请求数
+     */
+    long getLatencySamples(String model);
+
+    int getConsecutiveFailures();
+
+    void onRequestStart();
+
+    void onRequestEnd(String model, long elapsedNanos, boolean success);
+
+    /**
+     * 请求被调用方取消（例如对冲请求中落后的那个），既不算成功也不算失败
+     */
+    void onRequestCancelled();
+
+    /**
+     * 把节点剔除一段时间
+     */
+    void eject(long durationNanos, String reason);
+
+    /**
+     * 剔除期是否已过、可以重新探测
+     */
+    boolean isReadyForProbe();
+
+    /**
+     * 主动探测节点健康状态，成功时恢复节点
+     */
+    boolean checkHealth();
+
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,241 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.OllamaProperties;
+import com.liling.Agent.exception.NoBackendException;
+import com.liling.Agent.service.impl.OllamaBackend;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * LLM 节点池：按模型路由，在可用节点间做负载均衡，并根据请求结果被动剔除故障或过慢的节点
+ * <p>
+ * 被剔除的节点到期后由后台任务调用 /api/version 探测，通过后重新加入。
+ * 某个模型的节点全部被剔除时仍然尽力选一个节点发送请求，而不是直接拒绝。
+ */
+@Component
+public class LlmBackendPool {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmBackendPool.class);
+
+    private final List<LlmBackend> backends = new ArrayList<>();
+    private final OllamaProperties.Balancing config;
+    private final ScheduledExecutorService healthChecker;
+
+    @Autowired
+    public LlmBackendPool(OllamaProperties properties, RestTemplate ollamaRestTemplate) {
+        this(properties, createBackends(properties, ollamaRestTemplate));
+    }
+
+    /**
+     * 使用给定的节点，不按配置创建
+     */
+    LlmBackendPool(OllamaProperties properties, List<? extends LlmBackend> nodes) {
+        this.config = properties.getBalancing();
+        backends.addAll(nodes);
+        log.info("已注册 LLM 节点: {}", backends.stream().map(LlmBackend::getBaseUrl).toList());
+
+        long interval = config.getHealthCheckInterval().toMillis();
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("llm-health-"));
+        healthChecker.scheduleWithFixedDelay(this::probeEjectedBackends, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private static List<LlmBackend> createBackends(OllamaProperties properties, RestTemplate restTemplate) {
+        double ewmaAlpha = properties.getBalancing().getEwmaAlpha();
+        if (properties.getBackends().isEmpty()) {
+            return List.of(new OllamaBackend("default", properties.getBaseUrl(), List.of(), ewmaAlpha, restTemplate));
+        }
+
+        List<LlmBackend> created = new ArrayList<>();
+        int index = 0;
+        for (OllamaProperties.Backend backend : properties.getBackends()) {
+            String name = backend.getName() != null ? backend.getName() : "backend-" + index;
+            created.add(new OllamaBackend(name, backend.getBaseUrl(), backend.getModels(), ewmaAlpha, restTemplate));
+            index++;
+        }
+        return created;
+    }
+
+    /**
+     * 在某个节点上执行的调用
+     */
+    @FunctionalInterface
+    public interface BackendCall<T> {
+        T call(LlmBackend backend) throws IOException;
+    }
+
+    /**
+     * 为模型选一个节点执行调用，并记录耗时和成败
+     */
+    public <T> T execute(String model, BackendCall<T> call) throws IOException {
+        return execute(model, null, call);
+    }
+
+    /**
+     * 同 {@link #execute(String, BackendCall)}。firstResponseAt 返回首个 token 的时间戳，流式调用按它记录延迟，
+     * 总耗时取决于生成长度，不反映节点快慢；为 null 或返回 0 时按整个调用的耗时
+     */
+    public <T> T execute(String model, LongSupplier firstResponseAt, BackendCall<T> call) throws IOException {
+        LlmBackend backend = select(model);
+
+        long start = System.nanoTime();
+        boolean success = false;
+        backend.onRequestStart();
+        try {
+            T result = call.call(backend);
+            success = true;
+            return result;
+        } finally {
+            if (!success && Thread.currentThread().isInterrupted()) {
+                // 调用方取消的请求不代表节点有问题
+                backend.onRequestCancelled();
+            } else {
+                long end = firstResponseAt == null ? 0 : firstResponseAt.getAsLong();
+                backend.onRequestEnd(model, (end == 0 ? System.nanoTime() : end) - start, success);
+                evaluate(backend, model);
+            }
+        }
+    }
+
+    /**
+     * 按负载均衡策略选择节点
+     */
+    public LlmBackend select(String model) {
+        List<LlmBackend> candidates = new ArrayList<>();
+        for (LlmBackend backend : backends) {
+            if (backend.supportsModel(model)) {
+                candidates.add(backend);
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new NoBackendException("没有节点部署模型: " + model);
+        }
+
+        List<LlmBackend> available = candidates.stream().filter(LlmBackend::isAvailable).toList();
+        List<LlmBackend> pool = available.isEmpty() ? candidates : available;
+
+        // 还没有样本的节点（新加入或刚恢复）按其他节点的中位数计，既有机会积累样本，又不会因为分数过低被压满
+        double coldLatency = config.getPolicy() == OllamaProperties.Balancing.Policy.EWMA
+                ? medianLatency(pool, model, 1) : 0;
+        if (coldLatency == 0) {
+            coldLatency = 1.0;
+        }
+
+        // 从随机位置开始遍历，分数相同时不会总是压到第一个节点上
+        int offset = ThreadLocalRandom.current().nextInt(pool.size());
+        LlmBackend best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < pool.size(); i++) {
+            LlmBackend backend = pool.get((offset + i) % pool.size());
+            double score = score(backend, model, coldLatency);
+            if (score < bestScore) {
+                best = backend;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private double score(LlmBackend backend, String model, double coldLatency) {
+        if (config.getPolicy() == OllamaProperties.Balancing.Policy.EWMA) {
+            double latency = backend.getLatencySamples(model) == 0 ? coldLatency : backend.getLatencyEwmaMillis(model);
+            return latency * (backend.getOutstandingRequests() + 1);
+        }
+        return backend.getOutstandingRequests();
+    }
+
+    /**
+     * 至少有 minSamples 个该模型样本的节点的 EWMA 延迟中位数，没有这样的节点时返回 0
+     */
+    private double medianLatency(List<LlmBackend> nodes, String model, long minSamples) {
+        List<Double> latencies = new ArrayList<>();
+        for (LlmBackend node : nodes) {
+            if (node.getLatencySamples(model) >= minSamples) {
+                latencies.add(node.getLatencyEwmaMillis(model));
+            }
+        }
+        if (latencies.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(latencies);
+        return latencies.get(latencies.size() / 2);
+    }
+
+    /**
+     * 被动健康检查：连续失败或明显慢于同模型的其他节点时剔除，延迟只和其他节点上同一模型的延迟比较
+     */
+    private void evaluate(LlmBackend backend, String model) {
+        if (!backend.isAvailable()) return;
+
+        List<LlmBackend> peers = new ArrayList<>();
+        for (LlmBackend other : backends) {
+            if (other != backend && other.isAvailable() && other.supportsModel(model)) {
+                peers.add(other);
+            }
+        }
+        // 至少保留一个可用节点
+        if (peers.isEmpty()) return;
+
+        long ejectionNanos = config.getEjectionDuration().toNanos();
+        if (backend.getConsecutiveFailures() >= config.getFailureThreshold()) {
+            backend.eject(ejectionNanos, "连续失败 " + backend.getConsecutiveFailures() + " 次");
+            return;
+        }
+
+        if (backend.getLatencySamples(model) < config.getMinSamples()) return;
+
+        double median = medianLatency(peers, model, config.getMinSamples());
+        if (median == 0) return;
+
+        double latency = backend.getLatencyEwmaMillis(model);
+        if (latency > median * config.getSlowCallFactor()) {
+            backend.eject(ejectionNanos, String.format("%s 的 EWMA 延迟 %.0fms 超过同组中位数 %.0fms 的 %.1f 倍",
+                    model, latency, median, config.getSlowCallFactor()));
+        }
+    }
+
+    private void probeEjectedBackends() {
+        for (LlmBackend backend : backends) {
+            if (backend.isReadyForProbe() && !backend.checkHealth()) {
+                backend.eject(config.getEjectionDuration().toNanos(), "健康探测失败");
+            }
+        }
+    }
+
+    public List<LlmBackend> getBackends() {
+        return Collections.unmodifiableList(backends);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> nodes = new LinkedHashMap<>();
+        for (LlmBackend backend : backends) {
+            nodes.put(backend.getName(), backend.getStats());
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("policy", config.getPolicy().name().toLowerCase());
+        stats.put("backends", nodes);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        healthChecker.shutdownNow();
+    }
+}
@@ -1,57 +1,559 @@
 package com.liling.Agent.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.liling.Agent.config.OllamaClientConfig;
+import com.liling.Agent.config.OllamaProperties;
+import com.liling.Agent.exception.LlmException;
+import com.liling.Agent.exception.LlmUnavailableException;
+import com.liling.Agent.exception.NoBackendException;
+import com.liling.Agent.model.LlmResult;
+import com.liling.Agent.model.OllamaGenerateRequest;
+import com.liling.Agent.model.OllamaGenerateResponse;
+import com.liling.Agent.model.OllamaOptions;
+import com.liling.Agent.model.RequestUsage;
+import com.liling.Agent.utils.AgentMetrics;
+import com.liling.Agent.utils.CircuitBreaker;
+import com.liling.Agent.utils.SingleFlight;
+import com.liling.Agent.utils.UsageContext;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import org.springframework.http.*;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
 @Service
 public class OllamaService {
 
+    private static final Logger log = LoggerFactory.getLogger(OllamaService.class);
+
     private final RestTemplate restTemplate;
+    private final CloseableHttpClient httpClient;
+    // 流式请求按 read-timeout 判断生成是否卡住，而不是非流式请求用的 response-timeout
+    private final RequestConfig streamingRequestConfig;
     private final ObjectMapper objectMapper;
+    private final OllamaProperties properties;
+    private final LlmBackendPool backendPool;
+
+    // 前缀预热失败后多久再试
+    private static final long PREFIX_RETRY_NANOS = 30_000_000_000L;
 
-    // Ollama 默认运行在 11434 端口
-    private static final String OLLAMA_BASE_URL = "http://localhost:11434";
+    // 分类提示词静态前缀的预热状态，按 模型 + 前缀 区分
+    private final Map<String, PromptPrefix> promptPrefixes = new ConcurrentHashMap<>();
 
-    public OllamaService() {
-        this.restTemplate = new RestTemplate();
+    // 相同请求的合并，key 为序列化后的完整请求（模型、参数、提示词）
+    private final SingleFlight<String, OllamaGenerateResponse> generateFlights = new SingleFlight<>();
+    private final SingleFlight<String, StreamResult> streamFlights = new SingleFlight<>();
+
+    // 整个 LLM 客户端的熔断器，未启用时为 null
+    private final CircuitBreaker circuitBreaker;
+    private final AgentMetrics metrics;
+    private final ThroughputTracker throughputTracker;
+
+    public OllamaService(RestTemplate ollamaRestTemplate, CloseableHttpClient ollamaHttpClient,
+                         OllamaProperties properties, LlmBackendPool backendPool, AgentMetrics metrics,
+                         ThroughputTracker throughputTracker) {
+        this.restTemplate = ollamaRestTemplate;
+        this.httpClient = ollamaHttpClient;
+        this.streamingRequestConfig = OllamaClientConfig.streamingRequestConfig(properties.getHttp());
+        this.properties = properties;
+        this.backendPool = backendPool;
+        this.metrics = metrics;
+        this.throughputTracker = throughputTracker;
         this.objectMapper = new ObjectMapper();
+
+        OllamaProperties.CircuitBreaker breaker = properties.getCircuitBreaker();
+        this.circuitBreaker = !breaker.isEnabled() ? null : new CircuitBreaker("ollama",
+                breaker.getWindowSize(), breaker.getMinimumCalls(), breaker.getFailureRateThreshold(),
+                breaker.getSlowCallRateThreshold(), breaker.getSlowCallDuration(), breaker.getOpenDuration(),
+                breaker.getHalfOpenProbes());
+    }
+
+    /**
+     * 与 DeepSeek 模型对话，返回回复文本和本次调用的 token 数、耗时。
+     * 失败时抛出 LlmException，熔断期间抛出 LlmUnavailableException
+     */
+    public LlmResult chatWithDeepSeek(String message) {
+        OllamaGenerateRequest request = chatRequest(message, false);
+        long start = System.nanoTime();
+        OllamaGenerateResponse response = generateResponse(request, "chat");
+        return LlmResult.of(response.getResponse(), request.getModel(), response, 0, System.nanoTime() - start);
+    }
+
+    /**
+     * 与 DeepSeek 模型流式对话：逐块解析 Ollama 返回的 NDJSON，每收到一段文本就回调 onToken，
+     * 返回拼接后的完整回复和 token 数。还没有推送任何内容就失败时抛出 LlmException，
+     * 已推送部分内容时返回这部分，isComplete() 为 false
+     */
+    public LlmResult streamChatWithDeepSeek(String message, Consumer<String> onToken) {
+        return streamGenerate(chatRequest(message, true), token -> {
+            onToken.accept(token);
+            return true;
+        }, false);
+    }
+
+    /**
+     * 熔断器当前是否放行调用；返回 false 时调用方应直接走降级路径
+     */
+    public boolean isAvailable() {
+        return circuitBreaker == null || circuitBreaker.isCallPermitted();
+    }
+
+    public Map<String, Object> getCircuitBreakerStats() {
+        if (circuitBreaker == null) {
+            return Map.of("enabled", false);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", true);
+        stats.putAll(circuitBreaker.getStats());
+        return stats;
+    }
+
+    /**
+     * 工具路由分类调用：使用 ollama.classification.* 配置的模型和参数，流式返回且可提前终止。
+     * staticPrefix 是每次请求都相同的提示词前缀（格式说明、工具列表、规则），按 ollama.prefix-reuse
+     * 以 system 提示词或 context token 的方式复用；suffix 是随用户消息变化的部分。
+     * 生成中途失败时抛出 LlmException，不返回被截断的输出
+     */
+    public String streamClassification(String staticPrefix, String suffix, Predicate<String> onToken) {
+        OllamaGenerateRequest request = classificationRequest(suffix, true);
+        OllamaProperties.PrefixReuse mode = properties.getPrefixReuse();
+
+        if (staticPrefix == null || staticPrefix.isEmpty() || mode == OllamaProperties.PrefixReuse.NONE) {
+            request.setPrompt(staticPrefix == null ? suffix : staticPrefix + suffix);
+            return completeText(streamGenerate(request, onToken, true));
+        }
+
+        PromptPrefix prefix = preparePrefix(request.getModel(), staticPrefix, mode);
+        if (mode == OllamaProperties.PrefixReuse.SYSTEM) {
+            request.setSystem(staticPrefix);
+        } else if (prefix.context != null) {
+            request.setContext(prefix.context);
+        } else {
+            // context 预热失败时退回完整提示词
+            request.setPrompt(staticPrefix + suffix);
+        }
+        if (prefix.primed) {
+            prefix.uses.incrementAndGet();
+        }
+        return completeText(streamGenerate(request, onToken, true));
+    }
+
+    /**
+     * 截断的分类输出可能恰好缺了决策 JSON 的后半段，清洗时补上括号后会被当成有效决策并缓存，只能按调用失败处理
+     */
+    private String completeText(LlmResult result) {
+        if (!result.isComplete()) {
+            throw new LlmException("分类输出在生成完成前中断，丢弃已生成的 " + result.getText().length() + " 个字符");
+        }
+        return result.getText();
+    }
+
+    /**
+     * 首次使用某个前缀时预热一次：让模型编码这段前缀，同时记录它的 token 数和编码耗时，
+     * 用于估算之后每次请求省下的前缀编码时间
+     */
+    private PromptPrefix preparePrefix(String model, String staticPrefix, OllamaProperties.PrefixReuse mode) {
+        PromptPrefix prefix = promptPrefixes.computeIfAbsent(model + "\n" + staticPrefix,
+                key -> new PromptPrefix(model, staticPrefix.length()));
+        if (prefix.primed || System.nanoTime() - prefix.nextAttempt < 0) {
+            return prefix;
+        }
+
+        synchronized (prefix) {
+            if (prefix.primed || System.nanoTime() - prefix.nextAttempt < 0) {
+                return prefix;
+            }
+            try {
+                OllamaGenerateRequest prime = classificationRequest(staticPrefix, false);
+                prime.setFormat(null);
+                prime.getOptions().setNumPredict(1);
+                if (mode == OllamaProperties.PrefixReuse.SYSTEM) {
+                    prime.setSystem(staticPrefix);
+                    prime.setPrompt(".");
+                }
+
+                OllamaGenerateResponse response = generateResponse(prime, "prime");
+                prefix.context = mode == OllamaProperties.PrefixReuse.CONTEXT ? prefixContext(response) : null;
+                prefix.tokens = response.getPromptEvalCount();
+                prefix.evalNanos = response.getPromptEvalDuration();
+                prefix.primed = true;
+                log.info("分类提示词前缀预热完成: {}, {} tokens, 编码耗时 {}ms",
+                        model, prefix.tokens, prefix.evalNanos / 1_000_000);
+            } catch (Exception e) {
+                prefix.nextAttempt = System.nanoTime() + PREFIX_RETRY_NANOS;
+                log.warn("分类提示词前缀预热失败: {}", e.getMessage());
+            }
+        }
+        return prefix;
+    }
+
+    /**
+     * 预热返回的 context 末尾带着 num_predict=1 生成的那个 token，原样复用会让每次分类都以它开头，
+     * 去掉后只剩编码过的前缀。生成的是结束符时 response 为空，context 里没有追加 token
+     */
+    private static int[] prefixContext(OllamaGenerateResponse response) {
+        int[] context = response.getContext();
+        if (context == null || response.getResponse() == null || response.getResponse().isEmpty()) {
+            return context;
+        }
+        int generated = Math.min(Math.max(response.getEvalCount(), 1), context.length);
+        return Arrays.copyOf(context, context.length - generated);
+    }
+
+    /**
+     * 前缀复用统计：前缀 token 数、一次编码耗时、复用次数和估算节省的编码时间。
+     * 节省时间不是测量值：按预热时的一次编码耗时乘以复用次数估算，假设每次复用 Ollama 都命中了缓存
+     */
+    public Map<String, Object> getPromptPrefixStats() {
+        Map<String, Object> prefixes = new LinkedHashMap<>();
+        int index = 0;
+        for (PromptPrefix prefix : promptPrefixes.values()) {
+            double evalMs = prefix.evalNanos / 1_000_000.0;
+            long uses = prefix.uses.get();
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("model", prefix.model);
+            stats.put("chars", prefix.chars);
+            stats.put("primed", prefix.primed);
+            stats.put("tokens", prefix.tokens);
+            stats.put("prefixEvalMs", evalMs);
+            stats.put("reusedRequests", uses);
+            stats.put("estimatedSavedMsPerRequest", evalMs);
+            stats.put("estimatedSavedMsTotal", evalMs * uses);
+            stats.put("estimateBasis", "预热编码耗时 × 复用次数，假设每次复用都命中缓存");
+            prefixes.put("prefix-" + index++, stats);
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", properties.getPrefixReuse().name().toLowerCase());
+        stats.put("keepAlive", properties.getKeepAlive());
+        stats.put("prefixes", prefixes);
+        return stats;
+    }
+
+    /**
+     * 分类调用是否启用了 JSON 模式
+     */
+    public boolean isClassificationJsonMode() {
+        return "json".equalsIgnoreCase(properties.getClassification().getFormat());
+    }
+
+    /**
+     * 按对话配置构建请求
+     */
+    public OllamaGenerateRequest chatRequest(String prompt, boolean stream) {
+        return buildRequest(properties.getChat(), prompt, stream);
+    }
+
+    /**
+     * 按分类配置构建请求
+     */
+    public OllamaGenerateRequest classificationRequest(String prompt, boolean stream) {
+        return buildRequest(properties.getClassification(), prompt, stream);
+    }
+
+    /**
+     * 非流式生成，失败时抛出 LlmException
+     */
+    public String generate(OllamaGenerateRequest generateRequest) {
+        return generateResponse(generateRequest, "generate").getResponse();
+    }
+
+    /**
+     * 非流式生成，返回包含统计信息的完整响应；purpose 用于指标标签和请求用量的阶段划分
+     */
+    private OllamaGenerateResponse generateResponse(OllamaGenerateRequest generateRequest, String purpose) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        String model = generateRequest.getModel();
+        String requestBody = toJson(generateRequest);
+        HttpEntity<String> request = new HttpEntity<>(requestBody, headers);
+
+        long start = System.nanoTime();
+        SingleFlight.Call<OllamaGenerateResponse> call = () -> protect(() -> {
+            String[] servedBy = new String[1];
+            String responseBody = backendPool.execute(model, backend -> {
+                servedBy[0] = backend.getName();
+                return restTemplate.postForEntity(backend.getBaseUrl() + "/api/generate", request, String.class).getBody();
+            });
+            OllamaGenerateResponse response = extractResponse(responseBody);
+            metrics.recordOllamaResponse(model, purpose, response);
+            throughputTracker.record(servedBy[0], LlmResult.of(response.getResponse(), model, response, 0, 0));
+            return response;
+        }, null, model, purpose, false, null);
+
+        OllamaGenerateResponse response = shouldCoalesce(generateRequest, false)
+                ? invoke(() -> generateFlights.execute(requestBody, call, r -> true))
+                : invoke(call);
+        recordUsage(purpose, LlmResult.of(response.getResponse(), model, response, 0, System.nanoTime() - start));
+        return response;
+    }
+
+    /**
+     * 把一次调用计入当前对话请求的用量，分类和前缀预热算 classification 阶段，对话算 answer 阶段
+     */
+    private void recordUsage(String purpose, LlmResult result) {
+        RequestUsage usage = UsageContext.current();
+        if (usage == null) {
+            return;
+        }
+        String stage;
+        switch (purpose) {
+            case "classification":
+            case "prime":
+                stage = "classification";
+                break;
+            case "chat":
+                stage = "answer";
+                break;
+            default:
+                stage = purpose;
+        }
+        usage.recordLlmCall(stage, result);
     }
 
     /**
-     * 与 DeepSeek 模型对话
+     * 流式生成，onToken 返回 false 时提前终止
      */
-    public String chatWithDeepSeek(String message) {
+    public String streamGenerate(OllamaGenerateRequest generateRequest, Predicate<String> onToken) {
+        return streamGenerate(generateRequest, onToken, false).getText();
+    }
+
+    private LlmResult streamGenerate(OllamaGenerateRequest generateRequest, Predicate<String> onToken,
+                                     boolean classification) {
+        StringBuilder fullResponse = new StringBuilder();
+        RuntimeException[] callbackError = new RuntimeException[1];
+        long[] firstTokenAt = new long[1];
+        int[] chunks = new int[1];
+        // 读到的最后一块，带有 token 数和服务端耗时；提前断开或合并到别人的请求上时为 null
+        OllamaGenerateResponse[] last = new OllamaGenerateResponse[1];
+        Predicate<String> guarded = token -> {
+            if (firstTokenAt[0] == 0) {
+                firstTokenAt[0] = System.nanoTime();
+            }
+            chunks[0]++;
+            fullResponse.append(token);
+            try {
+                return onToken.test(token);
+            } catch (RuntimeException e) {
+                // 回调异常（例如客户端断开）不算节点故障，先停止读取，退出节点调用后再抛出
+                callbackError[0] = e;
+                return false;
+            }
+        };
+
+        String model = generateRequest.getModel();
+        String purpose = classification ? "classification" : "chat";
+        long start = System.nanoTime();
+        boolean incomplete = false;
         try {
-            String url = OLLAMA_BASE_URL + "/api/generate";
-
-            // 构建请求体
-            String requestBody = """
-            {
-                "model": "deepseek-coder:6.7b",
-                "prompt": "%s",
-                "stream": false,
-                "options": {
-                    "temperature": 0.7,
-                    "num_predict": 1000
+            String requestBody = toJson(generateRequest);
+            SingleFlight.Call<StreamResult> call = () -> protect(() -> {
+                backendPool.execute(model, () -> firstTokenAt[0], backend -> {
+                    stream(backend.getBaseUrl(), requestBody, guarded, done -> {
+                        last[0] = done;
+                        metrics.recordOllamaResponse(model, purpose, done);
+                        throughputTracker.record(backend.getName(), LlmResult.of(null, model, done, 0, 0));
+                    });
+                    return null;
+                });
+                return new StreamResult(fullResponse.toString(), callbackError[0] == null);
+            }, () -> firstTokenAt[0], model, purpose, true, result -> !result.isShareable());
+
+            if (shouldCoalesce(generateRequest, classification)) {
+                StreamResult result = invoke(() -> streamFlights.execute(requestBody, call, StreamResult::isShareable));
+                if (fullResponse.length() == 0 && !result.text.isEmpty()) {
+                    // 合并到了别人的请求上，把完整结果一次性交给回调
+                    guarded.test(result.text);
                 }
+            } else {
+                invoke(call);
             }
-            """.formatted(escapeJson(message));
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
+        } catch (LlmException e) {
+            // 已经推送过部分内容时返回这部分并标记为不完整，避免客户端看到半截回复后接错误
+            if (fullResponse.length() == 0) {
+                throw e;
+            }
+            log.warn("流式生成中途失败，返回已生成的 {} 个字符: {}", fullResponse.length(), e.getMessage());
+            incomplete = true;
+        }
 
-            HttpEntity<String> request = new HttpEntity<>(requestBody, headers);
+        LlmResult result = LlmResult.of(fullResponse.toString(), model, last[0], chunks[0], System.nanoTime() - start);
+        if (incomplete) {
+            result = result.asIncomplete();
+        }
+        recordUsage(purpose, result);
 
-            ResponseEntity<String> response = restTemplate.postForEntity(url, request, String.class);
+        if (callbackError[0] != null) {
+            throw callbackError[0];
+        }
+        return result;
+    }
 
-            return extractResponse(response.getBody());
+    /**
+     * 经过熔断器执行一次对 Ollama 的调用，并记录调用耗时指标。firstResponseAt 返回首个 token 的时间戳，
+     * 流式调用按它判断慢调用，为 null 或返回 0 时按整个调用的耗时。
+     * <p>
+     * 与节点健康无关的结束不计入熔断器：调用方取消、回调异常中止了读取（abandoned 对结果返回 true，
+     * 例如客户端断开）、没有节点部署该模型的配置错误
+     */
+    private <T> T protect(SingleFlight.Call<T> call, LongSupplier firstResponseAt, String model, String purpose,
+                          boolean streaming, Predicate<T> abandoned) throws Exception {
+        if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+            throw new LlmUnavailableException("LLM 服务熔断中，暂不发送请求");
+        }
 
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            boolean aborted = abandoned != null && abandoned.test(result);
+            if (circuitBreaker != null) {
+                if (aborted) {
+                    circuitBreaker.onIgnored();
+                } else {
+                    circuitBreaker.onSuccess(elapsedSince(start, firstResponseAt));
+                }
+            }
+            recordCall(model, purpose, streaming, aborted ? "cancelled" : "success", start, firstResponseAt);
+            return result;
         } catch (Exception e) {
-            return "请求失败，请确保 Ollama 服务正在运行。错误信息: " + e.getMessage();
+            boolean cancelled = Thread.currentThread().isInterrupted();
+            boolean unrelated = cancelled || e instanceof NoBackendException;
+            if (circuitBreaker != null) {
+                if (unrelated) {
+                    // 调用方取消或配置错误不代表服务有问题
+                    circuitBreaker.onIgnored();
+                } else {
+                    circuitBreaker.onFailure(elapsedSince(start, firstResponseAt));
+                }
+            }
+            recordCall(model, purpose, streaming, cancelled ? "cancelled" : "error", start, firstResponseAt);
+            throw e;
+        }
+    }
+
+    private void recordCall(String model, String purpose, boolean streaming, String outcome,
+                            long start, LongSupplier firstResponseAt) {
+        metrics.recordOllamaCall(model, purpose, streaming, outcome, System.nanoTime() - start);
+        long first = firstResponseAt == null ? 0 : firstResponseAt.getAsLong();
+        if (first != 0) {
+            metrics.recordOllamaFirstToken(model, purpose, first - start);
+        }
+    }
+
+    private long elapsedSince(long start, LongSupplier firstResponseAt) {
+        long first = firstResponseAt == null ? 0 : firstResponseAt.getAsLong();
+        return (first != 0 ? first : System.nanoTime()) - start;
+    }
+
+    private String toJson(OllamaGenerateRequest request) {
+        try {
+            return objectMapper.writeValueAsString(request);
+        } catch (IOException e) {
+            throw new LlmException("序列化请求失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 按 ollama.coalesce 判断该请求是否参与合并
+     */
+    private boolean shouldCoalesce(OllamaGenerateRequest request, boolean classification) {
+        switch (properties.getCoalesce()) {
+            case ALL:
+                return true;
+            case DETERMINISTIC:
+                Double temperature = request.getOptions() == null ? null : request.getOptions().getTemperature();
+                return classification || (temperature != null && temperature == 0.0);
+            case CLASSIFICATION:
+                return classification;
+            case NONE:
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 执行调用，把各种失败统一转换成 LlmException
+     */
+    private <T> T invoke(SingleFlight.Call<T> call) {
+        try {
+            return call.call();
+        } catch (LlmException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LlmException("请求被中断", e);
+        } catch (IOException | RestClientException e) {
+            throw new LlmException("请求 Ollama 失败，请确保 Ollama 服务正在运行。错误信息: " + e.getMessage(), e);
+        } catch (Exception e) {
+            throw new LlmException("请求 Ollama 失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 请求合并统计
+     */
+    public Map<String, Object> getCoalescingStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("scope", properties.getCoalesce().name().toLowerCase());
+        stats.put("generate", generateFlights.getStats());
+        stats.put("stream", streamFlights.getStats());
+        stats.put("coalescedTotal", generateFlights.getCoalesced() + streamFlights.getCoalesced());
+        return stats;
+    }
+
+    /**
+     * 直接使用连接池里的 HttpClient 读取流式响应。提前终止时取消请求丢弃连接，
+     * 而不是像 RestTemplate 关闭响应那样把剩余的生成内容读完
+     */
+    private void stream(String baseUrl, String requestBody, Predicate<String> onToken,
+                        Consumer<OllamaGenerateResponse> onDone) throws IOException {
+        HttpPost post = new HttpPost(baseUrl + "/api/generate");
+        post.setConfig(streamingRequestConfig);
+        post.setEntity(new StringEntity(requestBody, ContentType.APPLICATION_JSON));
+
+        boolean completed = false;
+        ClassicHttpResponse response = httpClient.executeOpen(null, post, null);
+        try {
+            if (response.getCode() >= 300) {
+                throw new IOException("Ollama 返回状态码 " + response.getCode());
+            }
+            completed = readStream(response.getEntity().getContent(), onToken, onDone);
+        } finally {
+            if (completed) {
+                response.close();
+            } else {
+                // 取消后连接已丢弃，关闭时的异常没有意义
+                post.cancel();
+                try {
+                    response.close();
+                } catch (IOException ignored) {
+                }
+            }
         }
     }
 
@@ -60,41 +562,124 @@ public class OllamaService {
      */
     public String getAvailableModels() {
         try {
-            String url = OLLAMA_BASE_URL + "/api/tags";
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-            return response.getBody();
+            return backendPool.execute(properties.getModel(), backend ->
+                    restTemplate.getForEntity(backend.getBaseUrl() + "/api/tags", String.class).getBody());
         } catch (Exception e) {
             return "无法获取模型列表: " + e.getMessage();
         }
     }
 
     /**
-     * 检查 Ollama 服务状态
+     * 检查 Ollama 服务状态，多节点时逐个报告
      */
     public String checkHealth() {
-        try {
-            String url = OLLAMA_BASE_URL + "/api/version";
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-            return "Ollama 服务运行正常。版本信息: " + response.getBody();
-        } catch (Exception e) {
-            return "Ollama 服务未运行。请先启动 Ollama 服务。";
+        StringBuilder result = new StringBuilder();
+        for (LlmBackend backend : backendPool.getBackends()) {
+            if (result.length() > 0) result.append('\n');
+            if (backendPool.getBackends().size() > 1) result.append(backend.getName()).append(": ");
+            try {
+                String url = backend.getBaseUrl() + "/api/version";
+                ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
+                result.append("Ollama 服务运行正常。版本信息: ").append(response.getBody());
+            } catch (Exception e) {
+                result.append("Ollama 服务未运行。请先启动 Ollama 服务。");
+            }
         }
+        return result.toString();
     }
 
-    private String escapeJson(String text) {
-        return text.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+    private OllamaGenerateRequest buildRequest(OllamaProperties.GenerationProfile profile,
+                                               String prompt, boolean stream) {
+        String model = profile.getModel() != null && !profile.getModel().isBlank()
+                ? profile.getModel() : properties.getModel();
+        String format = profile.getFormat() != null && !profile.getFormat().isBlank() ? profile.getFormat() : null;
+        OllamaOptions options = new OllamaOptions(profile.getTemperature(), profile.getNumPredict(), profile.getStop());
+        OllamaGenerateRequest request = new OllamaGenerateRequest(model, prompt, stream, format, options);
+        if (properties.getKeepAlive() != null && !properties.getKeepAlive().isBlank()) {
+            request.setKeepAlive(properties.getKeepAlive());
+        }
+        return request;
     }
 
-    private String extractResponse(String responseBody) {
+    /**
+     * 读取 /api/generate 的流式响应，每行是一个 JSON 块；读到 done 返回 true，被回调终止返回 false。
+     * done 块里带有本次生成的耗时和 token 数，交给 onDone。没有读到 done 就结束的响应是被截断的生成，抛出 IOException
+     */
+    private boolean readStream(InputStream body, Predicate<String> onToken,
+                               Consumer<OllamaGenerateResponse> onDone) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+
+            OllamaGenerateResponse chunk = objectMapper.readValue(line, OllamaGenerateResponse.class);
+            if (chunk.getError() != null) {
+                throw new IOException(chunk.getError());
+            }
+
+            String token = chunk.getResponse();
+            if (token != null && !token.isEmpty() && !onToken.test(token)) {
+                return false;
+            }
+
+            if (chunk.isDone()) {
+                onDone.accept(chunk);
+                return true;
+            }
+        }
+        throw new IOException("流式响应在 done 之前结束，生成内容不完整");
+    }
+
+    private OllamaGenerateResponse extractResponse(String responseBody) throws IOException {
+        OllamaGenerateResponse response;
         try {
-            JsonNode root = objectMapper.readTree(responseBody);
-            return root.get("response").asText();
+            response = objectMapper.readValue(responseBody, OllamaGenerateResponse.class);
         } catch (Exception e) {
-            return "解析响应失败: " + e.getMessage() + "\n原始响应: " + responseBody;
+            throw new IOException("解析响应失败: " + e.getMessage() + "\n原始响应: " + responseBody, e);
+        }
+        if (response.getError() != null) {
+            throw new IOException(response.getError());
+        }
+        if (response.getResponse() == null) {
+            throw new IOException("响应中没有 response 字段，原始响应: " + responseBody);
+        }
+        return response;
+    }
+
+    /**
+     * 一次流式调用的结果；读取被调用方自己的回调异常打断时不能共享给合并的请求
+     */
+    private static class StreamResult {
+        private final String text;
+        private final boolean shareable;
+
+        private StreamResult(String text, boolean shareable) {
+            this.text = text;
+            this.shareable = shareable;
+        }
+
+        private boolean isShareable() { return shareable; }
+    }
+
+    /**
+     * 一段静态提示词前缀的预热状态
+     */
+    private static class PromptPrefix {
+        private final String model;
+        private final int chars;
+        private final AtomicLong uses = new AtomicLong();
+
+        private volatile boolean primed;
+        private volatile long nextAttempt = System.nanoTime();
+        private volatile int[] context;
+        private volatile int tokens;
+        private volatile long evalNanos;
+
+        private PromptPrefix(String model, int chars) {
+            this.model = model;
+            this.chars = chars;
         }
     }
 }
@@ -0,0 +1,382 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.model.ToolCall;
+import com.liling.Agent.model.ToolDecision;
+import com.liling.Agent.utils.IvfFlatIndex;
+import com.liling.Agent.utils.LatencyRecorder;
+import com.liling.Agent.utils.TtlLruCache;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 语义缓存：用向量相似度命中说法不同但意思相同的问题，例如 "上海今天天气怎么样" 和 "上海天气如何"
+ * <p>
+ * 工具决策和直接回答分开存放，各自有容量上限（LRU 淘汰）和有效期。为避免把相似但不同的问题当成同一个，
+ * 命中还需满足：两条消息里的数字完全一致；缓存决策中出现在原消息里的参数值（如城市名）也出现在新消息里。
+ */
+@Component
+public class SemanticCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SemanticCache.class);
+
+    private static final Pattern NUMBER = Pattern.compile("\\d+(?:\\.\\d+)?");
+
+    // 每次检索取出的候选数，前面的候选过期或不满足条件时依次检查后面的
+    private static final int CANDIDATES = 4;
+
+    private final boolean enabled;
+    private final double threshold;
+    private final EmbeddingProvider embeddingProvider;
+
+    private final Store<ToolDecision> decisions;
+    private final Store<String> answers;
+
+    // 索引的 k-means 训练在这个线程上进行，不占用请求线程，也不持有缓存锁
+    private final ExecutorService indexTrainer =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("semantic-index-"));
+
+    // 同一条消息查询和写入时各需要一次向量，短时间内复用
+    private final TtlLruCache<String, float[]> recentEmbeddings = new TtlLruCache<>(256, Duration.ofMinutes(1));
+
+    private final AtomicLong embeddingFailures = new AtomicLong();
+    private final LatencyRecorder embeddingLatency = new LatencyRecorder();
+
+    public SemanticCache(AgentProperties properties, ObjectProvider<EmbeddingProvider> embeddingProviders) {
+        AgentProperties.SemanticCache config = properties.getSemanticCache();
+        this.embeddingProvider = embeddingProviders.getIfAvailable();
+        this.enabled = config.isEnabled() && embeddingProvider != null;
+        this.threshold = config.getSimilarityThreshold();
+        this.decisions = new Store<>(config.getMaxSize(), config.getTtl(), config.getLists(), config.getProbes());
+        this.answers = new Store<>(config.getMaxSize(), config.getAnswerTtl(), config.getLists(), config.getProbes());
+
+        if (config.isEnabled() && embeddingProvider == null) {
+            log.warn("语义缓存已开启但没有可用的向量化实现，已禁用: {}", config.getProvider());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexTrainer.shutdownNow();
+    }
+
+    /**
+     * 查询相似问题的工具决策，命中时返回一份独立副本
+     */
+    public ToolDecision getDecision(String message) {
+        if (!enabled) return null;
+
+        float[] vector = embed(message);
+        if (vector == null) return null;
+
+        ToolDecision decision = decisions.get(vector, (original, cached) ->
+                sameNumbers(original, message) && parametersPresent(original, message, cached));
+        return decision == null ? null : copy(decision);
+    }
+
+    public void putDecision(String message, ToolDecision decision) {
+        if (!enabled || decision == null) return;
+
+        float[] vector = embed(message);
+        if (vector != null) {
+            decisions.put(vector, message, copy(decision));
+        }
+    }
+
+    /**
+     * 查询相似问题的直接回答
+     */
+    public String getAnswer(String message) {
+        if (!enabled) return null;
+
+        float[] vector = embed(message);
+        if (vector == null) return null;
+
+        return answers.get(vector, (original, cached) -> sameNumbers(original, message));
+    }
+
+    public void putAnswer(String message, String answer) {
+        if (!enabled || answer == null || answer.isBlank()) return;
+
+        float[] vector = embed(message);
+        if (vector != null) {
+            answers.put(vector, message, answer);
+        }
+    }
+
+    public void clear() {
+        decisions.clear();
+        answers.clear();
+        recentEmbeddings.clear();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("provider", embeddingProvider == null ? null : embeddingProvider.getName());
+        stats.put("similarityThreshold", threshold);
+        stats.put("decisions", decisions.getStats());
+        stats.put("answers", answers.getStats());
+        stats.put("embeddingFailures", embeddingFailures.get());
+        stats.put("embeddingLatency", embeddingLatency.getStats());
+        return stats;
+    }
+
+    /**
+     * 计算消息向量，失败时返回 null，不影响正常流程
+     */
+    private float[] embed(String message) {
+        String key = normalize(message);
+        float[] cached = recentEmbeddings.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long start = System.nanoTime();
+        try {
+            float[] vector = embeddingProvider.embed(key);
+            embeddingLatency.record(System.nanoTime() - start, true);
+            recentEmbeddings.put(key, vector);
+            return vector;
+        } catch (Exception e) {
+            embeddingLatency.record(System.nanoTime() - start, false);
+            embeddingFailures.incrementAndGet();
+            log.warn("计算消息向量失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private String normalize(String message) {
+        return Normalizer.normalize(message, Normalizer.Form.NFKC).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private boolean sameNumbers(String original, String message) {
+        return extractNumbers(normalize(original)).equals(extractNumbers(normalize(message)));
+    }
+
+    private List<String> extractNumbers(String text) {
+        List<String> numbers = new ArrayList<>();
+        Matcher matcher = NUMBER.matcher(text);
+        while (matcher.find()) {
+            numbers.add(matcher.group());
+        }
+        return numbers;
+    }
+
+    /**
+     * 原消息里出现过的参数值（城市、表达式等）必须同样出现在新消息里
+     */
+    private boolean parametersPresent(String original, String message, ToolDecision decision) {
+        String normalizedOriginal = normalize(original);
+        String normalizedMessage = normalize(message);
+        for (ToolCall call : decision.getCalls()) {
+            if (call.getParameters() == null) continue;
+
+            for (String value : call.getParameters().values()) {
+                if (value == null || value.isBlank()) continue;
+
+                String normalizedValue = normalize(value);
+                if (normalizedOriginal.contains(normalizedValue) && !normalizedMessage.contains(normalizedValue)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private ToolDecision copy(ToolDecision source) {
+        Map<String, String> parameters = source.getParameters() == null
+                ? new HashMap<>() : new HashMap<>(source.getParameters());
+        ToolDecision copy = new ToolDecision(source.isNeedsTool(), source.getToolName(), parameters,
+                source.getReasoning());
+        if (source.getToolCalls() != null) {
+            List<ToolCall> calls = new ArrayList<>();
+            for (ToolCall call : source.getToolCalls()) {
+                calls.add(call.copy());
+            }
+            copy.setToolCalls(calls);
+        }
+        return copy;
+    }
+
+    /**
+     * 一类缓存内容：向量索引 + 按槽位存放的条目，条目按最近一次命中（或写入）排列用于 LRU 淘汰。
+     * 检索到但被条件拒绝的候选不调整顺序
+     */
+    private class Store<V> {
+        private final int maxSize;
+        private final long ttlNanos;
+        private final int lists;
+        private final int probes;
+
+        // 第一次写入时按向量维度创建
+        private IvfFlatIndex index;
+        private final LinkedHashMap<Integer, Entry<V>> entries = new LinkedHashMap<>();
+        private final Map<String, Integer> slotsByMessage = new HashMap<>();
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+        private final AtomicLong expirations = new AtomicLong();
+
+        private Store(int maxSize, Duration ttl, int lists, int probes) {
+            this.maxSize = Math.max(1, maxSize);
+            this.ttlNanos = ttl == null || ttl.isNegative() || ttl.isZero() ? 0 : ttl.toNanos();
+            this.lists = lists;
+            this.probes = probes;
+        }
+
+        synchronized V get(float[] vector, BiPredicate<String, V> accept) {
+            if (index == null || index.getDimension() != vector.length) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            long now = System.nanoTime();
+            for (IvfFlatIndex.Match match : index.search(vector, CANDIDATES)) {
+                if (match.getScore() < threshold) {
+                    break;
+                }
+                Entry<V> entry = entries.get(match.getSlot());
+                if (entry == null) {
+                    continue;
+                }
+                if (isExpired(entry, now)) {
+                    removeSlot(match.getSlot());
+                    expirations.incrementAndGet();
+                    continue;
+                }
+                if (accept.test(entry.message, entry.value)) {
+                    entries.remove(match.getSlot());
+                    entries.put(match.getSlot(), entry);
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+
+        synchronized void put(float[] vector, String message, V value) {
+            if (index == null) {
+                index = new IvfFlatIndex(vector.length, maxSize, lists, probes, indexTrainer);
+            }
+            if (index.getDimension() != vector.length) {
+                return;
+            }
+
+            String key = normalize(message);
+            Integer existing = slotsByMessage.get(key);
+            if (existing != null) {
+                removeSlot(existing);
+            }
+            if (index.isFull()) {
+                makeRoom();
+            }
+
+            int slot = index.add(vector);
+            if (slot >= 0) {
+                entries.put(slot, new Entry<>(key, value, System.nanoTime()));
+                slotsByMessage.put(key, slot);
+            }
+        }
+
+        synchronized void clear() {
+            if (index != null) {
+                index.clear();
+            }
+            entries.clear();
+            slotsByMessage.clear();
+        }
+
+        /**
+         * 先清理过期条目，仍然没有空位时淘汰最久未访问的条目
+         */
+        private void makeRoom() {
+            long now = System.nanoTime();
+            List<Integer> expired = new ArrayList<>();
+            for (Map.Entry<Integer, Entry<V>> entry : entries.entrySet()) {
+                if (isExpired(entry.getValue(), now)) {
+                    expired.add(entry.getKey());
+                }
+            }
+            for (Integer slot : expired) {
+                removeSlot(slot);
+            }
+            expirations.addAndGet(expired.size());
+
+            if (index.isFull()) {
+                Iterator<Integer> eldest = entries.keySet().iterator();
+                if (eldest.hasNext()) {
+                    removeSlot(eldest.next());
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+
+        private void removeSlot(int slot) {
+            Entry<V> entry = entries.remove(slot);
+            if (entry != null) {
+                slotsByMessage.remove(entry.message, slot);
+            }
+            index.remove(slot);
+        }
+
+        private boolean isExpired(Entry<V> entry, long now) {
+            return ttlNanos > 0 && now - entry.createdAt > ttlNanos;
+        }
+
+        synchronized Map<String, Object> getStats() {
+            long hitCount = hits.get();
+            long total = hitCount + misses.get();
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("size", entries.size());
+            stats.put("maxSize", maxSize);
+            stats.put("dimension", index == null ? 0 : index.getDimension());
+            stats.put("indexTrained", index != null && index.isTrained());
+            stats.put("hits", hitCount);
+            stats.put("misses", misses.get());
+            stats.put("evictions", evictions.get());
+            stats.put("expirations", expirations.get());
+            stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+            return stats;
+        }
+    }
+
+    private static class Entry<V> {
+        private final String message;
+        private final V value;
+        private final long createdAt;
+
+        private Entry(String message, V value, long createdAt) {
+            this.message = message;
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -1,51 +1,249 @@
 package com.liling.Agent.service;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.liling.Agent.exception.LlmException;
+import com.liling.Agent.model.LlmResult;
+import com.liling.Agent.model.RequestUsage;
+import com.liling.Agent.model.ToolCall;
+import com.liling.Agent.model.ToolCallResult;
 import com.liling.Agent.model.ToolDecision;
+import com.liling.Agent.utils.AgentMetrics;
+import com.liling.Agent.utils.PayloadLogger;
+import com.liling.Agent.utils.UsageContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
 @Service
 public class SmartAgentService {
+
+    private static final Logger log = LoggerFactory.getLogger(SmartAgentService.class);
+
     @Autowired
     private IntelligentToolService toolService;
 
     @Autowired
     private OllamaService ollamaService;
 
+    @Autowired
+    private SemanticCache semanticCache;
+
+    @Autowired
+    private PayloadLogger payloadLogger;
+
+    @Autowired
+    private AgentMetrics metrics;
+
+    // 模型服务不可用时直接对话分支的回复
+    private static final String LLM_UNAVAILABLE_REPLY = "抱歉，模型服务暂时不可用，请稍后再试。";
+
+    @Autowired
+    @Qualifier("agentExecutor")
+    private ExecutorService agentExecutor;
+
     /**
      * 处理用户消息的完整流程
      */
     public AgentResponse processMessage(String userMessage) {
-        System.out.println("处理用户消息: " + userMessage);
+        return process(userMessage, null);
+    }
+
+    /**
+     * 异步处理用户消息：整个流程在 agentExecutor 上执行，调用方线程立即返回
+     */
+    public CompletableFuture<AgentResponse> processMessageAsync(String userMessage) {
+        return CompletableFuture.supplyAsync(() -> processMessage(userMessage), agentExecutor);
+    }
+
+    /**
+     * 流式处理用户消息：工具决策和工具调用照常执行，最终回复的 token 生成一段推送一段
+     */
+    public AgentResponse processMessageStreaming(String userMessage, Consumer<String> onToken) {
+        return process(userMessage, onToken);
+    }
+
+    /**
+     * 处理一条消息并记录各阶段的耗时和 token 用量，用量随响应一起返回
+     */
+    private AgentResponse process(String userMessage, Consumer<String> onToken) {
+        long start = System.nanoTime();
+        RequestUsage usage = new RequestUsage();
+        RequestUsage previousUsage = UsageContext.set(usage);
+        AgentResponse response = null;
+        try {
+            response = handle(userMessage, onToken);
+            response.setUsage(usage);
+            log.debug("请求用量: {}", usage);
+            return response;
+        } finally {
+            UsageContext.set(previousUsage);
+            metrics.recordRequest(response != null && response.isUsedTool() ? "tool" : "chat",
+                    response != null, System.nanoTime() - start);
+        }
+    }
+
+    private static void recordStage(String stage, long start) {
+        RequestUsage usage = UsageContext.current();
+        if (usage != null) {
+            usage.recordElapsed(stage, System.nanoTime() - start);
+        }
+    }
+
+    private AgentResponse handle(String userMessage, Consumer<String> onToken) {
+        payloadLogger.debug(log, "处理用户消息", userMessage);
 
         // 1. 智能分析是否需要工具调用
+        long classifyStart = System.nanoTime();
         ToolDecision decision = toolService.analyzeWithLLM(userMessage);
-        System.out.println("工具决策: " + decision);
+        recordStage("classification", classifyStart);
+        log.debug("工具决策: {}", decision);
 
         if (decision.isNeedsTool()) {
-            // 2. 执行工具调用
-            String toolResult = toolService.executeTool(
-                    decision.getToolName(),
-                    decision.getParameters()
-            );
-            System.out.println("工具执行结果: " + toolResult);
+            // 2. 执行工具调用，调用计划中相互独立的调用并发执行
+            long toolsStart = System.nanoTime();
+            List<ToolCallResult> results = toolService.executePlan(decision);
+            recordStage("tools", toolsStart);
+            String toolResult = joinResults(results);
+            payloadLogger.debug(log, "工具执行结果", toolResult);
 
-            // 3. 生成最终回复
-            String finalResponse = generateFinalResponse(userMessage, toolResult, decision);
+            // 3. 按工具声明的回复方式生成最终回复，只要有一个工具是 LLM_REPHRASE 才再调用一次模型，
+            //    多个工具的结果合并到同一个提示词里
+            String localResponse = localResponse(userMessage, decision.getCalls(), results);
+            if (!needsRephrase(decision.getCalls())) {
+                return toolResponse(localResponse, decision, toolResult, results, onToken);
+            }
 
-            return new AgentResponse(finalResponse, true, decision, toolResult);
+            // 模型服务不可用时直接返回工具结果
+            if (!ollamaService.isAvailable()) {
+                log.debug("LLM 熔断中，直接返回工具结果");
+                return toolResponse(localResponse, decision, toolResult, results, onToken);
+            }
+            try {
+                String finalResponse = generateFinalResponse(userMessage, toolResult, decision, onToken);
+                return new AgentResponse(finalResponse, true, decision, toolResult, results);
+            } catch (LlmException e) {
+                log.warn("生成最终回复失败，直接返回工具结果: {}", e.getMessage());
+                return toolResponse(localResponse, decision, toolResult, results, onToken);
+            }
 
         } else {
-            // 4. 直接对话
-            String response = ollamaService.chatWithDeepSeek(userMessage);
-            return new AgentResponse(response, false, null, null);
+            // 4. 直接对话，相似问题已经回答过时直接复用
+            if (!ollamaService.isAvailable()) {
+                log.debug("LLM 熔断中，无法直接对话");
+                return unavailableResponse(onToken);
+            }
+
+            String cached = semanticCache.getAnswer(userMessage);
+            if (cached != null) {
+                log.debug("命中语义缓存的回答");
+                if (onToken != null) {
+                    onToken.accept(cached);
+                }
+                return new AgentResponse(cached, false, null, null);
+            }
+
+            LlmResult answer;
+            try {
+                answer = chat(userMessage, onToken);
+            } catch (LlmException e) {
+                log.warn("直接对话失败: {}", e.getMessage());
+                return unavailableResponse(onToken);
+            }
+            // 中途失败的半截回复不缓存
+            if (answer.isComplete()) {
+                semanticCache.putAnswer(userMessage, answer.getText());
+            }
+            return new AgentResponse(answer.getText(), false, null, null);
+        }
+    }
+
+    /**
+     * 粗略判断用户使用的语言：含汉字按中文，否则含拉丁字母按英文
+     */
+    private String detectLanguage(String text) {
+        boolean latin = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN) {
+                return "zh";
+            }
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                latin = true;
+            }
+        }
+        return latin ? "en" : "zh";
+    }
+
+    private boolean needsRephrase(List<ToolCall> calls) {
+        for (ToolCall call : calls) {
+            Tool tool = toolService.getTool(call.getToolName());
+            if (tool != null && tool.getResponseMode() == ToolResponseMode.LLM_REPHRASE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 不调用模型的回复：TEMPLATED 的工具套用本地模板，其余直接使用工具结果，多个结果逐行拼接
+     */
+    private String localResponse(String userMessage, List<ToolCall> calls, List<ToolCallResult> results) {
+        String language = detectLanguage(userMessage);
+        StringBuilder response = new StringBuilder();
+        for (int i = 0; i < calls.size(); i++) {
+            ToolCallResult result = results.get(i);
+            Tool tool = toolService.getTool(result.getToolName());
+            String text = result.getResult();
+            if (result.isSuccess() && tool != null && tool.getResponseMode() == ToolResponseMode.TEMPLATED) {
+                text = tool.formatResponse(calls.get(i).getParameters(), text, language);
+            }
+            if (response.length() > 0) response.append('\n');
+            response.append(text);
+        }
+        return response.toString();
+    }
+
+    /**
+     * 最终回复提示词中的工具结果：单个工具直接是结果，多个工具逐行列出工具名、参数和结果
+     */
+    private String joinResults(List<ToolCallResult> results) {
+        if (results.size() == 1) {
+            return results.get(0).getResult();
+        }
+        StringBuilder joined = new StringBuilder();
+        for (ToolCallResult result : results) {
+            joined.append("\n- ").append(result.getToolName()).append(": ").append(result.getResult());
         }
+        return joined.toString();
+    }
+
+    private AgentResponse toolResponse(String response, ToolDecision decision, String toolResult,
+                                       List<ToolCallResult> results, Consumer<String> onToken) {
+        if (onToken != null) {
+            onToken.accept(response);
+        }
+        return new AgentResponse(response, true, decision, toolResult, results);
+    }
+
+    private AgentResponse unavailableResponse(Consumer<String> onToken) {
+        if (onToken != null) {
+            onToken.accept(LLM_UNAVAILABLE_REPLY);
+        }
+        return new AgentResponse(LLM_UNAVAILABLE_REPLY, false, null, null);
     }
 
     /**
      * 结合工具结果生成友好的最终回复
      */
-    private String generateFinalResponse(String userMessage, String toolResult, ToolDecision decision) {
+    private String generateFinalResponse(String userMessage, String toolResult, ToolDecision decision,
+                                         Consumer<String> onToken) {
         String prompt = """
             用户原问题: %s
             工具调用结果: %s
@@ -56,7 +254,29 @@ public class SmartAgentService {
             回复语言要与用户问题语言一致。
             """.formatted(userMessage, toolResult, decision.getReasoning());
 
-        return ollamaService.chatWithDeepSeek(prompt);
+        return chat(prompt, onToken, "rephrase").getText();
+    }
+
+    private LlmResult chat(String prompt, Consumer<String> onToken) {
+        return chat(prompt, onToken, "chat");
+    }
+
+    /**
+     * 调用模型生成最终回复，kind 用于区分结合工具结果的回复和直接对话的耗时指标
+     */
+    private LlmResult chat(String prompt, Consumer<String> onToken, String kind) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            LlmResult result = onToken == null
+                    ? ollamaService.chatWithDeepSeek(prompt)
+                    : ollamaService.streamChatWithDeepSeek(prompt, onToken);
+            success = true;
+            return result;
+        } finally {
+            recordStage("answer", start);
+            metrics.recordAnswer(kind, onToken != null, success, System.nanoTime() - start);
+        }
     }
 
     /**
@@ -67,13 +287,22 @@ public class SmartAgentService {
         private final boolean usedTool;
         private final ToolDecision toolDecision;
         private final String toolResult;
+        private final List<ToolCallResult> toolCalls;
+        private RequestUsage usage;
 
         public AgentResponse(String response, boolean usedTool,
                              ToolDecision toolDecision, String toolResult) {
+            this(response, usedTool, toolDecision, toolResult, null);
+        }
+
+        public AgentResponse(String response, boolean usedTool, ToolDecision toolDecision,
+                             String toolResult, List<ToolCallResult> toolCalls) {
             this.response = response;
             this.usedTool = usedTool;
             this.toolDecision = toolDecision;
             this.toolResult = toolResult;
+            // 只有多个工具时才单独列出每次调用的结果
+            this.toolCalls = toolCalls != null && toolCalls.size() > 1 ? toolCalls : null;
         }
 
         // Getters
@@ -81,6 +310,16 @@ public class SmartAgentService {
         public boolean isUsedTool() { return usedTool; }
         public ToolDecision getToolDecision() { return toolDecision; }
         public String getToolResult() { return toolResult; }
+
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public List<ToolCallResult> getToolCalls() { return toolCalls; }
+
+        /**
+         * 本次请求各阶段的耗时和 token 用量
+         */
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public RequestUsage getUsage() { return usage; }
+        public void setUsage(RequestUsage usage) { this.usage = usage; }
     }
 
 }
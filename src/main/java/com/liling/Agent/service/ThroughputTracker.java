@@ -0,0 +1,173 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.model.LlmResult;
+import com.liling.Agent.utils.AgentMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按模型和 LLM 节点统计滚动窗口内的 token 吞吐
+ * <p>
+ * 窗口按秒分桶循环复用，只统计 Ollama 报告了 token 数和耗时的调用（非流式调用和读到最后一块的流式调用）。
+ * 给出三种速率：生成速度（completion tokens / eval 耗时）、提示词编码速度（prompt tokens / prompt_eval 耗时）、
+ * 窗口内的输出吞吐（completion tokens / 窗口秒数）。平均提示词 token 数持续上涨说明提示词在膨胀。
+ * 模型加载耗时超过 coldLoadThreshold 记为一次冷加载。
+ */
+@Component
+public class ThroughputTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(ThroughputTracker.class);
+
+    private final int windowSeconds;
+    private final long coldLoadThresholdNanos;
+    private final AgentMetrics metrics;
+
+    // "模型@节点" -> 滚动窗口
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    public ThroughputTracker(AgentProperties properties, AgentMetrics metrics) {
+        AgentProperties.Usage usage = properties.getUsage();
+        this.windowSeconds = (int) Math.max(1, usage.getWindow().getSeconds());
+        this.coldLoadThresholdNanos = usage.getColdLoadThreshold().toNanos();
+        this.metrics = metrics;
+    }
+
+    /**
+     * 记录一次调用，backend 为实际处理请求的节点名称
+     */
+    public void record(String backend, LlmResult result) {
+        if (!result.isReported()) {
+            return;
+        }
+
+        boolean coldLoad = result.getLoadDurationNanos() > coldLoadThresholdNanos;
+        if (coldLoad) {
+            log.warn("模型冷加载: {} 节点 {} 加载耗时 {}ms", result.getModel(), backend,
+                    result.getLoadDurationNanos() / 1_000_000);
+            metrics.recordColdLoad(result.getModel(), backend);
+        }
+
+        windows.computeIfAbsent(result.getModel() + "@" + backend, key -> new Window(windowSeconds))
+                .add(currentSecond(), result, coldLoad);
+    }
+
+    private static long currentSecond() {
+        return System.nanoTime() / 1_000_000_000L;
+    }
+
+    /**
+     * 各模型、节点在窗口内的吞吐
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> models = new TreeMap<>();
+        long now = currentSecond();
+        windows.forEach((key, window) -> models.put(key, window.snapshot(now)));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("windowSeconds", windowSeconds);
+        stats.put("coldLoadThresholdMs", coldLoadThresholdNanos / 1_000_000);
+        stats.put("models", models);
+        return stats;
+    }
+
+    /**
+     * 一个模型、节点的按秒分桶的滚动窗口
+     */
+    private static class Window {
+        private final long[] seconds;
+        private final long[] requests;
+        private final long[] promptTokens;
+        private final long[] completionTokens;
+        private final long[] promptEvalNanos;
+        private final long[] evalNanos;
+        private final long[] coldLoads;
+
+        // 最近一次冷加载，不随窗口滚动清零
+        private long lastColdLoadMs;
+        private long lastColdLoadAt;
+
+        private Window(int size) {
+            seconds = new long[size];
+            requests = new long[size];
+            promptTokens = new long[size];
+            completionTokens = new long[size];
+            promptEvalNanos = new long[size];
+            evalNanos = new long[size];
+            coldLoads = new long[size];
+            Arrays.fill(seconds, -1);
+        }
+
+        private synchronized void add(long second, LlmResult result, boolean coldLoad) {
+            int slot = (int) Math.floorMod(second, (long) seconds.length);
+            if (seconds[slot] != second) {
+                // 桶里是上一轮的数据，清零后复用
+                seconds[slot] = second;
+                requests[slot] = 0;
+                promptTokens[slot] = 0;
+                completionTokens[slot] = 0;
+                promptEvalNanos[slot] = 0;
+                evalNanos[slot] = 0;
+                coldLoads[slot] = 0;
+            }
+            requests[slot]++;
+            promptTokens[slot] += result.getPromptTokens();
+            completionTokens[slot] += result.getCompletionTokens();
+            promptEvalNanos[slot] += result.getPromptEvalNanos();
+            evalNanos[slot] += result.getEvalNanos();
+            if (coldLoad) {
+                coldLoads[slot]++;
+                lastColdLoadMs = result.getLoadDurationNanos() / 1_000_000;
+                lastColdLoadAt = System.currentTimeMillis();
+            }
+        }
+
+        private synchronized Map<String, Object> snapshot(long now) {
+            long totalRequests = 0;
+            long totalPrompt = 0;
+            long totalCompletion = 0;
+            long totalPromptEval = 0;
+            long totalEval = 0;
+            long totalColdLoads = 0;
+            for (int i = 0; i < seconds.length; i++) {
+                if (seconds[i] < 0 || now - seconds[i] >= seconds.length) continue;
+                totalRequests += requests[i];
+                totalPrompt += promptTokens[i];
+                totalCompletion += completionTokens[i];
+                totalPromptEval += promptEvalNanos[i];
+                totalEval += evalNanos[i];
+                totalColdLoads += coldLoads[i];
+            }
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("requests", totalRequests);
+            stats.put("promptTokens", totalPrompt);
+            stats.put("completionTokens", totalCompletion);
+            stats.put("generationTokensPerSecond", rate(totalCompletion, totalEval));
+            stats.put("promptTokensPerSecond", rate(totalPrompt, totalPromptEval));
+            stats.put("outputTokensPerSecond", round((double) totalCompletion / seconds.length));
+            stats.put("avgPromptTokens", totalRequests == 0 ? 0.0 : round((double) totalPrompt / totalRequests));
+            stats.put("coldLoads", totalColdLoads);
+            if (lastColdLoadAt > 0) {
+                stats.put("lastColdLoadMs", lastColdLoadMs);
+                stats.put("lastColdLoadAt", lastColdLoadAt);
+            }
+            return stats;
+        }
+
+        private static double rate(long tokens, long nanos) {
+            return nanos == 0 ? 0.0 : round(tokens * 1e9 / nanos);
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 10) / 10.0;
+        }
+    }
+}
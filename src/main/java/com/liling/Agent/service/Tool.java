@@ -1,6 +1,12 @@
 package com.liling.Agent.service;
 
+import com.liling.Agent.utils.InterruptibleFuture;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * 工具接口
@@ -10,4 +16,73 @@ public interface Tool {
     String getName();
     String getDescription();
     String execute(Map<String, String> parameters);
+
+    /**
+     * 工具名之外模型可能使用的名称，例如 calculator 的 "calc"；大小写、分隔符和
+     * getXxx、xxxTool 写法由 ToolNameNormalizer 自动处理，不需要列出
+     */
+    default List<String> getAliases() {
+        return List.of();
+    }
+
+    /**
+     * 超时、并发上限、是否幂等 / 可缓存等执行属性
+     */
+    default ToolMetadata getMetadata() {
+        return ToolMetadata.DEFAULT;
+    }
+
+    /**
+     * 异步执行。默认在 executor 上调用同步的 execute，取消时中断执行线程；
+     * 自带异步客户端的工具可以覆盖它，直接返回客户端的 future
+     */
+    default CompletableFuture<String> executeAsync(Map<String, String> parameters, Executor executor) {
+        return InterruptibleFuture.supplyAsync(() -> execute(parameters), executor);
+    }
+
+    /**
+     * 是否实现了真正的批量执行；为 false 时同一批里的多次调用逐个执行
+     */
+    default boolean supportsBatch() {
+        return false;
+    }
+
+    /**
+     * 批量执行，结果与参数一一对应。默认逐个调用 execute
+     */
+    default List<String> executeBatch(List<Map<String, String>> parameterList) {
+        List<String> results = new ArrayList<>(parameterList.size());
+        for (Map<String, String> parameters : parameterList) {
+            results.add(execute(parameters));
+        }
+        return results;
+    }
+
+    /**
+     * 分类提示词里的调用规则，说明什么时候应该用这个工具；为空时不单独列规则
+     */
+    default String getUsageHint() {
+        return null;
+    }
+
+    /**
+     * 工具结果的回复方式，默认交给 LLM 改写；结果本身已经能直接回答问题的工具应声明 TEMPLATED 或 RAW
+     */
+    default ToolResponseMode getResponseMode() {
+        return ToolResponseMode.LLM_REPHRASE;
+    }
+
+    /**
+     * TEMPLATED 模式下按用户语言（zh / en）把工具结果套进回复模板，默认原样返回
+     */
+    default String formatResponse(Map<String, String> parameters, String rawResult, String language) {
+        return rawResult;
+    }
+
+    /**
+     * 调用计划中后续调用用 {{id}} 引用本次结果时替换进去的值，默认是完整结果
+     */
+    default String resultValue(String rawResult) {
+        return rawResult;
+    }
 }
@@ -0,0 +1,215 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.model.ToolCall;
+import com.liling.Agent.model.ToolDecision;
+import com.liling.Agent.utils.TtlLruCache;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 工具决策缓存：以规范化后的用户消息为键，缓存 LLM 给出的 ToolDecision
+ * <p>
+ * 规范化包括去首尾空白、合并空白、全角转半角、转小写、去掉句末标点。
+ * 如果决策参数里的数字都能一一对应到消息里的数字（例如 "3+4等于多少" -> expression=3+4），
+ * 就把数字抽象成占位符再缓存，这样 "5+6等于多少" 也能命中并替换成新的数字；
+ * 对应不上的决策只按原文精确缓存。
+ */
+@Component
+public class ToolDecisionCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern NUMBER = Pattern.compile("\\d+(?:\\.\\d+)?");
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[?!.。？！~～]+$");
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{#(\\d+)}}");
+
+    private static final String EXACT_PREFIX = "e:";
+    private static final String TEMPLATE_PREFIX = "n:";
+
+    private final boolean enabled;
+    private final TtlLruCache<String, ToolDecision> cache;
+
+    // 一次查询可能依次查精确键和数字模板键，命中率按查询次数单独统计
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ToolDecisionCache(AgentProperties properties) {
+        AgentProperties.DecisionCache config = properties.getDecisionCache();
+        this.enabled = config.isEnabled();
+        this.cache = new TtlLruCache<>(config.getMaxSize(), config.getTtl());
+    }
+
+    /**
+     * 查询缓存，命中时返回一份独立的决策副本
+     */
+    public ToolDecision get(String userMessage) {
+        if (!enabled || userMessage == null) return null;
+
+        String normalized = normalize(userMessage);
+
+        ToolDecision exact = cache.get(EXACT_PREFIX + normalized);
+        if (exact != null) {
+            hits.incrementAndGet();
+            return copy(exact, List.of());
+        }
+
+        List<String> numbers = extractNumbers(normalized);
+        ToolDecision template = numbers.isEmpty() ? null : cache.get(TEMPLATE_PREFIX + abstractNumbers(normalized));
+        if (template != null) {
+            hits.incrementAndGet();
+            return copy(template, numbers);
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 写入缓存，只应写入已经校验通过的决策
+     */
+    public void put(String userMessage, ToolDecision decision) {
+        if (!enabled || userMessage == null || decision == null) return;
+
+        String normalized = normalize(userMessage);
+        List<String> numbers = extractNumbers(normalized);
+
+        // 多工具调用计划只按原文精确缓存
+        boolean plan = decision.getToolCalls() != null && !decision.getToolCalls().isEmpty();
+        ToolDecision template = numbers.isEmpty() || plan ? null : toTemplate(decision, numbers);
+        if (template != null) {
+            cache.put(TEMPLATE_PREFIX + abstractNumbers(normalized), template);
+        } else {
+            cache.put(EXACT_PREFIX + normalized, copy(decision, List.of()));
+        }
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.putAll(cache.getStats());
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+        return stats;
+    }
+
+    /**
+     * 规范化用户消息
+     */
+    String normalize(String message) {
+        String normalized = Normalizer.normalize(message, Normalizer.Form.NFKC).trim();
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ");
+        normalized = TRAILING_PUNCTUATION.matcher(normalized).replaceAll("");
+        return normalized.toLowerCase(Locale.ROOT);
+    }
+
+    private String abstractNumbers(String normalized) {
+        return NUMBER.matcher(normalized).replaceAll("#");
+    }
+
+    private List<String> extractNumbers(String text) {
+        List<String> numbers = new ArrayList<>();
+        Matcher matcher = NUMBER.matcher(text);
+        while (matcher.find()) {
+            numbers.add(matcher.group());
+        }
+        return numbers;
+    }
+
+    /**
+     * 把决策参数中的数字替换成消息数字的位置占位符；
+     * 消息里有重复数字或参数里出现消息中没有的数字时无法安全抽象，返回 null
+     */
+    private ToolDecision toTemplate(ToolDecision decision, List<String> numbers) {
+        if (new HashSet<>(numbers).size() != numbers.size()) {
+            return null;
+        }
+
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < numbers.size(); i++) {
+            positions.put(numbers.get(i), i);
+        }
+
+        Map<String, String> parameters = new HashMap<>();
+        if (decision.getParameters() != null) {
+            for (Map.Entry<String, String> entry : decision.getParameters().entrySet()) {
+                String templated = templatize(entry.getValue(), positions, true);
+                if (templated == null) {
+                    return null;
+                }
+                parameters.put(entry.getKey(), templated);
+            }
+        }
+
+        String reasoning = templatize(decision.getReasoning(), positions, false);
+        return new ToolDecision(decision.isNeedsTool(), decision.getToolName(), parameters, reasoning);
+    }
+
+    private String templatize(String value, Map<String, Integer> positions, boolean strict) {
+        if (value == null) return null;
+
+        Matcher matcher = NUMBER.matcher(value);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            Integer position = positions.get(matcher.group());
+            if (position == null) {
+                if (strict) return null;
+                matcher.appendReplacement(result, Matcher.quoteReplacement(matcher.group()));
+            } else {
+                matcher.appendReplacement(result, "{{#" + position + "}}");
+            }
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    private ToolDecision copy(ToolDecision source, List<String> numbers) {
+        Map<String, String> parameters = new HashMap<>();
+        if (source.getParameters() != null) {
+            for (Map.Entry<String, String> entry : source.getParameters().entrySet()) {
+                parameters.put(entry.getKey(), fill(entry.getValue(), numbers));
+            }
+        }
+        ToolDecision copy = new ToolDecision(source.isNeedsTool(), source.getToolName(), parameters,
+                fill(source.getReasoning(), numbers));
+        if (source.getToolCalls() != null) {
+            List<ToolCall> calls = new ArrayList<>();
+            for (ToolCall call : source.getToolCalls()) {
+                calls.add(call.copy());
+            }
+            copy.setToolCalls(calls);
+        }
+        return copy;
+    }
+
+    private String fill(String value, List<String> numbers) {
+        if (value == null || numbers.isEmpty()) return value;
+
+        Matcher matcher = PLACEHOLDER.matcher(value);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            int position = Integer.parseInt(matcher.group(1));
+            matcher.appendReplacement(result, Matcher.quoteReplacement(numbers.get(position)));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+}
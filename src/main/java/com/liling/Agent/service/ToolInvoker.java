@@ -0,0 +1,271 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.exception.ToolRejectedException;
+import com.liling.Agent.utils.AgentMetrics;
+import com.liling.Agent.utils.InterruptibleFuture;
+import com.liling.Agent.utils.LatencyRecorder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 按工具元数据执行工具调用
+ * <p>
+ * 每个工具一个隔离舱（信号量），并发数达到上限时新调用立即被拒绝，慢工具不会占满共享的 toolExecutor；
+ * 许可在工具真正结束时才归还，超时后仍在运行的调用继续计入并发。超时后取消调用并中断执行线程；
+ * 幂等工具执行抛出异常时重试一次。
+ */
+@Component
+public class ToolInvoker {
+
+    @Autowired
+    private AgentProperties agentProperties;
+
+    @Autowired
+    @Qualifier("toolExecutor")
+    private ExecutorService toolExecutor;
+
+    @Autowired
+    private AgentMetrics metrics;
+
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * 异步执行一次调用，超时、被拒绝或失败时 future 以对应异常结束
+     */
+    public CompletableFuture<String> invoke(Tool tool, Map<String, String> parameters) {
+        return run(tool, () -> tool.executeAsync(parameters, toolExecutor), false);
+    }
+
+    /**
+     * 一次批量执行，只占用一个并发许可；结果与参数一一对应
+     */
+    public CompletableFuture<List<String>> invokeBatch(Tool tool, List<Map<String, String>> parameterList) {
+        return run(tool, () -> InterruptibleFuture.supplyAsync(() -> {
+            List<String> results = tool.executeBatch(parameterList);
+            if (results == null || results.size() != parameterList.size()) {
+                throw new IllegalStateException("批量执行返回的结果数与调用数不一致");
+            }
+            return results;
+        }, toolExecutor), true);
+    }
+
+    /**
+     * 同步执行一次调用，失败时返回错误说明
+     */
+    public String invokeAndWait(Tool tool, Map<String, String> parameters) {
+        try {
+            return invoke(tool, parameters).get();
+        } catch (ExecutionException e) {
+            return describeFailure(tool.getName(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "错误：工具执行被中断";
+        }
+    }
+
+    /**
+     * 超时：配置中按工具名的覆盖 > 工具声明 > 全局默认
+     */
+    public Duration timeoutFor(Tool tool) {
+        AgentProperties.Tools config = agentProperties.getTools();
+        Duration override = config.getTimeouts().get(tool.getName());
+        if (override != null) return override;
+
+        Duration declared = tool.getMetadata().getTimeout();
+        return declared != null ? declared : config.getTimeout();
+    }
+
+    /**
+     * 把调用失败的原因转换成返回给用户的错误说明
+     */
+    public String describeFailure(String toolName, Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof TimeoutException) {
+            return "错误：工具执行超时 - " + toolName;
+        }
+        if (cause instanceof ToolRejectedException) {
+            return "错误：工具繁忙，请稍后重试 - " + toolName;
+        }
+        if (cause instanceof CancellationException) {
+            return "错误：工具执行被取消 - " + toolName;
+        }
+        return "错误：工具执行失败 - " + cause.getMessage();
+    }
+
+    private <T> CompletableFuture<T> run(Tool tool, Supplier<CompletableFuture<T>> attempt, boolean batch) {
+        Bulkhead bulkhead = bulkheadFor(tool);
+        if (!bulkhead.tryAcquire()) {
+            metrics.recordToolRejected(tool.getName());
+            return CompletableFuture.failedFuture(new ToolRejectedException(
+                    "工具 " + tool.getName() + " 并发已达上限 " + bulkhead.limit));
+        }
+        if (batch) {
+            bulkhead.batches.incrementAndGet();
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<T>> current = new AtomicReference<>();
+        // 超时或被调用方取消时，取消正在执行的那次尝试
+        result.whenComplete((value, error) -> {
+            metrics.recordToolExecution(tool.getName(), outcomeOf(error), System.nanoTime() - start);
+            CompletableFuture<T> running = current.get();
+            if (error != null && running != null && !running.isDone()) {
+                if (unwrap(error) instanceof TimeoutException) {
+                    bulkhead.timeouts.incrementAndGet();
+                }
+                running.cancel(true);
+            }
+        });
+        result.orTimeout(timeoutFor(tool).toNanos(), TimeUnit.NANOSECONDS);
+
+        attempt(attempt, result, current, tool.getMetadata().isIdempotent() ? 1 : 0, bulkhead, start);
+        return result;
+    }
+
+    private static String outcomeOf(Throwable error) {
+        if (error == null) return "success";
+        Throwable cause = unwrap(error);
+        if (cause instanceof TimeoutException) return "timeout";
+        if (cause instanceof CancellationException) return "cancelled";
+        return "error";
+    }
+
+    private <T> void attempt(Supplier<CompletableFuture<T>> attempt, CompletableFuture<T> result,
+                             AtomicReference<CompletableFuture<T>> current, int retries, Bulkhead bulkhead,
+                             long start) {
+        CompletableFuture<T> running;
+        try {
+            running = attempt.get();
+        } catch (RuntimeException e) {
+            // 例如 toolExecutor 已关闭时的 RejectedExecutionException
+            running = CompletableFuture.failedFuture(e);
+        }
+        current.set(running);
+        if (result.isDone()) {
+            running.cancel(true);
+        }
+
+        CompletableFuture<T> attempted = running;
+        running.whenComplete((value, error) -> {
+            if (error == null) {
+                bulkhead.finish(attempted, start, true);
+                result.complete(value);
+                return;
+            }
+
+            Throwable cause = unwrap(error);
+            if (retries > 0 && !result.isDone() && !(cause instanceof CancellationException)) {
+                bulkhead.retries.incrementAndGet();
+                attempt(attempt, result, current, retries - 1, bulkhead, start);
+                return;
+            }
+            bulkhead.finish(attempted, start, false);
+            result.completeExceptionally(cause);
+        });
+    }
+
+    private Bulkhead bulkheadFor(Tool tool) {
+        return bulkheads.computeIfAbsent(tool.getName(), name -> {
+            Integer override = agentProperties.getTools().getMaxConcurrency().get(name);
+            return new Bulkhead(override != null ? override : tool.getMetadata().getMaxConcurrency());
+        });
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * 各工具的并发和执行统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        bulkheads.forEach((name, bulkhead) -> stats.put(name, bulkhead.getStats()));
+        return stats;
+    }
+
+    /**
+     * 单个工具的隔离舱，limit 为 0 时不限并发，只做统计
+     */
+    private static class Bulkhead {
+        private final int limit;
+        private final Semaphore permits;
+        private final AtomicLong inFlight = new AtomicLong();
+
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final LatencyRecorder latency = new LatencyRecorder();
+
+        private Bulkhead(int limit) {
+            this.limit = Math.max(0, limit);
+            this.permits = this.limit > 0 ? new Semaphore(this.limit) : null;
+        }
+
+        private boolean tryAcquire() {
+            calls.incrementAndGet();
+            if (permits != null && !permits.tryAcquire()) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            inFlight.incrementAndGet();
+            return true;
+        }
+
+        /**
+         * 记录最后一次尝试的耗时，许可等执行线程真正退出后才归还：
+         * 超时被取消的调用可能还阻塞在不响应中断的 I/O 上，仍然占着一个并发
+         */
+        private void finish(CompletableFuture<?> attempt, long start, boolean success) {
+            latency.record(System.nanoTime() - start, success);
+            InterruptibleFuture.whenFinished(attempt).whenComplete((ignored, error) -> {
+                inFlight.decrementAndGet();
+                if (permits != null) {
+                    permits.release();
+                }
+            });
+        }
+
+
+        private Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("maxConcurrency", limit == 0 ? "unlimited" : limit);
+            stats.put("inFlight", inFlight.get());
+            stats.put("calls", calls.get());
+            stats.put("batches", batches.get());
+            stats.put("rejected", rejected.get());
+            stats.put("timeouts", timeouts.get());
+            stats.put("retries", retries.get());
+            stats.put("latency", latency.getStats());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.liling.Agent.service;
+
+import java.time.Duration;
+
+/**
+ * 工具的声明式执行属性，由 IntelligentToolService 统一执行
+ */
+public class ToolMetadata {
+
+    /**
+     * 没有特别声明的工具：使用全局默认超时，不限并发，不可重试，不缓存结果
+     */
+    public static final ToolMetadata DEFAULT = new ToolMetadata(null, 0, false, Duration.ZERO, 0);
+
+    // 单次调用超时，为 null 时使用 agent.tools.timeout
+    private final Duration timeout;
+
+    // 同时执行的最大调用数（隔离舱），0 表示不限
+    private final int maxConcurrency;
+
+    // 没有副作用，失败后可以安全重试
+    private final boolean idempotent;
+
+    // 结果缓存有效期：null 表示永不过期（纯函数），零表示不缓存
+    private final Duration cacheTtl;
+
+    // 结果缓存最多保存的参数组合数，0 表示不缓存
+    private final int cacheMaxSize;
+
+    public ToolMetadata(Duration timeout, int maxConcurrency, boolean idempotent,
+                        Duration cacheTtl, int cacheMaxSize) {
+        this.timeout = timeout;
+        this.maxConcurrency = maxConcurrency;
+        this.idempotent = idempotent;
+        this.cacheTtl = cacheTtl;
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    public Duration getTimeout() { return timeout; }
+    public int getMaxConcurrency() { return maxConcurrency; }
+    public boolean isIdempotent() { return idempotent; }
+    public Duration getCacheTtl() { return cacheTtl; }
+    public int getCacheMaxSize() { return cacheMaxSize; }
+
+    /**
+     * 相同参数的结果在有效期内不变，可以缓存
+     */
+    public boolean isCacheable() {
+        return cacheMaxSize > 0 && (cacheTtl == null || (!cacheTtl.isZero() && !cacheTtl.isNegative()));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ToolMetadata{timeout=%s, maxConcurrency=%d, idempotent=%s, cacheTtl=%s, cacheMaxSize=%d}",
+                timeout, maxConcurrency, idempotent, cacheTtl == null ? "forever" : cacheTtl, cacheMaxSize);
+    }
+}
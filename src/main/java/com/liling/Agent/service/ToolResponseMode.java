@@ -0,0 +1,22 @@
+package com.liling.Agent.service;
+
+/**
+ * 工具结果如何变成给用户的最终回复
+ */
+public enum ToolResponseMode {
+
+    /**
+     * 直接返回工具结果
+     */
+    RAW,
+
+    /**
+     * 用工具自带的本地模板按用户语言组织回复，不调用 LLM
+     */
+    TEMPLATED,
+
+    /**
+     * 把工具结果交给 LLM 改写成自然语言回复
+     */
+    LLM_REPHRASE
+}
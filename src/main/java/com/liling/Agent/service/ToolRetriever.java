@@ -0,0 +1,302 @@
+package com.liling.Agent.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.exception.EmbeddingUnavailableException;
+import com.liling.Agent.utils.IvfFlatIndex;
+import com.liling.Agent.utils.LatencyRecorder;
+import com.liling.Agent.utils.TtlLruCache;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 工具检索：启动时为每个工具的名称、描述和使用说明计算一次向量，按消息向量检索最相关的 topK 个工具，
+ * 分类提示词只列出这些工具，提示词长度不再随工具数量线性增长
+ * <p>
+ * 工具数少于 minCatalogSize、没有可用的向量化实现、索引尚未建立或消息向量计算失败时返回 null，
+ * 调用方使用完整的工具列表。索引在后台线程上建立，失败后每隔 retryInterval 重试，请求线程从不等待建索引。
+ */
+@Component
+public class ToolRetriever {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolRetriever.class);
+
+    // 标注数据：每条消息应当检索到的工具
+    private static final String EVALUATION_SET = "tool-retrieval-eval.json";
+
+    private final List<Tool> tools;
+    private final EmbeddingProvider embeddingProvider;
+    private final AgentProperties.ToolRetrieval config;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 索引建好后整体替换，检索时不加锁
+    private volatile IvfFlatIndex index;
+    private volatile Tool[] toolsBySlot;
+
+    // 建立索引要为每个工具调用一次向量服务，只在这个线程上进行
+    private final ScheduledExecutorService indexBuilder =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("tool-index-"));
+
+    private final TtlLruCache<String, float[]> recentEmbeddings = new TtlLruCache<>(256, Duration.ofMinutes(1));
+
+    private final AtomicLong retrievals = new AtomicLong();
+    private final AtomicLong fullCatalogFallbacks = new AtomicLong();
+    private final AtomicLong embeddingFailures = new AtomicLong();
+    private final LatencyRecorder retrievalLatency = new LatencyRecorder();
+
+    public ToolRetriever(List<Tool> tools, ObjectProvider<EmbeddingProvider> embeddingProviders,
+                         AgentProperties properties) {
+        this.tools = tools;
+        this.embeddingProvider = embeddingProviders.getIfAvailable();
+        this.config = properties.getToolRetrieval();
+    }
+
+    /**
+     * 是否按消息检索工具；为 false 时分类提示词总是包含完整工具列表
+     */
+    public boolean isActive() {
+        return config.isEnabled() && embeddingProvider != null && tools.size() >= config.getMinCatalogSize();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIndexOnStartup() {
+        if (isActive()) {
+            indexBuilder.execute(this::buildIndexOrRetry);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexBuilder.shutdownNow();
+    }
+
+    /**
+     * 为消息挑选最相关的 topK 个工具，按名称排序；不使用检索时返回 null
+     */
+    public List<Tool> select(String message) {
+        if (!isActive() || tools.size() <= config.getTopK()) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        List<Tool> selected = search(message, config.getTopK());
+        // 分簇索引扫描的簇里可能一个工具都没有，提示词里不能没有工具
+        if (selected == null || selected.isEmpty()) {
+            fullCatalogFallbacks.incrementAndGet();
+            return null;
+        }
+
+        selected.sort(Comparator.comparing(Tool::getName));
+        retrievals.incrementAndGet();
+        retrievalLatency.record(System.nanoTime() - start, true);
+        return selected;
+    }
+
+    /**
+     * 用标注数据评估检索效果：recall@k 为标注工具出现在前 k 个结果中的比例（按消息取平均）。
+     * 向量化服务或索引不可用时抛出 EmbeddingUnavailableException
+     */
+    public Map<String, Object> evaluate(int maxK) throws IOException {
+        List<LabelledMessage> examples = loadEvaluationSet();
+        if (embeddingProvider == null) {
+            throw new EmbeddingUnavailableException("没有可用的向量化实现");
+        }
+
+        int limit = Math.max(1, Math.min(maxK, tools.size()));
+        double[] recallSums = new double[limit + 1];
+        int evaluated = 0;
+        List<Map<String, Object>> misses = new ArrayList<>();
+        for (LabelledMessage example : examples) {
+            if (example.tools == null || example.tools.isEmpty()) continue;
+
+            List<Tool> ranked = search(example.message, limit);
+            if (ranked == null) {
+                throw new EmbeddingUnavailableException("工具向量索引尚未建立或消息向量计算失败");
+            }
+            evaluated++;
+
+            List<String> rankedNames = new ArrayList<>();
+            for (Tool tool : ranked) {
+                rankedNames.add(tool.getName());
+            }
+            for (int k = 1; k <= limit; k++) {
+                Set<String> topK = Set.copyOf(rankedNames.subList(0, Math.min(k, rankedNames.size())));
+                long found = example.tools.stream().filter(topK::contains).count();
+                recallSums[k] += (double) found / example.tools.size();
+            }
+            if (rankedNames.isEmpty() || !rankedNames.containsAll(example.tools)
+                    || !example.tools.contains(rankedNames.get(0))) {
+                Map<String, Object> miss = new LinkedHashMap<>();
+                miss.put("message", example.message);
+                miss.put("expected", example.tools);
+                miss.put("ranked", rankedNames);
+                misses.add(miss);
+            }
+        }
+
+        Map<String, Object> recall = new LinkedHashMap<>();
+        for (int k = 1; k <= limit; k++) {
+            recall.put("recall@" + k, evaluated == 0 ? 0.0 : recallSums[k] / evaluated);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("catalogSize", tools.size());
+        result.put("examples", evaluated);
+        result.put("recall", recall);
+        result.put("imperfect", misses);
+        return result;
+    }
+
+    /**
+     * 检索前 k 个工具（按相似度从高到低），索引或消息向量不可用时返回 null
+     */
+    private List<Tool> search(String message, int k) {
+        IvfFlatIndex current = index;
+        if (current == null) {
+            return null;
+        }
+
+        float[] vector = embed(message);
+        if (vector == null || vector.length != current.getDimension()) {
+            return null;
+        }
+
+        Tool[] slots = toolsBySlot;
+        List<Tool> result = new ArrayList<>(k);
+        for (IvfFlatIndex.Match match : current.search(vector, k)) {
+            result.add(slots[match.getSlot()]);
+        }
+        return result;
+    }
+
+    /**
+     * 建立索引，失败时 retryInterval 后在同一线程上重试
+     */
+    private void buildIndexOrRetry() {
+        if (buildIndex()) {
+            return;
+        }
+        try {
+            indexBuilder.schedule(this::buildIndexOrRetry,
+                    config.getRetryInterval().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 应用正在关闭
+        }
+    }
+
+    /**
+     * 为所有工具计算向量并建立索引，只在 indexBuilder 线程上调用
+     */
+    private boolean buildIndex() {
+        long start = System.nanoTime();
+        try {
+            IvfFlatIndex built = null;
+            Tool[] slots = new Tool[tools.size()];
+            // 几十个向量以内索引直接全量扫描，更多时才分簇
+            int lists = Math.max(1, tools.size() / 64);
+            for (Tool tool : tools) {
+                float[] vector = embeddingProvider.embed(describe(tool));
+                if (built == null) {
+                    built = new IvfFlatIndex(vector.length, tools.size(), lists, Math.max(1, lists / 2));
+                }
+                int slot = built.add(vector);
+                if (slot >= 0) {
+                    slots[slot] = tool;
+                }
+            }
+
+            toolsBySlot = slots;
+            index = built;
+            log.info("工具向量索引已建立: {} 个工具, 耗时 {}ms", tools.size(), (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (Exception e) {
+            log.warn("建立工具向量索引失败，{} 后重试，暂时使用完整工具列表: {}",
+                    config.getRetryInterval(), e.getMessage());
+            return false;
+        }
+    }
+
+    private String describe(Tool tool) {
+        StringBuilder text = new StringBuilder(tool.getName()).append(": ").append(tool.getDescription());
+        if (tool.getUsageHint() != null) {
+            text.append("。").append(tool.getUsageHint());
+        }
+        if (!tool.getAliases().isEmpty()) {
+            text.append("。别名: ").append(String.join(", ", tool.getAliases()));
+        }
+        return text.toString();
+    }
+
+    private float[] embed(String message) {
+        String key = message.trim();
+        float[] cached = recentEmbeddings.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            float[] vector = embeddingProvider.embed(key);
+            recentEmbeddings.put(key, vector);
+            return vector;
+        } catch (Exception e) {
+            embeddingFailures.incrementAndGet();
+            log.warn("计算消息向量失败，使用完整工具列表: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private List<LabelledMessage> loadEvaluationSet() throws IOException {
+        try (InputStream input = new ClassPathResource(EVALUATION_SET).getInputStream()) {
+            return objectMapper.readValue(input, new TypeReference<List<LabelledMessage>>() {});
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", isActive());
+        stats.put("catalogSize", tools.size());
+        stats.put("topK", config.getTopK());
+        stats.put("indexed", index != null);
+        stats.put("retrievals", retrievals.get());
+        stats.put("fullCatalogFallbacks", fullCatalogFallbacks.get());
+        stats.put("embeddingFailures", embeddingFailures.get());
+        stats.put("latency", retrievalLatency.getStats());
+        return stats;
+    }
+
+    /**
+     * 一条标注数据
+     */
+    public static class LabelledMessage {
+        private String message;
+        private List<String> tools;
+
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
+
+        public List<String> getTools() { return tools; }
+        public void setTools(List<String> tools) { this.tools = tools; }
+    }
+}
@@ -1,12 +1,35 @@
 package com.liling.Agent.service.impl;
 
+import com.liling.Agent.exception.ExpressionException;
 import com.liling.Agent.service.Tool;
+import com.liling.Agent.service.ToolMetadata;
+import com.liling.Agent.service.ToolResponseMode;
+import com.liling.Agent.utils.ExpressionEngine;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 public class CalculatorTool implements Tool {
+
+    // 纯计算：结果只取决于表达式，可以重试，缓存永不过期
+    private static final ToolMetadata METADATA = new ToolMetadata(Duration.ofSeconds(2), 0, true, null, 10_000);
+
+    private static final String RESULT_PREFIX = "计算结果: ";
+    private static final String DECIMAL_MODE = "decimal";
+    private static final Set<String> RESERVED_PARAMETERS = Set.of("expression", "mode");
+
+    @Autowired
+    private ExpressionEngine expressionEngine;
+
     @Override
     public String getName() {
         return "calculator";
@@ -14,7 +37,61 @@ public class CalculatorTool implements Tool {
 
     @Override
     public String getDescription() {
-        return "执行数学计算，支持加减乘除等运算";
+        return "执行数学计算，支持四则运算、括号、乘方、变量和 sqrt、pow、log 等函数";
+    }
+
+    @Override
+    public String getUsageHint() {
+        return "当用户提到数字、计算、算术、数学问题时使用";
+    }
+
+    @Override
+    public List<String> getAliases() {
+        return List.of("calc", "calculation");
+    }
+
+    @Override
+    public ToolMetadata getMetadata() {
+        return METADATA;
+    }
+
+    @Override
+    public ToolResponseMode getResponseMode() {
+        return ToolResponseMode.TEMPLATED;
+    }
+
+    @Override
+    public String formatResponse(Map<String, String> parameters, String rawResult, String language) {
+        // 出错时的提示原样返回
+        int separator = rawResult.lastIndexOf(" = ");
+        if (!rawResult.startsWith(RESULT_PREFIX) || separator < 0) {
+            return rawResult;
+        }
+
+        String expression = rawResult.substring(RESULT_PREFIX.length(), separator);
+        String value = resultValue(rawResult);
+        if (!DECIMAL_MODE.equalsIgnoreCase(parameters == null ? null : parameters.get("mode"))) {
+            value = rounded(value);
+        }
+        if ("en".equals(language)) {
+            return String.format("%s = %s", expression, value);
+        }
+        return String.format("%s 的计算结果是 %s。", expression, value);
+    }
+
+    @Override
+    public String resultValue(String rawResult) {
+        int separator = rawResult.lastIndexOf(" = ");
+        if (!rawResult.startsWith(RESULT_PREFIX) || separator < 0) {
+            return rawResult;
+        }
+        String value = rawResult.substring(separator + 3);
+        try {
+            return new BigDecimal(value).stripTrailingZeros().toPlainString();
+        } catch (NumberFormatException e) {
+            // NaN、Infinity 等不是十进制数的结果
+            return value;
+        }
     }
 
     @Override
@@ -25,36 +102,70 @@ public class CalculatorTool implements Tool {
                 return "错误：未提供计算表达式";
             }
 
-            // 简单的表达式计算（生产环境应该使用更安全的计算库）
-            double result = evaluateExpression(expression);
-            return String.format("计算结果: %s = %.2f", expression, result);
+            // mode=decimal 时按十进制精确计算，例如 0.1+0.2 得到 0.3
+            if (DECIMAL_MODE.equalsIgnoreCase(parameters.get("mode"))) {
+                BigDecimal result = expressionEngine.evaluateDecimal(expression, decimalVariables(parameters),
+                        MathContext.DECIMAL64);
+                return RESULT_PREFIX + expression + " = " + result.stripTrailingZeros().toPlainString();
+            }
+
+            // 原始结果保留完整精度，调用计划中引用它的后续计算不会累积舍入误差；
+            // 两位小数只在 formatResponse 生成给用户的回复时使用
+            double result = expressionEngine.evaluate(expression, variables(parameters));
+            return RESULT_PREFIX + expression + " = " + BigDecimal.valueOf(result).stripTrailingZeros().toPlainString();
 
         } catch (Exception e) {
             return "计算错误: " + e.getMessage();
         }
     }
 
-    private double evaluateExpression(String expression) {
-        // 移除空格
-        expression = expression.replaceAll("\\s+", "");
-
-        // 简单的四则运算解析
-        if (expression.contains("+")) {
-            String[] parts = expression.split("\\+");
-            return Double.parseDouble(parts[0]) + Double.parseDouble(parts[1]);
-        } else if (expression.contains("-")) {
-            String[] parts = expression.split("-");
-            return Double.parseDouble(parts[0]) - Double.parseDouble(parts[1]);
-        } else if (expression.contains("*")) {
-            String[] parts = expression.split("\\*");
-            return Double.parseDouble(parts[0]) * Double.parseDouble(parts[1]);
-        } else if (expression.contains("/")) {
-            String[] parts = expression.split("/");
-            double divisor = Double.parseDouble(parts[1]);
-            if (divisor == 0) throw new ArithmeticException("除数不能为零");
-            return Double.parseDouble(parts[0]) / divisor;
-        } else {
-            return Double.parseDouble(expression);
+    /**
+     * 回复中的数值保留两位小数，去掉末尾的 0
+     */
+    private static String rounded(String value) {
+        try {
+            return new BigDecimal(value).setScale(2, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+
+    /**
+     * 计划中的多个计算在同一个任务里依次完成，每次计算只有几十纳秒，不值得逐个切换线程
+     */
+    @Override
+    public boolean supportsBatch() {
+        return true;
+    }
+
+    /**
+     * 批量求值：表达式只编译一次，columns 给出每个变量的一列取值，返回每行的结果，无效行为 NaN
+     */
+    public double[] evaluateBatch(String expression, Map<String, double[]> columns) {
+        return expressionEngine.evaluateBatch(expression, columns);
+    }
+
+    /**
+     * expression 和 mode 以外的参数作为表达式中的变量，例如 {"expression": "x*2", "x": "3"}
+     */
+    private Map<String, Double> variables(Map<String, String> parameters) {
+        Map<String, Double> variables = new HashMap<>();
+        for (Map.Entry<String, BigDecimal> entry : decimalVariables(parameters).entrySet()) {
+            variables.put(entry.getKey(), entry.getValue().doubleValue());
+        }
+        return variables;
+    }
+
+    private Map<String, BigDecimal> decimalVariables(Map<String, String> parameters) {
+        Map<String, BigDecimal> variables = new HashMap<>();
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
+            if (RESERVED_PARAMETERS.contains(entry.getKey()) || entry.getValue() == null) continue;
+            try {
+                variables.put(entry.getKey(), new BigDecimal(entry.getValue().trim()));
+            } catch (NumberFormatException e) {
+                throw new ExpressionException("变量 " + entry.getKey() + " 的值不是数字: " + entry.getValue());
+            }
         }
+        return variables;
     }
 }
@@ -0,0 +1,191 @@
+package com.liling.Agent.service.impl;
+
+import com.liling.Agent.service.LlmBackend;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个 Ollama 实例，记录在途请求数、EWMA 延迟和连续失败次数
+ * <p>
+ * 延迟按模型分别统计：同一节点上不同大小的模型耗时相差很大，混在一起无法和其他节点比较。
+ */
+public class OllamaBackend implements LlmBackend {
+
+    private static final Logger log = LoggerFactory.getLogger(OllamaBackend.class);
+
+    private final String name;
+    private final String baseUrl;
+    private final List<String> models;
+    private final double ewmaAlpha;
+    private final RestTemplate restTemplate;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong ejections = new AtomicLong();
+
+    private final Map<String, Latency> latencies = new ConcurrentHashMap<>();
+
+    private volatile boolean ejected;
+    private volatile long ejectedUntil;
+    private volatile String ejectionReason;
+
+    public OllamaBackend(String name, String baseUrl, List<String> models, double ewmaAlpha,
+                         RestTemplate restTemplate) {
+        this.name = name;
+        this.baseUrl = baseUrl;
+        this.models = models == null ? List.of() : List.copyOf(models);
+        this.ewmaAlpha = ewmaAlpha;
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    @Override
+    public boolean supportsModel(String model) {
+        return models.isEmpty() || models.contains(model);
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return !ejected;
+    }
+
+    @Override
+    public int getOutstandingRequests() {
+        return outstanding.get();
+    }
+
+    @Override
+    public double getLatencyEwmaMillis(String model) {
+        Latency latency = latencies.get(model);
+        return latency == null ? 0 : latency.ewmaMillis;
+    }
+
+    @Override
+    public long getLatencySamples(String model) {
+        Latency latency = latencies.get(model);
+        return latency == null ? 0 : latency.samples;
+    }
+
+    @Override
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    @Override
+    public void onRequestStart() {
+        outstanding.incrementAndGet();
+        requests.incrementAndGet();
+    }
+
+    @Override
+    public void onRequestEnd(String model, long elapsedNanos, boolean success) {
+        outstanding.decrementAndGet();
+        if (!success) {
+            failures.incrementAndGet();
+            consecutiveFailures.incrementAndGet();
+            return;
+        }
+
+        consecutiveFailures.set(0);
+        latencies.computeIfAbsent(model, m -> new Latency()).record(elapsedNanos / 1_000_000.0, ewmaAlpha);
+    }
+
+    @Override
+    public void onRequestCancelled() {
+        outstanding.decrementAndGet();
+    }
+
+    @Override
+    public void eject(long durationNanos, String reason) {
+        if (isAvailable()) {
+            ejections.incrementAndGet();
+            log.warn("剔除 LLM 节点 {}: {}", name, reason);
+        }
+        ejectedUntil = System.nanoTime() + durationNanos;
+        ejectionReason = reason;
+        ejected = true;
+    }
+
+    @Override
+    public boolean isReadyForProbe() {
+        return !isAvailable() && System.nanoTime() - ejectedUntil >= 0;
+    }
+
+    @Override
+    public boolean checkHealth() {
+        try {
+            ResponseEntity<String> response = restTemplate.getForEntity(baseUrl + "/api/version", String.class);
+            if (response.getStatusCode().is2xxSuccessful()) {
+                restore();
+                return true;
+            }
+        } catch (Exception e) {
+            // 探测失败，保持剔除状态
+        }
+        return false;
+    }
+
+    private void restore() {
+        if (!isAvailable()) {
+            log.info("LLM 节点恢复: {}", name);
+        }
+        consecutiveFailures.set(0);
+        // 恢复后延迟样本重新累积，避免旧的慢样本让它再次被立即剔除
+        latencies.clear();
+        ejected = false;
+        ejectionReason = null;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("baseUrl", baseUrl);
+        stats.put("models", models.isEmpty() ? "*" : models);
+        stats.put("available", isAvailable());
+        if (!isAvailable()) {
+            stats.put("ejectionReason", ejectionReason);
+        }
+        stats.put("outstanding", outstanding.get());
+        stats.put("requests", requests.get());
+        stats.put("failures", failures.get());
+        stats.put("ejections", ejections.get());
+        Map<String, Object> latencyByModel = new TreeMap<>();
+        latencies.forEach((model, latency) -> latencyByModel.put(model, Math.round(latency.ewmaMillis * 100) / 100.0));
+        stats.put("latencyEwmaMs", latencyByModel);
+        return stats;
+    }
+
+    /**
+     * 一个模型的 EWMA 延迟
+     */
+    private static class Latency {
+        private volatile double ewmaMillis;
+        private volatile long samples;
+
+        private synchronized void record(double elapsedMillis, double alpha) {
+            ewmaMillis = samples == 0 ? elapsedMillis : alpha * elapsedMillis + (1 - alpha) * ewmaMillis;
+            samples++;
+        }
+    }
+}
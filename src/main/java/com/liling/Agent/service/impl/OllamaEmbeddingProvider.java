@@ -0,0 +1,74 @@
+package com.liling.Agent.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.exception.EmbeddingUnavailableException;
+import com.liling.Agent.service.EmbeddingProvider;
+import com.liling.Agent.service.LlmBackendPool;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 通过 Ollama 的 /api/embeddings 计算向量，模型由 agent.semantic-cache.embedding-model 指定
+ */
+@Component
+@ConditionalOnProperty(name = "agent.semantic-cache.provider", havingValue = "ollama", matchIfMissing = true)
+public class OllamaEmbeddingProvider implements EmbeddingProvider {
+
+    private final RestTemplate restTemplate;
+    private final LlmBackendPool backendPool;
+    private final String model;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public OllamaEmbeddingProvider(RestTemplate ollamaRestTemplate, LlmBackendPool backendPool,
+                                   AgentProperties properties) {
+        this.restTemplate = ollamaRestTemplate;
+        this.backendPool = backendPool;
+        this.model = properties.getSemanticCache().getEmbeddingModel();
+    }
+
+    @Override
+    public String getName() {
+        return "ollama:" + model;
+    }
+
+    @Override
+    public float[] embed(String text) throws Exception {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", model);
+        body.put("prompt", text);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<String> request = new HttpEntity<>(objectMapper.writeValueAsString(body), headers);
+
+        String responseBody;
+        try {
+            responseBody = backendPool.execute(model, backend ->
+                    restTemplate.postForEntity(backend.getBaseUrl() + "/api/embeddings", request, String.class).getBody());
+        } catch (IOException | RuntimeException e) {
+            // 连接失败、节点报错或没有节点部署向量模型
+            throw new EmbeddingUnavailableException("向量化服务不可用: " + e.getMessage(), e);
+        }
+
+        JsonNode embedding = objectMapper.readTree(responseBody).path("embedding");
+        if (!embedding.isArray() || embedding.isEmpty()) {
+            throw new IOException("响应中没有 embedding 字段，原始响应: " + responseBody);
+        }
+
+        float[] vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) embedding.get(i).asDouble();
+        }
+        return vector;
+    }
+}
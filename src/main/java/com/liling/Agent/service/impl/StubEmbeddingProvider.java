@@ -0,0 +1,51 @@
+package com.liling.Agent.service.impl;
+
+import com.liling.Agent.service.EmbeddingProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * 不依赖模型的向量化实现：把字符一元、二元组哈希到固定维度并计数。
+ * 只能识别字面上相近的句子，用于测试和没有 embedding 模型的环境
+ */
+@Component
+@ConditionalOnProperty(name = "agent.semantic-cache.provider", havingValue = "stub")
+public class StubEmbeddingProvider implements EmbeddingProvider {
+
+    private static final int DIMENSION = 256;
+
+    @Override
+    public String getName() {
+        return "stub";
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[DIMENSION];
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+
+        int previous = -1;
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.isWhitespace(c) || isPunctuation(c)) {
+                previous = -1;
+                continue;
+            }
+            vector[Math.floorMod(c * 31, DIMENSION)] += 0.5f;
+            if (previous >= 0) {
+                vector[Math.floorMod(previous * 131 + c, DIMENSION)] += 1f;
+            }
+            previous = c;
+        }
+        return vector;
+    }
+
+    private boolean isPunctuation(char c) {
+        int type = Character.getType(c);
+        return type >= Character.DASH_PUNCTUATION && type <= Character.OTHER_PUNCTUATION
+                || type == Character.INITIAL_QUOTE_PUNCTUATION || type == Character.FINAL_QUOTE_PUNCTUATION;
+    }
+}
@@ -2,15 +2,37 @@ package com.liling.Agent.service.impl;
 
 
 import com.liling.Agent.service.Tool;
+import com.liling.Agent.service.ToolMetadata;
+import com.liling.Agent.service.ToolResponseMode;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.List;
 import java.util.Map;
 
 @Component
 public class TimeTool implements Tool {
 
+    // 没有副作用可以重试，但结果随时间变化，不能缓存
+    private static final ToolMetadata METADATA = new ToolMetadata(Duration.ofSeconds(1), 0, true, Duration.ZERO, 0);
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy年MM月dd日");
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final DateTimeFormatter FULL = DateTimeFormatter.ofPattern("yyyy年MM月dd日 HH:mm:ss");
+
+    private static final DateTimeFormatter EN_DATE = DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy", Locale.ENGLISH);
+    private static final DateTimeFormatter EN_FULL =
+            DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy 'at' HH:mm:ss", Locale.ENGLISH);
+
+    private static final String DATE_PREFIX = "当前日期: ";
+    private static final String TIME_PREFIX = "当前时间: ";
+
     @Override
     public String getName() {
         return "time";
@@ -21,21 +43,64 @@ public class TimeTool implements Tool {
         return "获取当前时间、日期和时间信息";
     }
 
+    @Override
+    public String getUsageHint() {
+        return "当用户询问时间、日期、现在几点时使用";
+    }
+
+    @Override
+    public List<String> getAliases() {
+        return List.of("timer", "currenttime");
+    }
+
+    @Override
+    public ToolMetadata getMetadata() {
+        return METADATA;
+    }
+
+    @Override
+    public ToolResponseMode getResponseMode() {
+        return ToolResponseMode.TEMPLATED;
+    }
+
+    @Override
+    public String formatResponse(Map<String, String> parameters, String rawResult, String language) {
+        try {
+            if (rawResult.startsWith(DATE_PREFIX)) {
+                LocalDate date = LocalDate.parse(rawResult.substring(DATE_PREFIX.length()), DATE);
+                return "en".equals(language) ? "Today is " + date.format(EN_DATE) + "."
+                        : "今天是" + date.format(DATE) + "。";
+            }
+            if (rawResult.startsWith(TIME_PREFIX)) {
+                String value = rawResult.substring(TIME_PREFIX.length());
+                if (value.length() == 8) {
+                    LocalTime time = LocalTime.parse(value, TIME);
+                    return "en".equals(language) ? "It is " + time.format(TIME) + " now."
+                            : "现在是 " + time.format(TIME) + "。";
+                }
+                LocalDateTime dateTime = LocalDateTime.parse(value, FULL);
+                return "en".equals(language) ? "It is " + dateTime.format(EN_FULL) + "."
+                        : "现在是" + dateTime.format(FULL) + "。";
+            }
+        } catch (DateTimeParseException ignored) {
+        }
+        return rawResult;
+    }
+
     @Override
     public String execute(Map<String, String> parameters) {
         LocalDateTime now = LocalDateTime.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy年MM月dd日 HH:mm:ss");
 
         String timeType = parameters.getOrDefault("type", "full");
 
         switch (timeType) {
             case "date":
-                return "当前日期: " + now.format(DateTimeFormatter.ofPattern("yyyy年MM月dd日"));
+                return DATE_PREFIX + now.format(DATE);
             case "time":
-                return "当前时间: " + now.format(DateTimeFormatter.ofPattern("HH:mm:ss"));
+                return TIME_PREFIX + now.format(TIME);
             case "full":
             default:
-                return "当前时间: " + now.format(formatter);
+                return TIME_PREFIX + now.format(FULL);
         }
     }
 }
@@ -1,13 +1,20 @@
 package com.liling.Agent.service.impl;
 
 import com.liling.Agent.service.Tool;
+import com.liling.Agent.service.ToolMetadata;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 
 @Component
 public class WeatherTool implements Tool {
 
+    // 依赖外部天气服务：限制并发，避免服务变慢时占满工具线程池；天气变化慢，结果缓存 10 分钟
+    private static final ToolMetadata METADATA =
+            new ToolMetadata(Duration.ofSeconds(5), 4, true, Duration.ofMinutes(10), 500);
+
     @Override
     public String getName() {
         return "weather";
@@ -18,6 +25,21 @@ public class WeatherTool implements Tool {
         return "查询城市天气信息，包括温度、天气状况等";
     }
 
+    @Override
+    public String getUsageHint() {
+        return "当用户询问天气、气温、天气预报时使用";
+    }
+
+    @Override
+    public List<String> getAliases() {
+        return List.of("forecast");
+    }
+
+    @Override
+    public ToolMetadata getMetadata() {
+        return METADATA;
+    }
+
     @Override
     public String execute(Map<String, String> parameters) {
         String city = parameters.getOrDefault("city", "北京");
@@ -0,0 +1,195 @@
+package com.liling.Agent.utils;
+
+import com.liling.Agent.model.OllamaGenerateResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agent 流程各阶段的 Micrometer 指标，经 /actuator/prometheus 暴露
+ * <p>
+ * 计时器按名称前缀 agent.* / ollama.* 统一配置直方图和取值范围（见 application.properties 中的
+ * management.metrics.distribution.*），分位数在 Prometheus 端用 histogram_quantile 计算，这里只负责打点。标签取值都是有限集合（阶段、结果、工具名、模型名），
+ * 不把用户输入放进标签。
+ */
+@Component
+public class AgentMetrics {
+
+    private final MeterRegistry registry;
+
+    public AgentMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 一条消息的完整处理耗时，path 为 tool（调用了工具）/ chat（直接对话）
+     */
+    public void recordRequest(String path, boolean success, long elapsedNanos) {
+        Timer.builder("agent.request")
+                .description("一条消息从分类到生成回复的总耗时")
+                .tag("path", path)
+                .tag("outcome", success ? "success" : "error")
+                .register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 一次工具决策的来源和耗时，source 为 fast_path / decision_cache / semantic_cache / llm / rule_fallback，
+     * 规则降级比例即 rule_fallback 占全部决策的比例
+     */
+    public void recordDecision(String source, long elapsedNanos) {
+        Timer.builder("agent.classification")
+                .description("工具决策耗时，按决策来源区分")
+                .tag("source", source)
+                .register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 单次 LLM 分类尝试，outcome 为 valid / invalid / error / cancelled
+     */
+    public void recordClassificationAttempt(int attempt, String outcome, long elapsedNanos) {
+        Timer.builder("agent.classification.attempt")
+                .description("单次 LLM 分类尝试耗时，按尝试序号和结果区分")
+                .tag("attempt", Integer.toString(attempt))
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 清洗带代码示例或解释文字的模型输出
+     */
+    public void recordCleaning(long elapsedNanos) {
+        Timer.builder("agent.validator.clean")
+                .description("清洗模型输出的耗时")
+                .register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 把模型输出解析为 ToolDecision 的结果
+     */
+    public void recordParse(boolean success) {
+        Counter.builder("agent.decision.parse")
+                .description("ToolDecision JSON 解析次数，按成功与否区分")
+                .tag("result", success ? "success" : "failure")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 一次工具调用（含重试），outcome 为 success / error / timeout / cancelled
+     */
+    public void recordToolExecution(String tool, String outcome, long elapsedNanos) {
+        Timer.builder("agent.tool.execution")
+                .description("工具调用耗时，按工具和结果区分")
+                .tag("tool", tool)
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 工具并发已达上限被拒绝的调用
+     */
+    public void recordToolRejected(String tool) {
+        Counter.builder("agent.tool.rejected")
+                .description("因并发上限被拒绝的工具调用")
+                .tag("tool", tool)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 最终回复生成，kind 为 rephrase（结合工具结果）/ chat（直接对话）
+     */
+    public void recordAnswer(String kind, boolean streaming, boolean success, long elapsedNanos) {
+        Timer.builder("agent.answer")
+                .description("最终回复生成耗时")
+                .tag("kind", kind)
+                .tag("streaming", Boolean.toString(streaming))
+                .tag("outcome", success ? "success" : "error")
+                .register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 一次对 Ollama 的 HTTP 调用（合并的请求只计一次），purpose 为 classification / chat / prime / generate
+     */
+    public void recordOllamaCall(String model, String purpose, boolean streaming, String outcome, long elapsedNanos) {
+        Timer.builder("ollama.request")
+                .description("Ollama /api/generate 调用耗时")
+                .tag("model", model)
+                .tag("purpose", purpose)
+                .tag("streaming", Boolean.toString(streaming))
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 流式调用从发出请求到收到第一个 token 的时间
+     */
+    public void recordOllamaFirstToken(String model, String purpose, long elapsedNanos) {
+        Timer.builder("ollama.first_token")
+                .description("流式调用首个 token 的等待时间")
+                .tag("model", model)
+                .tag("purpose", purpose)
+                .register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Ollama 在最后一个响应块里返回的服务端耗时：模型加载、提示词编码（prompt_eval）、生成（eval），以及 token 数。
+     * 提前断开的流式调用收不到最后一块，不计入
+     */
+    public void recordOllamaResponse(String model, String purpose, OllamaGenerateResponse response) {
+        if (response.getLoadDuration() > 0) {
+            serverTimer("ollama.load", "模型加载耗时", model, purpose)
+                    .record(response.getLoadDuration(), TimeUnit.NANOSECONDS);
+        }
+        if (response.getPromptEvalDuration() > 0) {
+            serverTimer("ollama.prompt_eval", "提示词编码耗时", model, purpose)
+                    .record(response.getPromptEvalDuration(), TimeUnit.NANOSECONDS);
+        }
+        if (response.getEvalDuration() > 0) {
+            serverTimer("ollama.eval", "生成耗时", model, purpose)
+                    .record(response.getEvalDuration(), TimeUnit.NANOSECONDS);
+        }
+        tokens(model, purpose, "prompt").increment(response.getPromptEvalCount());
+        tokens(model, purpose, "completion").increment(response.getEvalCount());
+    }
+
+    /**
+     * 模型加载耗时超过冷加载阈值的调用
+     */
+    public void recordColdLoad(String model, String backend) {
+        Counter.builder("ollama.cold_loads")
+                .description("模型冷加载次数")
+                .tag("model", model)
+                .tag("backend", backend)
+                .register(registry)
+                .increment();
+    }
+
+    private Timer serverTimer(String name, String description, String model, String purpose) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("model", model)
+                .tag("purpose", purpose)
+                .register(registry);
+    }
+
+    private Counter tokens(String model, String purpose, String type) {
+        return Counter.builder("ollama.tokens")
+                .description("Ollama 处理的 token 数，prompt 为提示词，completion 为生成")
+                .tag("model", model)
+                .tag("purpose", purpose)
+                .tag("type", type)
+                .register(registry);
+    }
+}
@@ -0,0 +1,207 @@
+package com.liling.Agent.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于最近 N 次调用的熔断器
+ * <p>
+ * CLOSED：正常放行，记录每次调用的成败和是否慢调用；窗口内调用数达到 minimumCalls 后，
+ * 失败率或慢调用率超过阈值就进入 OPEN。
+ * OPEN：直接拒绝，openDuration 之后进入 HALF_OPEN。
+ * HALF_OPEN：只放行 halfOpenProbes 个探测请求，全部成功则恢复 CLOSED，任意一个失败重新 OPEN。
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenProbes;
+
+    // 环形窗口，记录最近 windowSize 次调用
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesInFlight;
+    private int probesSucceeded;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                          double slowCallRateThreshold, Duration slowCallDuration, Duration openDuration,
+                          int halfOpenProbes) {
+        this.name = name;
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCallDuration.toNanos();
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenProbes = Math.max(1, halfOpenProbes);
+        this.failed = new boolean[this.windowSize];
+        this.slow = new boolean[this.windowSize];
+    }
+
+    /**
+     * 申请一次调用许可；返回 true 后必须以 onSuccess / onFailure / onIgnored 之一结束
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            probesInFlight = 0;
+            probesSucceeded = 0;
+        }
+
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (probesInFlight + probesSucceeded < halfOpenProbes) {
+                    probesInFlight++;
+                    return true;
+                }
+                rejected.incrementAndGet();
+                return false;
+            case OPEN:
+            default:
+                rejected.incrementAndGet();
+                return false;
+        }
+    }
+
+    /**
+     * 当前是否会放行调用（不占用许可），用于提前选择降级路径
+     */
+    public synchronized boolean isCallPermitted() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return System.nanoTime() - openedAt >= openNanos;
+            case HALF_OPEN:
+            default:
+                return probesInFlight + probesSucceeded < halfOpenProbes;
+        }
+    }
+
+    public synchronized void onSuccess(long elapsedNanos) {
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+            if (elapsedNanos >= slowCallNanos) {
+                open();
+                return;
+            }
+            if (++probesSucceeded >= halfOpenProbes) {
+                close();
+            }
+            return;
+        }
+        record(false, elapsedNanos >= slowCallNanos);
+    }
+
+    public synchronized void onFailure(long elapsedNanos) {
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+            open();
+            return;
+        }
+        record(true, elapsedNanos >= slowCallNanos);
+    }
+
+    /**
+     * 调用被取消等与服务健康无关的结束，只归还许可
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean isFailure, boolean isSlow) {
+        if (state != State.CLOSED) {
+            return;
+        }
+
+        if (recorded == windowSize) {
+            if (failed[next]) failures--;
+            if (slow[next]) slowCalls--;
+        } else {
+            recorded++;
+        }
+        failed[next] = isFailure;
+        slow[next] = isSlow;
+        if (isFailure) failures++;
+        if (isSlow) slowCalls++;
+        next = (next + 1) % windowSize;
+
+        if (recorded >= minimumCalls && (failureRate() >= failureRateThreshold
+                || slowCallRate() >= slowCallRateThreshold)) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        opened.incrementAndGet();
+        log.warn("熔断器 {} 打开: 失败率 {}%, 慢调用率 {}%",
+                name, Math.round(failureRate() * 100), Math.round(slowCallRate() * 100));
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+        log.info("熔断器 {} 恢复", name);
+    }
+
+    private double failureRate() {
+        return recorded == 0 ? 0.0 : (double) failures / recorded;
+    }
+
+    private double slowCallRate() {
+        return recorded == 0 ? 0.0 : (double) slowCalls / recorded;
+    }
+
+    /**
+     * 统计信息快照
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.name());
+        stats.put("windowCalls", recorded);
+        stats.put("failureRate", failureRate());
+        stats.put("slowCallRate", slowCallRate());
+        stats.put("timesOpened", opened.get());
+        stats.put("rejectedCalls", rejected.get());
+        return stats;
+    }
+}
@@ -0,0 +1,413 @@
+package com.liling.Agent.utils;
+
+import com.liling.Agent.exception.ExpressionException;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 编译后的数学表达式：后缀形式的指令数组，可以被多个线程反复求值
+ * <p>
+ * 每条指令是一个 int，低 8 位为操作码，高位为操作数（常量下标、变量下标或函数编号）。
+ * double 求值使用线程本地的操作数栈，不创建任何对象；按列批量求值一次处理一整块行；
+ * BigDecimal 求值用于需要精确十进制结果的场景。
+ */
+public final class CompiledExpression {
+
+    static final int CONST = 0;
+    static final int VAR = 1;
+    static final int NEG = 2;
+    static final int ADD = 3;
+    static final int SUB = 4;
+    static final int MUL = 5;
+    static final int DIV = 6;
+    static final int MOD = 7;
+    static final int POW = 8;
+    static final int CALL = 9;
+
+    static final int OPERAND_SHIFT = 8;
+    private static final int OPCODE_MASK = 0xFF;
+
+    // 批量求值时每块的行数
+    public static final int BLOCK = 256;
+
+    private static final ThreadLocal<double[]> STACKS = ThreadLocal.withInitial(() -> new double[32]);
+    private static final ThreadLocal<double[]> BLOCK_STACKS = ThreadLocal.withInitial(() -> new double[0]);
+
+    private final String source;
+    private final int[] code;
+    private final double[] constants;
+    private final BigDecimal[] decimalConstants;
+    private final List<String> variables;
+    private final int maxDepth;
+
+    CompiledExpression(String source, int[] code, double[] constants, BigDecimal[] decimalConstants,
+                       List<String> variables, int maxDepth) {
+        this.source = source;
+        this.code = code;
+        this.constants = constants;
+        this.decimalConstants = decimalConstants;
+        this.variables = variables;
+        this.maxDepth = maxDepth;
+    }
+
+    public String getSource() { return source; }
+
+    /**
+     * 表达式中的变量名，按第一次出现的顺序排列，求值时按同样的顺序传入变量值
+     */
+    public List<String> getVariables() { return variables; }
+
+    public int variableIndex(String name) {
+        return variables.indexOf(name);
+    }
+
+    /**
+     * 以 double 求值，values 与 getVariables() 一一对应
+     */
+    public double evaluate(double[] values) {
+        checkArity(values == null ? 0 : values.length);
+
+        double[] stack = STACKS.get();
+        if (stack.length < maxDepth) {
+            stack = new double[Math.max(maxDepth, stack.length * 2)];
+            STACKS.set(stack);
+        }
+
+        int top = -1;
+        for (int instruction : code) {
+            int operand = instruction >>> OPERAND_SHIFT;
+            switch (instruction & OPCODE_MASK) {
+                case CONST:
+                    stack[++top] = constants[operand];
+                    break;
+                case VAR:
+                    stack[++top] = values[operand];
+                    break;
+                case NEG:
+                    stack[top] = -stack[top];
+                    break;
+                case ADD:
+                    top--;
+                    stack[top] += stack[top + 1];
+                    break;
+                case SUB:
+                    top--;
+                    stack[top] -= stack[top + 1];
+                    break;
+                case MUL:
+                    top--;
+                    stack[top] *= stack[top + 1];
+                    break;
+                case DIV:
+                    top--;
+                    if (stack[top + 1] == 0) throw new ExpressionException("除数不能为零");
+                    stack[top] /= stack[top + 1];
+                    break;
+                case MOD:
+                    top--;
+                    if (stack[top + 1] == 0) throw new ExpressionException("除数不能为零");
+                    stack[top] %= stack[top + 1];
+                    break;
+                case POW:
+                    top--;
+                    stack[top] = Math.pow(stack[top], stack[top + 1]);
+                    break;
+                case CALL:
+                    MathFunction function = MathFunction.byOrdinal(operand);
+                    top -= function.arity - 1;
+                    stack[top] = function.apply(stack[top], function.arity == 2 ? stack[top + 1] : 0);
+                    break;
+                default:
+                    throw new IllegalStateException("未知指令: " + instruction);
+            }
+        }
+
+        double result = stack[0];
+        if (Double.isNaN(result) || Double.isInfinite(result)) {
+            throw new ExpressionException("结果不是有效数字");
+        }
+        return result;
+    }
+
+    /**
+     * 按列批量求值：columns 与 getVariables() 一一对应，计算第 from 到 to-1 行，结果写入 out 的相同位置
+     * <p>
+     * 每次取 BLOCK 行，一条指令对整块数据执行完再执行下一条，指令分派的开销按块摊薄，
+     * 内层是对连续 double 数组的简单循环。与逐行求值不同，除数为零或结果不是有效数字的行不抛异常，
+     * 结果记为 NaN。
+     */
+    public void evaluateColumns(double[][] columns, double[] out, int from, int to) {
+        checkArity(columns == null ? 0 : columns.length);
+
+        int required = maxDepth * BLOCK;
+        double[] stack = BLOCK_STACKS.get();
+        if (stack.length < required) {
+            stack = new double[required];
+            BLOCK_STACKS.set(stack);
+        }
+
+        for (int base = from; base < to; base += BLOCK) {
+            int n = Math.min(BLOCK, to - base);
+            int top = -1;
+            for (int instruction : code) {
+                int operand = instruction >>> OPERAND_SHIFT;
+                int a;
+                int b;
+                switch (instruction & OPCODE_MASK) {
+                    case CONST:
+                        a = ++top * BLOCK;
+                        Arrays.fill(stack, a, a + n, constants[operand]);
+                        break;
+                    case VAR:
+                        System.arraycopy(columns[operand], base, stack, ++top * BLOCK, n);
+                        break;
+                    case NEG:
+                        a = top * BLOCK;
+                        for (int i = 0; i < n; i++) stack[a + i] = -stack[a + i];
+                        break;
+                    case ADD:
+                        a = --top * BLOCK;
+                        b = a + BLOCK;
+                        for (int i = 0; i < n; i++) stack[a + i] += stack[b + i];
+                        break;
+                    case SUB:
+                        a = --top * BLOCK;
+                        b = a + BLOCK;
+                        for (int i = 0; i < n; i++) stack[a + i] -= stack[b + i];
+                        break;
+                    case MUL:
+                        a = --top * BLOCK;
+                        b = a + BLOCK;
+                        for (int i = 0; i < n; i++) stack[a + i] *= stack[b + i];
+                        break;
+                    case DIV:
+                        // x/0 得到无穷大或 NaN，最后统一记为 NaN
+                        a = --top * BLOCK;
+                        b = a + BLOCK;
+                        for (int i = 0; i < n; i++) stack[a + i] /= stack[b + i];
+                        break;
+                    case MOD:
+                        a = --top * BLOCK;
+                        b = a + BLOCK;
+                        for (int i = 0; i < n; i++) stack[a + i] %= stack[b + i];
+                        break;
+                    case POW:
+                        a = --top * BLOCK;
+                        b = a + BLOCK;
+                        for (int i = 0; i < n; i++) stack[a + i] = Math.pow(stack[a + i], stack[b + i]);
+                        break;
+                    case CALL:
+                        MathFunction function = MathFunction.byOrdinal(operand);
+                        top -= function.arity - 1;
+                        a = top * BLOCK;
+                        b = a + BLOCK;
+                        if (function.arity == 2) {
+                            for (int i = 0; i < n; i++) stack[a + i] = function.apply(stack[a + i], stack[b + i]);
+                        } else {
+                            for (int i = 0; i < n; i++) stack[a + i] = function.apply(stack[a + i], 0);
+                        }
+                        break;
+                    default:
+                        throw new IllegalStateException("未知指令: " + instruction);
+                }
+            }
+
+            for (int i = 0; i < n; i++) {
+                double value = stack[i];
+                out[base + i] = Double.isInfinite(value) ? Double.NaN : value;
+            }
+        }
+    }
+
+    /**
+     * 以 BigDecimal 求值，四则运算、整数次幂和平方根按 mathContext 的精度计算，
+     * 其他函数退回 double 计算
+     */
+    public BigDecimal evaluateDecimal(BigDecimal[] values, MathContext mathContext) {
+        checkArity(values == null ? 0 : values.length);
+
+        BigDecimal[] stack = new BigDecimal[maxDepth];
+        int top = -1;
+        for (int instruction : code) {
+            int operand = instruction >>> OPERAND_SHIFT;
+            switch (instruction & OPCODE_MASK) {
+                case CONST:
+                    stack[++top] = decimalConstants[operand];
+                    break;
+                case VAR:
+                    stack[++top] = values[operand];
+                    break;
+                case NEG:
+                    stack[top] = stack[top].negate();
+                    break;
+                case ADD:
+                    top--;
+                    stack[top] = stack[top].add(stack[top + 1], mathContext);
+                    break;
+                case SUB:
+                    top--;
+                    stack[top] = stack[top].subtract(stack[top + 1], mathContext);
+                    break;
+                case MUL:
+                    top--;
+                    stack[top] = stack[top].multiply(stack[top + 1], mathContext);
+                    break;
+                case DIV:
+                    top--;
+                    if (stack[top + 1].signum() == 0) throw new ExpressionException("除数不能为零");
+                    stack[top] = stack[top].divide(stack[top + 1], mathContext);
+                    break;
+                case MOD:
+                    top--;
+                    if (stack[top + 1].signum() == 0) throw new ExpressionException("除数不能为零");
+                    stack[top] = stack[top].remainder(stack[top + 1], mathContext);
+                    break;
+                case POW:
+                    top--;
+                    stack[top] = decimalPow(stack[top], stack[top + 1], mathContext);
+                    break;
+                case CALL:
+                    MathFunction function = MathFunction.byOrdinal(operand);
+                    top -= function.arity - 1;
+                    stack[top] = function.applyDecimal(stack, top, mathContext);
+                    break;
+                default:
+                    throw new IllegalStateException("未知指令: " + instruction);
+            }
+        }
+        return stack[0];
+    }
+
+    private void checkArity(int count) {
+        if (count < variables.size()) {
+            throw new ExpressionException("缺少变量的值: " + variables.subList(count, variables.size()));
+        }
+    }
+
+    private static BigDecimal decimalPow(BigDecimal base, BigDecimal exponent, MathContext mathContext) {
+        BigDecimal integral = exponent.stripTrailingZeros();
+        if (integral.scale() <= 0 && integral.abs().compareTo(BigDecimal.valueOf(999_999_999)) <= 0) {
+            int n = integral.intValueExact();
+            if (n < 0 && base.signum() == 0) throw new ExpressionException("除数不能为零");
+            return base.pow(n, mathContext);
+        }
+        return MathFunction.toDecimal(Math.pow(base.doubleValue(), exponent.doubleValue()), mathContext);
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    /**
+     * 支持的函数
+     */
+    enum MathFunction {
+        SQRT("sqrt", 1),
+        POW("pow", 2),
+        // log(x) 为自然对数，log(x, b) 为以 b 为底
+        LOG("log", 1),
+        LOG_BASE("log", 2),
+        LN("ln", 1),
+        LOG10("log10", 1),
+        LG("lg", 1),
+        EXP("exp", 1),
+        ABS("abs", 1),
+        MIN("min", 2),
+        MAX("max", 2),
+        ROUND("round", 1),
+        FLOOR("floor", 1),
+        CEIL("ceil", 1),
+        SIN("sin", 1),
+        COS("cos", 1),
+        TAN("tan", 1);
+
+        private static final MathFunction[] VALUES = values();
+
+        final String symbol;
+        final int arity;
+
+        MathFunction(String symbol, int arity) {
+            this.symbol = symbol;
+            this.arity = arity;
+        }
+
+        static MathFunction byOrdinal(int ordinal) {
+            return VALUES[ordinal];
+        }
+
+        static MathFunction lookup(String name, int arity) {
+            for (MathFunction function : VALUES) {
+                if (function.symbol.equals(name) && function.arity == arity) {
+                    return function;
+                }
+            }
+            return null;
+        }
+
+        static boolean exists(String name) {
+            for (MathFunction function : VALUES) {
+                if (function.symbol.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 计算函数值，一元函数忽略 y
+         */
+        double apply(double x, double y) {
+            switch (this) {
+                case SQRT: return Math.sqrt(x);
+                case POW: return Math.pow(x, y);
+                case LOG:
+                case LN: return Math.log(x);
+                case LOG_BASE: return Math.log(x) / Math.log(y);
+                case LOG10:
+                case LG: return Math.log10(x);
+                case EXP: return Math.exp(x);
+                case ABS: return Math.abs(x);
+                case MIN: return Math.min(x, y);
+                case MAX: return Math.max(x, y);
+                case ROUND: return Math.round(x);
+                case FLOOR: return Math.floor(x);
+                case CEIL: return Math.ceil(x);
+                case SIN: return Math.sin(x);
+                case COS: return Math.cos(x);
+                case TAN: return Math.tan(x);
+                default: throw new IllegalStateException(symbol);
+            }
+        }
+
+        BigDecimal applyDecimal(BigDecimal[] args, int offset, MathContext mathContext) {
+            BigDecimal x = args[offset];
+            switch (this) {
+                case SQRT:
+                    if (x.signum() < 0) throw new ExpressionException("结果不是有效数字");
+                    return x.sqrt(mathContext);
+                case POW: return decimalPow(x, args[offset + 1], mathContext);
+                case ABS: return x.abs();
+                case MIN: return x.min(args[offset + 1]);
+                case MAX: return x.max(args[offset + 1]);
+                case ROUND: return x.setScale(0, RoundingMode.HALF_UP);
+                case FLOOR: return x.setScale(0, RoundingMode.FLOOR);
+                case CEIL: return x.setScale(0, RoundingMode.CEILING);
+                default:
+                    double y = arity == 2 ? args[offset + 1].doubleValue() : 0;
+                    return toDecimal(apply(x.doubleValue(), y), mathContext);
+            }
+        }
+
+        static BigDecimal toDecimal(double value, MathContext mathContext) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                throw new ExpressionException("结果不是有效数字");
+            }
+            return new BigDecimal(value, mathContext);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.liling.Agent.utils;
+
+import com.liling.Agent.exception.ExpressionException;
+
+import java.math.BigDecimal;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把数学表达式编译成 CompiledExpression
+ * <p>
+ * 词法分析后用 Pratt 解析器按优先级直接生成后缀指令，不构建语法树。优先级从低到高：
+ * 加减、乘除取模、一元正负、乘方（右结合，-2^2 = -4，2^-1 = 0.5）。
+ * 标识符后跟括号是函数调用；pi 和 e 是常量；其余标识符是变量。
+ * 全角字符、× ÷ 和 ** 会先规范化。
+ */
+final class ExpressionCompiler {
+
+    private static final int ADDITIVE = 10;
+    private static final int MULTIPLICATIVE = 20;
+    private static final int UNARY = 25;
+    private static final int POWER = 30;
+
+    private final String source;
+    private final String text;
+    private int position;
+
+    private final List<Integer> code = new ArrayList<>();
+    private final List<Double> constants = new ArrayList<>();
+    private final List<BigDecimal> decimalConstants = new ArrayList<>();
+    private final List<String> variables = new ArrayList<>();
+    private int depth;
+    private int maxDepth;
+
+    private ExpressionCompiler(String source) {
+        this.source = source;
+        this.text = Normalizer.normalize(source, Normalizer.Form.NFKC)
+                .replace('×', '*')
+                .replace('÷', '/')
+                .replace("**", "^");
+    }
+
+    static CompiledExpression compile(String source) {
+        if (source == null || source.isBlank()) {
+            throw new ExpressionException("表达式为空");
+        }
+        return new ExpressionCompiler(source).compile();
+    }
+
+    private CompiledExpression compile() {
+        parseExpression(0);
+        skipWhitespace();
+        if (position < text.length()) {
+            throw error("多余的字符 '" + text.charAt(position) + "'");
+        }
+
+        int[] instructions = new int[code.size()];
+        for (int i = 0; i < instructions.length; i++) {
+            instructions[i] = code.get(i);
+        }
+        double[] values = new double[constants.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = constants.get(i);
+        }
+        return new CompiledExpression(source, instructions, values,
+                decimalConstants.toArray(new BigDecimal[0]), List.copyOf(variables), Math.max(1, maxDepth));
+    }
+
+    private void parseExpression(int minBindingPower) {
+        parsePrefix();
+
+        while (true) {
+            skipWhitespace();
+            if (position >= text.length()) return;
+
+            char operator = text.charAt(position);
+            int leftBindingPower = bindingPower(operator);
+            if (leftBindingPower <= minBindingPower) return;
+
+            position++;
+            // 乘方右结合：右侧以稍低的优先级解析，让 2^3^2 = 2^(3^2)
+            parseExpression(operator == '^' ? leftBindingPower - 1 : leftBindingPower);
+            emit(opcode(operator), 0, -1);
+        }
+    }
+
+    private void parsePrefix() {
+        skipWhitespace();
+        if (position >= text.length()) {
+            throw error("表达式不完整");
+        }
+
+        char c = text.charAt(position);
+        if (c == '-' || c == '+') {
+            position++;
+            parseExpression(UNARY);
+            if (c == '-') {
+                emit(CompiledExpression.NEG, 0, 0);
+            }
+        } else if (c == '(') {
+            position++;
+            parseExpression(0);
+            expect(')');
+        } else if (isDigit(c) || c == '.') {
+            parseNumber();
+        } else if (Character.isLetter(c) || c == '_') {
+            parseIdentifier();
+        } else {
+            throw error("无法识别的符号 '" + c + "'");
+        }
+    }
+
+    private void parseNumber() {
+        int start = position;
+        while (position < text.length() && (isDigit(text.charAt(position)) || text.charAt(position) == '.')) {
+            position++;
+        }
+        // 科学计数法，例如 1e3、2.5E-4
+        if (position < text.length() && (text.charAt(position) == 'e' || text.charAt(position) == 'E')) {
+            int mark = position++;
+            if (position < text.length() && (text.charAt(position) == '+' || text.charAt(position) == '-')) {
+                position++;
+            }
+            if (position < text.length() && isDigit(text.charAt(position))) {
+                while (position < text.length() && isDigit(text.charAt(position))) {
+                    position++;
+                }
+            } else {
+                // 不是指数，e 留给后面按标识符处理
+                position = mark;
+            }
+        }
+
+        String literal = text.substring(start, position);
+        try {
+            BigDecimal value = new BigDecimal(literal);
+            emitConstant(value.doubleValue(), value);
+        } catch (NumberFormatException e) {
+            throw error("无效的数字 '" + literal + "'");
+        }
+    }
+
+    private void parseIdentifier() {
+        int start = position;
+        while (position < text.length()
+                && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_')) {
+            position++;
+        }
+        String name = text.substring(start, position);
+        String lowerName = name.toLowerCase();
+
+        skipWhitespace();
+        if (position < text.length() && text.charAt(position) == '(') {
+            parseCall(lowerName, start);
+            return;
+        }
+
+        if ("pi".equals(lowerName) || "π".equals(name)) {
+            emitConstant(Math.PI, new BigDecimal(Math.PI));
+        } else if ("e".equals(lowerName)) {
+            emitConstant(Math.E, new BigDecimal(Math.E));
+        } else {
+            int index = variables.indexOf(name);
+            if (index < 0) {
+                index = variables.size();
+                variables.add(name);
+            }
+            emit(CompiledExpression.VAR, index, 1);
+        }
+    }
+
+    private void parseCall(String name, int start) {
+        if (!CompiledExpression.MathFunction.exists(name)) {
+            position = start;
+            throw error("未知函数 '" + name + "'");
+        }
+
+        position++;
+        int arity = 0;
+        skipWhitespace();
+        if (position < text.length() && text.charAt(position) == ')') {
+            position++;
+        } else {
+            while (true) {
+                parseExpression(0);
+                arity++;
+                skipWhitespace();
+                if (position < text.length() && text.charAt(position) == ',') {
+                    position++;
+                    continue;
+                }
+                expect(')');
+                break;
+            }
+        }
+
+        CompiledExpression.MathFunction function = CompiledExpression.MathFunction.lookup(name, arity);
+        if (function == null) {
+            position = start;
+            throw error("函数 '" + name + "' 的参数个数不对: " + arity);
+        }
+        emit(CompiledExpression.CALL, function.ordinal(), 1 - arity);
+    }
+
+    private void emitConstant(double value, BigDecimal decimal) {
+        constants.add(value);
+        decimalConstants.add(decimal);
+        emit(CompiledExpression.CONST, constants.size() - 1, 1);
+    }
+
+    /**
+     * 追加一条指令，stackEffect 为执行后操作数栈深度的变化
+     */
+    private void emit(int opcode, int operand, int stackEffect) {
+        code.add(opcode | (operand << CompiledExpression.OPERAND_SHIFT));
+        depth += stackEffect;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    private void expect(char expected) {
+        skipWhitespace();
+        if (position >= text.length() || text.charAt(position) != expected) {
+            throw error("缺少 '" + expected + "'");
+        }
+        position++;
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private static int bindingPower(char operator) {
+        switch (operator) {
+            case '+':
+            case '-':
+                return ADDITIVE;
+            case '*':
+            case '/':
+            case '%':
+                return MULTIPLICATIVE;
+            case '^':
+                return POWER;
+            default:
+                return 0;
+        }
+    }
+
+    private static int opcode(char operator) {
+        switch (operator) {
+            case '+': return CompiledExpression.ADD;
+            case '-': return CompiledExpression.SUB;
+            case '*': return CompiledExpression.MUL;
+            case '/': return CompiledExpression.DIV;
+            case '%': return CompiledExpression.MOD;
+            default: return CompiledExpression.POW;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private ExpressionException error(String message) {
+        return new ExpressionException(String.format("表达式 \"%s\" 第 %d 个字符处: %s", source, position + 1, message));
+    }
+}
@@ -0,0 +1,156 @@
+package com.liling.Agent.utils;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.exception.ExpressionException;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 数学表达式引擎：编译结果按表达式原文缓存，同一个表达式只解析一次
+ * <p>
+ * 缓存有容量上限（LRU 淘汰），不过期。编译失败的表达式不缓存。
+ */
+@Component
+public class ExpressionEngine {
+
+    // 批量求值行数超过该值时拆分到多个核并行计算，更小的输入拆分的调度开销大于收益
+    private static final int PARALLEL_THRESHOLD = 16_384;
+
+    private final TtlLruCache<String, CompiledExpression> compiled;
+
+    public ExpressionEngine(AgentProperties properties) {
+        this.compiled = new TtlLruCache<>(properties.getTools().getExpressionCacheSize(), null);
+    }
+
+    /**
+     * 编译表达式，命中缓存时直接返回之前的编译结果
+     */
+    public CompiledExpression compile(String expression) {
+        String key = expression == null ? "" : expression.trim();
+        CompiledExpression cached = compiled.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompiledExpression program = ExpressionCompiler.compile(key);
+        compiled.put(key, program);
+        return program;
+    }
+
+    /**
+     * 以 double 求值，表达式中的每个变量都必须在 variables 中给出
+     */
+    public double evaluate(String expression, Map<String, Double> variables) {
+        CompiledExpression program = compile(expression);
+        List<String> names = program.getVariables();
+        if (names.isEmpty()) {
+            return program.evaluate(null);
+        }
+
+        double[] values = new double[names.size()];
+        for (int i = 0; i < values.length; i++) {
+            Double value = variables == null ? null : variables.get(names.get(i));
+            if (value == null) {
+                throw new ExpressionException("缺少变量的值: " + names.get(i));
+            }
+            values[i] = value;
+        }
+        return program.evaluate(values);
+    }
+
+    /**
+     * 以 BigDecimal 求值，适合 0.1 + 0.2 这类需要精确十进制结果的计算
+     */
+    public BigDecimal evaluateDecimal(String expression, Map<String, BigDecimal> variables, MathContext mathContext) {
+        CompiledExpression program = compile(expression);
+        List<String> names = program.getVariables();
+
+        BigDecimal[] values = new BigDecimal[names.size()];
+        for (int i = 0; i < values.length; i++) {
+            BigDecimal value = variables == null ? null : variables.get(names.get(i));
+            if (value == null) {
+                throw new ExpressionException("缺少变量的值: " + names.get(i));
+            }
+            values[i] = value;
+        }
+        return program.evaluateDecimal(values, mathContext);
+    }
+
+    /**
+     * 同一个表达式对多组变量取值批量求值：只编译一次，按列在 double[] 上计算
+     * <p>
+     * columns 给出每个变量的一列取值，各列长度必须相同；没有变量时只计算一行。
+     * 行数超过 PARALLEL_THRESHOLD 时用 fork-join 拆分到多个核上计算。
+     * 除数为零等无效行的结果为 NaN。
+     */
+    public double[] evaluateBatch(String expression, Map<String, double[]> columns) {
+        CompiledExpression program = compile(expression);
+        List<String> names = program.getVariables();
+
+        double[][] ordered = new double[names.size()][];
+        int rows = names.isEmpty() ? 1 : -1;
+        for (int i = 0; i < ordered.length; i++) {
+            double[] column = columns == null ? null : columns.get(names.get(i));
+            if (column == null) {
+                throw new ExpressionException("缺少变量的值: " + names.get(i));
+            }
+            if (rows >= 0 && column.length != rows) {
+                throw new ExpressionException("变量 " + names.get(i) + " 的取值个数与其他变量不一致");
+            }
+            rows = column.length;
+            ordered[i] = column;
+        }
+
+        double[] results = new double[rows];
+        if (rows <= PARALLEL_THRESHOLD) {
+            program.evaluateColumns(ordered, results, 0, rows);
+        } else {
+            ForkJoinPool.commonPool().invoke(new BatchTask(program, ordered, results, 0, rows));
+        }
+        return results;
+    }
+
+    public void clear() {
+        compiled.clear();
+    }
+
+    public Map<String, Object> getStats() {
+        return compiled.getStats();
+    }
+
+    /**
+     * 按行区间二分，直到区间不超过 PARALLEL_THRESHOLD；拆分点按块对齐
+     */
+    private static class BatchTask extends RecursiveAction {
+        private final CompiledExpression program;
+        private final double[][] columns;
+        private final double[] results;
+        private final int from;
+        private final int to;
+
+        private BatchTask(CompiledExpression program, double[][] columns, double[] results, int from, int to) {
+            this.program = program;
+            this.columns = columns;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                program.evaluateColumns(columns, results, from, to);
+                return;
+            }
+            int middle = from + (to - from) / 2 / CompiledExpression.BLOCK * CompiledExpression.BLOCK;
+            invokeAll(new BatchTask(program, columns, results, from, middle),
+                    new BatchTask(program, columns, results, middle, to));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.liling.Agent.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 可以真正取消的异步任务：CompletableFuture.supplyAsync 的 cancel 只改变状态、不中断执行线程，
+ * 这里在 cancel 时中断正在执行任务的线程，让阻塞在 I/O 或 sleep 上的任务尽快退出
+ * <p>
+ * 被取消的 future 立即结束，但执行线程可能还阻塞在不响应中断的 I/O 上；
+ * 需要按执行线程计数的资源（如工具的并发许可）用 whenFinished 等到任务真正退出再归还
+ */
+public final class InterruptibleFuture {
+
+    private InterruptibleFuture() {
+    }
+
+    public static <T> CompletableFuture<T> supplyAsync(Callable<T> task, Executor executor) {
+        Runner<T> runner = new Runner<>(task);
+        runner.future.whenComplete((result, error) -> {
+            if (runner.future.isCancelled()) {
+                runner.interrupt();
+            }
+        });
+        try {
+            executor.execute(runner);
+        } catch (RuntimeException e) {
+            runner.future.finished.complete(null);
+            throw e;
+        }
+        return runner.future;
+    }
+
+    /**
+     * 任务真正结束时完成：执行线程退出任务，或任务在排队期间被取消。
+     * 不是 supplyAsync 创建的 future 时无从得知执行线程的状态，在 future 本身结束时完成
+     */
+    public static CompletableFuture<Void> whenFinished(CompletableFuture<?> future) {
+        if (future instanceof Task<?> task) {
+            return task.finished;
+        }
+        return future.handle((result, error) -> null);
+    }
+
+    /**
+     * supplyAsync 返回的 future，额外记录执行线程何时退出
+     */
+    private static class Task<T> extends CompletableFuture<T> {
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+    }
+
+    private static class Runner<T> implements Runnable {
+        private final Callable<T> task;
+        private final Task<T> future = new Task<>();
+        private Thread thread;
+        private boolean started;
+
+        private Runner(Callable<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                // 排队期间已经被取消或超时
+                if (future.isDone()) {
+                    future.finished.complete(null);
+                    return;
+                }
+                started = true;
+                thread = Thread.currentThread();
+            }
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                synchronized (this) {
+                    thread = null;
+                    // 清除可能残留的中断标记，线程池线程还要继续执行别的任务
+                    Thread.interrupted();
+                }
+                future.finished.complete(null);
+            }
+        }
+
+        private synchronized void interrupt() {
+            if (thread != null) {
+                thread.interrupt();
+            } else if (!started) {
+                // 还没开始执行，之后 run 看到 future 已结束会直接返回
+                future.finished.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.liling.Agent.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 内存向量近邻索引（IVF-Flat），按余弦相似度检索
+ * <p>
+ * 所有向量归一化后存放在一块预分配的 float 数组里，按槽位编号寻址，删除的槽位回收复用，
+ * 内存占用固定为 capacity * dimension 个 float。向量数较少时直接全量扫描；
+ * 达到训练阈值后用 k-means 聚成 nlist 个簇，查询时只扫描距离最近的 nprobe 个簇。
+ * 向量数翻倍后重新训练一次，让簇中心跟上数据分布。
+ * <p>
+ * 指定 trainer 时 k-means 在 trainer 上运行：只在取样和安装新簇中心时短暂持有索引锁，
+ * 训练期间添加、删除和查询照常进行（未训练时全量扫描，已训练时沿用旧的簇中心）。
+ */
+public class IvfFlatIndex {
+
+    // 每个簇平均至少有这么多向量时才开始分簇
+    private static final int MIN_VECTORS_PER_LIST = 8;
+    private static final int KMEANS_ITERATIONS = 6;
+    // 训练时最多使用的样本数，限制训练耗时
+    private static final int MAX_TRAINING_SAMPLES = 2048;
+
+    private final int dimension;
+    private final int capacity;
+    private final int nlist;
+    private final int nprobe;
+
+    private final float[] vectors;
+    private final boolean[] used;
+    private final int[] freeSlots;
+    private int freeCount;
+    private int size;
+
+    // 分簇状态，未训练时 centroids 为 null
+    private float[] centroids;
+    private int[][] lists;
+    private int[] listSizes;
+    private final int[] slotList;
+    private final int[] slotPosition;
+    private int trainedAtSize;
+
+    // 为 null 时在调用 add 的线程上同步训练
+    private final Executor trainer;
+    private boolean training;
+    // clear 后递增，丢弃基于清空前数据的训练结果
+    private long generation;
+
+    public IvfFlatIndex(int dimension, int capacity, int nlist, int nprobe) {
+        this(dimension, capacity, nlist, nprobe, null);
+    }
+
+    public IvfFlatIndex(int dimension, int capacity, int nlist, int nprobe, Executor trainer) {
+        this.dimension = dimension;
+        this.capacity = Math.max(1, capacity);
+        this.nlist = Math.max(1, nlist);
+        this.nprobe = Math.max(1, Math.min(nprobe, this.nlist));
+
+        this.vectors = new float[this.capacity * dimension];
+        this.used = new boolean[this.capacity];
+        this.freeSlots = new int[this.capacity];
+        for (int i = 0; i < this.capacity; i++) {
+            freeSlots[i] = this.capacity - 1 - i;
+        }
+        this.freeCount = this.capacity;
+        this.slotList = new int[this.capacity];
+        this.slotPosition = new int[this.capacity];
+        this.trainer = trainer;
+    }
+
+    public int getDimension() { return dimension; }
+
+    public synchronized int size() { return size; }
+
+    public synchronized boolean isFull() { return freeCount == 0; }
+
+    public synchronized boolean isTrained() { return centroids != null; }
+
+    /**
+     * 添加向量，返回分配的槽位；索引已满或维度不符时返回 -1
+     */
+    public synchronized int add(float[] vector) {
+        if (vector.length != dimension || freeCount == 0) {
+            return -1;
+        }
+
+        int slot = freeSlots[--freeCount];
+        int offset = slot * dimension;
+        System.arraycopy(vector, 0, vectors, offset, dimension);
+        normalize(vectors, offset);
+        used[slot] = true;
+        size++;
+
+        if (centroids != null) {
+            assign(slot, nearestCentroid(vectors, offset));
+        }
+
+        if (shouldTrain()) {
+            if (trainer == null) {
+                install(kmeans(sampleVectors()));
+            } else {
+                scheduleTraining();
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * 删除槽位上的向量
+     */
+    public synchronized void remove(int slot) {
+        if (slot < 0 || slot >= capacity || !used[slot]) {
+            return;
+        }
+        if (centroids != null) {
+            unassign(slot);
+        }
+        used[slot] = false;
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    /**
+     * 查询与 query 最相似的 k 个向量，按相似度从高到低返回
+     */
+    public synchronized List<Match> search(float[] query, int k) {
+        if (query.length != dimension || size == 0 || k <= 0) {
+            return List.of();
+        }
+
+        float[] normalized = Arrays.copyOf(query, dimension);
+        normalize(normalized, 0);
+
+        int[] topSlots = new int[k];
+        float[] topScores = new float[k];
+        Arrays.fill(topSlots, -1);
+        Arrays.fill(topScores, Float.NEGATIVE_INFINITY);
+
+        if (centroids == null) {
+            for (int slot = 0; slot < capacity; slot++) {
+                if (used[slot]) {
+                    offer(topSlots, topScores, slot, dot(normalized, 0, vectors, slot * dimension));
+                }
+            }
+        } else {
+            for (int list : nearestCentroids(normalized)) {
+                int[] members = lists[list];
+                for (int i = 0; i < listSizes[list]; i++) {
+                    int slot = members[i];
+                    offer(topSlots, topScores, slot, dot(normalized, 0, vectors, slot * dimension));
+                }
+            }
+        }
+
+        List<Match> matches = new ArrayList<>(k);
+        for (int i = 0; i < k && topSlots[i] >= 0; i++) {
+            matches.add(new Match(topSlots[i], topScores[i]));
+        }
+        return matches;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(used, false);
+        for (int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        freeCount = capacity;
+        size = 0;
+        centroids = null;
+        lists = null;
+        listSizes = null;
+        trainedAtSize = 0;
+        generation++;
+    }
+
+    private boolean shouldTrain() {
+        if (training || nlist == 1 || size < nlist * MIN_VECTORS_PER_LIST) {
+            return false;
+        }
+        return centroids == null || size >= trainedAtSize * 2;
+    }
+
+    private void scheduleTraining() {
+        training = true;
+        try {
+            long scheduledAt = generation;
+            trainer.execute(() -> trainInBackground(scheduledAt));
+        } catch (RejectedExecutionException e) {
+            // 训练线程已关闭，继续使用现有簇中心或全量扫描
+            training = false;
+        }
+    }
+
+    private void trainInBackground(long scheduledAt) {
+        try {
+            float[] samples;
+            synchronized (this) {
+                if (generation != scheduledAt) {
+                    return;
+                }
+                samples = sampleVectors();
+            }
+            float[] trained = kmeans(samples);
+            synchronized (this) {
+                if (generation == scheduledAt) {
+                    install(trained);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                training = false;
+            }
+        }
+    }
+
+    /**
+     * 复制训练样本，训练过程不再读取 vectors，可以在锁外进行
+     */
+    private float[] sampleVectors() {
+        int[] slots = sampleSlots();
+        float[] samples = new float[slots.length * dimension];
+        for (int i = 0; i < slots.length; i++) {
+            System.arraycopy(vectors, slots[i] * dimension, samples, i * dimension, dimension);
+        }
+        return samples;
+    }
+
+    /**
+     * k-means 训练簇中心，只读取样本副本
+     */
+    private float[] kmeans(float[] samples) {
+        int sampleCount = samples.length / dimension;
+        float[] trained = new float[nlist * dimension];
+
+        // 从样本中均匀挑选初始中心
+        for (int c = 0; c < nlist; c++) {
+            int sample = (int) ((long) c * sampleCount / nlist);
+            System.arraycopy(samples, sample * dimension, trained, c * dimension, dimension);
+        }
+
+        int[] counts = new int[nlist];
+        float[] sums = new float[nlist * dimension];
+        for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++) {
+            Arrays.fill(counts, 0);
+            Arrays.fill(sums, 0f);
+            for (int i = 0; i < sampleCount; i++) {
+                int from = i * dimension;
+                int c = nearest(trained, samples, from);
+                counts[c]++;
+                int to = c * dimension;
+                for (int d = 0; d < dimension; d++) {
+                    sums[to + d] += samples[from + d];
+                }
+            }
+            for (int c = 0; c < nlist; c++) {
+                // 空簇保留原来的中心
+                if (counts[c] > 0) {
+                    System.arraycopy(sums, c * dimension, trained, c * dimension, dimension);
+                    normalize(trained, c * dimension);
+                }
+            }
+        }
+        return trained;
+    }
+
+    /**
+     * 换上新的簇中心，把所有向量重新分配到最近的簇
+     */
+    private void install(float[] trained) {
+        centroids = trained;
+        lists = new int[nlist][];
+        listSizes = new int[nlist];
+        int initialListSize = Math.max(4, size / nlist);
+        for (int c = 0; c < nlist; c++) {
+            lists[c] = new int[initialListSize];
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            if (used[slot]) {
+                assign(slot, nearestCentroid(vectors, slot * dimension));
+            }
+        }
+        trainedAtSize = size;
+    }
+
+    private int[] sampleSlots() {
+        int sampleCount = Math.min(size, MAX_TRAINING_SAMPLES);
+        int[] samples = new int[sampleCount];
+        int step = Math.max(1, size / sampleCount);
+        int seen = 0;
+        int taken = 0;
+        for (int slot = 0; slot < capacity && taken < sampleCount; slot++) {
+            if (used[slot] && seen++ % step == 0) {
+                samples[taken++] = slot;
+            }
+        }
+        return taken == sampleCount ? samples : Arrays.copyOf(samples, taken);
+    }
+
+    private void assign(int slot, int list) {
+        if (listSizes[list] == lists[list].length) {
+            lists[list] = Arrays.copyOf(lists[list], lists[list].length * 2);
+        }
+        slotList[slot] = list;
+        slotPosition[slot] = listSizes[list];
+        lists[list][listSizes[list]++] = slot;
+    }
+
+    /**
+     * 从所在簇中移除：用簇里最后一个槽位填补空位
+     */
+    private void unassign(int slot) {
+        int list = slotList[slot];
+        int position = slotPosition[slot];
+        int last = lists[list][--listSizes[list]];
+        lists[list][position] = last;
+        slotPosition[last] = position;
+    }
+
+    private int nearestCentroid(float[] source, int offset) {
+        return nearest(centroids, source, offset);
+    }
+
+    private int nearest(float[] centers, float[] source, int offset) {
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < nlist; c++) {
+            float score = dot(source, offset, centers, c * dimension);
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private int[] nearestCentroids(float[] query) {
+        int[] best = new int[nprobe];
+        float[] scores = new float[nprobe];
+        Arrays.fill(best, -1);
+        Arrays.fill(scores, Float.NEGATIVE_INFINITY);
+        for (int c = 0; c < nlist; c++) {
+            offer(best, scores, c, dot(query, 0, centroids, c * dimension));
+        }
+        return best;
+    }
+
+    /**
+     * 插入到按分数降序排列的定长 top-k 数组
+     */
+    private static void offer(int[] ids, float[] scores, int id, float score) {
+        int k = ids.length;
+        if (score <= scores[k - 1]) {
+            return;
+        }
+        int i = k - 1;
+        while (i > 0 && scores[i - 1] < score) {
+            ids[i] = ids[i - 1];
+            scores[i] = scores[i - 1];
+            i--;
+        }
+        ids[i] = id;
+        scores[i] = score;
+    }
+
+    private float dot(float[] a, int aOffset, float[] b, int bOffset) {
+        float sum = 0f;
+        for (int d = 0; d < dimension; d++) {
+            sum += a[aOffset + d] * b[bOffset + d];
+        }
+        return sum;
+    }
+
+    private void normalize(float[] target, int offset) {
+        float norm = 0f;
+        for (int d = 0; d < dimension; d++) {
+            norm += target[offset + d] * target[offset + d];
+        }
+        if (norm == 0f) {
+            return;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int d = 0; d < dimension; d++) {
+            target[offset + d] *= scale;
+        }
+    }
+
+    /**
+     * 一条检索结果：槽位和余弦相似度
+     */
+    public static class Match {
+        private final int slot;
+        private final float score;
+
+        public Match(int slot, float score) {
+            this.slot = slot;
+            this.score = score;
+        }
+
+        public int getSlot() { return slot; }
+        public float getScore() { return score; }
+    }
+}
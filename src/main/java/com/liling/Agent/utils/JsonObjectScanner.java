@@ -0,0 +1,77 @@
+package com.liling.Agent.utils;
+
+/**
+ * 单遍 JSON 对象扫描器：识别字符串和转义，按括号深度找出顶层的完整 {...} 对象
+ * <p>
+ * 不做完整的 JSON 语法校验，只负责在混杂了解释文字、代码示例的 LLM 输出中
+ * 定位第一个包含指定键的平衡对象，交给 Jackson 解析。
+ */
+public final class JsonObjectScanner {
+
+    private JsonObjectScanner() {
+    }
+
+    /**
+     * 返回第一个包含 "requiredKey" 的顶层 JSON 对象，找不到时返回 null
+     */
+    public static String findObject(String text, String requiredKey) {
+        if (text == null) return null;
+
+        String quotedKey = requiredKey == null ? null : "\"" + requiredKey + "\"";
+        int from = 0;
+        while (from < text.length()) {
+            int start = text.indexOf('{', from);
+            if (start < 0) return null;
+
+            int end = findObjectEnd(text, start);
+            if (end < 0) return null;
+
+            if (quotedKey == null || containsWithin(text, quotedKey, start, end)) {
+                return text.substring(start, end);
+            }
+            from = end;
+        }
+        return null;
+    }
+
+    /**
+     * 从 start 处的 '{' 开始扫描，返回匹配的 '}' 之后的位置；对象未闭合时返回 -1
+     */
+    static int findObjectEnd(CharSequence text, int start) {
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+
+            if (c == '"') {
+                inString = true;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean containsWithin(String text, String key, int start, int end) {
+        int index = text.indexOf(key, start);
+        return index >= 0 && index + key.length() <= end;
+    }
+}
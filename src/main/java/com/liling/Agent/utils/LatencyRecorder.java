@@ -0,0 +1,73 @@
+package com.liling.Agent.utils;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 轻量延迟统计：总次数、失败次数、均值、最大值，以及最近 N 次样本的分位数
+ */
+public class LatencyRecorder {
+
+    private static final int DEFAULT_SAMPLE_SIZE = 1024;
+
+    private final long[] samples;
+    private int nextSample;
+    private int sampleCount;
+
+    private long count;
+    private long failures;
+    private long totalNanos;
+    private long maxNanos;
+
+    public LatencyRecorder() {
+        this(DEFAULT_SAMPLE_SIZE);
+    }
+
+    public LatencyRecorder(int sampleSize) {
+        this.samples = new long[Math.max(1, sampleSize)];
+    }
+
+    public synchronized void record(long elapsedNanos, boolean success) {
+        count++;
+        if (!success) failures++;
+        totalNanos += elapsedNanos;
+        maxNanos = Math.max(maxNanos, elapsedNanos);
+
+        samples[nextSample] = elapsedNanos;
+        nextSample = (nextSample + 1) % samples.length;
+        sampleCount = Math.min(sampleCount + 1, samples.length);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * 统计信息快照，时间单位为毫秒
+     */
+    public synchronized Map<String, Object> getStats() {
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", count);
+        stats.put("failures", failures);
+        stats.put("meanMs", count == 0 ? 0.0 : toMillis(totalNanos / (double) count));
+        stats.put("maxMs", toMillis(maxNanos));
+        stats.put("p50Ms", toMillis(percentile(sorted, 0.50)));
+        stats.put("p95Ms", toMillis(percentile(sorted, 0.95)));
+        stats.put("p99Ms", toMillis(percentile(sorted, 0.99)));
+        return stats;
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double toMillis(double nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+}
@@ -0,0 +1,75 @@
+package com.liling.Agent.utils;
+
+import com.liling.Agent.model.RequestUsage;
+import org.slf4j.MDC;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提交任务时带上提交线程的 MDC（请求 ID 等）和 UsageContext（请求的 token 用量记录），
+ * 任务在线程池中执行时恢复，结束后还原
+ * <p>
+ * submit / invokeAll 等方法都经 execute 提交，取消、关闭等行为与被包装的线程池一致
+ */
+public class MdcExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+
+    public MdcExecutorService(ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        RequestUsage usage = UsageContext.current();
+        delegate.execute(() -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            setContext(context);
+            RequestUsage previousUsage = UsageContext.set(usage);
+            try {
+                command.run();
+            } finally {
+                UsageContext.set(previousUsage);
+                setContext(previous);
+            }
+        });
+    }
+
+    private static void setContext(Map<String, String> context) {
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,58 @@
+package com.liling.Agent.utils;
+
+import com.liling.Agent.config.AgentProperties;
+import org.slf4j.Logger;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 记录提示词、模型原始响应等大段内容：只在 DEBUG 级别、且请求被抽中时记录，内容截断到 payloadMaxChars
+ * <p>
+ * 是否抽中按请求决定（见 RequestIdFilter），同一个请求的各段内容要么全部记录、要么都不记录，
+ * 便于按请求 ID 还原完整过程。不在请求内的调用（启动预热等）逐次抽样。
+ */
+@Component
+public class PayloadLogger {
+
+    // MDC 中标记当前请求被抽中的键
+    public static final String SAMPLED_KEY = "payloadSampled";
+
+    private final double sampleRate;
+    private final int maxChars;
+
+    public PayloadLogger(AgentProperties properties) {
+        this.sampleRate = properties.getLogging().getPayloadSampleRate();
+        this.maxChars = properties.getLogging().getPayloadMaxChars();
+    }
+
+    /**
+     * 为新请求决定是否记录大段内容
+     */
+    public boolean sample() {
+        return sampleRate >= 1.0 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    /**
+     * 在 DEBUG 级别记录一段内容，payload 只在确实要记录时才转成字符串
+     */
+    public void debug(Logger log, String label, Object payload) {
+        if (!log.isDebugEnabled() || !isSampled()) {
+            return;
+        }
+        log.debug("{}: {}", label, abbreviate(String.valueOf(payload)));
+    }
+
+    private boolean isSampled() {
+        String sampled = MDC.get(SAMPLED_KEY);
+        return sampled != null ? Boolean.parseBoolean(sampled) : sample();
+    }
+
+    private String abbreviate(String text) {
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        return text.substring(0, maxChars) + "...(共 " + text.length() + " 字符)";
+    }
+}
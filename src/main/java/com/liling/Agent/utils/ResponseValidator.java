@@ -1,43 +1,72 @@
 package com.liling.Agent.utils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Component
 public class ResponseValidator {
 
+    private static final Logger log = LoggerFactory.getLogger(ResponseValidator.class);
+
+    private static final String DECISION_KEY = "needs_tool";
+
+    // 代码示例（代码块跨行，所以用 DOTALL；单行模式用否定字符类避免回溯）
+    private static final Pattern PYTHON_BLOCK = Pattern.compile("```python.*?```", Pattern.DOTALL);
+    private static final Pattern JAVA_BLOCK = Pattern.compile("```java.*?```", Pattern.DOTALL);
+    private static final Pattern PYTHON_DEF_WITH_RETURN = Pattern.compile("def\\s+\\w+[^\\n]*?return[^\\n]*");
+    private static final Pattern PRINT_CALL = Pattern.compile("print\\([^)\\n]*\\)");
+    private static final Pattern JAVA_PUBLIC_BLOCK = Pattern.compile("public[^{\\n]*\\{[^}\\n]*}");
+    private static final Pattern CODE_FENCE = Pattern.compile("```(?:json)?");
+    private static final Pattern PYTHON_DEF = Pattern.compile("def\\s+\\w+\\s*\\([^)\\n]*\\):");
+    private static final Pattern JS_FUNCTION = Pattern.compile("function\\s+\\w+\\s*\\([^)\\n]*\\)\\s*\\{");
+
+    // 解释性文本，中英文引导语到冒号为止
+    private static final Pattern EXPLANATION_ZH = Pattern.compile("(?:以下是|这是一个|可能的|示例|我们可以|解决方案)[^：\\n]*：");
+    private static final Pattern EXPLANATION_EN = Pattern.compile("(?:Here is|The following|Example|We can|Solution)[^:\\n]*:");
+    private static final String[] PREFIXES_TO_REMOVE = {
+            "根据用户输入", "针对这个问题", "对于这个请求",
+            "Based on the input", "For this request", "Regarding this query"
+    };
+
+    // JSON 修复
+    private static final Pattern UNQUOTED_KEY = Pattern.compile("(\\w+)\\s*:");
+    private static final Pattern QUOTED_TRUE = Pattern.compile("\"true\"");
+    private static final Pattern QUOTED_FALSE = Pattern.compile("\"false\"");
+    private static final Pattern SINGLE_QUOTED = Pattern.compile("'([^']*)'");
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
      * 主清洗方法 - 处理各种不规范的 LLM 响应
+     * <p>
+     * 先单遍扫描找第一个包含 needs_tool 的完整 JSON 对象，绝大多数响应在这一步就能直接返回；
+     * 找不到时才走逐步移除代码和解释文字的慢路径
      */
     public String cleanLLMResponse(String rawResponse) {
         if (rawResponse == null || rawResponse.trim().isEmpty()) {
             return "{\"needs_tool\": false, \"tool_name\": \"\", \"parameters\": {}, \"reasoning\": \"空响应\"}";
         }
 
-        System.out.println("原始响应: " + rawResponse);
+        String candidate = JsonObjectScanner.findObject(rawResponse, DECISION_KEY);
+        if (candidate != null) {
+            return validateAndFixJson(candidate);
+        }
 
         // 步骤1: 移除代码块和示例
-        String step1 = removeCodeExamples(rawResponse);
-        System.out.println("移除代码后: " + step1);
+        String text = removeCodeExamples(rawResponse);
 
         // 步骤2: 移除解释性文本
-        String step2 = removeExplanatoryText(step1);
-        System.out.println("移除解释后: " + step2);
+        text = removeExplanatoryText(text);
 
         // 步骤3: 提取 JSON 部分
-        String step3 = extractJsonContent(step2);
-        System.out.println("提取 JSON 后: " + step3);
+        text = extractJsonContent(text);
 
         // 步骤4: 验证和修复 JSON 格式
-        String step4 = validateAndFixJson(step3);
-        System.out.println("修复 JSON 后: " + step4);
-
-        return step4;
+        return validateAndFixJson(text);
     }
 
     /**
@@ -45,21 +74,20 @@ public class ResponseValidator {
      */
     private String removeCodeExamples(String text) {
         // 移除 Python 代码示例
-        text = text.replaceAll("```python.*?```", "");
-        text = text.replaceAll("def\\s+\\w+.*?return.*", "");
-        text = text.replaceAll("print\\(.*?\\)", "");
+        text = PYTHON_BLOCK.matcher(text).replaceAll("");
+        text = PYTHON_DEF_WITH_RETURN.matcher(text).replaceAll("");
+        text = PRINT_CALL.matcher(text).replaceAll("");
 
         // 移除 Java 代码示例
-        text = text.replaceAll("```java.*?```", "");
-        text = text.replaceAll("public.*?\\{.*?\\}", "");
+        text = JAVA_BLOCK.matcher(text).replaceAll("");
+        text = JAVA_PUBLIC_BLOCK.matcher(text).replaceAll("");
 
         // 移除通用代码块标记
-        text = text.replaceAll("```json", "");
-        text = text.replaceAll("```", "");
+        text = CODE_FENCE.matcher(text).replaceAll("");
 
         // 移除函数定义
-        text = text.replaceAll("def\\s+\\w+\\s*\\(.*?\\):", "");
-        text = text.replaceAll("function\\s+\\w+\\s*\\(.*?\\)\\s*\\{", "");
+        text = PYTHON_DEF.matcher(text).replaceAll("");
+        text = JS_FUNCTION.matcher(text).replaceAll("");
 
         return text.trim();
     }
@@ -68,28 +96,11 @@ public class ResponseValidator {
      * 移除解释性文本和示例说明
      */
     private String removeExplanatoryText(String text) {
-        // 移除中文解释文本
-        text = text.replaceAll("以下是.*?：", "");
-        text = text.replaceAll("这是一个.*?：", "");
-        text = text.replaceAll("可能的.*?：", "");
-        text = text.replaceAll("示例.*?：", "");
-        text = text.replaceAll("我们可以.*?：", "");
-        text = text.replaceAll("解决方案.*?：", "");
-
-        // 移除英文解释文本
-        text = text.replaceAll("Here is.*?:", "");
-        text = text.replaceAll("The following.*?:", "");
-        text = text.replaceAll("Example.*?:", "");
-        text = text.replaceAll("We can.*?:", "");
-        text = text.replaceAll("Solution.*?:", "");
+        text = EXPLANATION_ZH.matcher(text).replaceAll("");
+        text = EXPLANATION_EN.matcher(text).replaceAll("");
 
         // 移除常见的开头短语
-        String[] prefixesToRemove = {
-                "根据用户输入", "针对这个问题", "对于这个请求",
-                "Based on the input", "For this request", "Regarding this query"
-        };
-
-        for (String prefix : prefixesToRemove) {
+        for (String prefix : PREFIXES_TO_REMOVE) {
             if (text.startsWith(prefix)) {
                 text = text.substring(prefix.length()).trim();
             }
@@ -102,25 +113,23 @@ public class ResponseValidator {
      * 提取 JSON 内容
      */
     private String extractJsonContent(String text) {
-        // 方法1: 尝试找到完整的 JSON 对象
-        Pattern jsonPattern = Pattern.compile("\\{.*?\\}", Pattern.DOTALL);
-        Matcher matcher = jsonPattern.matcher(text);
-
-        if (matcher.find()) {
-            String jsonCandidate = matcher.group();
-            // 验证这个 JSON 是否包含必要的字段
-            if (isValidToolDecisionJson(jsonCandidate)) {
-                return jsonCandidate;
-            }
+        // 方法1: 尝试找到完整的 JSON 对象（不要求包含 needs_tool，交给后续校验）
+        String jsonCandidate = JsonObjectScanner.findObject(text, null);
+        if (jsonCandidate != null && isValidToolDecisionJson(jsonCandidate)) {
+            return jsonCandidate;
         }
 
         // 方法2: 如果找不到完整 JSON，尝试逐行查找
-        String[] lines = text.split("\n");
-        for (String line : lines) {
-            line = line.trim();
-            if (line.startsWith("{") && line.contains("needs_tool")) {
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) lineEnd = text.length();
+
+            String line = text.substring(lineStart, lineEnd).trim();
+            if (line.startsWith("{") && line.contains(DECISION_KEY)) {
                 return line;
             }
+            lineStart = lineEnd + 1;
         }
 
         // 方法3: 如果还是找不到，返回原始文本让后续步骤处理
@@ -136,7 +145,6 @@ public class ResponseValidator {
             objectMapper.readTree(jsonText);
             return jsonText; // 格式正确，直接返回
         } catch (Exception e) {
-            System.out.println("JSON 解析失败，尝试修复: " + e.getMessage());
             return attemptJsonRepair(jsonText);
         }
     }
@@ -145,37 +153,37 @@ public class ResponseValidator {
      * 尝试修复常见的 JSON 格式问题
      */
     private String attemptJsonRepair(String brokenJson) {
-        String repaired = brokenJson;
+        String repaired = brokenJson.trim();
 
         // 修复1: 确保有起始和结束大括号
-        if (!repaired.trim().startsWith("{")) {
+        if (!repaired.startsWith("{")) {
             repaired = "{" + repaired;
         }
-        if (!repaired.trim().endsWith("}")) {
+        if (!repaired.endsWith("}")) {
             repaired = repaired + "}";
         }
 
         // 修复2: 修复常见的符号问题
-        repaired = repaired.replaceAll("，", ","); // 中文逗号转英文
-        repaired = repaired.replaceAll("：", ":"); // 中文冒号转英文
-        repaired = repaired.replaceAll("“", "\"").replaceAll("”", "\""); // 中文引号转英文
+        repaired = repaired.replace('，', ',') // 中文逗号转英文
+                .replace('：', ':') // 中文冒号转英文
+                .replace('“', '"').replace('”', '"'); // 中文引号转英文
 
         // 修复3: 确保键有引号
-        repaired = repaired.replaceAll("(\\w+)\\s*:", "\"$1\":");
+        repaired = UNQUOTED_KEY.matcher(repaired).replaceAll("\"$1\":");
 
         // 修复4: 处理布尔值
-        repaired = repaired.replaceAll("\"true\"", "true");
-        repaired = repaired.replaceAll("\"false\"", "false");
+        repaired = QUOTED_TRUE.matcher(repaired).replaceAll("true");
+        repaired = QUOTED_FALSE.matcher(repaired).replaceAll("false");
 
         // 修复5: 处理嵌套引号
-        repaired = repaired.replaceAll("'([^']*)'", "\"$1\"");
+        repaired = SINGLE_QUOTED.matcher(repaired).replaceAll("\"$1\"");
 
         try {
             // 再次验证修复后的 JSON
             objectMapper.readTree(repaired);
             return repaired;
         } catch (Exception e) {
-            System.out.println("JSON 修复失败，返回降级响应");
+            log.debug("JSON 修复失败，返回降级响应");
             return createFallbackJson();
         }
     }
@@ -184,15 +192,11 @@ public class ResponseValidator {
      * 验证是否是有效的 ToolDecision JSON
      */
     private boolean isValidToolDecisionJson(String jsonText) {
-        try {
-            String cleaned = jsonText.trim();
-            return cleaned.startsWith("{") &&
-                    cleaned.endsWith("}") &&
-                    cleaned.contains("needs_tool") &&
-                    cleaned.contains("tool_name");
-        } catch (Exception e) {
-            return false;
-        }
+        String cleaned = jsonText.trim();
+        return cleaned.startsWith("{") &&
+                cleaned.endsWith("}") &&
+                cleaned.contains(DECISION_KEY) &&
+                cleaned.contains("tool_name");
     }
 
     /**
@@ -208,13 +212,25 @@ public class ResponseValidator {
     public boolean containsCodeExample(String response) {
         if (response == null) return false;
 
-        String lowerResponse = response.toLowerCase();
-        return lowerResponse.contains("def ") ||
-                lowerResponse.contains("function") ||
-                lowerResponse.contains("print(") ||
-                lowerResponse.contains("public ") ||
+        return containsIgnoreCase(response, "def ") ||
+                containsIgnoreCase(response, "function") ||
+                containsIgnoreCase(response, "print(") ||
+                containsIgnoreCase(response, "public ") ||
                 response.contains("```") ||
                 response.contains("以下是可能的") ||
                 response.contains("这是一个示例");
     }
+
+    /**
+     * 不分配新字符串的忽略大小写子串查找（关键词均为 ASCII）
+     */
+    private static boolean containsIgnoreCase(String text, String keyword) {
+        int limit = text.length() - keyword.length();
+        for (int i = 0; i <= limit; i++) {
+            if (text.regionMatches(true, i, keyword, 0, keyword.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
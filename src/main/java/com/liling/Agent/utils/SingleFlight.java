@@ -0,0 +1,102 @@
+package com.liling.Agent.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 请求合并：同一个 key 同时只执行一次，执行期间到达的相同请求直接等待并共享这次的结果
+ * <p>
+ * 第一个到达的调用方（leader）负责执行，结果或异常原样交给等待中的调用方（follower）。
+ * leader 被中断或结果不适合共享时（例如只读了一半就被自己的回调终止），follower 重新竞争执行，
+ * 而不是拿到半截结果。
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+
+    /**
+     * 执行或加入一次请求
+     *
+     * @param shareable leader 的结果是否可以交给 follower，返回 false 时 follower 各自重试
+     */
+    public V execute(K key, Call<V> call, Predicate<V> shareable) throws Exception {
+        while (true) {
+            CompletableFuture<V> flight = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+
+            if (existing == null) {
+                return lead(key, flight, call, shareable);
+            }
+
+            coalesced.incrementAndGet();
+            try {
+                return existing.get();
+            } catch (CancellationException e) {
+                // leader 放弃了这次结果，重新竞争；CompletableFuture.get 直接抛出 CancellationException，不包装
+                continue;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private V lead(K key, CompletableFuture<V> flight, Call<V> call, Predicate<V> shareable) throws Exception {
+        executions.incrementAndGet();
+        try {
+            V value = call.call();
+            if (!Thread.currentThread().isInterrupted() && shareable.test(value)) {
+                flight.complete(value);
+            } else {
+                abandoned.incrementAndGet();
+                flight.completeExceptionally(new CancellationException("leader 放弃了本次结果"));
+            }
+            return value;
+        } catch (Throwable t) {
+            flight.completeExceptionally(Thread.currentThread().isInterrupted()
+                    ? new CancellationException("leader 被中断") : t);
+            throw t;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    public long getExecutions() { return executions.get(); }
+    public long getCoalesced() { return coalesced.get(); }
+
+    /**
+     * 统计信息快照
+     */
+    public Map<String, Object> getStats() {
+        long executed = executions.get();
+        long joined = coalesced.get();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", inFlight.size());
+        stats.put("executions", executed);
+        stats.put("coalesced", joined);
+        stats.put("abandoned", abandoned.get());
+        stats.put("coalescedRate", executed + joined == 0 ? 0.0 : (double) joined / (executed + joined));
+        return stats;
+    }
+
+    /**
+     * 实际执行的调用，可以抛出受检异常
+     */
+    @FunctionalInterface
+    public interface Call<V> {
+        V call() throws Exception;
+    }
+}
@@ -0,0 +1,85 @@
+package com.liling.Agent.utils;
+
+/**
+ * 增量 JSON 对象提取器：逐块喂入 LLM 流式输出，一旦出现包含指定键的完整顶层对象就返回它
+ * <p>
+ * 与 {@link JsonObjectScanner} 使用相同的括号/字符串/转义规则，但保存扫描状态，
+ * 每个字符只扫描一次，调用方可以在对象完整后立即中断生成。
+ */
+public class StreamingJsonExtractor {
+
+    private final String quotedKey;
+    private final StringBuilder buffer = new StringBuilder();
+
+    private int scanned;
+    private int objectStart = -1;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private String result;
+
+    public StreamingJsonExtractor(String requiredKey) {
+        this.quotedKey = requiredKey == null ? null : "\"" + requiredKey + "\"";
+    }
+
+    /**
+     * 追加一段输出，返回已完成的对象；尚未完成时返回 null
+     */
+    public String feed(CharSequence chunk) {
+        if (result != null) return result;
+
+        buffer.append(chunk);
+        for (; scanned < buffer.length(); scanned++) {
+            char c = buffer.charAt(scanned);
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+
+            if (c == '"') {
+                // 对象之外的引号不影响括号匹配
+                inString = objectStart >= 0;
+            } else if (c == '{') {
+                if (depth == 0) objectStart = scanned;
+                depth++;
+            } else if (c == '}' && depth > 0) {
+                depth--;
+                if (depth == 0) {
+                    String candidate = buffer.substring(objectStart, scanned + 1);
+                    objectStart = -1;
+                    if (quotedKey == null || candidate.contains(quotedKey)) {
+                        scanned++;
+                        result = candidate;
+                        return result;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 已提取到的对象，没有时返回 null
+     */
+    public String getResult() {
+        return result;
+    }
+
+    public boolean isComplete() {
+        return result != null;
+    }
+
+    /**
+     * 到目前为止收到的全部文本
+     */
+    public String getText() {
+        return buffer.toString();
+    }
+}
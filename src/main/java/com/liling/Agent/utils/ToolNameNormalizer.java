@@ -1,50 +1,95 @@
 package com.liling.Agent.utils;
 
+import com.liling.Agent.service.Tool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 把模型输出的工具名规范化为已注册的工具名
+ * <p>
+ * 索引由注册的 Tool 及其 getAliases() 自动生成，每个名称和别名再派生 getXxx、xxxTool 两种写法。
+ * 所有键统一折叠为小写并去掉分隔符，因此 "Weather"、"WEATHER"、"get_weather" 不需要单独登记。
+ * 查找顺序：最近结果备忘 → 折叠后精确匹配 → 按分隔符和驼峰拆出的单词精确匹配（"current_time"）
+ * → 唯一前缀匹配（"calcul"）→ 对称删除索引按编辑距离找最近的键（"wether"）。
+ * 每一步的开销都只取决于查询词的长度，与工具数量基本无关。
+ */
 @Component
 public class ToolNameNormalizer {
 
-    // 工具名称映射：标准名称 -> 可能的变体
-    private final Map<String, String> toolNameVariants = new HashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(ToolNameNormalizer.class);
 
-    public ToolNameNormalizer() {
-        initializeToolNameMapping();
+    private static final String[] DERIVED_PREFIXES = {"get"};
+    private static final String[] DERIVED_SUFFIXES = {"tool"};
+
+    // 前缀匹配至少需要的字符数，太短的前缀容易误配
+    private static final int MIN_PREFIX_LENGTH = 4;
+    private static final int MEMO_SIZE = 512;
+    // 备忘中表示"无法匹配"的值
+    private static final String NO_MATCH = "";
+
+    // 折叠后的键 -> 标准工具名
+    private final Map<String, String> exact = new HashMap<>();
+    // 同样的键按字典序排列，用于前缀查找
+    private final TreeMap<String, String> sorted = new TreeMap<>();
+    private final DeletionIndex fuzzyIndex = new DeletionIndex();
+    private final TtlLruCache<String, String> memo = new TtlLruCache<>(MEMO_SIZE, null);
+
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong tokenHits = new AtomicLong();
+    private final AtomicLong prefixHits = new AtomicLong();
+    private final AtomicLong fuzzyHits = new AtomicLong();
+    private final AtomicLong unmatched = new AtomicLong();
+
+    // 编辑距离计算用的两行缓冲，按线程复用
+    private static final ThreadLocal<int[][]> ROWS = ThreadLocal.withInitial(() -> new int[2][32]);
+
+    public ToolNameNormalizer(List<Tool> tools) {
+        for (Tool tool : tools) {
+            register(tool.getName(), tool.getName());
+            for (String alias : tool.getAliases()) {
+                register(alias, tool.getName());
+            }
+        }
+    }
+
+    private void register(String name, String canonical) {
+        String key = fold(name);
+        if (key.isEmpty()) return;
+
+        addKey(key, canonical);
+        for (String prefix : DERIVED_PREFIXES) {
+            addKey(prefix + key, canonical);
+        }
+        for (String suffix : DERIVED_SUFFIXES) {
+            addKey(key + suffix, canonical);
+        }
     }
 
-    private void initializeToolNameMapping() {
-        // 小写变体
-        toolNameVariants.put("time", "time");
-        toolNameVariants.put("timer", "time");
-        toolNameVariants.put("currenttime", "time");
-        toolNameVariants.put("gettime", "time");
-
-        // 大写变体
-        toolNameVariants.put("Time", "time");
-        toolNameVariants.put("TIME", "time");
-        toolNameVariants.put("Timer", "time");
-
-        // 计算器变体
-        toolNameVariants.put("calculator", "calculator");
-        toolNameVariants.put("Calculator", "calculator");
-        toolNameVariants.put("CALCULATOR", "calculator");
-        toolNameVariants.put("calc", "calculator");
-        toolNameVariants.put("Calc", "calculator");
-        toolNameVariants.put("calculation", "calculator");
-
-        // 天气变体
-        toolNameVariants.put("weather", "weather");
-        toolNameVariants.put("Weather", "weather");
-        toolNameVariants.put("WEATHER", "weather");
-        toolNameVariants.put("forecast", "weather");
-        toolNameVariants.put("Forecast", "weather");
+    private void addKey(String key, String canonical) {
+        String existing = exact.putIfAbsent(key, canonical);
+        if (existing != null) {
+            if (!existing.equals(canonical)) {
+                log.warn("工具别名冲突，忽略: {} 已指向 {}，不再指向 {}", key, existing, canonical);
+            }
+            return;
+        }
+        sorted.put(key, canonical);
+        fuzzyIndex.add(key, canonical);
     }
 
     /**
-     * 规范化工具名称
+     * 规范化工具名称，无法匹配时返回 null
      */
     public String normalize(String toolName) {
         if (toolName == null || toolName.trim().isEmpty()) {
@@ -52,68 +97,157 @@ public class ToolNameNormalizer {
         }
 
         String trimmed = toolName.trim();
+        String remembered = memo.get(trimmed);
+        if (remembered != null) {
+            return remembered.isEmpty() ? null : remembered;
+        }
+
+        String resolved = resolve(trimmed);
+        memo.put(trimmed, resolved == null ? NO_MATCH : resolved);
+        return resolved;
+    }
+
+    private String resolve(String toolName) {
+        String key = fold(toolName);
+        if (key.isEmpty()) {
+            unmatched.incrementAndGet();
+            return null;
+        }
 
-        // 1. 首先检查映射表
-        if (toolNameVariants.containsKey(trimmed)) {
-            return toolNameVariants.get(trimmed);
+        String match = exact.get(key);
+        if (match != null) {
+            exactHits.incrementAndGet();
+            return match;
+        }
+
+        for (String token : tokens(toolName)) {
+            match = exact.get(token);
+            if (match != null) {
+                tokenHits.incrementAndGet();
+                return match;
+            }
         }
 
-        // 2. 转换为小写检查
-        String lowerCase = trimmed.toLowerCase();
-        if (toolNameVariants.containsKey(lowerCase)) {
-            return toolNameVariants.get(lowerCase);
+        match = uniquePrefixMatch(key);
+        if (match != null) {
+            prefixHits.incrementAndGet();
+            return match;
         }
 
-        // 3. 模糊匹配
-        return fuzzyMatch(trimmed);
+        match = fuzzyIndex.nearest(key, maxDistance(key));
+        if (match != null) {
+            fuzzyHits.incrementAndGet();
+            return match;
+        }
+
+        unmatched.incrementAndGet();
+        return null;
     }
 
     /**
-     * 模糊匹配工具名称
+     * 以 key 开头的键都指向同一个工具时返回该工具
      */
-    private String fuzzyMatch(String toolName) {
-        String lowerToolName = toolName.toLowerCase();
+    private String uniquePrefixMatch(String key) {
+        if (key.length() < MIN_PREFIX_LENGTH) return null;
 
-        for (String variant : toolNameVariants.keySet()) {
-            String lowerVariant = variant.toLowerCase();
-
-            // 包含关系匹配
-            if (lowerToolName.contains(lowerVariant) || lowerVariant.contains(lowerToolName)) {
-                return toolNameVariants.get(variant);
+        String match = null;
+        for (Map.Entry<String, String> entry : sorted.tailMap(key, true).entrySet()) {
+            if (!entry.getKey().startsWith(key)) break;
+            if (match == null) {
+                match = entry.getValue();
+            } else if (!match.equals(entry.getValue())) {
+                return null;
             }
+        }
+        return match;
+    }
+
+    /**
+     * 允许的编辑距离随长度增加，最多 2；很短的名称只容忍 1 处错误，避免误配
+     */
+    private static int maxDistance(String key) {
+        return Math.min(2, Math.max(1, key.length() / 4));
+    }
 
-            // 编辑距离匹配（用于拼写错误）
-            if (calculateLevenshteinDistance(lowerToolName, lowerVariant) <= 2) {
-                return toolNameVariants.get(variant);
+    /**
+     * 转小写并去掉所有非字母数字字符
+     */
+    static String fold(String name) {
+        StringBuilder folded = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                folded.append(Character.toLowerCase(c));
             }
         }
-
-        return null; // 无法匹配
+        return folded.toString();
     }
 
     /**
-     * 计算编辑距离（Levenshtein Distance）
+     * 按分隔符和驼峰边界拆成小写单词，例如 "getCurrent_time" -> [get, current, time]
      */
-    private int calculateLevenshteinDistance(String s1, String s2) {
-        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
-
-        for (int i = 0; i <= s1.length(); i++) {
-            for (int j = 0; j <= s2.length(); j++) {
-                if (i == 0) {
-                    dp[i][j] = j;
-                } else if (j == 0) {
-                    dp[i][j] = i;
-                } else {
-                    dp[i][j] = Math.min(Math.min(
-                                    dp[i - 1][j] + 1,     // 删除
-                                    dp[i][j - 1] + 1),    // 插入
-                            dp[i - 1][j - 1] + (s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 1) // 替换
-                    );
-                }
+    static List<String> tokens(String name) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        char previous = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean boundary = !Character.isLetterOrDigit(c)
+                    || (Character.isUpperCase(c) && Character.isLowerCase(previous));
+            if (boundary && current.length() > 0) {
+                tokens.add(current.toString());
+                current.setLength(0);
             }
+            if (Character.isLetterOrDigit(c)) {
+                current.append(Character.toLowerCase(c));
+            }
+            previous = c;
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * 两行滚动数组计算编辑距离；某一行的最小值已超过 limit 时提前结束，返回 limit + 1
+     */
+    static int boundedDistance(String a, String b, int limit) {
+        int lengthA = a.length();
+        int lengthB = b.length();
+        if (Math.abs(lengthA - lengthB) > limit) {
+            return limit + 1;
+        }
+
+        int[][] rows = ROWS.get();
+        if (rows[0].length <= lengthB) {
+            rows = new int[2][lengthB + 1];
+            ROWS.set(rows);
+        }
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        for (int j = 0; j <= lengthB; j++) {
+            previous[j] = j;
         }
 
-        return dp[s1.length()][s2.length()];
+        for (int i = 1; i <= lengthA; i++) {
+            current[0] = i;
+            int rowMin = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= lengthB; j++) {
+                int substitution = previous[j - 1] + (ca == b.charAt(j - 1) ? 0 : 1);
+                int value = Math.min(substitution, Math.min(previous[j] + 1, current[j - 1] + 1));
+                current[j] = value;
+                if (value < rowMin) rowMin = value;
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[lengthB], limit + 1);
     }
 
     /**
@@ -121,12 +255,91 @@ public class ToolNameNormalizer {
      */
     public Map<String, String> getSupportedTools() {
         Map<String, String> supported = new HashMap<>();
-        for (String variant : toolNameVariants.keySet()) {
-            String standardName = toolNameVariants.get(variant);
-            if (!supported.containsKey(standardName)) {
-                supported.put(standardName, standardName);
-            }
+        for (String standardName : exact.values()) {
+            supported.put(standardName, standardName);
         }
         return supported;
     }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("indexedKeys", exact.size());
+        stats.put("fuzzyIndexEntries", fuzzyIndex.size());
+        stats.put("memo", memo.getStats());
+        stats.put("exactHits", exactHits.get());
+        stats.put("tokenHits", tokenHits.get());
+        stats.put("prefixHits", prefixHits.get());
+        stats.put("fuzzyHits", fuzzyHits.get());
+        stats.put("unmatched", unmatched.get());
+        return stats;
+    }
+
+    /**
+     * 对称删除索引：登记每个键删掉至多 MAX_DISTANCE 个字符后得到的所有字符串。两个字符串的编辑距离不超过 d 时，
+     * 它们各自删掉至多 d 个字符后必然有相同的结果，因此查询时只需生成查询词的删除变体逐个查表，
+     * 再用编辑距离核对候选。查询开销取决于查询词长度，与登记的键数量无关
+     */
+    private static class DeletionIndex {
+        private static final int MAX_DISTANCE = 2;
+
+        private final List<String> keys = new ArrayList<>();
+        private final List<String> canonicals = new ArrayList<>();
+        private final Map<String, List<Integer>> postings = new HashMap<>();
+
+        void add(String key, String canonical) {
+            int id = keys.size();
+            keys.add(key);
+            canonicals.add(canonical);
+            for (String variant : deletions(key, MAX_DISTANCE)) {
+                postings.computeIfAbsent(variant, v -> new ArrayList<>(1)).add(id);
+            }
+        }
+
+        /**
+         * 返回距离不超过 radius 的最近键对应的工具名，距离相同时取先登记的键
+         */
+        String nearest(String query, int radius) {
+            int best = -1;
+            int bestDistance = radius + 1;
+            for (String variant : deletions(query, Math.min(radius, MAX_DISTANCE))) {
+                List<Integer> ids = postings.get(variant);
+                if (ids == null) continue;
+
+                for (int id : ids) {
+                    int distance = boundedDistance(query, keys.get(id), radius);
+                    if (distance < bestDistance || (distance == bestDistance && distance <= radius && id < best)) {
+                        best = id;
+                        bestDistance = distance;
+                    }
+                }
+            }
+            return best < 0 ? null : canonicals.get(best);
+        }
+
+        int size() {
+            return postings.size();
+        }
+
+        /**
+         * 删掉至多 depth 个字符得到的所有字符串（含原串）
+         */
+        private static Set<String> deletions(String word, int depth) {
+            Set<String> result = new HashSet<>();
+            result.add(word);
+            List<String> frontier = List.of(word);
+            for (int level = 0; level < depth; level++) {
+                List<String> next = new ArrayList<>();
+                for (String current : frontier) {
+                    for (int i = 0; i < current.length(); i++) {
+                        String deleted = current.substring(0, i) + current.substring(i + 1);
+                        if (result.add(deleted)) {
+                            next.add(deleted);
+                        }
+                    }
+                }
+                frontier = next;
+            }
+            return result;
+        }
+    }
 }
@@ -0,0 +1,34 @@
+package com.liling.Agent.utils;
+
+import com.liling.Agent.model.RequestUsage;
+
+/**
+ * 当前线程正在处理的对话请求的用量记录
+ * <p>
+ * 由 SmartAgentService 在处理消息时设置，OllamaService 把每次 LLM 调用记到这里；
+ * 分类、工具等线程池经 MdcExecutorService 继承提交线程的记录。不在对话请求内时 current() 返回 null。
+ */
+public final class UsageContext {
+
+    private static final ThreadLocal<RequestUsage> CURRENT = new ThreadLocal<>();
+
+    private UsageContext() {
+    }
+
+    public static RequestUsage current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 设置当前线程的用量记录，返回之前的值，便于结束后还原
+     */
+    public static RequestUsage set(RequestUsage usage) {
+        RequestUsage previous = CURRENT.get();
+        if (usage == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(usage);
+        }
+        return previous;
+    }
+}
@@ -0,0 +1,74 @@
+package com.liling.Agent.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestUsageTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    void callsAreSummedPerStageAndInTotal() {
+        RequestUsage usage = new RequestUsage();
+        usage.recordLlmCall("classification", result(100, 20, 300));
+        usage.recordLlmCall("classification", result(100, 15, 250));
+        usage.recordElapsed("classification", 320 * MS);
+        usage.recordElapsed("tools", 40 * MS);
+        usage.recordLlmCall("answer", result(400, 80, 1200));
+        usage.recordElapsed("answer", 1250 * MS);
+
+        Map<String, RequestUsage.StageUsage> stages = usage.getStages();
+        assertEquals(List.of("classification", "tools", "answer"), List.copyOf(stages.keySet()));
+
+        RequestUsage.StageUsage classification = stages.get("classification");
+        assertEquals(2, classification.getLlmCalls());
+        assertEquals(200, classification.getPromptTokens());
+        assertEquals(35, classification.getCompletionTokens());
+        assertEquals(550, classification.getLlmMs());
+        assertEquals(320, classification.getElapsedMs());
+        assertEquals(20, classification.getPromptEvalMs());
+        assertEquals(70, classification.getEvalMs());
+        assertEquals(0, stages.get("tools").getLlmCalls());
+
+        assertEquals(3, usage.getLlmCalls());
+        assertEquals(600, usage.getPromptTokens());
+        assertEquals(115, usage.getCompletionTokens());
+    }
+
+    @Test
+    void unreportedCallCountsStreamedChunks() {
+        RequestUsage usage = new RequestUsage();
+        // 提前断开的流式调用：只有收到的块数
+        usage.recordLlmCall("classification", LlmResult.of("{\"needs_tool\"", "m", null, 7, 90 * MS));
+
+        RequestUsage.StageUsage stage = usage.getStages().get("classification");
+        assertEquals(1, stage.getLlmCalls());
+        assertEquals(0, stage.getPromptTokens());
+        assertEquals(7, stage.getCompletionTokens());
+        assertEquals(90, stage.getLlmMs());
+    }
+
+    @Test
+    void stagesAreSnapshots() {
+        RequestUsage usage = new RequestUsage();
+        usage.recordElapsed("answer", 10 * MS);
+        Map<String, RequestUsage.StageUsage> before = usage.getStages();
+
+        usage.recordElapsed("answer", 10 * MS);
+        assertEquals(10, before.get("answer").getElapsedMs());
+        assertEquals(20, usage.getStages().get("answer").getElapsedMs());
+    }
+
+    private static LlmResult result(int promptTokens, int completionTokens, long elapsedMillis) {
+        OllamaGenerateResponse last = new OllamaGenerateResponse();
+        last.setPromptEvalCount(promptTokens);
+        last.setPromptEvalDuration(10 * MS);
+        last.setEvalCount(completionTokens);
+        last.setEvalDuration(completionTokens * 2 * MS);
+        return LlmResult.of("", "m", last, completionTokens, elapsedMillis * MS);
+    }
+}
@@ -0,0 +1,90 @@
+package com.liling.Agent.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingToolTest {
+
+    @Test
+    void forwardsEveryDefaultMethod() throws Exception {
+        for (Method method : Tool.class.getMethods()) {
+            if (method.isDefault()) {
+                Method declared = CachingTool.class.getMethod(method.getName(), method.getParameterTypes());
+                assertEquals(CachingTool.class, declared.getDeclaringClass(),
+                        "CachingTool 没有转发 " + method.getName());
+            }
+        }
+    }
+
+    @Test
+    void exposesDelegateDeclarations() {
+        CachingTool caching = new CachingTool(new CountingTool());
+        assertEquals(List.of("count"), caching.getAliases());
+        assertEquals(ToolResponseMode.RAW, caching.getResponseMode());
+        assertEquals("value", caching.resultValue("raw"));
+        assertTrue(caching.supportsBatch());
+    }
+
+    @Test
+    void cachesByNormalizedParameters() {
+        CountingTool delegate = new CountingTool();
+        CachingTool caching = new CachingTool(delegate);
+
+        assertEquals("上海#1", caching.execute(Map.of("city", "上海")));
+        assertEquals("上海#1", caching.execute(Map.of("city", "  上海 ")));
+        assertEquals("北京#2", caching.execute(Map.of("city", "北京")));
+        assertEquals(2, delegate.calls.get());
+    }
+
+    private static class CountingTool implements Tool {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String getName() {
+            return "counting";
+        }
+
+        @Override
+        public String getDescription() {
+            return "counting";
+        }
+
+        @Override
+        public String execute(Map<String, String> parameters) {
+            return parameters.get("city").trim() + "#" + calls.incrementAndGet();
+        }
+
+        @Override
+        public List<String> getAliases() {
+            return List.of("count");
+        }
+
+        @Override
+        public ToolMetadata getMetadata() {
+            return new ToolMetadata(null, 0, true, Duration.ofMinutes(1), 16);
+        }
+
+        @Override
+        public ToolResponseMode getResponseMode() {
+            return ToolResponseMode.RAW;
+        }
+
+        @Override
+        public String resultValue(String rawResult) {
+            return "value";
+        }
+
+        @Override
+        public boolean supportsBatch() {
+            return true;
+        }
+    }
+}
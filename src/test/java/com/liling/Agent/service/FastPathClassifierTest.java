@@ -0,0 +1,99 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.model.ToolDecision;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FastPathClassifierTest {
+
+    private final FastPathClassifier classifier = new FastPathClassifier(new AgentProperties());
+
+    @Test
+    void bareExpressionShortCircuits() {
+        ToolDecision decision = classifier.tryShortCircuit("3 × 7 + 1 等于多少？");
+        assertNotNull(decision);
+        assertEquals("calculator", decision.getToolName());
+        assertEquals("3*7+1", decision.getParameters().get("expression"));
+    }
+
+    @Test
+    void datesAndPhoneNumbersAreNotExpressions() {
+        for (String message : new String[]{"2024-10-18", "138-1234-5678", "我的电话是 138-1234-5678"}) {
+            assertNull(classifier.tryShortCircuit(message), message);
+            FastPathClassifier.Classification classification = classifier.classify(message);
+            assertNotEquals("calculator", classification.getDecision().getToolName(), message);
+        }
+    }
+
+    @Test
+    void singleMinusNeedsConfirmation() {
+        FastPathClassifier.Classification classification = classifier.classify("10-3");
+        assertEquals("calculator", classification.getDecision().getToolName());
+        assertEquals(0.6, classification.getConfidence(), 1e-9);
+        assertNull(classifier.tryShortCircuit("10-3"));
+
+        assertNotNull(classifier.tryShortCircuit("10-3+1"));
+    }
+
+    @Test
+    void ambiguousMessagesAreCapped() {
+        FastPathClassifier.Classification classification = classifier.classify("北京天气怎么样，现在几点");
+        assertTrue(classification.getConfidence() <= 0.6);
+        assertNull(classifier.tryShortCircuit("北京天气怎么样，现在几点"));
+    }
+
+    @Test
+    void severalCitiesAreLeftToThePlanner() {
+        for (String message : new String[]{"北京和上海天气", "北京、上海的天气", "weather in 北京 and 上海", "北京跟纽约天气"}) {
+            FastPathClassifier.Classification classification = classifier.classify(message);
+            assertEquals("weather", classification.getDecision().getToolName(), message);
+            assertTrue(classification.getConfidence() < 0.9, message);
+            assertNull(classifier.tryShortCircuit(message), message);
+        }
+        assertNotNull(classifier.tryShortCircuit("上海天气"));
+    }
+
+    @Test
+    void programmingRequestsAreCapped() {
+        FastPathClassifier.Classification classification = classifier.classify("用 python 写一个计算 3+5 的函数");
+        assertTrue(classification.getConfidence() <= 0.4);
+    }
+
+    @Test
+    void shortTimeQuestionShortCircuits() {
+        ToolDecision decision = classifier.tryShortCircuit("现在几点了");
+        assertNotNull(decision);
+        assertEquals("time", decision.getToolName());
+    }
+
+    @Test
+    void chatIsNotRouted() {
+        FastPathClassifier.Classification classification = classifier.classify("给我讲个笑话");
+        assertFalse(classification.getDecision().isNeedsTool());
+        assertEquals(0.0, classification.getConfidence());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void histogramLabelsDoNotDependOnDefaultLocale() {
+        Locale original = Locale.getDefault();
+        try {
+            // 德语区域设置的小数点是逗号
+            Locale.setDefault(Locale.GERMANY);
+            Map<String, Long> histogram = (Map<String, Long>) classifier.getStats().get("confidenceHistogram");
+            assertTrue(histogram.containsKey("0.9-1.0"), histogram.keySet().toString());
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+}
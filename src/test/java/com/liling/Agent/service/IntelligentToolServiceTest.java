@@ -0,0 +1,460 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.config.OllamaProperties;
+import com.liling.Agent.exception.LlmException;
+import com.liling.Agent.model.ToolCall;
+import com.liling.Agent.model.ToolCallResult;
+import com.liling.Agent.model.ToolDecision;
+import com.liling.Agent.service.impl.CalculatorTool;
+import com.liling.Agent.utils.AgentMetrics;
+import com.liling.Agent.utils.ExpressionEngine;
+import com.liling.Agent.utils.PayloadLogger;
+import com.liling.Agent.utils.ResponseValidator;
+import com.liling.Agent.utils.ToolNameNormalizer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntelligentToolServiceTest {
+
+    // 不会被规则快速分类命中的消息
+    private static final String MESSAGE = "帮我把这段话总结一下";
+    private static final long MS = 1_000_000L;
+
+    private final AtomicInteger batches = new AtomicInteger();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private AgentProperties properties;
+    private ExecutorService executor;
+    private IntelligentToolService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = new AgentProperties();
+        executor = Executors.newCachedThreadPool();
+
+        ToolInvoker invoker = new ToolInvoker();
+        ReflectionTestUtils.setField(invoker, "agentProperties", properties);
+        ReflectionTestUtils.setField(invoker, "toolExecutor", executor);
+        ReflectionTestUtils.setField(invoker, "metrics", new AgentMetrics(registry));
+
+        CalculatorTool calculator = new CalculatorTool();
+        ReflectionTestUtils.setField(calculator, "expressionEngine", new ExpressionEngine(properties));
+
+        service = new IntelligentToolService(List.of(new SumTool(), new FailingTool(), calculator), properties);
+        ReflectionTestUtils.setField(service, "toolInvoker", invoker);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static ToolCall call(String id, String toolName, String value, String... dependsOn) {
+        return new ToolCall(id, toolName, Map.of("value", value), List.of(dependsOn));
+    }
+
+    private List<ToolCallResult> execute(ToolCall... calls) {
+        ToolDecision decision = new ToolDecision(true, null, Map.of(), "");
+        decision.setToolCalls(List.of(calls));
+        return service.executePlan(decision);
+    }
+
+    @Test
+    void referencesAreReplacedWithResultValues() {
+        List<ToolCallResult> results = execute(
+                call("b", "sum", "{{a}}+1", "a"),
+                call("a", "sum", "2+3"));
+
+        // 按计划中的顺序返回
+        assertEquals("b", results.get(0).getId());
+        assertEquals("sum = 5", results.get(1).getResult());
+        // 引用的是 resultValue 取出的值，而不是整段原始结果
+        assertEquals("sum = 6", results.get(0).getResult());
+        assertTrue(results.get(0).isSuccess());
+    }
+
+    @Test
+    void chainedCalculationsUseUnroundedResults() {
+        List<ToolCallResult> results = execute(
+                new ToolCall("1", "calculator", Map.of("expression", "1/3"), List.of()),
+                new ToolCall("2", "calculator", Map.of("expression", "{{1}}*3"), List.of("1")));
+
+        assertEquals("计算结果: 0.3333333333333333*3 = 1", results.get(1).getResult());
+    }
+
+    @Test
+    void callsDependingOnAFailureAreSkipped() {
+        List<ToolCallResult> results = execute(
+                call("1", "fail", "x"),
+                call("2", "sum", "{{1}}+1", "1"),
+                call("3", "sum", "{{2}}+1", "2"),
+                call("4", "sum", "1+1"));
+
+        assertFalse(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(results.get(1).getResult().contains("依赖的调用 1 失败"), results.get(1).getResult());
+        assertFalse(results.get(2).isSuccess());
+        assertTrue(results.get(2).getResult().contains("依赖的调用 2 失败"), results.get(2).getResult());
+        assertEquals("sum = 2", results.get(3).getResult());
+    }
+
+    @Test
+    void unknownDependenciesAndToolsFail() {
+        List<ToolCallResult> results = execute(
+                call("1", "sum", "1", "missing"),
+                call("2", "nope", "1"));
+
+        assertEquals("错误：调用依赖无法满足", results.get(0).getResult());
+        assertEquals("错误：工具未找到 - nope", results.get(1).getResult());
+    }
+
+    @Test
+    void independentCallsOfABatchToolRunAsOneBatch() {
+        List<ToolCallResult> results = execute(
+                call("1", "sum", "1+1"),
+                call("2", "sum", "2+2"),
+                call("3", "sum", "{{1}}+{{2}}", "1", "2"));
+
+        assertEquals("sum = 2", results.get(0).getResult());
+        assertEquals("sum = 4", results.get(1).getResult());
+        assertEquals("sum = 6", results.get(2).getResult());
+        // 第一批两个调用合并执行，第二批只有一个调用
+        assertEquals(1, batches.get());
+    }
+
+    @Test
+    void hedgeFiresOnlyAfterDelay() {
+        StubOllama ollama = classifyWith(AgentProperties.Classification.Strategy.HEDGED,
+                Duration.ofMillis(300), Duration.ofSeconds(5));
+        ollama.respond(1, () -> {
+            Thread.sleep(5000);
+            return decision("1");
+        });
+        ollama.respond(2, () -> decision("2"));
+
+        long start = System.nanoTime();
+        ToolDecision decision = service.analyzeWithLLM(MESSAGE);
+
+        assertEquals("2", decision.getParameters().get("value"));
+        assertTrue(ollama.startedAt(2) - start >= 300 * MS, "对冲请求在延迟之前发出");
+        assertTrue(ollama.cancelled(1));
+        assertFalse(ollama.started(3));
+    }
+
+    @Test
+    void fastFirstAttemptIsNotHedged() {
+        StubOllama ollama = classifyWith(AgentProperties.Classification.Strategy.HEDGED,
+                Duration.ofMillis(500), Duration.ofSeconds(5));
+        ollama.respond(1, () -> {
+            Thread.sleep(50);
+            return decision("1");
+        });
+
+        assertEquals("1", service.analyzeWithLLM(MESSAGE).getParameters().get("value"));
+        assertFalse(ollama.started(2));
+    }
+
+    @Test
+    void invalidFirstResultHedgesImmediately() {
+        StubOllama ollama = classifyWith(AgentProperties.Classification.Strategy.HEDGED,
+                Duration.ofSeconds(10), Duration.ofSeconds(20));
+        ollama.respond(1, () -> "抱歉，我不太确定需要什么工具");
+        ollama.respond(2, () -> decision("2"));
+
+        long start = System.nanoTime();
+        ToolDecision decision = service.analyzeWithLLM(MESSAGE);
+
+        assertEquals("2", decision.getParameters().get("value"));
+        assertTrue(System.nanoTime() - start < 2000 * MS, "无效结果后没有立即发起下一次尝试");
+        assertFalse(ollama.started(3));
+    }
+
+    @Test
+    void firstValidParallelResultWinsAndOthersAreCancelled() {
+        StubOllama ollama = classifyWith(AgentProperties.Classification.Strategy.PARALLEL,
+                Duration.ofSeconds(2), Duration.ofSeconds(5));
+        ollama.respond(1, () -> {
+            Thread.sleep(5000);
+            return decision("1");
+        });
+        ollama.respond(2, () -> {
+            Thread.sleep(100);
+            return decision("2");
+        });
+        ollama.respond(3, () -> {
+            Thread.sleep(5000);
+            return decision("3");
+        });
+
+        assertEquals("2", service.analyzeWithLLM(MESSAGE).getParameters().get("value"));
+        assertTrue(ollama.cancelled(1));
+        assertTrue(ollama.cancelled(3));
+        assertFalse(ollama.cancelled(2));
+    }
+
+    @Test
+    void timeoutFallsBackToRules() {
+        StubOllama ollama = classifyWith(AgentProperties.Classification.Strategy.HEDGED,
+                Duration.ofMillis(50), Duration.ofMillis(300));
+        for (int attempt = 1; attempt <= 3; attempt++) {
+            ollama.respond(attempt, () -> {
+                Thread.sleep(5000);
+                return decision("late");
+            });
+        }
+
+        long start = System.nanoTime();
+        ToolDecision decision = service.analyzeWithLLM(MESSAGE);
+
+        assertTrue(System.nanoTime() - start < 2000 * MS);
+        assertEquals(new FastPathClassifier(properties).ruleBased(MESSAGE).isNeedsTool(), decision.isNeedsTool());
+        assertEquals(1, registry.get("agent.classification").tag("source", "rule_fallback").timer().count());
+        for (int attempt = 1; attempt <= 3; attempt++) {
+            assertTrue(ollama.cancelled(attempt), "第 " + attempt + " 次尝试没有被取消");
+        }
+    }
+
+    @Test
+    void classificationStreamStopsAtCompleteDecision() {
+        StubOllama ollama = classifyWith(AgentProperties.Classification.Strategy.HEDGED,
+                Duration.ofSeconds(2), Duration.ofSeconds(5));
+        ollama.stream(1, false, "{\"needs_tool\": true, \"tool_name\": \"sum\", ",
+                "\"parameters\": {\"value\": \"1+2\"}} ", "下面解释一下为什么选择 sum", "……");
+
+        ToolDecision decision = service.analyzeWithLLM(MESSAGE);
+
+        assertEquals("1+2", decision.getParameters().get("value"));
+        assertEquals(2, ollama.consumed(1), "决策完整后仍在读取");
+        assertEquals(1L, service.getClassificationStats().get("earlyStoppedStreams"));
+        assertFalse(ollama.started(2));
+    }
+
+    @Test
+    void truncatedClassificationStreamIsNeverCached() {
+        StubOllama ollama = classifyWith(AgentProperties.Classification.Strategy.HEDGED,
+                Duration.ofSeconds(2), Duration.ofSeconds(5));
+        // 输出在参数值中间断开，补上括号后看起来就是一个 value 为 "1" 的有效决策
+        ollama.stream(1, true, "```json\n{\"needs_tool\": true, \"tool_name\": \"sum\", ",
+                "\"parameters\": {\"value\": \"1");
+
+        ToolDecision decision = service.analyzeWithLLM(MESSAGE);
+
+        assertEquals(new FastPathClassifier(properties).ruleBased(MESSAGE).isNeedsTool(), decision.isNeedsTool());
+        assertEquals(1, registry.get("agent.classification").tag("source", "rule_fallback").timer().count());
+        ToolDecisionCache cache = (ToolDecisionCache) ReflectionTestUtils.getField(service, "decisionCache");
+        assertNull(cache.get(MESSAGE));
+    }
+
+    /**
+     * 接上分类需要的组件，返回按尝试序号应答的 OllamaService
+     */
+    private StubOllama classifyWith(AgentProperties.Classification.Strategy strategy, Duration hedgeDelay,
+                                    Duration timeout) {
+        AgentProperties.Classification config = properties.getClassification();
+        config.setStrategy(strategy);
+        config.setHedgeDelay(hedgeDelay);
+        config.setTimeout(timeout);
+
+        List<Tool> tools = List.of(new SumTool());
+        StaticListableBeanFactory noBeans = new StaticListableBeanFactory();
+        StubOllama ollama = new StubOllama((String) ReflectionTestUtils.getField(service, "strictPrefix"));
+        ReflectionTestUtils.setField(service, "ollamaService", ollama);
+        ReflectionTestUtils.setField(service, "toolNameNormalizer", new ToolNameNormalizer(tools));
+        ReflectionTestUtils.setField(service, "responseValidator", new ResponseValidator());
+        ReflectionTestUtils.setField(service, "decisionCache", new ToolDecisionCache(properties));
+        ReflectionTestUtils.setField(service, "fastPathClassifier", new FastPathClassifier(properties));
+        ReflectionTestUtils.setField(service, "semanticCache",
+                new SemanticCache(properties, noBeans.getBeanProvider(EmbeddingProvider.class)));
+        ReflectionTestUtils.setField(service, "toolRetriever",
+                new ToolRetriever(tools, noBeans.getBeanProvider(EmbeddingProvider.class), properties));
+        ReflectionTestUtils.setField(service, "agentProperties", properties);
+        ReflectionTestUtils.setField(service, "classificationExecutor", executor);
+        ReflectionTestUtils.setField(service, "payloadLogger", new PayloadLogger(properties));
+        ReflectionTestUtils.setField(service, "metrics", new AgentMetrics(registry));
+        return ollama;
+    }
+
+    private static String decision(String value) {
+        return "{\"needs_tool\": true, \"tool_name\": \"sum\", \"parameters\": {\"value\": \"" + value
+                + "\"}, \"reasoning\": \"test\"}";
+    }
+
+    /**
+     * 一次分类尝试的模型输出，等待期间被中断表示请求被取消
+     */
+    @FunctionalInterface
+    private interface Response {
+        String get() throws InterruptedException;
+    }
+
+    /**
+     * 按提示词判断是第几次尝试（标准 / 严格 / 极简），返回预设的输出
+     */
+    private static class StubOllama extends OllamaService {
+        private final String strictPrefix;
+        private final Map<Integer, Response> responses = new ConcurrentHashMap<>();
+        private final Map<Integer, Long> startedAt = new ConcurrentHashMap<>();
+        private final Map<Integer, CompletableFuture<Boolean>> interrupted = new ConcurrentHashMap<>();
+        private final Map<Integer, List<String>> tokenStreams = new ConcurrentHashMap<>();
+        private final Map<Integer, Boolean> truncated = new ConcurrentHashMap<>();
+        private final Map<Integer, Integer> consumed = new ConcurrentHashMap<>();
+
+        StubOllama(String strictPrefix) {
+            super(null, null, new OllamaProperties(), null, new AgentMetrics(new SimpleMeterRegistry()), null);
+            this.strictPrefix = strictPrefix;
+            for (int attempt = 1; attempt <= 3; attempt++) {
+                interrupted.put(attempt, new CompletableFuture<>());
+            }
+        }
+
+        void respond(int attempt, Response response) {
+            responses.put(attempt, response);
+        }
+
+        /**
+         * 逐块推送 tokens，回调返回 false 时停止；truncated 时推送完所有块后像 OllamaService 一样抛出 LlmException
+         */
+        void stream(int attempt, boolean truncated, String... tokens) {
+            tokenStreams.put(attempt, List.of(tokens));
+            this.truncated.put(attempt, truncated);
+        }
+
+        int consumed(int attempt) {
+            return consumed.getOrDefault(attempt, 0);
+        }
+
+        boolean started(int attempt) {
+            return startedAt.containsKey(attempt);
+        }
+
+        long startedAt(int attempt) {
+            return startedAt.get(attempt);
+        }
+
+        /**
+         * 等待该次尝试结束，返回它是否被中断
+         */
+        boolean cancelled(int attempt) {
+            try {
+                return interrupted.get(attempt).get(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        @Override
+        public String streamClassification(String staticPrefix, String suffix, Predicate<String> onToken) {
+            int attempt = staticPrefix.isEmpty() ? 3 : staticPrefix.equals(strictPrefix) ? 2 : 1;
+            startedAt.put(attempt, System.nanoTime());
+            if (tokenStreams.containsKey(attempt)) {
+                return streamTokens(attempt, onToken);
+            }
+            Response response = responses.getOrDefault(attempt, () -> "");
+            try {
+                String text = response.get();
+                interrupted.get(attempt).complete(false);
+                onToken.test(text);
+                return text;
+            } catch (InterruptedException e) {
+                interrupted.get(attempt).complete(true);
+                Thread.currentThread().interrupt();
+                throw new LlmException("分类请求被取消");
+            }
+        }
+
+        private String streamTokens(int attempt, Predicate<String> onToken) {
+            StringBuilder text = new StringBuilder();
+            for (String token : tokenStreams.get(attempt)) {
+                consumed.merge(attempt, 1, Integer::sum);
+                text.append(token);
+                if (!onToken.test(token)) {
+                    return text.toString();
+                }
+            }
+            if (truncated.get(attempt)) {
+                throw new LlmException("分类输出在生成完成前中断");
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * 把 value 中用 + 连接的整数相加，结果形如 "sum = 5"
+     */
+    private class SumTool implements Tool {
+        @Override
+        public String getName() {
+            return "sum";
+        }
+
+        @Override
+        public String getDescription() {
+            return "sum";
+        }
+
+        @Override
+        public String execute(Map<String, String> parameters) {
+            int sum = 0;
+            for (String operand : parameters.get("value").split("\\+")) {
+                sum += Integer.parseInt(operand.trim());
+            }
+            return "sum = " + sum;
+        }
+
+        @Override
+        public String resultValue(String rawResult) {
+            return rawResult.substring("sum = ".length());
+        }
+
+        @Override
+        public boolean supportsBatch() {
+            return true;
+        }
+
+        @Override
+        public List<String> executeBatch(List<Map<String, String>> parameterList) {
+            batches.incrementAndGet();
+            List<String> results = new ArrayList<>();
+            parameterList.forEach(parameters -> results.add(execute(parameters)));
+            return results;
+        }
+    }
+
+    private static class FailingTool implements Tool {
+        @Override
+        public String getName() {
+            return "fail";
+        }
+
+        @Override
+        public String getDescription() {
+            return "fail";
+        }
+
+        @Override
+        public String execute(Map<String, String> parameters) {
+            throw new IllegalStateException("boom");
+        }
+    }
+}
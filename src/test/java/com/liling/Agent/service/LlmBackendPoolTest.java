@@ -0,0 +1,274 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.OllamaProperties;
+import com.liling.Agent.exception.NoBackendException;
+import com.liling.Agent.service.impl.OllamaBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmBackendPoolTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final OllamaProperties properties = new OllamaProperties();
+    private final AtomicBoolean healthy = new AtomicBoolean(true);
+    private LlmBackendPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void leastOutstandingPicksIdleNode() {
+        OllamaBackend busy = node("busy");
+        OllamaBackend idle = node("idle");
+        pool = pool(OllamaProperties.Balancing.Policy.LEAST_OUTSTANDING, busy, idle);
+        busy.onRequestStart();
+
+        for (int i = 0; i < 10; i++) {
+            assertSame(idle, pool.select("m"));
+        }
+    }
+
+    @Test
+    void ewmaWeighsLatencyByOutstandingRequests() {
+        OllamaBackend slow = node("slow");
+        OllamaBackend fast = node("fast");
+        pool = pool(OllamaProperties.Balancing.Policy.EWMA, slow, fast);
+        record(slow, "m", 100, 5);
+        record(fast, "m", 10, 5);
+        assertSame(fast, pool.select("m"));
+
+        // 10ms × 11 > 100ms × 1
+        for (int i = 0; i < 10; i++) {
+            fast.onRequestStart();
+        }
+        assertSame(slow, pool.select("m"));
+    }
+
+    @Test
+    void coldNodeScoresAsPeerMedian() {
+        OllamaBackend a = node("a");
+        OllamaBackend b = node("b");
+        OllamaBackend cold = node("cold");
+        pool = pool(OllamaProperties.Balancing.Policy.EWMA, a, b, cold);
+        record(a, "m", 100, 5);
+        record(b, "m", 100, 5);
+        a.onRequestStart();
+        b.onRequestStart();
+        // 冷节点按 100ms 计：空闲时比两个各有一个在途请求的节点更合适
+        assertSame(cold, pool.select("m"));
+
+        // 但在途请求多了就不再接收全部流量
+        cold.onRequestStart();
+        cold.onRequestStart();
+        assertTrue(pool.select("m") != cold);
+    }
+
+    @Test
+    void routesByModel() {
+        OllamaBackend small = node("small", "qwen:0.5b");
+        OllamaBackend large = node("large", "qwen:7b");
+        pool = pool(OllamaProperties.Balancing.Policy.LEAST_OUTSTANDING, small, large);
+
+        assertSame(large, pool.select("qwen:7b"));
+        assertThrows(NoBackendException.class, () -> pool.select("llama3"));
+    }
+
+    @Test
+    void consecutiveFailuresEjectNode() {
+        OllamaBackend failing = node("failing");
+        OllamaBackend other = node("other");
+        pool = pool(OllamaProperties.Balancing.Policy.LEAST_OUTSTANDING, failing, other);
+        // other 一直有在途请求，调用都落到 failing 上
+        other.onRequestStart();
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IOException.class, () -> pool.execute("m", backend -> {
+                assertSame(failing, backend);
+                throw new IOException("connection refused");
+            }));
+        }
+        assertFalse(failing.isAvailable());
+        assertTrue(other.isAvailable());
+        assertEquals(0, failing.getOutstandingRequests());
+        assertSame(other, pool.select("m"));
+    }
+
+    @Test
+    void lastAvailableNodeIsNeverEjected() {
+        OllamaBackend only = node("only");
+        pool = pool(OllamaProperties.Balancing.Policy.LEAST_OUTSTANDING, only);
+
+        for (int i = 0; i < 5; i++) {
+            assertThrows(IOException.class, () -> pool.execute("m", backend -> {
+                throw new IOException("connection refused");
+            }));
+        }
+        assertTrue(only.isAvailable());
+    }
+
+    @Test
+    void slowNodeIsEjectedComparingSameModelOnly() {
+        properties.getBalancing().setMinSamples(3);
+        OllamaBackend a = node("a");
+        OllamaBackend b = node("b");
+        OllamaBackend c = node("c");
+        pool = pool(OllamaProperties.Balancing.Policy.EWMA, a, b, c);
+
+        // a 只跑大模型，其他节点只跑小模型：不同模型的延迟不能互相比较
+        record(a, "large", 2000, 5);
+        record(b, "small", 100, 5);
+        record(c, "small", 100, 5);
+        evaluate(a, "large");
+        assertTrue(a.isAvailable());
+
+        record(b, "large", 800, 5);
+        record(c, "large", 900, 5);
+        evaluate(a, "large");
+        assertTrue(a.isAvailable());
+
+        record(a, "large", 5000, 5);
+        evaluate(a, "large");
+        assertFalse(a.isAvailable());
+    }
+
+    @Test
+    void streamLatencyUsesFirstResponseTime() throws IOException {
+        OllamaBackend only = node("only");
+        pool = pool(OllamaProperties.Balancing.Policy.EWMA, only);
+        long[] firstTokenAt = new long[1];
+
+        pool.execute("m", () -> firstTokenAt[0], backend -> {
+            firstTokenAt[0] = System.nanoTime();
+            sleep(200);
+            return null;
+        });
+        assertEquals(1, only.getLatencySamples("m"));
+        assertTrue(only.getLatencyEwmaMillis("m") < 100, "记录的是首个 token 的耗时: " + only.getLatencyEwmaMillis("m"));
+
+        pool.execute("other", () -> 0, backend -> {
+            sleep(50);
+            return null;
+        });
+        assertTrue(only.getLatencyEwmaMillis("other") >= 50);
+    }
+
+    @Test
+    void cancelledCallIsNeitherSuccessNorFailure() {
+        OllamaBackend a = node("a");
+        OllamaBackend b = node("b");
+        pool = pool(OllamaProperties.Balancing.Policy.LEAST_OUTSTANDING, a, b);
+
+        try {
+            for (int i = 0; i < 5; i++) {
+                assertThrows(IOException.class, () -> pool.execute("m", backend -> {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted");
+                }));
+                Thread.interrupted();
+            }
+        } finally {
+            Thread.interrupted();
+        }
+
+        for (OllamaBackend backend : List.of(a, b)) {
+            assertEquals(0, backend.getOutstandingRequests());
+            assertEquals(0, backend.getConsecutiveFailures());
+            assertEquals(0, backend.getLatencySamples("m"));
+            assertTrue(backend.isAvailable());
+        }
+    }
+
+    @Test
+    void ejectedNodeIsRestoredAfterSuccessfulProbe() {
+        OllamaBackend a = node("a");
+        OllamaBackend b = node("b");
+        pool = pool(OllamaProperties.Balancing.Policy.EWMA, a, b);
+        record(a, "m", 100, 5);
+        a.eject(Duration.ofHours(1).toNanos(), "test");
+
+        // 剔除期未到不探测
+        probe();
+        assertFalse(a.isAvailable());
+
+        a.eject(0, "test");
+        healthy.set(false);
+        probe();
+        assertFalse(a.isAvailable());
+        // 探测失败后重新剔除一个周期
+        assertFalse(a.isReadyForProbe());
+
+        a.eject(0, "test");
+        healthy.set(true);
+        probe();
+        assertTrue(a.isAvailable());
+        // 恢复后重新积累样本
+        assertEquals(0, a.getLatencySamples("m"));
+        assertEquals(0, a.getConsecutiveFailures());
+    }
+
+    private LlmBackendPool pool(OllamaProperties.Balancing.Policy policy, OllamaBackend... backends) {
+        properties.getBalancing().setPolicy(policy);
+        return new LlmBackendPool(properties, List.of(backends));
+    }
+
+    private OllamaBackend node(String name, String... models) {
+        return new OllamaBackend(name, "http://" + name, List.of(models), 0.3, new HealthTemplate());
+    }
+
+    private void record(LlmBackend backend, String model, long millis, int times) {
+        for (int i = 0; i < times; i++) {
+            backend.onRequestStart();
+            backend.onRequestEnd(model, millis * MS, true);
+        }
+    }
+
+    private void evaluate(LlmBackend backend, String model) {
+        ReflectionTestUtils.invokeMethod(pool, "evaluate", backend, model);
+    }
+
+    private void probe() {
+        ReflectionTestUtils.invokeMethod(pool, "probeEjectedBackends");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 按 healthy 的值应答 /api/version
+     */
+    private class HealthTemplate extends RestTemplate {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> ResponseEntity<T> getForEntity(String url, Class<T> responseType, Object... uriVariables) {
+            if (!healthy.get()) {
+                throw new ResourceAccessException("connection refused");
+            }
+            return (ResponseEntity<T>) ResponseEntity.ok("{\"version\":\"0.1.0\"}");
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.config.OllamaClientConfig;
+import com.liling.Agent.config.OllamaProperties;
+import com.liling.Agent.exception.LlmException;
+import com.liling.Agent.model.LlmResult;
+import com.liling.Agent.utils.AgentMetrics;
+import com.liling.Agent.utils.StreamingJsonExtractor;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用返回固定 NDJSON 的本地 HTTP 服务测试流式读取
+ */
+class OllamaServiceTest {
+
+    private static final long MS = 1_000_000L;
+
+    private static final String DONE = "{\"model\":\"m\",\"response\":\"\",\"done\":true,"
+            + "\"total_duration\":9000000,\"load_duration\":1000000,\"prompt_eval_count\":12,"
+            + "\"prompt_eval_duration\":2000000,\"eval_count\":3,\"eval_duration\":1500000}";
+
+    // 服务端在这里等待，模拟还在生成；测试结束时放行
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> requests = new ArrayList<>();
+    private volatile Responder responder;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private CloseableHttpClient httpClient;
+    private LlmBackendPool backendPool;
+    private OllamaProperties properties;
+    private OllamaService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.createContext("/api/generate", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            synchronized (requests) {
+                requests.add(body);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                responder.respond(body, out);
+            } catch (IOException e) {
+                // 客户端提前断开
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+
+        properties = new OllamaProperties();
+        properties.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        properties.getHttp().setReadTimeout(Duration.ofSeconds(10));
+        OllamaClientConfig clientConfig = new OllamaClientConfig();
+        httpClient = clientConfig.ollamaHttpClient(properties);
+        RestTemplate restTemplate = clientConfig.ollamaRestTemplate(httpClient);
+        backendPool = new LlmBackendPool(properties, restTemplate);
+        AgentMetrics metrics = new AgentMetrics(new SimpleMeterRegistry());
+        service = new OllamaService(restTemplate, httpClient, properties, backendPool, metrics,
+                new ThroughputTracker(new AgentProperties(), metrics));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        release.countDown();
+        backendPool.shutdown();
+        httpClient.close();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Test
+    void tokensArriveInOrderAndDoneCarriesStats() {
+        respondWith(token("你"), token("好"), token("！"), DONE);
+
+        List<String> tokens = new ArrayList<>();
+        LlmResult result = service.streamChatWithDeepSeek("hi", tokens::add);
+
+        assertEquals(List.of("你", "好", "！"), tokens);
+        assertEquals("你好！", result.getText());
+        assertTrue(result.isComplete());
+        assertTrue(result.isReported());
+        assertEquals(12, result.getPromptTokens());
+        assertEquals(3, result.getCompletionTokens());
+        assertEquals(1_500_000, result.getEvalNanos());
+        assertEquals(1_000_000, result.getLoadDurationNanos());
+        assertTrue(requests.get(0).contains("\"stream\":true"));
+    }
+
+    @Test
+    void blankLinesBetweenFramesAreSkipped() {
+        respondWith(token("a"), "", token("b"), "", DONE);
+
+        assertEquals("ab", service.streamChatWithDeepSeek("hi", token -> {}).getText());
+    }
+
+    @Test
+    void earlyStopCancelsRequest() {
+        responder = (body, out) -> {
+            write(out, token("第一段"));
+            write(out, token("第二段"));
+            // 不取消请求时关闭响应会等服务端写完剩余内容
+            release.await(5, TimeUnit.SECONDS);
+            write(out, token("第三段"));
+            write(out, DONE);
+        };
+
+        long start = System.nanoTime();
+        String text = service.streamGenerate(service.chatRequest("hi", true), token -> false);
+
+        assertEquals("第一段", text);
+        assertTrue(System.nanoTime() - start < 3000 * MS, "提前终止后没有立即断开请求");
+
+        // 断开的连接不会回到连接池，下一次请求正常
+        respondWith(token("ok"), DONE);
+        assertEquals("ok", service.streamChatWithDeepSeek("again", token -> {}).getText());
+    }
+
+    @Test
+    void eofWithoutDoneMarksResultIncomplete() {
+        respondWith(token("你"), token("好"));
+
+        List<String> tokens = new ArrayList<>();
+        LlmResult result = service.streamChatWithDeepSeek("hi", tokens::add);
+
+        assertEquals(List.of("你", "好"), tokens);
+        assertEquals("你好", result.getText());
+        assertFalse(result.isComplete());
+        assertFalse(result.isReported());
+    }
+
+    @Test
+    void eofBeforeAnyTokenThrows() {
+        respondWith();
+
+        assertThrows(LlmException.class, () -> service.streamChatWithDeepSeek("hi", token -> {}));
+    }
+
+    @Test
+    void errorFrameThrows() {
+        respondWith("{\"error\":\"model 'm' not found\"}");
+
+        LlmException e = assertThrows(LlmException.class, () -> service.streamChatWithDeepSeek("hi", token -> {}));
+        assertTrue(e.getMessage().contains("not found"), e.getMessage());
+    }
+
+    @Test
+    void classificationStopsOnceDecisionIsComplete() {
+        responder = (body, out) -> {
+            write(out, token("{\\\"needs_tool\\\": true, "));
+            write(out, token("\\\"tool_name\\\": \\\"time\\\"}"));
+            // 模型接着写解释，不需要再读
+            release.await(5, TimeUnit.SECONDS);
+            write(out, token("解释"));
+            write(out, DONE);
+        };
+
+        StreamingJsonExtractor extractor = new StreamingJsonExtractor("needs_tool");
+        long start = System.nanoTime();
+        String text = service.streamClassification("", "现在几点", token -> extractor.feed(token) == null);
+
+        assertTrue(extractor.isComplete());
+        assertEquals("{\"needs_tool\": true, \"tool_name\": \"time\"}", text);
+        assertTrue(System.nanoTime() - start < 3000 * MS, "决策完整后没有立即断开请求");
+    }
+
+    @Test
+    void truncatedClassificationIsNotReturned() {
+        respondWith(token("{\\\"needs_tool\\\": true, "), token("\\\"tool_name\\\": \\\"calcu"));
+
+        List<String> tokens = new ArrayList<>();
+        assertThrows(LlmException.class, () -> service.streamClassification("", "1+1", tokens::add));
+        // 回调已经看到了部分内容，但调用方拿不到可以解析的结果
+        assertEquals(2, tokens.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void primedContextDropsGeneratedToken() {
+        properties.setPrefixReuse(OllamaProperties.PrefixReuse.CONTEXT);
+        primeWith("好", 11, 12, 13, 14, 99);
+
+        service.streamClassification("工具列表", "现在几点", token -> true);
+
+        // 预热生成的 99 不带进分类请求
+        assertTrue(requests.get(1).contains("\"context\":[11,12,13,14]"), requests.get(1));
+        Map<String, Object> prefix = (Map<String, Object>) ((Map<String, Object>)
+                service.getPromptPrefixStats().get("prefixes")).get("prefix-0");
+        assertEquals(4, prefix.get("tokens"));
+        assertEquals(1L, prefix.get("reusedRequests"));
+        assertEquals(8.0, prefix.get("estimatedSavedMsTotal"));
+    }
+
+    @Test
+    void primedContextIsKeptWhenNothingWasGenerated() {
+        properties.setPrefixReuse(OllamaProperties.PrefixReuse.CONTEXT);
+        // 第一个 token 就是结束符，context 里只有前缀
+        primeWith("", 11, 12, 13, 14);
+
+        service.streamClassification("工具列表", "现在几点", token -> true);
+
+        assertTrue(requests.get(1).contains("\"context\":[11,12,13,14]"), requests.get(1));
+    }
+
+    /**
+     * 非流式的预热请求返回给定的生成内容和 context，之后的流式请求返回一个完整决策
+     */
+    private void primeWith(String generated, int... context) {
+        String contextJson = Arrays.stream(context).mapToObj(Integer::toString).collect(Collectors.joining(","));
+        responder = (body, out) -> {
+            if (body.contains("\"stream\":false")) {
+                write(out, "{\"model\":\"m\",\"response\":\"" + generated + "\",\"done\":true,"
+                        + "\"context\":[" + contextJson + "],\"prompt_eval_count\":4,"
+                        + "\"prompt_eval_duration\":8000000,\"eval_count\":1,\"eval_duration\":1000000}");
+                return;
+            }
+            write(out, token("{\\\"needs_tool\\\": false}"));
+            write(out, DONE);
+        };
+    }
+
+    private void respondWith(String... lines) {
+        responder = (body, out) -> {
+            for (String line : lines) {
+                write(out, line);
+            }
+        };
+    }
+
+    private static String token(String text) {
+        return "{\"model\":\"m\",\"response\":\"" + text + "\",\"done\":false}";
+    }
+
+    private static void write(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * 按请求体写出响应内容
+     */
+    @FunctionalInterface
+    private interface Responder {
+        void respond(String requestBody, OutputStream out) throws IOException, InterruptedException;
+    }
+}
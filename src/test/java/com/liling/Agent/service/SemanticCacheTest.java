@@ -0,0 +1,157 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.model.ToolDecision;
+import com.liling.Agent.service.impl.StubEmbeddingProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SemanticCacheTest {
+
+    private SemanticCache cache;
+
+    @AfterEach
+    void tearDown() {
+        if (cache != null) {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    void similarQuestionHitsCachedDecision() {
+        cache = newCache(100, Duration.ofMinutes(1));
+        ToolDecision decision = weather("上海");
+        cache.putDecision("上海今天天气怎么样", decision);
+
+        ToolDecision hit = cache.getDecision("上海今天的天气怎么样？");
+        assertNotNull(hit);
+        assertNotSame(decision, hit);
+        assertEquals("上海", hit.getParameters().get("city"));
+        assertEquals(1L, decisionStats().get("hits"));
+    }
+
+    @Test
+    void differentNumbersOrParametersAreRejected() {
+        cache = newCache(100, Duration.ofMinutes(1));
+        cache.putAnswer("第 12 章讲了什么内容", "answer");
+        cache.putDecision("上海今天天气怎么样", weather("上海"));
+
+        assertNull(cache.getAnswer("第 13 章讲了什么内容"));
+        assertEquals("answer", cache.getAnswer("第 12 章讲了什么内容？"));
+        assertNull(cache.getDecision("北京今天天气怎么样"));
+    }
+
+    @Test
+    void expiredEntriesAreMisses() throws InterruptedException {
+        cache = newCache(100, Duration.ofMillis(20));
+        cache.putDecision("上海今天天气怎么样", weather("上海"));
+
+        Thread.sleep(50);
+        assertNull(cache.getDecision("上海今天天气怎么样"));
+        assertEquals(1L, decisionStats().get("expirations"));
+        assertEquals(0, decisionStats().get("size"));
+    }
+
+    @Test
+    void hitRefreshesRecency() {
+        cache = newCache(2, Duration.ofMinutes(1));
+        cache.putDecision("上海今天天气怎么样", weather("上海"));
+        cache.putDecision("帮我查一下苹果股价", stock("AAPL"));
+        // 命中上海之后，股价成为最久未访问的条目
+        assertNotNull(cache.getDecision("上海今天天气怎么样"));
+
+        cache.putDecision("东京明天会下雨吗", weather("东京"));
+        assertNull(cache.getDecision("帮我查一下苹果股价"));
+        assertNotNull(cache.getDecision("上海今天天气怎么样"));
+        assertEquals(1L, decisionStats().get("evictions"));
+    }
+
+    @Test
+    void rejectedCandidateDoesNotRefreshRecency() {
+        cache = newCache(2, Duration.ofMinutes(1));
+        cache.putDecision("上海今天天气怎么样", weather("上海"));
+        cache.putDecision("帮我查一下苹果股价", stock("AAPL"));
+        // 检索到上海的条目但城市不同被拒绝，不应让它变成最近访问
+        assertNull(cache.getDecision("北京今天天气怎么样"));
+
+        cache.putDecision("东京明天会下雨吗", weather("东京"));
+        assertNull(cache.getDecision("上海今天天气怎么样"));
+        assertNotNull(cache.getDecision("帮我查一下苹果股价"));
+    }
+
+    @Test
+    void indexTrainsInBackgroundOnceLargeEnough() throws InterruptedException {
+        cache = newCache(1000, Duration.ofMinutes(1));
+        // lists=2 时 16 条以上开始分簇
+        for (int i = 0; i < 40; i++) {
+            cache.putAnswer("第 " + i + " 个问题的回答是什么", "answer " + i);
+        }
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!(Boolean) answerStats().get("indexTrained") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue((Boolean) answerStats().get("indexTrained"));
+        assertEquals("answer 27", cache.getAnswer("第 27 个问题的回答是什么"));
+    }
+
+    @Test
+    void disabledWithoutProvider() {
+        AgentProperties properties = new AgentProperties();
+        properties.getSemanticCache().setEnabled(true);
+        cache = new SemanticCache(properties, new StaticListableBeanFactory().getBeanProvider(EmbeddingProvider.class));
+
+        assertFalse(cache.isEnabled());
+        cache.putAnswer("上海今天天气怎么样", "answer");
+        assertNull(cache.getAnswer("上海今天天气怎么样"));
+    }
+
+    private SemanticCache newCache(int maxSize, Duration ttl) {
+        AgentProperties properties = new AgentProperties();
+        AgentProperties.SemanticCache config = properties.getSemanticCache();
+        config.setEnabled(true);
+        config.setProvider("stub");
+        config.setSimilarityThreshold(0.6);
+        config.setMaxSize(maxSize);
+        config.setTtl(ttl);
+        config.setAnswerTtl(ttl);
+        config.setLists(2);
+        config.setProbes(1);
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("stub", new StubEmbeddingProvider()));
+        return new SemanticCache(properties, beans.getBeanProvider(EmbeddingProvider.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> decisionStats() {
+        return (Map<String, Object>) cache.getStats().get("decisions");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> answerStats() {
+        return (Map<String, Object>) cache.getStats().get("answers");
+    }
+
+    private ToolDecision weather(String city) {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("city", city);
+        return new ToolDecision(true, "weather", parameters, "查询天气");
+    }
+
+    private ToolDecision stock(String symbol) {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("symbol", symbol);
+        return new ToolDecision(true, "stock", parameters, "查询股价");
+    }
+}
@@ -0,0 +1,123 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.model.LlmResult;
+import com.liling.Agent.model.OllamaGenerateResponse;
+import com.liling.Agent.utils.AgentMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThroughputTrackerTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private ThroughputTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        AgentProperties properties = new AgentProperties();
+        properties.getUsage().setWindow(Duration.ofSeconds(2));
+        properties.getUsage().setColdLoadThreshold(Duration.ofSeconds(1));
+        tracker = new ThroughputTracker(properties, new AgentMetrics(registry));
+    }
+
+    @Test
+    void ratesAreComputedFromReportedDurations() {
+        tracker.record("gpu-1", result("m", 200, 100, 50, 500, 0));
+        tracker.record("gpu-1", result("m", 400, 200, 50, 500, 0));
+
+        Map<String, Object> stats = stats("m@gpu-1");
+        assertEquals(2L, stats.get("requests"));
+        assertEquals(600L, stats.get("promptTokens"));
+        assertEquals(100L, stats.get("completionTokens"));
+        // 100 tokens / 1s eval，600 tokens / 0.3s prompt_eval
+        assertEquals(100.0, stats.get("generationTokensPerSecond"));
+        assertEquals(2000.0, stats.get("promptTokensPerSecond"));
+        // 窗口 2 秒内输出 100 tokens
+        assertEquals(50.0, stats.get("outputTokensPerSecond"));
+        assertEquals(300.0, stats.get("avgPromptTokens"));
+        assertEquals(0L, stats.get("coldLoads"));
+    }
+
+    @Test
+    void modelsAndBackendsAreTrackedSeparately() {
+        tracker.record("gpu-1", result("m", 100, 100, 10, 100, 0));
+        tracker.record("gpu-2", result("m", 100, 100, 10, 100, 0));
+        tracker.record("gpu-2", result("other", 100, 100, 10, 100, 0));
+
+        assertEquals(1L, stats("m@gpu-1").get("requests"));
+        assertEquals(1L, stats("m@gpu-2").get("requests"));
+        assertEquals(1L, stats("other@gpu-2").get("requests"));
+    }
+
+    @Test
+    void unreportedResultsAreIgnored() {
+        tracker.record("gpu-1", LlmResult.of("部分内容", "m", null, 5, 100 * MS));
+
+        assertTrue(models().isEmpty());
+    }
+
+    @Test
+    void slowLoadCountsAsColdLoad() {
+        tracker.record("gpu-1", result("m", 100, 100, 10, 100, 500));
+        tracker.record("gpu-1", result("m", 100, 100, 10, 100, 3200));
+
+        Map<String, Object> stats = stats("m@gpu-1");
+        assertEquals(1L, stats.get("coldLoads"));
+        assertEquals(3200L, stats.get("lastColdLoadMs"));
+        assertEquals(1, registry.get("ollama.cold_loads").tag("model", "m").tag("backend", "gpu-1")
+                .counter().count());
+    }
+
+    @Test
+    void oldSecondsRollOutOfWindow() throws InterruptedException {
+        tracker.record("gpu-1", result("m", 100, 100, 10, 100, 0));
+        tracker.record("gpu-2", result("m", 100, 100, 10, 100, 2000));
+        assertEquals(1L, stats("m@gpu-1").get("requests"));
+
+        Thread.sleep(2100);
+        Map<String, Object> expired = stats("m@gpu-1");
+        assertEquals(0L, expired.get("requests"));
+        assertEquals(0.0, expired.get("generationTokensPerSecond"));
+        assertEquals(0.0, expired.get("avgPromptTokens"));
+        assertFalse(expired.containsKey("lastColdLoadMs"));
+        // 冷加载计数随窗口滚动清零，最近一次冷加载的耗时保留
+        assertEquals(0L, stats("m@gpu-2").get("coldLoads"));
+        assertEquals(2000L, stats("m@gpu-2").get("lastColdLoadMs"));
+
+        tracker.record("gpu-1", result("m", 100, 100, 10, 100, 0));
+        assertEquals(1L, stats("m@gpu-1").get("requests"));
+        assertNull(stats("m@gpu-1").get("lastColdLoadMs"));
+    }
+
+    private static LlmResult result(String model, int promptTokens, long promptEvalMillis, int completionTokens,
+                                    long evalMillis, long loadMillis) {
+        OllamaGenerateResponse last = new OllamaGenerateResponse();
+        last.setLoadDuration(loadMillis * MS);
+        last.setPromptEvalCount(promptTokens);
+        last.setPromptEvalDuration(promptEvalMillis * MS);
+        last.setEvalCount(completionTokens);
+        last.setEvalDuration(evalMillis * MS);
+        return LlmResult.of("", model, last, completionTokens, (loadMillis + promptEvalMillis + evalMillis) * MS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> models() {
+        return (Map<String, Object>) tracker.getStats().get("models");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> stats(String key) {
+        return (Map<String, Object>) models().get(key);
+    }
+}
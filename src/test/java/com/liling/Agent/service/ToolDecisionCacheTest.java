@@ -0,0 +1,76 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.model.ToolDecision;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ToolDecisionCacheTest {
+
+    private final ToolDecisionCache cache = new ToolDecisionCache(new AgentProperties());
+
+    private static ToolDecision calculator(String expression, String reasoning) {
+        return new ToolDecision(true, "calculator", Map.of("expression", expression), reasoning);
+    }
+
+    @Test
+    void numbersAreTemplated() {
+        cache.put("3+4等于多少？", calculator("3+4", "计算 3+4，结果保留 2 位"));
+
+        ToolDecision decision = cache.get("１５+6.5等于多少");
+        assertNotNull(decision);
+        assertEquals("15+6.5", decision.getParameters().get("expression"));
+        // 说明里消息中没有的数字原样保留
+        assertEquals("计算 15+6.5，结果保留 2 位", decision.getReasoning());
+    }
+
+    @Test
+    void templateNeedsTheSameNumberOfNumbers() {
+        cache.put("3+4等于多少", calculator("3+4", ""));
+        assertNull(cache.get("3+4+5等于多少"));
+    }
+
+    @Test
+    void parametersWithUnknownNumbersAreCachedExactly() {
+        // 参数里的 2 不在消息中，不能抽象
+        cache.put("3的平方是多少", calculator("3^2", ""));
+
+        assertNull(cache.get("5的平方是多少"));
+        assertEquals("3^2", cache.get("3的平方是多少。").getParameters().get("expression"));
+    }
+
+    @Test
+    void repeatedNumbersAreCachedExactly() {
+        cache.put("3+3等于多少", calculator("3+3", ""));
+
+        assertNull(cache.get("4+5等于多少"));
+        assertEquals("3+3", cache.get("3+3等于多少?").getParameters().get("expression"));
+    }
+
+    @Test
+    void normalizesWhitespaceCaseAndTrailingPunctuation() {
+        ToolDecision weather = new ToolDecision(true, "weather", Map.of("city", "北京"), "天气");
+        cache.put("  What's   the WEATHER in 北京？？", weather);
+
+        ToolDecision hit = cache.get("what's the weather in 北京");
+        assertNotNull(hit);
+        assertNotSame(weather, hit);
+        assertEquals("北京", hit.getParameters().get("city"));
+    }
+
+    @Test
+    void disabledCacheStoresNothing() {
+        AgentProperties properties = new AgentProperties();
+        properties.getDecisionCache().setEnabled(false);
+        ToolDecisionCache disabled = new ToolDecisionCache(properties);
+
+        disabled.put("3+4等于多少", calculator("3+4", ""));
+        assertNull(disabled.get("3+4等于多少"));
+    }
+}
@@ -0,0 +1,155 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.exception.ToolRejectedException;
+import com.liling.Agent.utils.AgentMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ToolInvokerTest {
+
+    private ExecutorService executor;
+    private ToolInvoker invoker;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+        invoker = new ToolInvoker();
+        ReflectionTestUtils.setField(invoker, "agentProperties", new AgentProperties());
+        ReflectionTestUtils.setField(invoker, "toolExecutor", executor);
+        ReflectionTestUtils.setField(invoker, "metrics", new AgentMetrics(new SimpleMeterRegistry()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void timedOutCallKeepsPermitUntilWorkerExits() throws Exception {
+        AtomicBoolean release = new AtomicBoolean();
+        // 忽略中断，模拟阻塞在不响应中断的 I/O 上
+        Tool blocking = tool("blocking", new ToolMetadata(Duration.ofMillis(50), 1, false, Duration.ZERO, 0), p -> {
+            while (!release.get()) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException ignored) {
+                }
+            }
+            return "done";
+        });
+
+        ExecutionException timeout = assertThrows(ExecutionException.class,
+                () -> invoker.invoke(blocking, Map.of()).get(1, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, timeout.getCause());
+        assertEquals(1L, inFlight("blocking"));
+
+        // 超时的调用还在运行，许可没有归还
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> invoker.invoke(blocking, Map.of()).get(1, TimeUnit.SECONDS));
+        assertInstanceOf(ToolRejectedException.class, rejected.getCause());
+
+        release.set(true);
+        waitUntil(() -> inFlight("blocking") == 0L);
+        assertEquals("done", invoker.invoke(blocking, Map.of()).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void rejectsCallsBeyondConcurrencyLimit() throws Exception {
+        CompletableFuture<Void> gate = new CompletableFuture<>();
+        Tool slow = tool("slow", new ToolMetadata(Duration.ofSeconds(5), 1, false, Duration.ZERO, 0), p -> {
+            gate.join();
+            return "ok";
+        });
+
+        CompletableFuture<String> first = invoker.invoke(slow, Map.of());
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> invoker.invoke(slow, Map.of()).get(1, TimeUnit.SECONDS));
+        assertInstanceOf(ToolRejectedException.class, rejected.getCause());
+        assertEquals("错误：工具繁忙，请稍后重试 - slow", invoker.describeFailure("slow", rejected));
+
+        gate.complete(null);
+        assertEquals("ok", first.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void retriesOnceOnlyWhenIdempotent() throws Exception {
+        AtomicInteger idempotentCalls = new AtomicInteger();
+        Tool idempotent = tool("idempotent", new ToolMetadata(Duration.ofSeconds(1), 0, true, Duration.ZERO, 0), p -> {
+            if (idempotentCalls.incrementAndGet() == 1) {
+                throw new IllegalStateException("第一次失败");
+            }
+            return "ok";
+        });
+        assertEquals("ok", invoker.invoke(idempotent, Map.of()).get(1, TimeUnit.SECONDS));
+        assertEquals(2, idempotentCalls.get());
+
+        AtomicInteger sideEffectCalls = new AtomicInteger();
+        Tool sideEffect = tool("side-effect", new ToolMetadata(Duration.ofSeconds(1), 0, false, Duration.ZERO, 0), p -> {
+            sideEffectCalls.incrementAndGet();
+            throw new IllegalStateException("失败");
+        });
+        assertEquals("错误：工具执行失败 - 失败", invoker.invokeAndWait(sideEffect, Map.of()));
+        assertEquals(1, sideEffectCalls.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private long inFlight(String toolName) {
+        Map<String, Object> stats = (Map<String, Object>) invoker.getStats().get(toolName);
+        return (Long) stats.get("inFlight");
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("等待超时");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static Tool tool(String name, ToolMetadata metadata, Function<Map<String, String>, String> body) {
+        return new Tool() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String getDescription() {
+                return name;
+            }
+
+            @Override
+            public String execute(Map<String, String> parameters) {
+                return body.apply(parameters);
+            }
+
+            @Override
+            public ToolMetadata getMetadata() {
+                return metadata;
+            }
+        };
+    }
+}
@@ -0,0 +1,188 @@
+package com.liling.Agent.service;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.exception.EmbeddingUnavailableException;
+import com.liling.Agent.service.impl.StubEmbeddingProvider;
+import com.liling.Agent.utils.IvfFlatIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ToolRetrieverTest {
+
+    private AgentProperties properties;
+    private List<Tool> tools;
+    private ToolRetriever retriever;
+
+    @BeforeEach
+    void setUp() {
+        properties = new AgentProperties();
+        properties.getToolRetrieval().setTopK(3);
+        properties.getToolRetrieval().setMinCatalogSize(8);
+
+        tools = new ArrayList<>();
+        tools.add(new NamedTool("weather", "查询城市天气、气温、湿度和是否下雨", "weather"));
+        tools.add(new NamedTool("calculator", "计算数学表达式，加减乘除、乘方和开方", "calculate"));
+        tools.add(new NamedTool("time", "查询当前时间、日期和星期几", "time"));
+        for (int i = 0; i < 7; i++) {
+            tools.add(new NamedTool("tool" + i, "第 " + i + " 个无关工具，处理订单编号 " + (1000 + i), "order"));
+        }
+        retriever = retriever(new StubEmbeddingProvider());
+    }
+
+    @AfterEach
+    void tearDown() {
+        retriever.shutdown();
+    }
+
+    @Test
+    void smallCatalogUsesFullList() {
+        properties.getToolRetrieval().setMinCatalogSize(100);
+
+        assertFalse(retriever.isActive());
+        assertNull(retriever.select("北京今天天气怎么样"));
+    }
+
+    @Test
+    void fullListUntilIndexIsBuilt() {
+        assertTrue(retriever.isActive());
+        assertNull(retriever.select("北京今天天气怎么样"));
+        assertEquals(1L, retriever.getStats().get("fullCatalogFallbacks"));
+    }
+
+    @Test
+    void selectsTopKSortedByName() {
+        buildIndex();
+
+        List<Tool> selected = retriever.select("查询天气：明天会不会下雨");
+        assertEquals(3, selected.size());
+        assertTrue(selected.stream().anyMatch(tool -> tool.getName().equals("weather")));
+        List<String> names = selected.stream().map(Tool::getName).toList();
+        assertEquals(names.stream().sorted().toList(), names);
+        assertEquals(1L, retriever.getStats().get("retrievals"));
+    }
+
+    @Test
+    void embeddingFailureFallsBackToFullList() {
+        boolean[] failing = {false};
+        retriever.shutdown();
+        retriever = retriever(new EmbeddingProvider() {
+            private final StubEmbeddingProvider delegate = new StubEmbeddingProvider();
+
+            @Override
+            public String getName() {
+                return "flaky";
+            }
+
+            @Override
+            public float[] embed(String text) throws Exception {
+                if (failing[0]) {
+                    throw new IOException("connection refused");
+                }
+                return delegate.embed(text);
+            }
+        });
+        buildIndex();
+
+        failing[0] = true;
+        assertNull(retriever.select("北京今天天气怎么样"));
+        assertEquals(1L, retriever.getStats().get("embeddingFailures"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void evaluationReportsRecallAtEachK() throws IOException {
+        buildIndex();
+
+        Map<String, Object> result = retriever.evaluate(tools.size());
+        Map<String, Double> recall = (Map<String, Double>) result.get("recall");
+
+        assertEquals(30, result.get("examples"));
+        assertEquals(tools.size(), recall.size());
+        // 前 k 个结果只会越来越多地覆盖标注工具，k 为工具总数时全部覆盖
+        for (int k = 2; k <= tools.size(); k++) {
+            assertTrue(recall.get("recall@" + k) >= recall.get("recall@" + (k - 1)));
+        }
+        assertEquals(1.0, recall.get("recall@" + tools.size()), 1e-9);
+        // 每条标注数据只有一个工具：排第一的不是它的就是 imperfect
+        assertEquals(Math.round((1 - recall.get("recall@1")) * 30), ((List<?>) result.get("imperfect")).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void evaluationHandlesEmptyProbeResults() throws IOException {
+        buildIndex();
+        // 模拟分簇索引扫描的簇里没有任何工具
+        ReflectionTestUtils.setField(retriever, "index", new IvfFlatIndex(256, tools.size(), 1, 1));
+
+        Map<String, Object> result = retriever.evaluate(3);
+
+        Map<String, Double> recall = (Map<String, Double>) result.get("recall");
+        assertEquals(0.0, recall.get("recall@3"));
+        assertEquals(30, ((List<?>) result.get("imperfect")).size());
+        assertNull(retriever.select("北京今天天气怎么样"));
+    }
+
+    @Test
+    void evaluationWithoutProviderFails() {
+        retriever.shutdown();
+        retriever = new ToolRetriever(tools, new StaticListableBeanFactory().getBeanProvider(EmbeddingProvider.class),
+                properties);
+
+        assertThrows(EmbeddingUnavailableException.class, () -> retriever.evaluate(3));
+    }
+
+    private ToolRetriever retriever(EmbeddingProvider provider) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("provider", provider));
+        return new ToolRetriever(tools, beans.getBeanProvider(EmbeddingProvider.class), properties);
+    }
+
+    private void buildIndex() {
+        assertTrue((Boolean) ReflectionTestUtils.invokeMethod(retriever, "buildIndex"));
+    }
+
+    private static class NamedTool implements Tool {
+        private final String name;
+        private final String description;
+        private final String alias;
+
+        NamedTool(String name, String description, String alias) {
+            this.name = name;
+            this.description = description;
+            this.alias = alias;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public List<String> getAliases() {
+            return List.of(alias);
+        }
+
+        @Override
+        public String execute(Map<String, String> parameters) {
+            return name;
+        }
+    }
+}
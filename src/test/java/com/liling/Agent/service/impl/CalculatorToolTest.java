@@ -0,0 +1,80 @@
+package com.liling.Agent.service.impl;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.utils.ExpressionEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CalculatorToolTest {
+
+    private Locale originalLocale;
+    private CalculatorTool calculator;
+
+    @BeforeEach
+    void setUp() {
+        originalLocale = Locale.getDefault();
+        calculator = new CalculatorTool();
+        ReflectionTestUtils.setField(calculator, "expressionEngine", new ExpressionEngine(new AgentProperties()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        Locale.setDefault(originalLocale);
+    }
+
+    @Test
+    void resultDoesNotDependOnDefaultLocale() {
+        // 德语区域设置的小数点是逗号
+        Locale.setDefault(Locale.GERMANY);
+        Map<String, String> parameters = Map.of("expression", "10/4");
+
+        String raw = calculator.execute(parameters);
+        assertEquals("计算结果: 10/4 = 2.5", raw);
+        assertEquals("2.5", calculator.resultValue(raw));
+        assertEquals("10/4 的计算结果是 2.5。", calculator.formatResponse(parameters, raw, "zh"));
+        assertEquals("10/4 = 2.5", calculator.formatResponse(parameters, raw, "en"));
+    }
+
+    @Test
+    void rawResultKeepsFullPrecision() {
+        Map<String, String> third = Map.of("expression", "1/3");
+        String raw = calculator.execute(third);
+        assertEquals("0.3333333333333333", calculator.resultValue(raw));
+        assertEquals("1/3 的计算结果是 0.33。", calculator.formatResponse(third, raw, "zh"));
+
+        // 调用计划引用上一步结果时不会先被舍入成 0.33
+        String chained = calculator.execute(Map.of("expression", calculator.resultValue(raw) + "*3"));
+        assertEquals("1", calculator.resultValue(chained));
+
+        String tiny = calculator.execute(Map.of("expression", "1e-5*3"));
+        assertEquals(3e-5, Double.parseDouble(calculator.resultValue(tiny)), 1e-18);
+        assertEquals("1e-5*3 = 0", calculator.formatResponse(Map.of("expression", "1e-5*3"), tiny, "en"));
+    }
+
+    @Test
+    void decimalModeIsNotRounded() {
+        Map<String, String> parameters = Map.of("expression", "1/8", "mode", "decimal");
+        String raw = calculator.execute(parameters);
+        assertEquals("1/8 = 0.125", calculator.formatResponse(parameters, raw, "en"));
+    }
+
+    @Test
+    void nonNumericResultIsReturnedAsIs() {
+        assertEquals("NaN", calculator.resultValue("计算结果: x = NaN"));
+        assertEquals("Infinity", calculator.resultValue("计算结果: x = Infinity"));
+    }
+
+    @Test
+    void errorsPassThroughFormatting() {
+        Map<String, String> parameters = Map.of("expression", "");
+        String raw = calculator.execute(parameters);
+        assertEquals("错误：未提供计算表达式", calculator.formatResponse(parameters, raw, "zh"));
+    }
+}
@@ -0,0 +1,93 @@
+package com.liling.Agent.utils;
+
+import com.liling.Agent.model.OllamaGenerateResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AgentMetricsTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AgentMetrics metrics = new AgentMetrics(registry);
+
+    @Test
+    void stagesAreRecordedUnderTheirOwnTags() {
+        metrics.recordRequest("tool", true, 120 * MS);
+        metrics.recordRequest("tool", false, 30 * MS);
+        metrics.recordDecision("fast_path", 1 * MS);
+        metrics.recordDecision("llm", 400 * MS);
+        metrics.recordDecision("llm", 600 * MS);
+        metrics.recordClassificationAttempt(2, "invalid", 50 * MS);
+        metrics.recordToolExecution("weather", "timeout", 3000 * MS);
+        metrics.recordAnswer("rephrase", true, true, 800 * MS);
+
+        assertEquals(1, registry.get("agent.request").tag("path", "tool").tag("outcome", "success").timer().count());
+        assertEquals(1, registry.get("agent.request").tag("path", "tool").tag("outcome", "error").timer().count());
+        assertEquals(1, registry.get("agent.classification").tag("source", "fast_path").timer().count());
+        assertEquals(2, registry.get("agent.classification").tag("source", "llm").timer().count());
+        assertEquals(1000, registry.get("agent.classification").tag("source", "llm").timer()
+                .totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(1, registry.get("agent.classification.attempt").tag("attempt", "2").tag("outcome", "invalid")
+                .timer().count());
+        assertEquals(3000, registry.get("agent.tool.execution").tag("tool", "weather").tag("outcome", "timeout")
+                .timer().totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(1, registry.get("agent.answer").tag("kind", "rephrase").tag("streaming", "true")
+                .tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void countersAccumulate() {
+        metrics.recordParse(true);
+        metrics.recordParse(true);
+        metrics.recordParse(false);
+        metrics.recordToolRejected("stock");
+        metrics.recordColdLoad("qwen:7b", "gpu-1");
+        metrics.recordColdLoad("qwen:7b", "gpu-1");
+
+        assertEquals(2, registry.get("agent.decision.parse").tag("result", "success").counter().count());
+        assertEquals(1, registry.get("agent.decision.parse").tag("result", "failure").counter().count());
+        assertEquals(1, registry.get("agent.tool.rejected").tag("tool", "stock").counter().count());
+        assertEquals(2, registry.get("ollama.cold_loads").tag("model", "qwen:7b").tag("backend", "gpu-1")
+                .counter().count());
+    }
+
+    @Test
+    void ollamaResponseSplitsServerTimeAndTokens() {
+        OllamaGenerateResponse response = new OllamaGenerateResponse();
+        response.setLoadDuration(0);
+        response.setPromptEvalCount(120);
+        response.setPromptEvalDuration(40 * MS);
+        response.setEvalCount(30);
+        response.setEvalDuration(600 * MS);
+
+        metrics.recordOllamaResponse("m", "chat", response);
+        metrics.recordOllamaResponse("m", "chat", response);
+
+        assertEquals(2, registry.get("ollama.prompt_eval").tag("model", "m").tag("purpose", "chat").timer().count());
+        assertEquals(1200, registry.get("ollama.eval").tag("purpose", "chat").timer()
+                .totalTime(TimeUnit.MILLISECONDS), 0.001);
+        // 模型已在显存中（load_duration 为 0）不记录加载耗时
+        assertNull(registry.find("ollama.load").timer());
+        assertEquals(240, registry.get("ollama.tokens").tag("type", "prompt").counter().count());
+        assertEquals(60, registry.get("ollama.tokens").tag("type", "completion").counter().count());
+    }
+
+    @Test
+    void ollamaCallsAreTaggedByPurposeAndOutcome() {
+        metrics.recordOllamaCall("m", "classification", true, "success", 300 * MS);
+        metrics.recordOllamaCall("m", "classification", true, "cancelled", 100 * MS);
+        metrics.recordOllamaFirstToken("m", "classification", 80 * MS);
+
+        assertEquals(1, registry.get("ollama.request").tag("purpose", "classification").tag("outcome", "cancelled")
+                .timer().count());
+        assertEquals(2, registry.get("ollama.request").tag("streaming", "true").timers().size());
+        assertEquals(80, registry.get("ollama.first_token").tag("purpose", "classification").timer()
+                .totalTime(TimeUnit.MILLISECONDS), 0.001);
+    }
+}
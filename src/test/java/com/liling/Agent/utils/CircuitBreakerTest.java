@@ -0,0 +1,128 @@
+package com.liling.Agent.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(5).toNanos();
+
+    private static CircuitBreaker breaker(Duration openDuration) {
+        // 窗口 10，至少 4 次调用，失败率或慢调用率达到 50% 打开，慢调用为 1 秒以上，半开放行 2 个探测
+        return new CircuitBreaker("test", 10, 4, 0.5, 0.5, Duration.ofSeconds(1), openDuration, 2);
+    }
+
+    private static void call(CircuitBreaker breaker, boolean success, long elapsedNanos) {
+        assertTrue(breaker.tryAcquire());
+        if (success) {
+            breaker.onSuccess(elapsedNanos);
+        } else {
+            breaker.onFailure(elapsedNanos);
+        }
+    }
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        CircuitBreaker breaker = breaker(Duration.ofHours(1));
+        for (int i = 0; i < 3; i++) {
+            call(breaker, false, FAST);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        call(breaker, false, FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertFalse(breaker.isCallPermitted());
+        assertEquals(1L, breaker.getStats().get("rejectedCalls"));
+    }
+
+    @Test
+    void opensOnSlowCallRate() {
+        CircuitBreaker breaker = breaker(Duration.ofHours(1));
+        call(breaker, true, FAST);
+        call(breaker, true, FAST);
+        call(breaker, true, SLOW);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        call(breaker, true, SLOW);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void windowForgetsOldCalls() {
+        CircuitBreaker breaker = breaker(Duration.ofHours(1));
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true, FAST);
+            call(breaker, true, FAST);
+            call(breaker, false, FAST);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        // 12 次里 4 次失败，窗口里只剩最近 10 次，4 次失败都在其中
+        assertEquals(10, breaker.getStats().get("windowCalls"));
+        assertEquals(0.4, (double) breaker.getStats().get("failureRate"), 1e-9);
+    }
+
+    @Test
+    void ignoredCallsDoNotCount() {
+        CircuitBreaker breaker = breaker(Duration.ofHours(1));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onIgnored();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getStats().get("windowCalls"));
+    }
+
+    @Test
+    void halfOpenClosesAfterSuccessfulProbes() {
+        CircuitBreaker breaker = breaker(Duration.ZERO);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false, FAST);
+        }
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        // 探测数已满
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getStats().get("windowCalls"));
+    }
+
+    @Test
+    void halfOpenReopensOnFailureOrSlowProbe() {
+        CircuitBreaker breaker = breaker(Duration.ZERO);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false, FAST);
+        }
+
+        call(breaker, false, FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        call(breaker, true, SLOW);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(3L, breaker.getStats().get("timesOpened"));
+    }
+
+    @Test
+    void ignoredProbeFreesItsSlot() {
+        CircuitBreaker breaker = breaker(Duration.ZERO);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false, FAST);
+        }
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.onIgnored();
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+}
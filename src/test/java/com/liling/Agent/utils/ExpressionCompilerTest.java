@@ -0,0 +1,136 @@
+package com.liling.Agent.utils;
+
+import com.liling.Agent.config.AgentProperties;
+import com.liling.Agent.exception.ExpressionException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpressionCompilerTest {
+
+    private static double eval(String expression) {
+        return ExpressionCompiler.compile(expression).evaluate(null);
+    }
+
+    @Test
+    void respectsPrecedenceAndParentheses() {
+        assertEquals(7, eval("1 + 2 * 3"), 1e-12);
+        assertEquals(9, eval("(1 + 2) * 3"), 1e-12);
+        assertEquals(2, eval("10 - 4 - 4"), 1e-12);
+        assertEquals(1, eval("12 / 3 / 4"), 1e-12);
+        assertEquals(1, eval("7 % 3"), 1e-12);
+        assertEquals(22, eval("3 × 7 + 1"), 1e-12);
+        assertEquals(8, eval("２ ** ３"), 1e-12);
+    }
+
+    @Test
+    void unaryMinusBindsLooserThanPower() {
+        assertEquals(-4, eval("-2^2"), 1e-12);
+        assertEquals(4, eval("(-2)^2"), 1e-12);
+        assertEquals(0.5, eval("2^-1"), 1e-12);
+        // 乘方右结合
+        assertEquals(512, eval("2^3^2"), 1e-12);
+        assertEquals(-6, eval("-2 * 3"), 1e-12);
+        assertEquals(5, eval("--5"), 1e-12);
+    }
+
+    @Test
+    void evaluatesFunctionsAndConstants() {
+        assertEquals(4, eval("sqrt(16)"), 1e-12);
+        assertEquals(1024, eval("pow(2, 10)"), 1e-12);
+        assertEquals(1, eval("log(e)"), 1e-12);
+        assertEquals(3, eval("log(8, 2)"), 1e-12);
+        assertEquals(2, eval("log10(100)"), 1e-12);
+        assertEquals(Math.PI, eval("pi"), 1e-12);
+        assertEquals(5, eval("max(min(3, 9), abs(-5))"), 1e-12);
+        assertThrows(ExpressionException.class, () -> ExpressionCompiler.compile("sqrt(1, 2)"));
+        assertThrows(ExpressionException.class, () -> ExpressionCompiler.compile("nope(1)"));
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        for (String expression : new String[]{"", " ", "1 +", "(1 + 2", "1 2", "3 $ 4"}) {
+            assertThrows(ExpressionException.class, () -> ExpressionCompiler.compile(expression), expression);
+        }
+    }
+
+    @Test
+    void divisionByZeroIsAnError() {
+        ExpressionException error = assertThrows(ExpressionException.class, () -> eval("1 / (2 - 2)"));
+        assertEquals("除数不能为零", error.getMessage());
+        assertThrows(ExpressionException.class, () -> eval("5 % 0"));
+        assertThrows(ExpressionException.class, () -> eval("sqrt(-1)"));
+    }
+
+    @Test
+    void variablesFollowFirstAppearance() {
+        CompiledExpression program = ExpressionCompiler.compile("b * 2 + a - b");
+        assertEquals(List.of("b", "a"), program.getVariables());
+        assertEquals(1, program.variableIndex("a"));
+        assertEquals(11, program.evaluate(new double[]{5, 6}), 1e-12);
+        assertThrows(ExpressionException.class, () -> program.evaluate(new double[]{1}));
+    }
+
+    @Test
+    void decimalModeIsExact() {
+        ExpressionEngine engine = new ExpressionEngine(new AgentProperties());
+        BigDecimal result = engine.evaluateDecimal("0.1 + 0.2", Map.of(), MathContext.DECIMAL64);
+        assertEquals(0, new BigDecimal("0.3").compareTo(result));
+        assertThrows(ExpressionException.class,
+                () -> engine.evaluateDecimal("1 / 0", Map.of(), MathContext.DECIMAL64));
+    }
+
+    @Test
+    void engineReusesCompiledPrograms() {
+        ExpressionEngine engine = new ExpressionEngine(new AgentProperties());
+        assertSame(engine.compile("x + 1"), engine.compile(" x + 1 "));
+        assertEquals(3, engine.evaluate("x + 1", Map.of("x", 2.0)), 1e-12);
+        assertThrows(ExpressionException.class, () -> engine.evaluate("x + 1", Map.of()));
+    }
+
+    @Test
+    void columnarResultsMatchRowByRow() {
+        CompiledExpression program = ExpressionCompiler.compile(
+                "price * quantity * (1 - discount) + sqrt(price) ^ 2 / 4 - -quantity % 7 + max(price, 50)");
+        // 跨越多个块，最后一块不满
+        int rows = CompiledExpression.BLOCK * 3 + 17;
+        Random random = new Random(7);
+        double[][] columns = new double[program.getVariables().size()][rows];
+        for (double[] column : columns) {
+            for (int i = 0; i < rows; i++) {
+                column[i] = 1 + random.nextDouble() * 100;
+            }
+        }
+
+        double[] out = new double[rows];
+        program.evaluateColumns(columns, out, 0, rows);
+
+        double[] row = new double[columns.length];
+        for (int i = 0; i < rows; i++) {
+            for (int v = 0; v < columns.length; v++) {
+                row[v] = columns[v][i];
+            }
+            assertEquals(program.evaluate(row), out[i], 1e-9, "row " + i);
+        }
+    }
+
+    @Test
+    void columnarMarksInvalidRowsAsNaN() {
+        ExpressionEngine engine = new ExpressionEngine(new AgentProperties());
+        double[] results = engine.evaluateBatch("a / b", Map.of(
+                "a", new double[]{6, 1, 4},
+                "b", new double[]{3, 0, -2}));
+        assertEquals(2, results[0], 1e-12);
+        assertTrue(Double.isNaN(results[1]));
+        assertEquals(-2, results[2], 1e-12);
+    }
+}
@@ -0,0 +1,127 @@
+package com.liling.Agent.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IvfFlatIndexTest {
+
+    private static final int DIMENSION = 16;
+
+    @Test
+    void flatSearchReturnsMostSimilarFirst() {
+        IvfFlatIndex index = new IvfFlatIndex(3, 10, 4, 2);
+        int x = index.add(new float[]{1, 0, 0});
+        int y = index.add(new float[]{0, 1, 0});
+        int xy = index.add(new float[]{1, 1, 0});
+
+        List<IvfFlatIndex.Match> matches = index.search(new float[]{2, 0.1f, 0}, 3);
+        assertEquals(List.of(x, xy, y), matches.stream().map(IvfFlatIndex.Match::getSlot).toList());
+        assertEquals(1.0, matches.get(0).getScore(), 0.01);
+        assertFalse(index.isTrained());
+    }
+
+    @Test
+    void removedSlotsAreReused() {
+        IvfFlatIndex index = new IvfFlatIndex(3, 2, 1, 1);
+        int first = index.add(new float[]{1, 0, 0});
+        index.add(new float[]{0, 1, 0});
+        assertTrue(index.isFull());
+        assertEquals(-1, index.add(new float[]{0, 0, 1}));
+
+        index.remove(first);
+        assertEquals(1, index.size());
+        assertEquals(first, index.add(new float[]{0, 0, 1}));
+        assertEquals(first, index.search(new float[]{0, 0, 1}, 1).get(0).getSlot());
+    }
+
+    @Test
+    void recallAfterTrainingStaysHigh() {
+        IvfFlatIndex index = new IvfFlatIndex(DIMENSION, 1000, 8, 3);
+        float[][] stored = clusteredVectors(600, 12, new Random(7));
+        for (float[] vector : stored) {
+            index.add(vector);
+        }
+        assertTrue(index.isTrained());
+
+        assertTrue(recallAtOne(index, stored, new Random(11)) >= 0.9);
+    }
+
+    @Test
+    void backgroundTrainingDoesNotBlockAdd() {
+        Queue<Runnable> pending = new ArrayDeque<>();
+        IvfFlatIndex index = new IvfFlatIndex(DIMENSION, 1000, 8, 3, pending::add);
+        float[][] stored = clusteredVectors(600, 12, new Random(7));
+        for (float[] vector : stored) {
+            index.add(vector);
+        }
+
+        // 达到阈值只提交了一次训练，训练完成前全量扫描
+        assertEquals(1, pending.size());
+        assertFalse(index.isTrained());
+        assertEquals(1.0, recallAtOne(index, stored, new Random(11)), 0.001);
+
+        pending.poll().run();
+        assertTrue(index.isTrained());
+        assertTrue(recallAtOne(index, stored, new Random(11)) >= 0.9);
+    }
+
+    @Test
+    void trainingStartedBeforeClearIsDiscarded() {
+        Queue<Runnable> pending = new ArrayDeque<>();
+        IvfFlatIndex index = new IvfFlatIndex(DIMENSION, 1000, 8, 3, pending::add);
+        for (float[] vector : clusteredVectors(64, 4, new Random(3))) {
+            index.add(vector);
+        }
+        assertEquals(1, pending.size());
+
+        index.clear();
+        index.add(new float[DIMENSION]);
+        pending.poll().run();
+        assertFalse(index.isTrained());
+    }
+
+    /**
+     * 用带噪声的已存向量查询，统计排第一的是否就是它本身
+     */
+    private double recallAtOne(IvfFlatIndex index, float[][] stored, Random random) {
+        int found = 0;
+        int queries = 200;
+        for (int q = 0; q < queries; q++) {
+            int target = random.nextInt(stored.length);
+            float[] query = stored[target].clone();
+            for (int d = 0; d < DIMENSION; d++) {
+                query[d] += (float) random.nextGaussian() * 0.01f;
+            }
+            // 按顺序添加且没有删除，槽位编号就是添加顺序
+            if (index.search(query, 1).get(0).getSlot() == target) {
+                found++;
+            }
+        }
+        return (double) found / queries;
+    }
+
+    private float[][] clusteredVectors(int count, int clusters, Random random) {
+        float[][] centers = new float[clusters][DIMENSION];
+        for (float[] center : centers) {
+            for (int d = 0; d < DIMENSION; d++) {
+                center[d] = (float) random.nextGaussian();
+            }
+        }
+        float[][] vectors = new float[count][DIMENSION];
+        for (int i = 0; i < count; i++) {
+            float[] center = centers[i % clusters];
+            for (int d = 0; d < DIMENSION; d++) {
+                vectors[i][d] = center[d] + (float) random.nextGaussian() * 0.3f;
+            }
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,41 @@
+package com.liling.Agent.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JsonObjectScannerTest {
+
+    @Test
+    void findsFirstObjectWithKey() {
+        String text = "示例 {\"city\": \"上海\"} 判断：{\"needs_tool\": true, \"parameters\": {\"a\": {\"b\": 1}}} 结束";
+        assertEquals("{\"needs_tool\": true, \"parameters\": {\"a\": {\"b\": 1}}}",
+                JsonObjectScanner.findObject(text, "needs_tool"));
+        assertEquals("{\"city\": \"上海\"}", JsonObjectScanner.findObject(text, null));
+    }
+
+    @Test
+    void ignoresBracesAndQuotesInsideStrings() {
+        String object = "{\"needs_tool\": true, \"reasoning\": \"用 } 和 \\\"{\\\" 也行\"}";
+        assertEquals(object, JsonObjectScanner.findObject(object + " }", "needs_tool"));
+    }
+
+    @Test
+    void keyMustBeInsideTheObject() {
+        assertNull(JsonObjectScanner.findObject("{\"city\": \"上海\"} \"needs_tool\"", "needs_tool"));
+    }
+
+    @Test
+    void unclosedObjectIsNotReturned() {
+        assertNull(JsonObjectScanner.findObject("{\"needs_tool\": true, \"parameters\": {}", "needs_tool"));
+        assertNull(JsonObjectScanner.findObject("没有 JSON", "needs_tool"));
+        assertNull(JsonObjectScanner.findObject(null, "needs_tool"));
+    }
+
+    @Test
+    void reportsObjectEnd() {
+        assertEquals(9, JsonObjectScanner.findObjectEnd("x{\"a\":{}}y", 1));
+        assertEquals(-1, JsonObjectScanner.findObjectEnd("{\"a\":{}", 0));
+    }
+}
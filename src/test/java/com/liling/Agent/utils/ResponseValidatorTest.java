@@ -0,0 +1,60 @@
+package com.liling.Agent.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseValidatorTest {
+
+    private final ResponseValidator validator = new ResponseValidator();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JsonNode clean(String response) throws Exception {
+        return objectMapper.readTree(validator.cleanLLMResponse(response));
+    }
+
+    @Test
+    void extractsDecisionFromProseAndCode() {
+        String decision = "{\"needs_tool\": true, \"tool_name\": \"weather\", \"parameters\": {\"city\": \"上海\"}}";
+        String response = "以下是判断结果：\n```json\n" + decision + "\n```\n"
+                + "```python\ndef f():\n    return {\"needs_tool\": false}\n```\nHere is more: public class A { }";
+        assertEquals(decision, validator.cleanLLMResponse(response));
+    }
+
+    @Test
+    void keepsNestedParameters() throws Exception {
+        // 旧实现的非贪婪正则会在第一个 } 处截断
+        JsonNode node = clean("{\"needs_tool\": true, \"tool_name\": \"calculator\", "
+                + "\"parameters\": {\"expression\": \"x*2\", \"variables\": {\"x\": 3}}} 以上");
+        assertEquals("calculator", node.get("tool_name").asText());
+        assertEquals(3, node.at("/parameters/variables/x").asInt());
+    }
+
+    @Test
+    void repairsSingleQuotesAndQuotedBooleans() throws Exception {
+        JsonNode node = clean("{'needs_tool': 'true', 'tool_name': 'calc'}");
+        assertTrue(node.get("needs_tool").asBoolean());
+        assertEquals("calc", node.get("tool_name").asText());
+    }
+
+    @Test
+    void fallsBackWhenNothingUsable() throws Exception {
+        for (String response : new String[]{null, "  ", "我不知道该怎么回答"}) {
+            JsonNode node = clean(response);
+            assertFalse(node.get("needs_tool").asBoolean(), String.valueOf(response));
+            assertEquals("", node.get("tool_name").asText());
+        }
+    }
+
+    @Test
+    void detectsCodeExamples() {
+        assertTrue(validator.containsCodeExample("PUBLIC static void main"));
+        assertTrue(validator.containsCodeExample("```"));
+        assertFalse(validator.containsCodeExample("{\"needs_tool\": false}"));
+        assertFalse(validator.containsCodeExample(null));
+    }
+}
@@ -0,0 +1,125 @@
+package com.liling.Agent.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private static final int FOLLOWERS = 4;
+
+    private final SingleFlight<String, String> flight = new SingleFlight<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 一个 leader 阻塞在 release 上，等 FOLLOWERS 个调用都加入后放行
+     */
+    private List<Future<String>> startFlight(SingleFlight.Call<String> call, CountDownLatch release,
+                                             CountDownLatch leaderStarted) throws Exception {
+        List<Future<String>> results = new ArrayList<>();
+        results.add(executor.submit(() -> flight.execute("key", call, value -> !value.startsWith("partial"))));
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < FOLLOWERS; i++) {
+            results.add(executor.submit(() -> flight.execute("key", call, value -> !value.startsWith("partial"))));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flight.getCoalesced() < FOLLOWERS && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(FOLLOWERS, flight.getCoalesced());
+        release.countDown();
+        return results;
+    }
+
+    @Test
+    void concurrentCallsShareOneExecution() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        List<Future<String>> results = startFlight(() -> {
+            calls.incrementAndGet();
+            started.countDown();
+            release.await();
+            return "answer";
+        }, release, started);
+
+        for (Future<String> result : results) {
+            assertEquals("answer", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1L, flight.getExecutions());
+        assertEquals(0, flight.getStats().get("inFlight"));
+    }
+
+    @Test
+    void followersReceiveTheLeadersException() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = startFlight(() -> {
+            started.countDown();
+            release.await();
+            throw new IOException("backend down");
+        }, release, started);
+
+        for (Future<String> result : results) {
+            ExecutionException error = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, error.getCause());
+        }
+        assertEquals(1L, flight.getExecutions());
+    }
+
+    @Test
+    void unshareableResultMakesFollowersRetry() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        List<Future<String>> results = startFlight(() -> {
+            if (calls.incrementAndGet() == 1) {
+                started.countDown();
+                release.await();
+                return "partial answer";
+            }
+            return "answer";
+        }, release, started);
+
+        assertEquals("partial answer", results.get(0).get(5, TimeUnit.SECONDS));
+        for (Future<String> result : results.subList(1, results.size())) {
+            assertEquals("answer", result.get(5, TimeUnit.SECONDS));
+        }
+        assertTrue(flight.getExecutions() >= 2);
+        assertEquals(1L, flight.getStats().get("abandoned"));
+    }
+
+    @Test
+    void sequentialCallsExecuteEachTime() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("answer", flight.execute("key", () -> {
+                calls.incrementAndGet();
+                return "answer";
+            }, value -> true));
+        }
+        assertEquals(3, calls.get());
+        assertEquals(0L, flight.getCoalesced());
+    }
+}
@@ -0,0 +1,66 @@
+package com.liling.Agent.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingJsonExtractorTest {
+
+    private static final String DECISION =
+            "{\"needs_tool\": true, \"tool_name\": \"calc\", \"parameters\": {\"expression\": \"{1+2}\"}, "
+                    + "\"reasoning\": \"说 \\\"}\\\" 也没关系\"}";
+
+    @Test
+    void completesAtTheClosingBraceWhateverTheChunking() {
+        String stream = "好的，判断如下：\n" + DECISION + "\n\n后面还有解释 {\"x\": 1}";
+        int end = stream.indexOf(DECISION) + DECISION.length();
+
+        for (int size = 1; size <= stream.length(); size++) {
+            StreamingJsonExtractor extractor = new StreamingJsonExtractor("needs_tool");
+            String result = null;
+            int fed = 0;
+            while (result == null && fed < stream.length()) {
+                int next = Math.min(stream.length(), fed + size);
+                result = extractor.feed(stream.substring(fed, next));
+                fed = next;
+            }
+            assertEquals(DECISION, result, "chunk size " + size);
+            // 对象完整的那一块之后不再需要任何输入
+            assertTrue(fed - end < size, "chunk size " + size);
+        }
+    }
+
+    @Test
+    void skipsObjectsWithoutTheRequiredKey() {
+        StreamingJsonExtractor extractor = new StreamingJsonExtractor("needs_tool");
+        assertNull(extractor.feed("示例 {\"city\": \"上海\"} 然后 "));
+        assertFalse(extractor.isComplete());
+        assertEquals(DECISION, extractor.feed(DECISION));
+    }
+
+    @Test
+    void quotesOutsideObjectsDoNotOpenStrings() {
+        StreamingJsonExtractor extractor = new StreamingJsonExtractor("needs_tool");
+        assertEquals(DECISION, extractor.feed("他说\"你好 " + DECISION));
+    }
+
+    @Test
+    void incompleteObjectYieldsNothing() {
+        StreamingJsonExtractor extractor = new StreamingJsonExtractor("needs_tool");
+        String partial = DECISION.substring(0, DECISION.length() - 1);
+        assertNull(extractor.feed(partial));
+        assertNull(extractor.getResult());
+        assertEquals(partial, extractor.getText());
+    }
+
+    @Test
+    void keepsFirstResultAfterCompletion() {
+        StreamingJsonExtractor extractor = new StreamingJsonExtractor(null);
+        assertEquals("{\"a\": {\"b\": 1}}", extractor.feed("{\"a\": {\"b\": 1}} {\"c\": 2}"));
+        assertEquals("{\"a\": {\"b\": 1}}", extractor.feed("{\"d\": 3}"));
+        assertTrue(extractor.isComplete());
+    }
+}
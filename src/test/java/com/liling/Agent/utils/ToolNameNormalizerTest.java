@@ -0,0 +1,95 @@
+package com.liling.Agent.utils;
+
+import com.liling.Agent.service.Tool;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ToolNameNormalizerTest {
+
+    private final ToolNameNormalizer normalizer = new ToolNameNormalizer(List.of(
+            tool("weather", "forecast"),
+            tool("calculator", "calc"),
+            tool("time", "clock")));
+
+    private static Tool tool(String name, String... aliases) {
+        return new Tool() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String getDescription() {
+                return name;
+            }
+
+            @Override
+            public List<String> getAliases() {
+                return List.of(aliases);
+            }
+
+            @Override
+            public String execute(Map<String, String> parameters) {
+                return name;
+            }
+        };
+    }
+
+    @Test
+    void exactMatchIgnoresCaseSeparatorsAndDerivedForms() {
+        assertEquals("weather", normalizer.normalize("Weather"));
+        assertEquals("weather", normalizer.normalize(" get_weather "));
+        assertEquals("weather", normalizer.normalize("WeatherTool"));
+        assertEquals("weather", normalizer.normalize("FORECAST"));
+        assertEquals("calculator", normalizer.normalize("calc"));
+        assertEquals(5L, normalizer.getStats().get("exactHits"));
+    }
+
+    @Test
+    void tokenMatchFindsAKnownWord() {
+        assertEquals("time", normalizer.normalize("current_time"));
+        assertEquals("weather", normalizer.normalize("getCurrentWeatherInfo"));
+        assertEquals(2L, normalizer.getStats().get("tokenHits"));
+    }
+
+    @Test
+    void prefixMatchMustBeUnambiguous() {
+        assertEquals("calculator", normalizer.normalize("calcul"));
+        assertEquals(1L, normalizer.getStats().get("prefixHits"));
+        // getcalc、getclock 等都以 getc 开头
+        assertNull(normalizer.normalize("getc"));
+    }
+
+    @Test
+    void fuzzyMatchToleratesTypos() {
+        assertEquals("weather", normalizer.normalize("wether"));
+        assertEquals("calculator", normalizer.normalize("calculater"));
+        assertEquals("calculator", normalizer.normalize("claculator"));
+        assertEquals(3L, normalizer.getStats().get("fuzzyHits"));
+        // 很短的名称只容忍一处错误
+        assertNull(normalizer.normalize("tmie"));
+    }
+
+    @Test
+    void unknownNamesAreRememberedAsMisses() {
+        assertNull(normalizer.normalize("translate"));
+        assertNull(normalizer.normalize("translate"));
+        assertNull(normalizer.normalize("  "));
+        assertNull(normalizer.normalize(null));
+        assertEquals(1L, normalizer.getStats().get("unmatched"));
+    }
+
+    @Test
+    void splitsAndMeasuresNames() {
+        assertEquals(List.of("get", "current", "time"), ToolNameNormalizer.tokens("getCurrent_time"));
+        assertEquals("getcurrenttime", ToolNameNormalizer.fold("get-Current_time"));
+        assertEquals(3, ToolNameNormalizer.boundedDistance("kitten", "sitting", 5));
+        assertEquals(3, ToolNameNormalizer.boundedDistance("kitten", "sitting", 2));
+        assertEquals(0, ToolNameNormalizer.boundedDistance("", "", 0));
+    }
+}
@@ -0,0 +1,65 @@
+package com.liling.Agent.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TtlLruCacheTest {
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        TtlLruCache<String, Integer> cache = new TtlLruCache<>(2, null);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        // 访问 a 之后 b 成为最久未访问的条目
+        assertEquals(1, cache.get("a"));
+        cache.put("c", 3);
+
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.get("a"));
+        assertEquals(3, cache.get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    void expiredEntriesAreMisses() throws InterruptedException {
+        TtlLruCache<String, Integer> cache = new TtlLruCache<>(10, Duration.ofMillis(20));
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(1, cache.get("a"));
+
+        Thread.sleep(50);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.purgeExpired());
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getExpirations());
+    }
+
+    @Test
+    void nonPositiveTtlNeverExpires() throws InterruptedException {
+        TtlLruCache<String, Integer> cache = new TtlLruCache<>(10, Duration.ZERO);
+        cache.put("a", 1);
+        Thread.sleep(5);
+        assertEquals(0, cache.purgeExpired());
+        assertEquals(1, cache.get("a"));
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        TtlLruCache<String, Integer> cache = new TtlLruCache<>(10, null);
+        cache.put("a", 1);
+        cache.get("a");
+        cache.get("a");
+        cache.get("missing");
+        cache.remove("a");
+        cache.get("a");
+
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0.5, (double) cache.getStats().get("hitRate"), 1e-9);
+    }
+}
@@ -0,0 +1,56 @@
+package com.liling.Agent.utils;
+
+import com.liling.Agent.model.RequestUsage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class UsageContextTest {
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        UsageContext.set(null);
+        worker.shutdownNow();
+    }
+
+    @Test
+    void nestedSetRestoresPrevious() {
+        RequestUsage outer = new RequestUsage();
+        RequestUsage inner = new RequestUsage();
+
+        assertNull(UsageContext.set(outer));
+        RequestUsage previous = UsageContext.set(inner);
+        assertSame(outer, previous);
+        assertSame(inner, UsageContext.current());
+
+        assertSame(inner, UsageContext.set(previous));
+        assertSame(outer, UsageContext.current());
+        assertSame(outer, UsageContext.set(null));
+        assertNull(UsageContext.current());
+    }
+
+    @Test
+    void executorPropagatesAndRestoresWorkerContext() throws Exception {
+        MdcExecutorService executor = new MdcExecutorService(worker);
+        RequestUsage workerOwn = new RequestUsage();
+        RequestUsage request = new RequestUsage();
+        worker.submit(() -> UsageContext.set(workerOwn)).get();
+
+        UsageContext.set(request);
+        assertSame(request, executor.submit(UsageContext::current).get());
+
+        // 任务结束后工作线程还原成原来的记录，不会把请求的记录留给下一个任务
+        assertSame(workerOwn, worker.submit(UsageContext::current).get());
+
+        UsageContext.set(null);
+        assertNull(executor.submit(UsageContext::current).get());
+        assertSame(workerOwn, worker.submit(UsageContext::current).get());
+    }
+}